@@ -37,6 +37,8 @@ final class EventLogger {
 	 * Instance fields
 	 */
 	private Stack<String> taskIdStack = new Stack<>();
+	// root ids of the tasks in taskIdStack, a task whose parent is not in the stack is the root of its own tree
+	private Stack<String> rootIdStack = new Stack<>();
 	private final EventOutputPipe eventOutputPipe;
 
 	private EventLogger(EventOutputPipe eventOutputPipe) {
@@ -182,11 +184,13 @@ final class EventLogger {
 
 	private class Scope implements AutoCloseable {
 		final Stack<String> origStack = taskIdStack;
+		final Stack<String> origRootIdStack = rootIdStack;
 
-		Scope(String taskId) {
+		Scope(String taskId, String rootId) {
 			taskIdStack = new Stack<String>();
+			rootIdStack = new Stack<String>();
 			if(null != taskId)
-				taskIdStack.push(taskId);
+				pushTask(taskId, rootId);
 		}
 
 		<T> T apply(Callable<T> c) throws Exception {
@@ -199,13 +203,15 @@ final class EventLogger {
 		@Override
 		public void close() {
 			taskIdStack = origStack;
+			rootIdStack = origRootIdStack;
 		}
 	}
 
 	<T> Callable<T> wrapCallable(Callable<T> callable) {
 		final String currentTaskId = getCurrentTaskId();
+		final String currentRootId = getRootId(currentTaskId);
 		return () -> {
-			try(Scope scope = threadInstance.get().new Scope(currentTaskId)) {
+			try(Scope scope = threadInstance.get().new Scope(currentTaskId, currentRootId)) {
 				return scope.apply(callable);
 			}
 		};
@@ -213,8 +219,9 @@ final class EventLogger {
 
 	<T, R> Function<T, R> wrapFunction(Function<T, R> function) {
 		final String currentTaskId = getCurrentTaskId();
+		final String currentRootId = getRootId(currentTaskId);
 		return (in) -> {
-			try(Scope scope = threadInstance.get().new Scope(currentTaskId)) {
+			try(Scope scope = threadInstance.get().new Scope(currentTaskId, currentRootId)) {
 				return scope.apply(function, in);
 			}
 		};
@@ -222,15 +229,16 @@ final class EventLogger {
 
 	void clearStack(){
 		taskIdStack.clear();
+		rootIdStack.clear();
 	}
 
 	void addIdToContext(String ongoingTaskId) {
-		taskIdStack.push(ongoingTaskId);
+		pushTask(ongoingTaskId, ongoingTaskId);
 	}
 
 	void removeIdFromContext(String ongoingTaskId) {
 		if (!taskIdStack.isEmpty() && taskIdStack.peek().equals(ongoingTaskId)){
-			taskIdStack.pop();
+			popTask();
 		}
 		else{
             LOG.error("Task id: {} opened with TimberlogAdvanced.withContext() is not the top of the stack, probably failed to closed all the tasks in the scope", ongoingTaskId);
@@ -244,9 +252,12 @@ final class EventLogger {
 				parentTaskId = getParentIdFromStack();
 			}
 			event = new StartEvent(taskId, name, logParams, parentTaskId);
-			taskIdStack.push(event.getTaskId());
+			String rootId = getRootId(parentTaskId);
+			event.setRootId(rootId == null ? event.getTaskId() : rootId);
+			pushTask(event.getTaskId(), event.getRootId());
 		}
 		else{
+			// the events of an ongoing task may be logged anywhere, so they are all routed by its own id
 			event = new StartEvent(taskId, name, logParams, parentTaskId);
 		}
 		setDateToDelete(dateToDelete, event);
@@ -259,11 +270,14 @@ final class EventLogger {
 			if (taskIdStack.empty()) {
 				e = getCorruptedEvent(logParams);
 			} else {
-				e = new SuccessEvent(taskIdStack.pop(), logParams);
+				String rootId = rootIdStack.peek();
+				e = new SuccessEvent(popTask(), logParams);
+				e.setRootId(rootId);
 			}
 		}
 		else {
 			e = new SuccessEvent(ongoingTaskId, logParams);
+			e.setRootId(getRootId(ongoingTaskId));
 		}
 		return e;
 	}
@@ -281,11 +295,14 @@ final class EventLogger {
 			if (taskIdStack.empty()) {
 				e = getCorruptedEvent(logParams);
 			} else {
-				e = new ErrorEvent(taskIdStack.pop(), logParams);
+				String rootId = rootIdStack.peek();
+				e = new ErrorEvent(popTask(), logParams);
+				e.setRootId(rootId);
 			}
 		}
 		else{
 			e = new ErrorEvent(ongoingTaskId, logParams);
+			e.setRootId(getRootId(ongoingTaskId));
 		}
 		return e;
 	}
@@ -297,10 +314,12 @@ final class EventLogger {
 				e = getCorruptedEvent(logParams);
 			} else {
 				e = new InfoEvent(taskIdStack.peek(), logParams);
+				e.setRootId(rootIdStack.peek());
 			}
 		}
 		else{
 			e = new InfoEvent(ongoingTaskId, logParams);
+			e.setRootId(getRootId(ongoingTaskId));
 		}
 		return e;
 	}
@@ -314,6 +333,7 @@ final class EventLogger {
 			parentTaskId = getParentIdFromStack();
 		}
 		SpotEvent spotEvent = new SpotEvent(taskId, name, parentTaskId, status, logParams);
+		spotEvent.setRootId(getRootId(parentTaskId));
 		setDateToDelete(dateToDelete, spotEvent);
 		return spotEvent;
 	}
@@ -336,6 +356,22 @@ final class EventLogger {
 		return parentId;
 	}
 
+	// returns null if the task is not in the stack
+	private String getRootId(String taskId) {
+		int index = taskId == null ? -1 : taskIdStack.lastIndexOf(taskId);
+		return index < 0 ? null : rootIdStack.get(index);
+	}
+
+	private void pushTask(String taskId, String rootId) {
+		taskIdStack.push(taskId);
+		rootIdStack.push(rootId);
+	}
+
+	private String popTask() {
+		rootIdStack.pop();
+		return taskIdStack.pop();
+	}
+
 	private void addStaticParams(@NotNull LogParams logParams) {
 		logParams.string(THREAD_NAME, Thread.currentThread().getName());
 		logParams.string(staticParams);
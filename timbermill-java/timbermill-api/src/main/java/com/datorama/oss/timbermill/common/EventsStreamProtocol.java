@@ -0,0 +1,87 @@
+package com.datorama.oss.timbermill.common;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Framing of the streaming ingestion protocol, a long lived TCP connection that carries many event batches.
+ * The client opens with MAGIC, then every frame is a type byte, a sequence number, a status byte, an int and, for EVENTS frames, a payload of
+ * that many bytes (a gzipped EventsWrapper). The server starts by granting credits in a CREDIT frame. A client sends an EVENTS frame only
+ * for a credit it holds, and the server acknowledges every EVENTS frame by its sequence with an ACK frame that may grant credits back.
+ * While the server is overloaded it acknowledges without granting, and grants the credits in a CREDIT frame once it admits again.
+ */
+public final class EventsStreamProtocol {
+
+	public static final int MAGIC = 0x544D5331; // TMS1
+	public static final byte EVENTS = 1;
+	public static final byte ACK = 2;
+	public static final byte CREDIT = 3;
+
+	public static final byte STATUS_OK = 0;
+	public static final byte STATUS_PARSE_ERROR = 1; // dropped, sending it again would fail the same way
+	public static final byte STATUS_ERROR = 2; // not handled, the client sends it again
+
+	private EventsStreamProtocol() {
+	}
+
+	public static void writeEvents(DataOutputStream out, long sequence, byte[] payload) throws IOException {
+		writeHeader(out, EVENTS, sequence, STATUS_OK, payload.length);
+		out.write(payload);
+	}
+
+	public static void writeAck(DataOutputStream out, long sequence, byte status, int credits) throws IOException {
+		writeHeader(out, ACK, sequence, status, credits);
+	}
+
+	public static void writeCredit(DataOutputStream out, int credits) throws IOException {
+		writeHeader(out, CREDIT, 0, STATUS_OK, credits);
+	}
+
+	// the payload of an EVENTS frame is left on the stream, its length is the frame's value
+	public static Frame readFrame(DataInputStream in) throws IOException {
+		byte type = in.readByte();
+		if (type != EVENTS && type != ACK && type != CREDIT) {
+			throw new IOException("Unknown frame type " + type);
+		}
+		return new Frame(type, in.readLong(), in.readByte(), in.readInt());
+	}
+
+	private static void writeHeader(DataOutputStream out, byte type, long sequence, byte status, int value) throws IOException {
+		out.writeByte(type);
+		out.writeLong(sequence);
+		out.writeByte(status);
+		out.writeInt(value);
+	}
+
+	public static final class Frame {
+		private final byte type;
+		private final long sequence;
+		private final byte status;
+		private final int value;
+
+		Frame(byte type, long sequence, byte status, int value) {
+			this.type = type;
+			this.sequence = sequence;
+			this.status = status;
+			this.value = value;
+		}
+
+		public byte getType() {
+			return type;
+		}
+
+		public long getSequence() {
+			return sequence;
+		}
+
+		public byte getStatus() {
+			return status;
+		}
+
+		// payload length for EVENTS frames, granted credits for ACK and CREDIT frames
+		public int getValue() {
+			return value;
+		}
+	}
+}
@@ -44,6 +44,10 @@ public abstract class Event implements Serializable {
 	@JsonInclude(JsonInclude.Include.NON_NULL)
 	String primaryId;
 
+	// root of the task's tree as known by the client that logged it, events are routed by it in cluster mode
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	private String rootId;
+
 	@JsonInclude(JsonInclude.Include.NON_NULL)
 	protected String name;
 
@@ -125,6 +129,14 @@ public abstract class Event implements Serializable {
         this.primaryId = primaryId;
     }
 
+	public String getRootId() {
+		return rootId;
+	}
+
+	public void setRootId(String rootId) {
+		this.rootId = rootId;
+	}
+
 	public Map<String, String> getStrings() {
         return strings;
     }
@@ -243,6 +255,7 @@ public abstract class Event implements Serializable {
 	public int estimatedSize() {
 		int primaryIdLength = primaryId == null ? 0 : primaryId.length() +15; // "primaryId":"",
 		int taskIdLength = taskId == null ? 0 : taskId.length() + 12; // "taskId":"",
+		int rootIdLength = rootId == null ? 0 : rootId.length() + 12; // "rootId":"",
 		int nameLength = name == null ? 0 : name.length() + 10; // "name":"",
 		int parentIdLength = parentId == null ? 0 : parentId.length() + 14; // "parentId":"",
 		int envLength = env == null ? 0 : env.length() + 8; // "env":"",
@@ -256,7 +269,7 @@ public abstract class Event implements Serializable {
 		int dateToDeleteSize = dateToDelete == null ? 0 : 42; // "orphan":"true",
 		return this.getClass().getSimpleName().length() + 13 + // {"@type":"StartEvent",}
 				34 + // "time":"2020-02-03T16:40:03.898Z",
-				primaryIdLength + taskIdLength + nameLength + parentIdLength + envLength + stringsSize + textsSize + contextSize + metricsSize + parentsPathSize + orphanSize + dateToDeleteSize;
+				primaryIdLength + taskIdLength + rootIdLength + nameLength + parentIdLength + envLength + stringsSize + textsSize + contextSize + metricsSize + parentsPathSize + orphanSize + dateToDeleteSize;
 	}
 
 	@JsonIgnore
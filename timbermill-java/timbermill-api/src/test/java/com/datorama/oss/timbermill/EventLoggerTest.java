@@ -173,6 +173,24 @@ public class EventLoggerTest {
 		assertEquals(TEST, childEventStart.getStrings().get(BOOTSTRAP));
 	}
 
+	@Test
+	public void testRootIdOnEveryEventOfTheTree() throws Exception {
+		String rootId = el.startEvent(QUERY, EMPTY_LOG_PARAMS);
+		el.startEvent(SQL, EMPTY_LOG_PARAMS);
+		el.logParams(LogParams.create().text(PARAM, TEST));
+		el.wrapCallable(() -> {
+			EventLogger.get().startEvent(SQL, EMPTY_LOG_PARAMS);
+			return EventLogger.get().successEvent();
+		}).call();
+		el.successEvent();
+		el.successEvent();
+
+		Awaitility.await().atMost(10, TimeUnit.SECONDS).until(() -> mockPipe.getCollectedEvents().size() == 7);
+		for (Event event : mockPipe.getCollectedEvents()) {
+			assertEquals(rootId, event.getRootId());
+		}
+	}
+
 	@Test
 	public void testDiagnosticEvent() {
 		String startId = el.startEvent(QUERY, EMPTY_LOG_PARAMS);
@@ -0,0 +1,99 @@
+package com.datorama.oss.timbermill;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.update.UpdateResponse;
+import org.elasticsearch.index.shard.ShardId;
+
+import com.datorama.oss.timbermill.common.ElasticsearchUtil;
+import com.datorama.oss.timbermill.common.persistence.DbBulkRequest;
+import com.datorama.oss.timbermill.unit.Task;
+import com.google.common.collect.Maps;
+
+/**
+ * ElasticsearchClient that never leaves the process, for benchmarks. Update requests and bulks are built as usual and sent
+ * through the IndexRetryManager to a Bulker that acknowledges every action, missing parents are served from the given tasks
+ * and metadata tasks are dropped. In this package since the Bulker constructor is package private.
+ */
+public class InMemoryElasticsearchClient extends ElasticsearchClient {
+
+	private static final int INDEX_BULK_SIZE = 2097152;
+
+	private final Map<String, Task> storedTasks;
+	private final AcknowledgingBulker bulker;
+
+	public InMemoryElasticsearchClient(Map<String, Task> storedTasks, int indexingThreads) {
+		this(storedTasks, indexingThreads, new AcknowledgingBulker());
+	}
+
+	private InMemoryElasticsearchClient(Map<String, Task> storedTasks, int indexingThreads, AcknowledgingBulker bulker) {
+		super(new ElasticsearchClientConfig.Builder()
+				.url("http://localhost:9200")
+				.indexBulkSize(INDEX_BULK_SIZE)
+				.indexingThreads(indexingThreads)
+				.numberOfShards(1)
+				.numberOfReplicas(0)
+				.expiredMaxIndicesToDeleteInParallel(1)
+				.sharedIndexMaxDocs(1)
+				.tierPromotionDocsThreshold(1)
+				.bootstrapOnCreate(false)
+				.build(), null, bulker);
+		this.storedTasks = storedTasks;
+		this.bulker = bulker;
+	}
+
+	// always the first index of the env, so batches never roll over
+	@Override
+	public String createTimbermillAlias(String env) {
+		return ElasticsearchUtil.getTimbermillIndexAlias(env) + ElasticsearchUtil.INDEX_DELIMITER + ElasticsearchUtil.getIndexSerial(1);
+	}
+
+	@Override
+	public Map<String, Task> getMissingParents(Set<String> parentIds, String env) {
+		Map<String, Task> parents = Maps.newHashMap();
+		for (String parentId : parentIds) {
+			Task parent = storedTasks.get(parentId);
+			if (parent != null) {
+				parents.put(parentId, parent);
+			}
+		}
+		return parents;
+	}
+
+	@Override
+	public void indexMetaDataTasks(String env, Collection<String> metadataEvents) {
+	}
+
+	public long getIndexedActions() {
+		return bulker.actions.sum();
+	}
+
+	private static class AcknowledgingBulker extends Bulker {
+		private final LongAdder actions = new LongAdder();
+
+		AcknowledgingBulker() {
+			super(null);
+		}
+
+		@Override
+		public BulkResponse bulk(DbBulkRequest request) {
+			BulkItemResponse[] items = new BulkItemResponse[request.numOfActions()];
+			int itemId = 0;
+			for (DocWriteRequest<?> action : request.getRequest().requests()) {
+				ShardId shardId = new ShardId(action.index(), "_na_", 0);
+				UpdateResponse response = new UpdateResponse(shardId, TYPE, action.id(), itemId, 1, 1, DocWriteResponse.Result.CREATED);
+				items[itemId] = new BulkItemResponse(itemId, DocWriteRequest.OpType.UPDATE, response);
+				itemId++;
+			}
+			actions.add(items.length);
+			return new BulkResponse(items, 1);
+		}
+	}
+}
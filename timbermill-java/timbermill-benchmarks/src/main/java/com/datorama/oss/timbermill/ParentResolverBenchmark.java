@@ -0,0 +1,94 @@
+package com.datorama.oss.timbermill;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.datorama.oss.timbermill.benchmarks.BenchmarkEvents;
+import com.datorama.oss.timbermill.benchmarks.TraceGenerator;
+import com.datorama.oss.timbermill.common.cache.AbstractCacheHandler;
+import com.datorama.oss.timbermill.common.cache.CacheConfig;
+import com.datorama.oss.timbermill.common.cache.CacheHandlerUtil;
+import com.datorama.oss.timbermill.unit.*;
+
+/**
+ * Adopting cached orphans by the tasks of a batch. orphanRatio of the received tasks have orphansPerParent orphans waiting in the
+ * orphans cache. An operation is a received task, so the score is tasks per second and gc.alloc.rate.norm is bytes per task.
+ * In this package since ParentResolver is package private.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParentResolverBenchmark {
+
+	private static final String ENV = "benchmark";
+	private static final int RECEIVED_TASKS = 1000;
+
+	@Param({"0.05", "0.2"})
+	private double orphanRatio;
+
+	@Param({"4"})
+	private int orphansPerParent;
+
+	@Param({"5"})
+	private int properties;
+
+	private Map<String, Task> receivedTasks;
+	private Map<String, List<String>> orphans;
+	private AbstractCacheHandler cacheHandler;
+
+	@Setup
+	public void setUp() {
+		TraceGenerator traceGenerator = new TraceGenerator(ENV, 4, 4, 0, 0, properties, 0);
+		receivedTasks = new HashMap<>();
+		while (receivedTasks.size() < RECEIVED_TASKS) {
+			for (Map.Entry<String, List<Event>> entry : TraceGenerator.groupByTask(traceGenerator.nextBatch(RECEIVED_TASKS)).entrySet()) {
+				if (receivedTasks.size() < RECEIVED_TASKS && entry.getValue().get(0).isStartEvent()) {
+					receivedTasks.put(entry.getKey(), new Task(entry.getValue(), null, 90, null));
+				}
+			}
+		}
+
+		Random random = new Random(42);
+		orphans = new HashMap<>();
+		Map<String, LocalTask> orphanTasks = new HashMap<>();
+		for (String parentId : receivedTasks.keySet()) {
+			if (random.nextDouble() >= orphanRatio) {
+				continue;
+			}
+			List<String> parentOrphans = new ArrayList<>();
+			for (int i = 0; i < orphansPerParent; i++) {
+				StartEvent orphanEvent = new StartEvent(parentId + "_orphan_" + i, "benchmark_orphan", BenchmarkEvents.logParams(properties, 0), parentId);
+				orphanEvent.setEnv(ENV);
+				Task orphan = new Task(Collections.singletonList(orphanEvent), null, 90, null);
+				orphan.setOrphan(true);
+				orphanTasks.put(orphanEvent.getTaskId(), new LocalTask(orphan));
+				parentOrphans.add(orphanEvent.getTaskId());
+			}
+			orphans.put(parentId, parentOrphans);
+		}
+		cacheHandler = CacheHandlerUtil.getCacheHandler("local", new CacheConfig(null, 0, 1000000000L, 100000000L));
+		cacheHandler.logPushToTasksCache(orphanTasks, "benchmark");
+	}
+
+	// resolving pulls the orphans out of the cache
+	@Setup(Level.Invocation)
+	public void cacheOrphans() {
+		cacheHandler.logPushToOrphanCache(orphans, "benchmark");
+	}
+
+	@TearDown
+	public void tearDown() {
+		cacheHandler.close();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(RECEIVED_TASKS)
+	public Map<String, Task> resolveOrphansReceived() {
+		return new ParentResolver(receivedTasks, cacheHandler).resolveOrphansReceived();
+	}
+}
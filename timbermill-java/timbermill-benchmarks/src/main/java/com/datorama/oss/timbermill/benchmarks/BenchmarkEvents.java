@@ -0,0 +1,61 @@
+package com.datorama.oss.timbermill.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.datorama.oss.timbermill.unit.*;
+
+/**
+ * Client events for the benchmarks, shaped like the ones applications log: a start, a spot and a success per task,
+ * each with the given number of strings, contexts and metrics and one text of the given length.
+ */
+public class BenchmarkEvents {
+
+	private BenchmarkEvents() {
+	}
+
+	public static LogParams logParams(int properties, int textLength) {
+		LogParams logParams = LogParams.create();
+		for (int i = 0; i < properties; i++) {
+			logParams.string("string" + i, "string_value_" + i);
+			logParams.context("ctx" + i, "ctx_value_" + i);
+			logParams.metric("metric" + i, i * 1000L);
+		}
+		if (textLength > 0) {
+			logParams.text("text", text(textLength));
+		}
+		return logParams;
+	}
+
+	public static List<Event> events(int count, int properties, int textLength) {
+		List<Event> events = new ArrayList<>(count);
+		String taskId = null;
+		for (int i = 0; i < count; i++) {
+			switch (i % 3) {
+			case 0:
+				StartEvent startEvent = new StartEvent(null, "benchmark_task", logParams(properties, textLength), taskId);
+				startEvent.setEnv("default");
+				taskId = startEvent.getTaskId();
+				events.add(startEvent);
+				break;
+			case 1:
+				SpotEvent spotEvent = new SpotEvent(null, "benchmark_spot", taskId, TaskStatus.SUCCESS, logParams(properties, textLength));
+				spotEvent.setEnv("default");
+				events.add(spotEvent);
+				break;
+			default:
+				events.add(new SuccessEvent(taskId, logParams(properties, 0)));
+			}
+		}
+		return events;
+	}
+
+	static String text(int length) {
+		StringBuilder text = new StringBuilder(length);
+		while (text.length() < length) {
+			text.append("benchmark text ");
+		}
+		text.setLength(length);
+		return text.toString();
+	}
+}
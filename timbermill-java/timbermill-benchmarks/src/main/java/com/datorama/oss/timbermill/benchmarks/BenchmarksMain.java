@@ -0,0 +1,32 @@
+package com.datorama.oss.timbermill.benchmarks;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmarks jar, takes the regular JMH command line and always adds the GC profiler,
+ * so every run reports allocation rates (gc.alloc.rate.norm is the bytes allocated per operation).
+ * e.g. java -jar target/benchmarks.jar EventLoggerBenchmark
+ */
+public class BenchmarksMain {
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+		if (commandLineOptions.shouldHelp() || commandLineOptions.shouldList() || commandLineOptions.shouldListWithParams()
+				|| commandLineOptions.shouldListProfilers() || commandLineOptions.shouldListResultFormats()) {
+			Main.main(args);
+			return;
+		}
+		boolean hasGcProfiler = commandLineOptions.getProfilers().stream()
+				.anyMatch(profiler -> profiler.getKlass().equals(GCProfiler.class.getName()) || profiler.getKlass().equals("gc"));
+		OptionsBuilder options = new OptionsBuilder();
+		options.parent(commandLineOptions);
+		if (!hasGcProfiler) {
+			options.addProfiler(GCProfiler.class);
+		}
+		new Runner(options.build()).run();
+	}
+}
@@ -0,0 +1,78 @@
+package com.datorama.oss.timbermill.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.datorama.oss.timbermill.TimberLogger;
+import com.datorama.oss.timbermill.pipe.EventOutputPipe;
+import com.datorama.oss.timbermill.unit.Event;
+import com.datorama.oss.timbermill.unit.LogParams;
+
+/**
+ * The cost a logging application pays per call, from TimberLogger to the output pipe: creating the event, the static params,
+ * the task ids stack and the statistics collector. The pipe only keeps the last event, so nothing is sent.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EventLoggerBenchmark {
+
+	@Param({"0", "5"})
+	private int properties;
+
+	@Setup
+	public void setUp() {
+		TimberLogger.bootstrap(new LastEventPipe(), "benchmark");
+	}
+
+	@TearDown
+	public void tearDown() {
+		TimberLogger.exit();
+	}
+
+	@Benchmark
+	public void startAndSuccess(Blackhole blackhole) {
+		blackhole.consume(TimberLogger.start("benchmark_task", logParams()));
+		blackhole.consume(TimberLogger.success());
+	}
+
+	@Benchmark
+	public void startSpotAndSuccess(Blackhole blackhole) {
+		blackhole.consume(TimberLogger.start("benchmark_task", logParams()));
+		blackhole.consume(TimberLogger.spot("benchmark_spot", logParams()));
+		blackhole.consume(TimberLogger.success());
+	}
+
+	@Benchmark
+	public String spot() {
+		return TimberLogger.spot("benchmark_spot", logParams());
+	}
+
+	// built inside the benchmark, as applications do on every call
+	private LogParams logParams() {
+		return properties == 0 ? null : BenchmarkEvents.logParams(properties, 0);
+	}
+
+	private static class LastEventPipe implements EventOutputPipe {
+		private volatile Event lastEvent;
+
+		@Override
+		public void send(Event e) {
+			lastEvent = e;
+		}
+
+		@Override
+		public int getCurrentBufferSize() {
+			return lastEvent == null ? 0 : 1;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package com.datorama.oss.timbermill.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.datorama.oss.timbermill.unit.Event;
+import com.datorama.oss.timbermill.unit.EventsWrapper;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Serializing a batch of events the way TimbermillServerOutputPipe does before sending it, a new ObjectMapper per batch
+ * and then gzip into the request body, compared with a shared ObjectMapper and with streaming straight into the gzip stream.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EventsSerializationBenchmark {
+
+	@Param({"100", "1000"})
+	private int batchSize;
+
+	@Param({"3"})
+	private int properties;
+
+	@Param({"0", "1024"})
+	private int textLength;
+
+	private final ObjectMapper sharedObjectMapper = new ObjectMapper();
+	private EventsWrapper eventsWrapper;
+
+	@Setup
+	public void setUp() {
+		List<Event> events = BenchmarkEvents.events(batchSize, properties, textLength);
+		eventsWrapper = new EventsWrapper(events);
+	}
+
+	@Benchmark
+	public byte[] newObjectMapper() throws IOException {
+		return new ObjectMapper().writeValueAsBytes(eventsWrapper);
+	}
+
+	@Benchmark
+	public byte[] sharedObjectMapper() throws IOException {
+		return sharedObjectMapper.writeValueAsBytes(eventsWrapper);
+	}
+
+	@Benchmark
+	public byte[] newObjectMapperThenGzip() throws IOException {
+		byte[] bytes = new ObjectMapper().writeValueAsBytes(eventsWrapper);
+		ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+		try (OutputStream os = new GZIPOutputStream(gzipped, bytes.length)) {
+			os.write(bytes);
+		}
+		return gzipped.toByteArray();
+	}
+
+	@Benchmark
+	public byte[] sharedObjectMapperIntoGzip() throws IOException {
+		ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+		try (OutputStream os = new GZIPOutputStream(gzipped)) {
+			sharedObjectMapper.writeValue(os, eventsWrapper);
+		}
+		return gzipped.toByteArray();
+	}
+}
@@ -0,0 +1,115 @@
+package com.datorama.oss.timbermill.benchmarks;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.update.UpdateRequest;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.datorama.oss.timbermill.common.ElasticsearchUtil;
+import com.datorama.oss.timbermill.common.cache.AbstractCacheHandler;
+import com.datorama.oss.timbermill.common.cache.CacheConfig;
+import com.datorama.oss.timbermill.common.cache.CacheHandlerUtil;
+import com.datorama.oss.timbermill.unit.Event;
+import com.datorama.oss.timbermill.unit.LocalTask;
+import com.datorama.oss.timbermill.unit.Task;
+
+/**
+ * The per task work of an indexing batch: building tasks from their events, the local tasks and orphans caches and building
+ * the update requests. An operation is a task, so the score is tasks per second and gc.alloc.rate.norm is bytes per task.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IndexingStagesBenchmark {
+
+	private static final int TASKS = 500;
+	private static final String INDEX = ElasticsearchUtil.getTimbermillIndexAlias(TaskIndexerBenchmark.ENV) + ElasticsearchUtil.INDEX_DELIMITER
+			+ ElasticsearchUtil.getIndexSerial(1);
+
+	@Param({"5"})
+	private int properties;
+
+	@Param({"0", "1024"})
+	private int textLength;
+
+	private List<List<Event>> tasksEvents;
+	private Map<String, Task> tasks;
+	private Map<String, LocalTask> localTasks;
+	private Map<String, List<String>> orphans;
+	private AbstractCacheHandler cacheHandler;
+
+	@Setup
+	public void setUp() {
+		TraceGenerator traceGenerator = new TraceGenerator(TaskIndexerBenchmark.ENV, 4, 4, 0, 0, properties, textLength);
+		tasksEvents = new ArrayList<>();
+		tasks = new LinkedHashMap<>();
+		localTasks = new LinkedHashMap<>();
+		orphans = new HashMap<>();
+		while (tasks.size() < TASKS) {
+			for (Map.Entry<String, List<Event>> entry : TraceGenerator.groupByTask(traceGenerator.nextBatch(TASKS)).entrySet()) {
+				List<Event> events = entry.getValue();
+				// tasks cut by the end of the batch are not started, they can't be indexed on their own
+				if (tasks.size() == TASKS || !events.get(0).isStartEvent()) {
+					continue;
+				}
+				Task task = new Task(events, INDEX, 90, "benchmark");
+				tasksEvents.add(events);
+				tasks.put(entry.getKey(), task);
+				localTasks.put(entry.getKey(), new LocalTask(task));
+				if (task.getParentId() != null) {
+					orphans.computeIfAbsent(task.getParentId(), parentId -> new ArrayList<>()).add(entry.getKey());
+				}
+			}
+		}
+		cacheHandler = CacheHandlerUtil.getCacheHandler("local",
+				new CacheConfig(null, 0, TaskIndexerBenchmark.TASKS_CACHE_WEIGHT, TaskIndexerBenchmark.ORPHANS_CACHE_WEIGHT));
+		cacheHandler.logPushToTasksCache(localTasks, "benchmark");
+	}
+
+	@TearDown
+	public void tearDown() {
+		cacheHandler.close();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TASKS)
+	public void taskFromEvents(Blackhole blackhole) {
+		for (List<Event> events : tasksEvents) {
+			blackhole.consume(new Task(events, INDEX, 90, "benchmark"));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TASKS)
+	public void getUpdateRequest(Blackhole blackhole) {
+		for (Map.Entry<String, Task> entry : tasks.entrySet()) {
+			UpdateRequest updateRequest = entry.getValue().getUpdateRequest(INDEX, entry.getKey());
+			blackhole.consume(updateRequest);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TASKS)
+	public void pushToTasksCache() {
+		cacheHandler.logPushToTasksCache(localTasks, "benchmark");
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TASKS)
+	public Map<String, LocalTask> getFromTasksCache() {
+		return cacheHandler.logGetFromTasksCache(tasks.keySet(), "benchmark");
+	}
+
+	// pulling removes the orphans, so every operation pushes them back first
+	@Benchmark
+	@OperationsPerInvocation(TASKS)
+	public Map<String, List<String>> pushAndPullOrphans() {
+		cacheHandler.logPushToOrphanCache(orphans, "benchmark");
+		return cacheHandler.logPullFromOrphansCache(orphans.keySet(), "benchmark");
+	}
+}
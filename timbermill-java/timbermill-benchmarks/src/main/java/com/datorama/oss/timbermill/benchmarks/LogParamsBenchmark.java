@@ -0,0 +1,56 @@
+package com.datorama.oss.timbermill.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.datorama.oss.timbermill.unit.Event;
+import com.datorama.oss.timbermill.unit.LogParams;
+import com.datorama.oss.timbermill.unit.StartEvent;
+
+/**
+ * Building LogParams and estimating the size of the resulting event, which SizedBoundEventsQueue does on every offer and poll.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LogParamsBenchmark {
+
+	@Param({"1", "10"})
+	private int properties;
+
+	@Param({"0", "1024"})
+	private int textLength;
+
+	private String text;
+	private Event event;
+
+	@Setup
+	public void setUp() {
+		text = BenchmarkEvents.text(textLength);
+		event = new StartEvent(null, "benchmark_task", BenchmarkEvents.logParams(properties, textLength), "benchmark_parent");
+		event.setEnv("default");
+	}
+
+	@Benchmark
+	public LogParams buildLogParams() {
+		LogParams logParams = LogParams.create();
+		for (int i = 0; i < properties; i++) {
+			logParams.string("string" + i, i);
+			logParams.context("ctx" + i, i);
+			logParams.metric("metric" + i, i);
+		}
+		if (textLength > 0) {
+			logParams.text("text", text);
+		}
+		return logParams;
+	}
+
+	@Benchmark
+	public int estimatedSize() {
+		return event.estimatedSize();
+	}
+}
@@ -0,0 +1,111 @@
+package com.datorama.oss.timbermill.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.datorama.oss.timbermill.common.TaskSourceDecoder;
+import com.datorama.oss.timbermill.unit.Task;
+import com.datorama.oss.timbermill.unit.TaskStatus;
+import com.google.gson.internal.LazilyParsedNumber;
+
+import static com.datorama.oss.timbermill.ElasticsearchClient.GSON;
+
+/**
+ * Compares decoding a stored task source the way search hits used to be decoded (bytes to String, GSON, metric fixing)
+ * with {@link TaskSourceDecoder}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TaskDecodingBenchmark {
+
+	@Param({"5", "50"})
+	private int propertiesPerMap;
+
+	@Param({"64", "4096"})
+	private int textLength;
+
+	private byte[] source;
+
+	@Setup
+	public void setUp() {
+		Task task = new Task();
+		task.setEnv("default");
+		task.setIndex("timbermill-default-000001");
+		task.setName("benchmark_task");
+		task.setStatus(TaskStatus.SUCCESS);
+		task.setParentId("benchmark_parent_1");
+		task.setPrimaryId("benchmark_primary");
+		task.setOrphan(false);
+		task.setParentsPath(Arrays.asList("benchmark_primary", "benchmark_parent_1"));
+		ZonedDateTime now = ZonedDateTime.now();
+		task.setStartTime(now);
+		task.setEndTime(now.plusSeconds(1));
+		task.setDuration(1000L);
+		task.setDateToDelete(now.plusDays(90));
+
+		StringBuilder text = new StringBuilder();
+		while (text.length() < textLength) {
+			text.append("benchmark text ");
+		}
+		Map<String, String> ctx = new HashMap<>();
+		Map<String, String> strings = new HashMap<>();
+		Map<String, String> texts = new HashMap<>();
+		Map<String, Number> metrics = new HashMap<>();
+		for (int i = 0; i < propertiesPerMap; i++) {
+			ctx.put("ctx" + i, "ctx_value_" + i);
+			strings.put("string" + i, "string_value_" + i);
+			texts.put("text" + i, text.toString());
+			metrics.put("long" + i, (long) i * 1000);
+			metrics.put("double" + i, i + 0.5);
+		}
+		task.setCtx(ctx);
+		task.setString(strings);
+		task.setText(texts);
+		task.setMetric(metrics);
+		source = GSON.toJson(task).getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Benchmark
+	public Task gsonFromString() {
+		Task task = GSON.fromJson(new String(source, StandardCharsets.UTF_8), Task.class);
+		fixMetrics(task);
+		return task;
+	}
+
+	@Benchmark
+	public Task decodeAllFields() throws Exception {
+		return TaskSourceDecoder.ALL_FIELDS.decode(source, 0, source.length);
+	}
+
+	@Benchmark
+	public Task decodeParentFields() throws Exception {
+		return TaskSourceDecoder.PARENT_FIELDS.decode(source, 0, source.length);
+	}
+
+	// the metric fixing search hits went through before TaskSourceDecoder
+	private static void fixMetrics(Task task) {
+		Map<String, Number> metric = task.getMetric();
+		Map<String, Number> newMetrics = new HashMap<>();
+		for (Map.Entry<String, Number> entry : metric.entrySet()) {
+			Number value = entry.getValue();
+			if (value instanceof LazilyParsedNumber) {
+				if (value.toString().contains(".")) {
+					newMetrics.put(entry.getKey(), value.doubleValue());
+				} else {
+					newMetrics.put(entry.getKey(), value.longValue());
+				}
+			}
+		}
+		metric.putAll(newMetrics);
+	}
+}
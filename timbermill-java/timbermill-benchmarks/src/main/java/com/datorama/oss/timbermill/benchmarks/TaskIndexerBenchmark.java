@@ -0,0 +1,82 @@
+package com.datorama.oss.timbermill.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.datorama.oss.timbermill.InMemoryElasticsearchClient;
+import com.datorama.oss.timbermill.TaskIndexer;
+import com.datorama.oss.timbermill.common.cache.AbstractCacheHandler;
+import com.datorama.oss.timbermill.common.cache.CacheConfig;
+import com.datorama.oss.timbermill.common.cache.CacheHandlerUtil;
+import com.datorama.oss.timbermill.common.cardinality.FieldCardinalityGuard;
+import com.datorama.oss.timbermill.common.offload.TextOffloader;
+import com.datorama.oss.timbermill.unit.Event;
+
+/**
+ * A whole indexing batch, TaskIndexer.retrieveAndIndex with the local cache and an in memory Elasticsearch client, so everything
+ * but the network is measured. An operation is an event, so the score is events per second and gc.alloc.rate.norm is bytes per event.
+ * The stages' own hot spots are measured separately by IndexingStagesBenchmark and ParentResolverBenchmark.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TaskIndexerBenchmark {
+
+	static final String ENV = "benchmark";
+	static final int BATCH_EVENTS = 1000;
+	static final long TASKS_CACHE_WEIGHT = 1000000000L;
+	static final long ORPHANS_CACHE_WEIGHT = 100000000L;
+
+	@Param({"4"})
+	private int depth;
+
+	@Param({"4"})
+	private int fanOut;
+
+	@Param({"0", "0.2"})
+	private double orphanRatio;
+
+	@Param({"0", "0.2"})
+	private double lateParentRatio;
+
+	@Param({"5"})
+	private int properties;
+
+	@Param({"256"})
+	private int textLength;
+
+	private TraceGenerator traceGenerator;
+	private InMemoryElasticsearchClient storageClient;
+	private TaskIndexer taskIndexer;
+	private List<Event> batch;
+
+	@Setup
+	public void setUp() {
+		traceGenerator = new TraceGenerator(ENV, depth, fanOut, orphanRatio, lateParentRatio, properties, textLength);
+		storageClient = new InMemoryElasticsearchClient(traceGenerator.getStoredTasks(), 1);
+		AbstractCacheHandler cacheHandler = CacheHandlerUtil.getCacheHandler("local", new CacheConfig(null, 0, TASKS_CACHE_WEIGHT, ORPHANS_CACHE_WEIGHT));
+		taskIndexer = new TaskIndexer("[]", 90, storageClient, "benchmark", cacheHandler, new FieldCardinalityGuard(0),
+				TextOffloader.create(0, 0, null, 90));
+	}
+
+	@Setup(Level.Invocation)
+	public void nextBatch() {
+		batch = traceGenerator.nextBatch(BATCH_EVENTS);
+	}
+
+	@TearDown
+	public void tearDown() {
+		taskIndexer.close();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH_EVENTS)
+	public void retrieveAndIndex() {
+		taskIndexer.retrieveAndIndex(batch, ENV);
+	}
+}
@@ -0,0 +1,144 @@
+package com.datorama.oss.timbermill.benchmarks;
+
+import java.time.ZonedDateTime;
+import java.util.*;
+
+import com.datorama.oss.timbermill.unit.*;
+
+/**
+ * Endless stream of server side events of synthetic traces, cut into batches of a fixed number of events like the server's batches.
+ * Every trace is a tree of the given depth and fan out whose tasks send a start and a success event, children between them. Of the tasks
+ * that have children:
+ * - orphanRatio of them send their events in the batch after the one their children started in, so the children are orphans
+ *   until that batch adopts them.
+ * - lateParentRatio of them were indexed before the benchmark started, they send no events and are served from getStoredTasks()
+ *   as the storage would, so their children's parents are fetched from storage.
+ * The same parameters always generate the same events.
+ */
+public class TraceGenerator {
+
+	private static final long SEED = 42;
+	private static final int MAX_STORED_TASKS = 100000;
+
+	private final String env;
+	private final int depth;
+	private final int fanOut;
+	private final double orphanRatio;
+	private final double lateParentRatio;
+	private final int properties;
+	private final int textLength;
+	private final Random random = new Random(SEED);
+	private final Deque<Event> pending = new ArrayDeque<>();
+	private List<Event> deferred = new ArrayList<>();
+	private List<Event> nextDeferred = new ArrayList<>();
+	private final Map<String, Task> storedTasks = Collections.synchronizedMap(new LinkedHashMap<String, Task>() {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Task> eldest) {
+			return size() > MAX_STORED_TASKS;
+		}
+	});
+	private long nextTaskNum;
+
+	public TraceGenerator(String env, int depth, int fanOut, double orphanRatio, double lateParentRatio, int properties, int textLength) {
+		if (depth < 1 || fanOut < 1) {
+			throw new RuntimeException("Traces depth and fan out must be positive");
+		}
+		this.env = env;
+		this.depth = depth;
+		this.fanOut = fanOut;
+		this.orphanRatio = orphanRatio;
+		this.lateParentRatio = lateParentRatio;
+		this.properties = properties;
+		this.textLength = textLength;
+	}
+
+	public List<Event> nextBatch(int size) {
+		List<Event> batch = new ArrayList<>(size);
+		int fromDeferred = Math.min(deferred.size(), size);
+		batch.addAll(deferred.subList(0, fromDeferred));
+		for (int i = deferred.size() - 1; i >= fromDeferred; i--) {
+			pending.addFirst(deferred.get(i));
+		}
+		deferred = nextDeferred;
+		nextDeferred = new ArrayList<>();
+		while (batch.size() < size) {
+			if (pending.isEmpty()) {
+				addTask(null, null, Collections.emptyList(), Collections.emptyMap(), 0);
+			}
+			batch.add(pending.poll());
+		}
+		return batch;
+	}
+
+	// tasks that were indexed before the benchmark started, by id
+	public Map<String, Task> getStoredTasks() {
+		return storedTasks;
+	}
+
+	// the events grouped by task id, in the order they were sent
+	public static Map<String, List<Event>> groupByTask(Collection<Event> events) {
+		Map<String, List<Event>> eventsMap = new LinkedHashMap<>();
+		for (Event event : events) {
+			eventsMap.computeIfAbsent(event.getTaskId(), taskId -> new ArrayList<>()).add(event);
+		}
+		return eventsMap;
+	}
+
+	private void addTask(String parentId, String primaryId, List<String> parentsPath, Map<String, String> parentCtx, int level) {
+		String taskId = "benchmark_" + env + "_" + nextTaskNum++;
+		String name = "benchmark_level_" + level;
+		boolean hasChildren = level < depth - 1;
+		boolean isRoot = parentId == null;
+		Map<String, String> ctx = new HashMap<>(parentCtx);
+		ctx.put("ctx" + level, "ctx_value_" + level);
+
+		boolean lateParent = !isRoot && hasChildren && random.nextDouble() < lateParentRatio;
+		boolean orphansParent = !isRoot && hasChildren && !lateParent && random.nextDouble() < orphanRatio;
+		Collection<Event> taskEvents = orphansParent ? nextDeferred : pending;
+		if (lateParent) {
+			storedTasks.put(taskId, getStoredTask(name, parentId, primaryId, parentsPath, ctx));
+		} else {
+			taskEvents.add(getStartEvent(taskId, name, parentId));
+		}
+		addChildren(taskId, name, isRoot ? taskId : primaryId, parentsPath, ctx, level);
+		if (!lateParent) {
+			taskEvents.add(getSuccessEvent(taskId));
+		}
+	}
+
+	private void addChildren(String taskId, String name, String primaryId, List<String> parentsPath, Map<String, String> ctx, int level) {
+		if (level >= depth - 1) {
+			return;
+		}
+		List<String> childrenParentsPath = new ArrayList<>(parentsPath);
+		childrenParentsPath.add(name);
+		for (int i = 0; i < fanOut; i++) {
+			addTask(taskId, primaryId, childrenParentsPath, ctx, level + 1);
+		}
+	}
+
+	private Event getStartEvent(String taskId, String name, String parentId) {
+		StartEvent startEvent = new StartEvent(taskId, name, BenchmarkEvents.logParams(properties, textLength), parentId);
+		startEvent.setEnv(env);
+		return startEvent;
+	}
+
+	private Event getSuccessEvent(String taskId) {
+		SuccessEvent successEvent = new SuccessEvent(taskId, LogParams.create().metric("items", random.nextInt(1000)));
+		successEvent.setEnv(env);
+		return successEvent;
+	}
+
+	private Task getStoredTask(String name, String parentId, String primaryId, List<String> parentsPath, Map<String, String> ctx) {
+		Task task = new Task();
+		task.setEnv(env);
+		task.setName(name);
+		task.setStatus(TaskStatus.SUCCESS);
+		task.setParentId(parentId);
+		task.setPrimaryId(primaryId);
+		task.setParentsPath(parentsPath.isEmpty() ? null : parentsPath);
+		task.setCtx(ctx);
+		task.setStartTime(ZonedDateTime.now().minusMinutes(1));
+		return task;
+	}
+}
@@ -0,0 +1,67 @@
+package com.datorama.oss.timbermill.pipe;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.datorama.oss.timbermill.benchmarks.BenchmarkEvents;
+import com.datorama.oss.timbermill.unit.Event;
+
+/**
+ * The client buffer with application threads offering events while a sender thread polls them.
+ * In this package since SizedBoundEventsQueue is package private.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Group)
+public class SizedBoundEventsQueueBenchmark {
+
+	// the builders' default, offers that find the queue full are rejected the way they are in applications
+	private static final int MAX_BUFFER_SIZE = new TimbermillServerOutputPipeBuilder().maxBufferSize;
+
+	private SizedBoundEventsQueue queue;
+	private Event[] events;
+
+	@Setup
+	public void setUp() {
+		queue = new SizedBoundEventsQueue(MAX_BUFFER_SIZE, 3);
+		List<Event> eventsList = BenchmarkEvents.events(300, 3, 0);
+		events = eventsList.toArray(new Event[0]);
+	}
+
+	@State(Scope.Thread)
+	public static class ThreadIndex {
+		private int next;
+
+		Event next(Event[] events) {
+			next = (next + 1) % events.length;
+			return events[next];
+		}
+	}
+
+	@Benchmark
+	@Group("offerPoll")
+	@GroupThreads(4)
+	public boolean offer(ThreadIndex index) {
+		return queue.offer(index.next(events));
+	}
+
+	@Benchmark
+	@Group("offerPoll")
+	@GroupThreads(1)
+	public Event poll() {
+		return queue.poll();
+	}
+
+	@Benchmark
+	@Group("uncontended")
+	@GroupThreads(1)
+	public Event offerThenPoll(ThreadIndex index) {
+		queue.offer(index.next(events));
+		return queue.poll();
+	}
+}
@@ -10,6 +10,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.zip.GZIPOutputStream;
 
 import org.apache.http.HttpHost;
@@ -26,12 +27,15 @@ public class TimbermillServerOutputPipe implements EventOutputPipe {
 
     private static final int HTTP_TIMEOUT = 10000;
     private static final int MAX_RETRY = 5;
+    private static final int TOO_MANY_REQUESTS = 429;
     private static final Logger LOG = LoggerFactory.getLogger(TimbermillServerOutputPipe.class);
     private static volatile boolean keepRunning = true;
     private URL timbermillServerUrl;
     private SizedBoundEventsQueue buffer;
     private ExecutorService executorService;
     private boolean sendGzippedRequest;
+    private long maxOverloadedWaitMillis;
+    private final LongAdder droppedEvents = new LongAdder();
 
     private TimbermillServerOutputPipe() {
     }
@@ -53,6 +57,7 @@ public class TimbermillServerOutputPipe implements EventOutputPipe {
 		this.executorService = Executors.newFixedThreadPool(builder.numOfThreads, namedThreadFactory);
         executeEventsSenders(builder.maxEventsBatchSize, builder.numOfThreads);
         sendGzippedRequest = builder.sendGzippedRequest;
+        maxOverloadedWaitMillis = TimeUnit.SECONDS.toMillis(builder.maxSecondsToWaitWhenOverloaded);
 
         // shutdown hook
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
@@ -108,6 +113,7 @@ public class TimbermillServerOutputPipe implements EventOutputPipe {
 
     private void sendEvents(EventsWrapper eventsWrapper) throws IOException {
         byte[] eventsWrapperBytes = getEventsWrapperBytes(eventsWrapper);
+        long overloadedDeadline = 0;
         for (int tryNum = 1; tryNum <= MAX_RETRY; tryNum++) {
             try {
                 HttpURLConnection httpCon = getHttpURLConnection();
@@ -117,6 +123,24 @@ public class TimbermillServerOutputPipe implements EventOutputPipe {
                     LOG.debug("{} events were sent to Timbermill server", eventsWrapper.getEvents().size());
                     return;
 
+                } else if (responseCode == TOO_MANY_REQUESTS && keepRunning) {
+                    // server is applying backpressure, wait as asked without using up an attempt, up to the max wait of the batch
+                    long retryAfterMillis = Math.max(httpCon.getHeaderFieldLong("Retry-After", 1), 1) * 1000;
+                    long now = System.currentTimeMillis();
+                    if (overloadedDeadline == 0) {
+                        overloadedDeadline = now + maxOverloadedWaitMillis;
+                    }
+                    if (now + retryAfterMillis <= overloadedDeadline) {
+                        LOG.debug("Timbermill server is overloaded, retrying in {} ms", retryAfterMillis);
+                        try {
+                            Thread.sleep(retryAfterMillis);
+                        } catch (InterruptedException ignored) {
+                        }
+                        tryNum--;
+                        continue;
+                    }
+                    LOG.warn("Request #{} to Timbermill is still rejected as overloaded after {} seconds, Attempt: {}/{}", tryNum,
+                            TimeUnit.MILLISECONDS.toSeconds(maxOverloadedWaitMillis), tryNum, MAX_RETRY);
                 } else {
                     LOG.warn("Request #" + tryNum + " to Timbermill return status {}, Attempt: {}/{} Message: {}", responseCode, tryNum, MAX_RETRY, httpCon.getResponseMessage());
                 }
@@ -128,6 +152,7 @@ public class TimbermillServerOutputPipe implements EventOutputPipe {
             } catch (InterruptedException ignored) {
             }
         }
+        droppedEvents.add(eventsWrapper.getEvents().size());
         LOG.error("Can't send events to Timbermill, failed {} attempts.\n Failed request: {} " , MAX_RETRY, new String(eventsWrapperBytes));
     }
 
@@ -159,6 +184,7 @@ public class TimbermillServerOutputPipe implements EventOutputPipe {
     @Override
     public void send(Event e) {
         if(!this.buffer.offer(e)){
+            droppedEvents.increment();
             LOG.warn("Event {} was removed from the queue due to insufficient space", e.getTaskId());
         }
     }
@@ -167,4 +193,9 @@ public class TimbermillServerOutputPipe implements EventOutputPipe {
 		return buffer.size();
 	}
 
+	// events that didn't fit in the buffer or failed all send attempts
+	public long getDroppedEvents() {
+		return droppedEvents.sum();
+	}
+
 }
\ No newline at end of file
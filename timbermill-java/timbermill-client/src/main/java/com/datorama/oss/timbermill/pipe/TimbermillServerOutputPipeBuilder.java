@@ -7,6 +7,7 @@ public class TimbermillServerOutputPipeBuilder {
 	int maxBufferSize = 200000;
 	int numOfThreads = 1;
 	boolean sendGzippedRequest = true;
+	long maxSecondsToWaitWhenOverloaded = 300;
 
 
 	public TimbermillServerOutputPipeBuilder timbermillServerUrl(String timbermillServerUrl) {
@@ -39,6 +40,12 @@ public class TimbermillServerOutputPipeBuilder {
 		return this;
 	}
 
+	// how long a batch waits for an overloaded server (429) before the waits start using up its attempts
+	public TimbermillServerOutputPipeBuilder maxSecondsToWaitWhenOverloaded(long maxSecondsToWaitWhenOverloaded) {
+		this.maxSecondsToWaitWhenOverloaded = maxSecondsToWaitWhenOverloaded;
+		return this;
+	}
+
 	public TimbermillServerOutputPipe build() {
 		return new TimbermillServerOutputPipe(this);
 	}
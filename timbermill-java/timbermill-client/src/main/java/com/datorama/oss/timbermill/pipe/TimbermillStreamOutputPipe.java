@@ -0,0 +1,261 @@
+package com.datorama.oss.timbermill.pipe;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datorama.oss.timbermill.common.EventsStreamProtocol;
+import com.datorama.oss.timbermill.unit.Event;
+import com.datorama.oss.timbermill.unit.EventsWrapper;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Sends events to the Timbermill server over a single long lived connection with the streaming protocol (see EventsStreamProtocol),
+ * instead of an HTTP request per batch. A batch is sent only for a credit granted by the server and is kept until the server
+ * acknowledges it, batches that were not acknowledged when the connection broke are sent again after reconnecting
+ * (the server skips the ones it already got by their EventsWrapper id). A batch the server acknowledges with STATUS_ERROR is sent again
+ * after a second, one that it could not parse is dropped.
+ */
+public class TimbermillStreamOutputPipe implements EventOutputPipe {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TimbermillStreamOutputPipe.class);
+    private static final int CONNECT_TIMEOUT = 10000;
+    private static final long MAX_RECONNECT_BACKOFF_MILLIS = 30000;
+    private static final long CREDIT_POLL_MILLIS = 100;
+    private static final long RESEND_DELAY_MILLIS = 1000;
+
+    private final String host;
+    private final int port;
+    private final int maxEventsBatchSize;
+    private final long closeTimeoutMillis;
+    private final SizedBoundEventsQueue buffer;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<Long, byte[]> unacked = new ConcurrentSkipListMap<>();
+    private final Queue<Long> failedBatches = new ConcurrentLinkedQueue<>();
+    private final Thread senderThread;
+    private volatile boolean keepRunning = true;
+    private volatile Connection connection;
+    private long sequence;
+    private long reconnectBackoffMillis = 100;
+
+    TimbermillStreamOutputPipe(TimbermillStreamOutputPipeBuilder builder) {
+        if (builder.host == null || builder.port <= 0) {
+            throw new RuntimeException("Must enclose the Timbermill server host and streaming port");
+        }
+        host = builder.host;
+        port = builder.port;
+        maxEventsBatchSize = builder.maxEventsBatchSize;
+        closeTimeoutMillis = builder.closeTimeoutMillis;
+        buffer = new SizedBoundEventsQueue(builder.maxBufferSize, builder.maxSecondsBeforeBatchTimeout);
+        senderThread = new Thread(this::sendEvents, "timbermill-stream-sender");
+        senderThread.setDaemon(true);
+        senderThread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+    }
+
+    @Override
+    public void send(Event e) {
+        if (!buffer.offer(e)) {
+            LOG.warn("Event {} was removed from the queue due to insufficient space", e.getTaskId());
+        }
+    }
+
+    @Override
+    public int getCurrentBufferSize() {
+        return buffer.size();
+    }
+
+    // waits up to the close timeout for the buffered events to be sent and acknowledged
+    @Override
+    public void close() {
+        if (!keepRunning) {
+            return;
+        }
+        LOG.info("Gracefully shutting down Timbermill stream output pipe.");
+        long deadline = System.currentTimeMillis() + closeTimeoutMillis;
+        while ((buffer.size() > 0 || !unacked.isEmpty()) && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(CREDIT_POLL_MILLIS);
+            } catch (InterruptedException ignored) {
+                break;
+            }
+        }
+        keepRunning = false;
+        Connection current = connection;
+        if (current != null) {
+            current.close();
+        }
+        if (buffer.size() > 0 || !unacked.isEmpty()) {
+            LOG.warn("Timbermill stream output pipe was closed with {} buffered events and {} unacknowledged batches", buffer.size(), unacked.size());
+        }
+    }
+
+    private void sendEvents() {
+        LOG.info("Starting stream sender thread");
+        while (keepRunning) {
+            try {
+                Connection current = getConnection();
+                if (current == null) {
+                    continue;
+                }
+                if (resendFailedBatch(current)) {
+                    continue;
+                }
+                List<Event> events = buffer.getEventsOfSize(maxEventsBatchSize);
+                if (events.isEmpty()) {
+                    continue;
+                }
+                long batchSequence = ++sequence;
+                byte[] payload = getPayload(events);
+                unacked.put(batchSequence, payload);
+                current.send(batchSequence, payload);
+            } catch (IOException e) {
+                LOG.warn("Streaming events to Timbermill failed, reconnecting", e);
+                disconnect();
+            } catch (Exception e) {
+                LOG.error("Error streaming events to Timbermill server", e);
+            }
+        }
+    }
+
+    // connects if needed and sends the batches that were not acknowledged on the previous connection
+    private Connection getConnection() throws IOException {
+        Connection current = connection;
+        if (current != null && !current.closed) {
+            return current;
+        }
+        try {
+            current = new Connection(host, port);
+        } catch (IOException e) {
+            LOG.warn("Could not connect to Timbermill at {}:{}, retrying in {}ms", host, port, reconnectBackoffMillis);
+            try {
+                Thread.sleep(reconnectBackoffMillis);
+            } catch (InterruptedException ignored) {
+            }
+            reconnectBackoffMillis = Math.min(reconnectBackoffMillis * 2, MAX_RECONNECT_BACKOFF_MILLIS);
+            return null;
+        }
+        reconnectBackoffMillis = 100;
+        connection = current;
+        failedBatches.clear();
+        for (Map.Entry<Long, byte[]> batch : unacked.entrySet()) {
+            current.send(batch.getKey(), batch.getValue());
+        }
+        return current;
+    }
+
+    // the server acknowledged the batch with an error, it is kept unacknowledged and sent again after a delay
+    private boolean resendFailedBatch(Connection current) throws IOException {
+        Long batchSequence = failedBatches.poll();
+        if (batchSequence == null) {
+            return false;
+        }
+        byte[] payload = unacked.get(batchSequence);
+        if (payload != null) {
+            try {
+                Thread.sleep(RESEND_DELAY_MILLIS);
+            } catch (InterruptedException ignored) {
+            }
+            current.send(batchSequence, payload);
+        }
+        return true;
+    }
+
+    private void disconnect() {
+        Connection current = connection;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    private byte[] getPayload(List<Event> events) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream os = new GZIPOutputStream(bytes)) {
+            objectMapper.writeValue(os, new EventsWrapper(events));
+        }
+        return bytes.toByteArray();
+    }
+
+    private class Connection {
+        private final Socket socket;
+        private final DataOutputStream out;
+        private final Semaphore credits = new Semaphore(0);
+        private volatile boolean closed;
+
+        Connection(String host, int port) throws IOException {
+            socket = new Socket();
+            socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeInt(EventsStreamProtocol.MAGIC);
+            out.flush();
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            Thread readerThread = new Thread(() -> readAcks(in), "timbermill-stream-reader");
+            readerThread.setDaemon(true);
+            readerThread.start();
+        }
+
+        // blocks until the server grants a credit
+        void send(long batchSequence, byte[] payload) throws IOException {
+            try {
+                while (!credits.tryAcquire(CREDIT_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    if (closed) {
+                        throw new EOFException("Connection was closed while waiting for credits");
+                    }
+                }
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            EventsStreamProtocol.writeEvents(out, batchSequence, payload);
+            out.flush();
+        }
+
+        void close() {
+            closed = true;
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        private void readAcks(DataInputStream in) {
+            try {
+                while (!closed) {
+                    EventsStreamProtocol.Frame frame = EventsStreamProtocol.readFrame(in);
+                    if (frame.getType() == EventsStreamProtocol.ACK) {
+                        if (frame.getStatus() == EventsStreamProtocol.STATUS_ERROR) {
+                            LOG.warn("Timbermill could not handle streamed batch {}, sending it again", frame.getSequence());
+                            failedBatches.add(frame.getSequence());
+                        } else {
+                            unacked.remove(frame.getSequence());
+                            if (frame.getStatus() != EventsStreamProtocol.STATUS_OK) {
+                                LOG.error("Timbermill could not parse streamed batch {}, status {}", frame.getSequence(), frame.getStatus());
+                            }
+                        }
+                    }
+                    if (frame.getValue() > 0) {
+                        credits.release(frame.getValue());
+                    }
+                }
+            } catch (IOException e) {
+                if (!closed) {
+                    LOG.warn("Lost streaming connection to Timbermill", e);
+                }
+            } finally {
+                close();
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.datorama.oss.timbermill.pipe;
+
+public class TimbermillStreamOutputPipeBuilder {
+	String host;
+	int port;
+	int maxEventsBatchSize = 2097152; // 2MB
+	long maxSecondsBeforeBatchTimeout = 1;
+	int maxBufferSize = 200000;
+	long closeTimeoutMillis = 10000;
+
+
+	public TimbermillStreamOutputPipeBuilder host(String host) {
+		this.host = host;
+		return this;
+	}
+
+	public TimbermillStreamOutputPipeBuilder port(int port) {
+		this.port = port;
+		return this;
+	}
+
+	public TimbermillStreamOutputPipeBuilder maxEventsBatchSize(int maxEventsBatchSize) {
+		this.maxEventsBatchSize = maxEventsBatchSize;
+		return this;
+	}
+
+	public TimbermillStreamOutputPipeBuilder maxSecondsBeforeBatchTimeout(long maxSecondsBeforeBatchTimeout) {
+		this.maxSecondsBeforeBatchTimeout = maxSecondsBeforeBatchTimeout;
+		return this;
+	}
+
+	public TimbermillStreamOutputPipeBuilder maxBufferSize(int maxBufferSize) {
+		this.maxBufferSize = maxBufferSize;
+		return this;
+	}
+
+	public TimbermillStreamOutputPipeBuilder closeTimeoutMillis(long closeTimeoutMillis) {
+		this.closeTimeoutMillis = closeTimeoutMillis;
+		return this;
+	}
+
+	public TimbermillStreamOutputPipe build() {
+		return new TimbermillStreamOutputPipe(this);
+	}
+
+}
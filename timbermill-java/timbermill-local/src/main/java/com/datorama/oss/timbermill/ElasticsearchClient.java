@@ -3,8 +3,10 @@ package com.datorama.oss.timbermill;
 import com.amazonaws.auth.AWS4Signer;
 import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
 import com.amazonaws.util.IOUtils;
+import com.datorama.oss.timbermill.common.BatchTimings;
 import com.datorama.oss.timbermill.common.ElasticsearchUtil;
 import com.datorama.oss.timbermill.common.KamonConstants;
+import com.datorama.oss.timbermill.common.TaskSourceDecoder;
 import com.datorama.oss.timbermill.common.ZonedDateTimeConverter;
 import com.datorama.oss.timbermill.common.persistence.DbBulkRequest;
 import com.datorama.oss.timbermill.common.persistence.PersistenceHandler;
@@ -17,12 +19,13 @@ import com.evanlennick.retry4j.config.RetryConfig;
 import com.evanlennick.retry4j.config.RetryConfigBuilder;
 import com.evanlennick.retry4j.exception.RetriesExhaustedException;
 import com.google.common.base.Stopwatch;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.gson.*;
-import com.google.gson.internal.LazilyParsedNumber;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpRequestInterceptor;
@@ -30,6 +33,7 @@ import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.lucene.util.BytesRef;
 import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.action.admin.cluster.storedscripts.PutStoredScriptRequest;
 import org.elasticsearch.action.admin.indices.alias.Alias;
@@ -47,10 +51,13 @@ import org.elasticsearch.client.core.CountRequest;
 import org.elasticsearch.client.core.CountResponse;
 import org.elasticsearch.client.indices.CreateIndexRequest;
 import org.elasticsearch.client.indices.PutIndexTemplateRequest;
+import org.elasticsearch.client.indices.PutMappingRequest;
 import org.elasticsearch.client.indices.rollover.RolloverRequest;
 import org.elasticsearch.client.indices.rollover.RolloverResponse;
 import org.elasticsearch.cluster.metadata.AliasMetadata;
 import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.document.DocumentField;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.ByteSizeUnit;
 import org.elasticsearch.common.unit.ByteSizeValue;
@@ -68,6 +75,7 @@ import org.elasticsearch.search.aggregations.bucket.terms.Terms;
 import org.elasticsearch.search.aggregations.bucket.terms.TermsAggregationBuilder;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.elasticsearch.search.slice.SliceBuilder;
+import org.elasticsearch.search.sort.SortOrder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
@@ -75,6 +83,8 @@ import org.slf4j.MDC;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.SocketTimeoutException;
+import java.time.Instant;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
@@ -86,22 +96,30 @@ import static com.datorama.oss.timbermill.common.ElasticsearchUtil.*;
 import static org.elasticsearch.action.update.UpdateHelper.ContextFields.CTX;
 import static org.elasticsearch.common.Strings.EMPTY_ARRAY;
 
-public class ElasticsearchClient {
+public class ElasticsearchClient implements StorageClient {
 
 	public static final String TYPE = "_doc";
 	public static final String TIMBERMILL_SCRIPT = "timbermill-script";
 	public static final Gson GSON = new GsonBuilder().registerTypeAdapter(ZonedDateTime.class, new ZonedDateTimeConverter()).create();
 	private static final TermsQueryBuilder PARTIALS_QUERY = new TermsQueryBuilder("status", TaskStatus.PARTIAL_ERROR, TaskStatus.PARTIAL_INFO_ONLY, TaskStatus.PARTIAL_SUCCESS);
     private static final String[] ALL_TASK_FIELDS = {"*"};
-	private static final String[] PARENT_FIELDS_TO_FETCH = {"name", "parentId", "primaryId", "parentsPath", "orphan", "_index", CTX + ".*"};
+	private static final String[] PARENT_FIELDS_TO_FETCH = {"name", "parentId", "primaryId", "parentsPath", "orphan", "_index", CTX + ".*", "flattened"};
+	private static final String[] TREE_KEYWORD_FIELDS = {"name", "status", "parentId", "primaryId"};
+	private static final String EPOCH_MILLIS_FORMAT = "epoch_millis";
 
 	private static final Logger LOG = LoggerFactory.getLogger(ElasticsearchClient.class);
 	private static final String TTL_FIELD = "meta.dateToDelete";
     private static final String META_TASK_BEGIN = "meta.taskBegin";
+    private static final String META_TASK_END = "meta.taskEnd";
+    private static final String META_DURATION = "meta.duration";
+	private static final String ENV_FIELD = "env";
+	private static final int ENV_TIER_CACHE_TTL_MINUTES = 1;
 	protected final RestHighLevelClient client;
-	private final int indexBulkSize;
-	private final ExecutorService executorService;
+	private volatile int indexBulkSize;
+	private final ThreadPoolExecutor executorService;
 	private final int numberOfShards;
+	private final int numberOfReplicas;
+	private final int maxTotalFields;
 	private final int maxSlices;
 	private final RetryConfig retryConfig;
 	private long maxIndexAge;
@@ -116,29 +134,63 @@ public class ElasticsearchClient {
 	private final int fetchByIdsPartitions;
 	private AtomicInteger concurrentScrolls = new AtomicInteger(0);
 	private final int expiredMaxIndicesTodeleteInParallel;
-
+	private final boolean tieredIndices;
+	private final long sharedIndexMaxDocs;
+	private final long tierPromotionDocsThreshold;
+	private final Cache<String, Boolean> dedicatedEnvs = CacheBuilder.newBuilder().expireAfterWrite(ENV_TIER_CACHE_TTL_MINUTES, TimeUnit.MINUTES).build();
+
+	/**
+	 * @deprecated use {@link #ElasticsearchClient(ElasticsearchClientConfig, PersistenceHandler, Bulker)}
+	 */
+	@Deprecated
 	public ElasticsearchClient(String elasticUrl, int indexBulkSize, int indexingThreads, String awsRegion, String elasticUser, String elasticPassword, long maxIndexAge,
 							   long maxIndexSizeInGB, long maxIndexDocs, int numOfElasticSearchActionsTries, int maxBulkIndexFetches, int searchMaxSize, PersistenceHandler persistenceHandler, int numberOfShards, int numberOfReplicas,
 							   int maxTotalFields, Bulker bulker, int scrollLimitation, int scrollTimeoutSeconds, int fetchByIdsPartitions, int expiredMaxIndicesTodeleteInParallel) {
+		this(configBuilder(elasticUrl, indexBulkSize, indexingThreads, awsRegion, elasticUser, elasticPassword, maxIndexAge, maxIndexSizeInGB, maxIndexDocs, numOfElasticSearchActionsTries,
+				maxBulkIndexFetches, searchMaxSize, numberOfShards, numberOfReplicas, maxTotalFields, scrollLimitation, scrollTimeoutSeconds, fetchByIdsPartitions,
+				expiredMaxIndicesTodeleteInParallel).build(), persistenceHandler, bulker);
+	}
 
-		validateProperties(indexBulkSize, indexingThreads, maxIndexAge, maxIndexSizeInGB, maxIndexDocs, numOfElasticSearchActionsTries, numOfElasticSearchActionsTries, scrollLimitation,
-				scrollTimeoutSeconds, fetchByIdsPartitions, numberOfShards, expiredMaxIndicesTodeleteInParallel);
-		this.indexBulkSize = indexBulkSize;
-		this.searchMaxSize = searchMaxSize;
-		this.maxIndexAge = maxIndexAge;
-        this.maxIndexSizeInGB = maxIndexSizeInGB;
-        this.maxIndexDocs = maxIndexDocs;
-		this.numOfElasticSearchActionsTries = numOfElasticSearchActionsTries;
-        this.executorService = Executors.newFixedThreadPool(indexingThreads);
-        this.scrollLimitation = scrollLimitation;
-        this.scrollTimeoutSeconds = scrollTimeoutSeconds;
-        this.fetchByIdsPartitions = fetchByIdsPartitions;
-		this.numberOfShards = numberOfShards;
+	/**
+	 * @deprecated use {@link #ElasticsearchClient(ElasticsearchClientConfig, PersistenceHandler, Bulker)}
+	 */
+	@Deprecated
+	public ElasticsearchClient(String elasticUrl, int indexBulkSize, int indexingThreads, String awsRegion, String elasticUser, String elasticPassword, long maxIndexAge,
+							   long maxIndexSizeInGB, long maxIndexDocs, int numOfElasticSearchActionsTries, int maxBulkIndexFetches, int searchMaxSize, PersistenceHandler persistenceHandler, int numberOfShards, int numberOfReplicas,
+							   int maxTotalFields, Bulker bulker, int scrollLimitation, int scrollTimeoutSeconds, int fetchByIdsPartitions, int expiredMaxIndicesTodeleteInParallel,
+							   boolean tieredIndices, long sharedIndexMaxDocs, long tierPromotionDocsThreshold) {
+		this(configBuilder(elasticUrl, indexBulkSize, indexingThreads, awsRegion, elasticUser, elasticPassword, maxIndexAge, maxIndexSizeInGB, maxIndexDocs, numOfElasticSearchActionsTries,
+				maxBulkIndexFetches, searchMaxSize, numberOfShards, numberOfReplicas, maxTotalFields, scrollLimitation, scrollTimeoutSeconds, fetchByIdsPartitions,
+				expiredMaxIndicesTodeleteInParallel)
+				.tieredIndices(tieredIndices)
+				.sharedIndexMaxDocs(sharedIndexMaxDocs)
+				.tierPromotionDocsThreshold(tierPromotionDocsThreshold)
+				.build(), persistenceHandler, bulker);
+	}
+
+	public ElasticsearchClient(ElasticsearchClientConfig config, PersistenceHandler persistenceHandler, Bulker bulker) {
+		this.indexBulkSize = config.getIndexBulkSize();
+		this.searchMaxSize = config.getSearchMaxSize();
+		this.maxIndexAge = config.getMaxIndexAge();
+		this.maxIndexSizeInGB = config.getMaxIndexSizeInGB();
+		this.maxIndexDocs = config.getMaxIndexDocs();
+		this.numOfElasticSearchActionsTries = config.getNumOfElasticSearchActionsTries();
+		this.executorService = new ThreadPoolExecutor(config.getIndexingThreads(), config.getIndexingThreads(), 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+		this.scrollLimitation = config.getScrollLimitation();
+		this.scrollTimeoutSeconds = config.getScrollTimeoutSeconds();
+		this.fetchByIdsPartitions = config.getFetchByIdsPartitions();
+		this.numberOfShards = config.getNumberOfShards();
+		this.numberOfReplicas = config.getNumberOfReplicas();
+		this.maxTotalFields = config.getMaxTotalFields();
 		this.maxSlices = numberOfShards <= 1 ? 2 : numberOfShards;
-		this.expiredMaxIndicesTodeleteInParallel = expiredMaxIndicesTodeleteInParallel;
-        HttpHost httpHost = HttpHost.create(elasticUrl);
+		this.expiredMaxIndicesTodeleteInParallel = config.getExpiredMaxIndicesToDeleteInParallel();
+		this.tieredIndices = config.isTieredIndices();
+		this.sharedIndexMaxDocs = config.getSharedIndexMaxDocs();
+		this.tierPromotionDocsThreshold = config.getTierPromotionDocsThreshold();
+        HttpHost httpHost = HttpHost.create(config.getElasticUrl());
         LOG.info("Connecting to Elasticsearch at url {}", httpHost.toURI());
         RestClientBuilder builder = RestClient.builder(httpHost);
+        String awsRegion = config.getAwsRegion();
         if (!StringUtils.isEmpty(awsRegion)){
             LOG.info("Trying to connect to AWS Elasticsearch");
             AWS4Signer signer = new AWS4Signer();
@@ -149,10 +201,11 @@ public class ElasticsearchClient {
             builder.setHttpClientConfigCallback(callback -> callback.addInterceptorLast(interceptor));
         }
 
+        String elasticUser = config.getElasticUser();
         if (!StringUtils.isEmpty(elasticUser)){
             LOG.info("Connection to Elasticsearch using user {}", elasticUser);
             final CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
-            credentialsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(elasticUser, elasticPassword));
+            credentialsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(elasticUser, config.getElasticPassword()));
             builder.setHttpClientConfigCallback(httpClientBuilder -> httpClientBuilder
                     .setDefaultCredentialsProvider(credentialsProvider));
         }
@@ -162,69 +215,29 @@ public class ElasticsearchClient {
         	bulker = new Bulker(client);
 		}
         this.bulker = bulker;
-		this.retryManager = new IndexRetryManager(numOfElasticSearchActionsTries, maxBulkIndexFetches, persistenceHandler, bulker);
+		this.retryManager = new IndexRetryManager(numOfElasticSearchActionsTries, config.getMaxBulkIndexFetches(), persistenceHandler, bulker);
 		retryConfig = new RetryConfigBuilder()
 				.withMaxNumberOfTries(numOfElasticSearchActionsTries)
 				.retryOnAnyException()
 				.withDelayBetweenTries(1, ChronoUnit.SECONDS)
 				.withExponentialBackoff()
 				.build();
-		bootstrapElasticsearch(numberOfShards, numberOfReplicas, maxTotalFields);
-    }
-
-    private void validateProperties(int indexBulkSize, int indexingThreads, long maxIndexAge, long maxIndexSizeInGB, long maxIndexDocs, int numOfMergedTasksTries, int numOfElasticSearchActionsTries,
-			int scrollLimitation, int scrollTimeoutSeconds, int fetchByIdsPartitions, int numberOfShards, int expiredMaxIndicesToDeleteInParallel) {
-		if (indexBulkSize < 1) {
-			throw new RuntimeException("Index bulk size property should be larger than 0");
-		}
-		if (indexingThreads < 1) {
-			throw new RuntimeException("Indexing threads property should be larger than 0");
-		}
-		if (maxIndexAge < 1) {
-			throw new RuntimeException("Index max age property should be larger than 0");
-		}
-		if (maxIndexSizeInGB < 1) {
-			throw new RuntimeException("Index max size property should be larger than 0");
+		if (config.isBootstrapOnCreate()) {
+			bootstrap();
 		}
-		if (maxIndexDocs < 1) {
-			throw new RuntimeException("Index max docs property should be larger than 0");
-		}
-		if (numOfMergedTasksTries < 0) {
-			throw new RuntimeException("Max merge tasks retries property should not be below 0");
-		}
-		if (numOfElasticSearchActionsTries < 0) {
-			throw new RuntimeException("Max elasticsearch actions tries property should not be below 0");
-		}
-		if (scrollLimitation < 0) {
-			throw new RuntimeException("Elasticsearch scroll limitation property should not be below 0");
-		}
-		if (scrollTimeoutSeconds < 1) {
-			throw new RuntimeException("Elasticsearch scroll timeout limitation  property should not be below 1");
-		}
-
-		if (fetchByIdsPartitions < 1) {
-			throw new RuntimeException("Fetch By Ids Partitions property should not be below 1");
-		}
-
-		if (numberOfShards < 1) {
-			throw new RuntimeException("Number of shards property should not be below 1");
-		}
-
-		if (expiredMaxIndicesToDeleteInParallel < 1) {
-			throw new RuntimeException("Max Expired Indices To Delete In Parallel property should not be below 1");
-		}
-	}
+    }
 
+	@Override
 	public Task getTaskById(String taskId){
 		Map<String, Task> tasksByIds = getTasksByIds(Sets.newHashSet(taskId), "Test", ElasticsearchClient.ALL_TASK_FIELDS,
-				org.elasticsearch.common.Strings.EMPTY_ARRAY, TIMBERMILL_INDEX_WILDCARD);
+				org.elasticsearch.common.Strings.EMPTY_ARRAY, TaskSourceDecoder.ALL_FIELDS, TIMBERMILL_INDEX_WILDCARD);
 		return tasksByIds.get(taskId);
 	}
 
 	public List<Task> getMultipleTasksById(String taskId) {
         IdsQueryBuilder idsQueryBuilder = QueryBuilders.idsQuery().addIds(taskId);
 		Map<String, List<Task>> map = Maps.newHashMap();
-		List<Future<Map<String, List<Task>>>> futures = runScrollInSlices(idsQueryBuilder, "Test", EMPTY_ARRAY, ALL_TASK_FIELDS, TIMBERMILL_INDEX_WILDCARD);
+		List<Future<Map<String, List<Task>>>> futures = runScrollInSlices(idsQueryBuilder, "Test", EMPTY_ARRAY, ALL_TASK_FIELDS, TaskSourceDecoder.ALL_FIELDS, TIMBERMILL_INDEX_WILDCARD);
 		for (Future<Map<String, List<Task>>> future : futures) {
 			Map<String, List<Task>> taskMap;
 			try {
@@ -244,12 +257,12 @@ public class ElasticsearchClient {
     }
 
 	private Map<String, Task> getTasksByIds(Collection<String> taskIds, String functionDescription,
-											String[] taskFieldsToInclude, String[] taskFieldsToExclude, String... indices) {
-		return getTasksByIds(null, null, taskIds,functionDescription, taskFieldsToInclude, taskFieldsToExclude, indices);
+											String[] taskFieldsToInclude, String[] taskFieldsToExclude, TaskSourceDecoder decoder, String... indices) {
+		return getTasksByIds(null, null, taskIds,functionDescription, taskFieldsToInclude, taskFieldsToExclude, decoder, indices);
 	}
 
 	private Map<String, Task> getTasksByIds(List<QueryBuilder> filterQueryBuilders, List<QueryBuilder> mustNotQueryBuilders, Collection<String> taskIds, String functionDescription,
-											String[] taskFieldsToInclude, String[] taskFieldsToExclude, String... indices) {
+											String[] taskFieldsToInclude, String[] taskFieldsToExclude, TaskSourceDecoder decoder, String... indices) {
 		Map<String, Task> allTasks = Maps.newHashMap();
 		for (List<String> batch : Iterables.partition(taskIds, fetchByIdsPartitions)){
 			BoolQueryBuilder boolQueryBuilder = QueryBuilders.boolQuery();
@@ -272,16 +285,17 @@ public class ElasticsearchClient {
 				}
 			}
 
-			Map<String, Task> batchResult = getSingleTaskByIds(boolQueryBuilder, functionDescription, taskFieldsToInclude, taskFieldsToExclude, indices);
+			Map<String, Task> batchResult = getSingleTaskByIds(boolQueryBuilder, functionDescription, taskFieldsToInclude, taskFieldsToExclude, decoder, indices);
 			allTasks.putAll(batchResult);
 		}
 		return allTasks;
     }
 
-    private Map<String, Task> getSingleTaskByIds(AbstractQueryBuilder queryBuilder, String functionDescription, String[] taskFieldsToInclude, String[] taskFieldsToExclude, String... indices) {
+    private Map<String, Task> getSingleTaskByIds(AbstractQueryBuilder queryBuilder, String functionDescription, String[] taskFieldsToInclude, String[] taskFieldsToExclude,
+												 TaskSourceDecoder decoder, String... indices) {
         Map<String, Task> retMap = Maps.newHashMap();
 
-		List<Future<Map<String, List<Task>>>> futures = runScrollInSlices(queryBuilder, functionDescription, taskFieldsToInclude, taskFieldsToExclude, indices);
+		List<Future<Map<String, List<Task>>>> futures = runScrollInSlices(queryBuilder, functionDescription, taskFieldsToInclude, taskFieldsToExclude, decoder, indices);
 
 		for (Future<Map<String, List<Task>>> future : futures) {
 			try {
@@ -304,19 +318,20 @@ public class ElasticsearchClient {
     }
 
 	private List<Future<Map<String, List<Task>>>> runScrollInSlices(AbstractQueryBuilder queryBuilder, String functionDescription, String[] taskFieldsToInclude, String[] taskFieldsToExclude,
-																	String... indices) {
+																	TaskSourceDecoder decoder, String... indices) {
 		List<Future<Map<String, List<Task>>>> futures = Lists.newArrayList();
 		for (int sliceId = 0; sliceId < maxSlices; sliceId++) {
 			int finalSliceId = sliceId;
 			String flowId = MDC.get("id");
 			Future<Map<String, List<Task>>> futureFetcher = executorService
-					.submit(() -> runScrollQuery(queryBuilder, functionDescription, taskFieldsToInclude, taskFieldsToExclude, flowId, finalSliceId, indices));
+					.submit(() -> runScrollQuery(queryBuilder, functionDescription, taskFieldsToInclude, taskFieldsToExclude, decoder, flowId, finalSliceId, indices));
 			futures.add(futureFetcher);
 		}
 		return futures;
 	}
 
-	void indexMetaDataTasks(String env, Collection<String> metadataEvents) {
+	@Override
+	public void indexMetaDataTasks(String env, Collection<String> metadataEvents) {
         String index = createTimbermillAlias(env);
 
         BulkRequest bulkRequest = new BulkRequest();
@@ -335,6 +350,7 @@ public class ElasticsearchClient {
 		LOG.warn("Failed try # " + status.getTotalTries() + "/" + numOfElasticSearchActionsTries + " for [ES - " + status.getCallName() + "] ", status.getLastExceptionThatCausedRetry());
 	}
 
+	@Override
 	public void close(){
         try {
             client.close();
@@ -372,8 +388,15 @@ public class ElasticsearchClient {
 	}
 	//Return number of failed tasks
 
+	@Override
 	public Map<String, String> index(Map<String, Task> tasksMap) {
-		Collection<Future<List<BulkResponse>>> futuresRequests = createFuturesIndexRequests(tasksMap);
+		return index(tasksMap, new BatchTimings());
+	}
+
+	@Override
+	public Map<String, String> index(Map<String, Task> tasksMap, BatchTimings timings) {
+		Collection<Future<List<BulkResponse>>> futuresRequests = createFuturesIndexRequests(tasksMap, timings);
+		timings.lap(BatchTimings.Stage.INDEX_REQUESTS);
 
 		int bulkNum = 1;
         Map<String, String> overallIdToIndex = Maps.newHashMap();
@@ -389,6 +412,7 @@ public class ElasticsearchClient {
 			}
 			bulkNum++;
         }
+		timings.lap(BatchTimings.Stage.INDEX);
 		return overallIdToIndex;
     }
 
@@ -404,8 +428,10 @@ public class ElasticsearchClient {
 		return retMap;
 	}
 
-	String rolloverIndex(String timbermillAlias) {
-        RolloverRequest rolloverRequest = getRolloverRequest(timbermillAlias, maxIndexAge, maxIndexSizeInGB, maxIndexDocs);
+	@Override
+	public String rolloverIndex(String timbermillAlias) {
+		long maxDocs = SHARED_TIER_ALIAS.equals(timbermillAlias) ? sharedIndexMaxDocs : maxIndexDocs;
+        RolloverRequest rolloverRequest = getRolloverRequest(timbermillAlias, maxIndexAge, maxIndexSizeInGB, maxDocs);
         return handleRolloverRequest(timbermillAlias, rolloverRequest);
     }
 
@@ -421,6 +447,9 @@ public class ElasticsearchClient {
 			if (rolloverResponse.isRolledOver()){
 				LOG.info("Alias {} rolled over, new index is [{}]", timbermillAlias, rolloverResponse.getNewIndex());
 				updateOldAlias(rolloverResponse, timbermillAlias);
+				if (SHARED_TIER_ALIAS.equals(timbermillAlias)) {
+					copyEnvAliases(rolloverResponse.getOldIndex(), rolloverResponse.getNewIndex());
+				}
 				return rolloverResponse.getNewIndex();
 			}
 			else{
@@ -443,11 +472,15 @@ public class ElasticsearchClient {
 	private void updateOldAlias(RolloverResponse rolloverResponse, String timbermillAlias) throws RetriesExhaustedException {
 		String oldAlias = getOldAlias(timbermillAlias);
 		Map<String, Set<AliasMetadata>> oldAliases = getAliases(oldAlias);
-		if (!oldAliases.isEmpty()) {
-			updateTimbermillAlias(oldAlias, IndicesAliasesRequest.AliasActions.Type.REMOVE, "*", "Removing old index from alias", "Removing old index from alias [{}] failed");
-			Optional<String> oldIndexOptional = oldAliases.keySet().stream().findAny();
-			if (oldIndexOptional.isPresent()) {
-				String oldIndex = oldIndexOptional.get();
+		for (Map.Entry<String, Set<AliasMetadata>> entry : oldAliases.entrySet()) {
+			// a promoted env's old alias also filters the shared indices, which keep its tasks from before the promotion readable
+			if (entry.getValue().stream().anyMatch(aliasMetadata -> aliasMetadata.filter() != null)) {
+				continue;
+			}
+			String oldIndex = entry.getKey();
+			updateTimbermillAlias(oldAlias, IndicesAliasesRequest.AliasActions.Type.REMOVE, oldIndex, "Removing old index from alias", "Removing old index from alias [{}] failed");
+			// shared indices are still written to by the envs of the shared tier
+			if (!oldIndex.startsWith(SHARED_TIER_ALIAS)) {
 				forceMergeRetiredIndex(oldIndex);
 			}
 		}
@@ -487,45 +520,52 @@ public class ElasticsearchClient {
 		}
 	}
 
+	@Override
 	public void migrateTasksToNewIndex() {
 		Set<String> indexedEnvs = ElasticsearchUtil.getEnvSet();
 		for (String env : indexedEnvs) {
-			String currentAlias = ElasticsearchUtil.getTimbermillIndexAlias(env);
-			String oldAlias = getOldAlias(currentAlias);
+			migrateTasksToNewIndex(ElasticsearchUtil.getTimbermillIndexAlias(env));
+		}
+		if (tieredIndices) {
+			migrateTasksToNewIndex(SHARED_TIER_ALIAS);
+		}
+	}
+
+	private void migrateTasksToNewIndex(String currentAlias) {
+		String oldAlias = getOldAlias(currentAlias);
+
+		try {
+			if (isAliasExists(currentAlias)) {
+				if (isAliasExists(oldAlias)) {
+					//Find matching tasks from old index to partial tasks in new index
+					Set<String> currentIndexPartialsIds = findPartialsIds(currentAlias);
+					Map<String, Task> matchedTasksFromOld = getTasksByIds(currentIndexPartialsIds,
+							"Fetch matched tasks from old index " + oldAlias, ALL_TASK_FIELDS, org.elasticsearch.common.Strings.EMPTY_ARRAY, TaskSourceDecoder.ALL_FIELDS, oldAlias);
+					logPartialsMetadata(currentAlias, currentIndexPartialsIds, matchedTasksFromOld);
+
+					//Find partials tasks from old that have matching tasks in new, excluding already found tasks
+					Set<String> oldIndexPartialsIds = findPartialsIds(oldAlias);
+					oldIndexPartialsIds.removeAll(currentIndexPartialsIds);
+					Map<String, Task> matchingTasksNew = getTasksByIds(oldIndexPartialsIds,
+							"Fetch matched ids from current index " + currentAlias, EMPTY_ARRAY, ALL_TASK_FIELDS, TaskSourceDecoder.ALL_FIELDS, currentAlias);
+					Set<String> oldMatchedIndexPartialsIds = matchingTasksNew.keySet();
+					Map<String, Task> matchedTasksToMigrateFromOld = getTasksByIds(oldMatchedIndexPartialsIds,
+							"Fetch partials tasks from old index " + oldAlias, ALL_TASK_FIELDS, org.elasticsearch.common.Strings.EMPTY_ARRAY, TaskSourceDecoder.ALL_FIELDS, oldAlias);
+					logPartialsMetadata(oldAlias, oldIndexPartialsIds, matchedTasksToMigrateFromOld);
+
+					Map<String, Task> tasksToMigrateIntoNewIndex = Maps.newHashMap();
+					tasksToMigrateIntoNewIndex.putAll(matchedTasksFromOld);
+					tasksToMigrateIntoNewIndex.putAll(matchedTasksToMigrateFromOld);
+					indexToNewIndexAndDeleteFromOldIndexTasks(tasksToMigrateIntoNewIndex, oldAlias, currentAlias);
 
-			try {
-				if (isAliasExists(currentAlias)) {
-					if (isAliasExists(oldAlias)) {
-						//Find matching tasks from old index to partial tasks in new index
-						Set<String> currentIndexPartialsIds = findPartialsIds(currentAlias);
-						Map<String, Task> matchedTasksFromOld = getTasksByIds(currentIndexPartialsIds,
-								"Fetch matched tasks from old index " + oldAlias, ALL_TASK_FIELDS, org.elasticsearch.common.Strings.EMPTY_ARRAY, oldAlias);
-						logPartialsMetadata(currentAlias, currentIndexPartialsIds, matchedTasksFromOld);
-
-						//Find partials tasks from old that have matching tasks in new, excluding already found tasks
-						Set<String> oldIndexPartialsIds = findPartialsIds(oldAlias);
-						oldIndexPartialsIds.removeAll(currentIndexPartialsIds);
-						Map<String, Task> matchingTasksNew = getTasksByIds(oldIndexPartialsIds,
-								"Fetch matched ids from current index " + currentAlias, EMPTY_ARRAY, ALL_TASK_FIELDS, currentAlias);
-						Set<String> oldMatchedIndexPartialsIds = matchingTasksNew.keySet();
-						Map<String, Task> matchedTasksToMigrateFromOld = getTasksByIds(oldMatchedIndexPartialsIds,
-								"Fetch partials tasks from old index " + oldAlias, ALL_TASK_FIELDS, org.elasticsearch.common.Strings.EMPTY_ARRAY, oldAlias);
-						logPartialsMetadata(oldAlias, oldIndexPartialsIds, matchedTasksToMigrateFromOld);
-
-						Map<String, Task> tasksToMigrateIntoNewIndex = Maps.newHashMap();
-						tasksToMigrateIntoNewIndex.putAll(matchedTasksFromOld);
-						tasksToMigrateIntoNewIndex.putAll(matchedTasksToMigrateFromOld);
-						indexToNewIndexAndDeleteFromOldIndexTasks(tasksToMigrateIntoNewIndex, oldAlias, currentAlias);
-
-					} else {
-						LOG.info("Old alias {} doesn't exists.", oldAlias);
-					}
 				} else {
-					LOG.error("Main alias {} doesn't exists.", currentAlias);
+					LOG.info("Old alias {} doesn't exists.", oldAlias);
 				}
-			} catch (RetriesExhaustedException | ExecutionException | InterruptedException e){
-				LOG.error("Failed running migration cron for main alias [" + currentAlias + "] and old alias [" + oldAlias + "]", e);
+			} else {
+				LOG.error("Main alias {} doesn't exists.", currentAlias);
 			}
+		} catch (RetriesExhaustedException | ExecutionException | InterruptedException e){
+			LOG.error("Failed running migration cron for main alias [" + currentAlias + "] and old alias [" + oldAlias + "]", e);
 		}
 	}
 
@@ -535,23 +575,93 @@ public class ElasticsearchClient {
 		KamonConstants.PARTIAL_TASKS_MIGRATED_HISTOGRAM.withTag("index", index).record(matchedTasks.size());
 	}
 
-	Map<String, Task> getMissingParents(Set<String> parentIds, String env) {
+	@Override
+	public Map<String, Task> getMissingParents(Set<String> parentIds, String env) {
+		return getTasksByIds(parentIds, "Fetch missing parents tasks", PARENT_FIELDS_TO_FETCH, null, TaskSourceDecoder.PARENT_FIELDS, getEnvAliases(env));
+	}
+
+	@Override
+	public TreeTasks getTasksByPrimaryId(String primaryId, String env, int maxTasks) {
+		// only the primary task scores, so it is always in a truncated tree, followed by the earliest started tasks
+		SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder()
+				.query(QueryBuilders.boolQuery()
+						.filter(QueryBuilders.termQuery("primaryId", primaryId))
+						.should(QueryBuilders.idsQuery().addIds(primaryId)))
+				.sort("_score", SortOrder.DESC)
+				.sort(META_TASK_BEGIN, SortOrder.ASC)
+				.fetchSource(false)
+				.size(maxTasks)
+				.trackTotalHitsUpTo(maxTasks + 1)
+				.timeout(new TimeValue(30, TimeUnit.SECONDS));
+		for (String field : TREE_KEYWORD_FIELDS) {
+			searchSourceBuilder.docValueField(field);
+		}
+		searchSourceBuilder.docValueField(META_TASK_BEGIN, EPOCH_MILLIS_FORMAT);
+		searchSourceBuilder.docValueField(META_TASK_END, EPOCH_MILLIS_FORMAT);
+		searchSourceBuilder.docValueField(META_DURATION);
+		String[] indices = env == null ? new String[]{TIMBERMILL_INDEX_WILDCARD} : getEnvAliases(env);
+		SearchRequest searchRequest = new SearchRequest(indices).source(searchSourceBuilder);
+
+		Map<String, Task> tasks = Maps.newHashMap();
+		SearchResponse searchResponse = runWithRetries(() -> client.search(searchRequest, RequestOptions.DEFAULT), "Fetch tasks tree of " + primaryId);
+		for (SearchHit searchHit : searchResponse.getHits().getHits()) {
+			Task task = new Task();
+			task.setName(getDocValue(searchHit, "name"));
+			task.setParentId(getDocValue(searchHit, "parentId"));
+			task.setPrimaryId(getDocValue(searchHit, "primaryId"));
+			String status = getDocValue(searchHit, "status");
+			if (status != null) {
+				task.setStatus(TaskStatus.valueOf(status));
+			}
+			task.setStartTime(getDocValueTime(searchHit, META_TASK_BEGIN));
+			task.setEndTime(getDocValueTime(searchHit, META_TASK_END));
+			String duration = getDocValue(searchHit, META_DURATION);
+			if (duration != null) {
+				task.setDuration(Long.valueOf(duration));
+			}
+			task.setIndex(searchHit.getIndex());
+			tasks.put(searchHit.getId(), task);
+		}
+		boolean truncated = searchResponse.getHits().getTotalHits() != null && searchResponse.getHits().getTotalHits().value > maxTasks;
+		if (truncated) {
+			LOG.warn("Tree of task {} has more than {} tasks, returning partial tree", primaryId, maxTasks);
+		}
+		return new TreeTasks(tasks, truncated);
+	}
+
+	private static String getDocValue(SearchHit searchHit, String field) {
+		DocumentField documentField = searchHit.getFields().get(field);
+		if (documentField == null || documentField.getValue() == null) {
+			return null;
+		}
+		return documentField.getValue().toString();
+	}
+
+	private static ZonedDateTime getDocValueTime(SearchHit searchHit, String field) {
+		String epochMillis = getDocValue(searchHit, field);
+		if (epochMillis == null) {
+			return null;
+		}
+		return ZonedDateTime.ofInstant(Instant.ofEpochMilli(Long.parseLong(epochMillis)), ZoneOffset.UTC);
+	}
+
+	private String[] getEnvAliases(String env) {
 		String timbermillAlias = ElasticsearchUtil.getTimbermillIndexAlias(env);
 		String oldAlias = getOldAlias(timbermillAlias);
 		try {
 			boolean aliasExists = isAliasExists(oldAlias);
 			if (aliasExists){
-				return getTasksByIds(parentIds, "Fetch missing parents tasks", PARENT_FIELDS_TO_FETCH, null, timbermillAlias, oldAlias);
+				return new String[]{timbermillAlias, oldAlias};
 			}
 		} catch (RetriesExhaustedException e) {
 			LOG.error("Failed checking if Timbermill Alias " + timbermillAlias + " exists", e);
 		}
-		return getTasksByIds(parentIds, "Fetch missing parents tasks", PARENT_FIELDS_TO_FETCH, null, timbermillAlias);
+		return new String[]{timbermillAlias};
 	}
 
 	private Set<String> findPartialsIds(String index) {
 		BoolQueryBuilder latestPartialsQuery = getLatestPartialsQuery();
-		Map<String, Task> singleTaskByIds = getSingleTaskByIds(latestPartialsQuery, "Get partials from index " + index, EMPTY_ARRAY, ALL_TASK_FIELDS, index);
+		Map<String, Task> singleTaskByIds = getSingleTaskByIds(latestPartialsQuery, "Get partials from index " + index, EMPTY_ARRAY, ALL_TASK_FIELDS, TaskSourceDecoder.ALL_FIELDS, index);
 		return singleTaskByIds.keySet();
 	}
 
@@ -582,7 +692,7 @@ public class ElasticsearchClient {
 				task.setIndex(currentIndex);
 			}
 
-			Collection<Future<List<BulkResponse>>> futuresRequests = createFuturesIndexRequests(tasksToMigrateIntoNewIndex);
+			Collection<Future<List<BulkResponse>>> futuresRequests = createFuturesIndexRequests(tasksToMigrateIntoNewIndex, new BatchTimings());
 
 			int failedRequests = 0;
 			for (Future<List<BulkResponse>> futureRequest : futuresRequests) {
@@ -607,15 +717,17 @@ public class ElasticsearchClient {
 		}
     }
 
-	private Collection<Future<List<BulkResponse>>> createFuturesIndexRequests(Map<String, Task> tasksMap) {
+	private Collection<Future<List<BulkResponse>>> createFuturesIndexRequests(Map<String, Task> tasksMap, BatchTimings timings) {
 		Collection<UpdateRequest> requests = createUpdateRequests(tasksMap);
 		BulkRequest request = new BulkRequest();
         Collection<Future<List<BulkResponse>>> futures = new ArrayList<>();
 		int bulkNum = 1;
+		int bulkSize = indexBulkSize;
         for (UpdateRequest updateRequest : requests) {
             request.add(updateRequest);
 
-			if (request.estimatedSizeInBytes() > indexBulkSize) {
+			if (request.estimatedSizeInBytes() > bulkSize) {
+				timings.addIndexRequestsBytes(request.estimatedSizeInBytes());
 				Future<List<BulkResponse>> future = createFutureTask(request, bulkNum);
 				futures.add(future);
 				request = new BulkRequest();
@@ -623,6 +735,7 @@ public class ElasticsearchClient {
             }
         }
         if (!request.requests().isEmpty()) {
+			timings.addIndexRequestsBytes(request.estimatedSizeInBytes());
 			Future<List<BulkResponse>> future = createFutureTask(request, bulkNum);
             futures.add(future);
         }
@@ -649,11 +762,58 @@ public class ElasticsearchClient {
         return requests;
     }
 
-    private void bootstrapElasticsearch(int numberOfShards, int numberOfReplicas, int maxTotalFields) {
+	private static ElasticsearchClientConfig.Builder configBuilder(String elasticUrl, int indexBulkSize, int indexingThreads, String awsRegion, String elasticUser, String elasticPassword,
+			long maxIndexAge, long maxIndexSizeInGB, long maxIndexDocs, int numOfElasticSearchActionsTries, int maxBulkIndexFetches, int searchMaxSize, int numberOfShards, int numberOfReplicas,
+			int maxTotalFields, int scrollLimitation, int scrollTimeoutSeconds, int fetchByIdsPartitions, int expiredMaxIndicesTodeleteInParallel) {
+		return new ElasticsearchClientConfig.Builder()
+				.url(elasticUrl)
+				.indexBulkSize(indexBulkSize)
+				.indexingThreads(indexingThreads)
+				.awsRegion(awsRegion)
+				.elasticUser(elasticUser)
+				.elasticPassword(elasticPassword)
+				.maxIndexAge(maxIndexAge)
+				.maxIndexSizeInGB(maxIndexSizeInGB)
+				.maxIndexDocs(maxIndexDocs)
+				.numOfElasticSearchActionsTries(numOfElasticSearchActionsTries)
+				.maxBulkIndexFetches(maxBulkIndexFetches)
+				.searchMaxSize(searchMaxSize)
+				.numberOfShards(numberOfShards)
+				.numberOfReplicas(numberOfReplicas)
+				.maxTotalFields(maxTotalFields)
+				.scrollLimitation(scrollLimitation)
+				.scrollTimeoutSeconds(scrollTimeoutSeconds)
+				.fetchByIdsPartitions(fetchByIdsPartitions)
+				.expiredMaxIndicesToDeleteInParallel(expiredMaxIndicesTodeleteInParallel);
+	}
+
+	// puts the index template and the stored script, throws RetriesExhaustedException if Elasticsearch could not be reached
+    public void bootstrap() {
 		putIndexTemplate(numberOfShards, numberOfReplicas, maxTotalFields);
+		putFlattenedMapping();
 		puStoredScript();
 	}
 
+	// indices created before the template had the flattened fields would map each of them dynamically until their next rollover,
+	// so the mapping is put on them, and the ones that already mapped flattened dynamically are rolled over now
+	private void putFlattenedMapping() {
+		Map<String, Set<AliasMetadata>> indicesAliases = getAliases(TIMBERMILL_INDEX_WILDCARD);
+		for (Map.Entry<String, Set<AliasMetadata>> entry : indicesAliases.entrySet()) {
+			String index = entry.getKey();
+			PutMappingRequest request = new PutMappingRequest(index).source(ElasticsearchUtil.FLATTENED_MAPPING, XContentType.JSON);
+			try {
+				client.indices().putMapping(request, RequestOptions.DEFAULT);
+			} catch (IOException | ElasticsearchException e) {
+				LOG.warn("Failed putting flattened mapping on index " + index + ", rolling over its aliases", e);
+				for (AliasMetadata aliasMetadata : entry.getValue()) {
+					if (aliasMetadata.filter() == null && !isOldAlias(aliasMetadata.alias())) {
+						handleRolloverRequest(aliasMetadata.alias(), new RolloverRequest(aliasMetadata.alias(), null));
+					}
+				}
+			}
+		}
+	}
+
 	private void puStoredScript(){
 		PutStoredScriptRequest request = new PutStoredScriptRequest();
 		request.id(TIMBERMILL_SCRIPT);
@@ -679,8 +839,16 @@ public class ElasticsearchClient {
 		runWithRetries(() -> client.indices().putTemplate(request, RequestOptions.DEFAULT), "Put Timbermill Index Template");
     }
 
+    // envs in the shared tier are written to the shared index chain, and read through a filtered alias named like a dedicated one
+    @Override
     public String createTimbermillAlias(String env) {
-        String timbermillAlias = ElasticsearchUtil.getTimbermillIndexAlias(env);
+		if (isDedicatedEnv(env)) {
+			return createAlias(ElasticsearchUtil.getTimbermillIndexAlias(env));
+		}
+		return createAlias(SHARED_TIER_ALIAS);
+	}
+
+	private String createAlias(String timbermillAlias) {
 		String initialIndex = getInitialIndex(timbermillAlias);
 		try {
 			if (!isAliasExists(timbermillAlias)) {
@@ -701,7 +869,106 @@ public class ElasticsearchClient {
         return timbermillAlias + INDEX_DELIMITER + initialSerial;
     }
 
-	private Map<String, List<Task>> runScrollQuery(QueryBuilder query, String functionDescription, String[] taskFieldsToInclude, String[] taskFieldsToExclude, String flowId, int sliceId, String...indices){
+	private boolean isDedicatedEnv(String env) {
+		if (!tieredIndices) {
+			return true;
+		}
+		Boolean dedicated = dedicatedEnvs.getIfPresent(env);
+		if (dedicated != null) {
+			return dedicated;
+		}
+		try {
+			String timbermillAlias = ElasticsearchUtil.getTimbermillIndexAlias(env);
+			Map<String, Set<AliasMetadata>> aliases = getAliases(timbermillAlias);
+			// an env without an alias joins the shared tier, an env with an unfiltered alias has its own index chain
+			if (aliases.isEmpty()) {
+				joinSharedTier(env, timbermillAlias);
+				dedicated = false;
+			}
+			else {
+				dedicated = aliases.values().stream().flatMap(Set::stream).noneMatch(aliasMetadata -> aliasMetadata.filter() != null);
+			}
+		} catch (RuntimeException e) {
+			LOG.error("Failed resolving index tier of env " + env + ", treating it as a dedicated env", e);
+			return true;
+		}
+		dedicatedEnvs.put(env, dedicated);
+		return dedicated;
+	}
+
+	private void joinSharedTier(String env, String timbermillAlias) {
+		createAlias(SHARED_TIER_ALIAS);
+		IndicesAliasesRequest request = new IndicesAliasesRequest();
+		request.addAliasAction(IndicesAliasesRequest.AliasActions.add().index(SHARED_TIER_INDEX_WILDCARD).alias(timbermillAlias).filter(getEnvFilter(env)));
+		runWithRetries(() -> client.indices().updateAliases(request, RequestOptions.DEFAULT), "Add env alias " + timbermillAlias + " to shared tier");
+		LOG.info("Env {} joined the shared index tier", env);
+	}
+
+	private void copyEnvAliases(String oldIndex, String newIndex) {
+		IndicesAliasesRequest request = new IndicesAliasesRequest();
+		for (AliasMetadata aliasMetadata : getIndexAliases(oldIndex)) {
+			if (aliasMetadata.filter() != null && !isOldAlias(aliasMetadata.alias())) {
+				request.addAliasAction(IndicesAliasesRequest.AliasActions.add().index(newIndex).alias(aliasMetadata.alias()).filter(aliasMetadata.filter().string()));
+			}
+		}
+		if (!request.getAliasActions().isEmpty()) {
+			try {
+				runWithRetries(() -> client.indices().updateAliases(request, RequestOptions.DEFAULT), "Copy env aliases to shared index " + newIndex);
+			} catch (RetriesExhaustedException e) {
+				LOG.error("Failed copying env aliases from shared index " + oldIndex + " to " + newIndex, e);
+			}
+		}
+	}
+
+	private Set<AliasMetadata> getIndexAliases(String index) {
+		GetAliasesRequest request = new GetAliasesRequest().indices(index);
+		GetAliasesResponse response = runWithRetries(() -> client.indices().getAlias(request, RequestOptions.DEFAULT), "Get aliases of index " + index);
+		Set<AliasMetadata> aliases = Sets.newHashSet();
+		response.getAliases().values().forEach(aliases::addAll);
+		return aliases;
+	}
+
+	public void promoteSharedEnvs() {
+		if (!tieredIndices) {
+			return;
+		}
+		try {
+			if (!isAliasExists(SHARED_TIER_ALIAS)) {
+				return;
+			}
+			for (AliasMetadata aliasMetadata : getIndexAliases(SHARED_TIER_ALIAS)) {
+				String envAlias = aliasMetadata.alias();
+				if (aliasMetadata.filter() == null || isOldAlias(envAlias)) {
+					continue;
+				}
+				CountResponse countResponse = runWithRetries(() -> client.count(new CountRequest(envAlias), RequestOptions.DEFAULT), "Count tasks in " + envAlias);
+				if (countResponse.getCount() >= tierPromotionDocsThreshold) {
+					promoteEnv(getEnvFromAlias(envAlias), countResponse.getCount());
+				}
+			}
+		} catch (RetriesExhaustedException e) {
+			LOG.error("Failed promoting envs from the shared index tier", e);
+		}
+	}
+
+	// tasks already in the shared tier stay readable through the env's old alias, and partials are migrated from it like after a rollover
+	private void promoteEnv(String env, long tasksInSharedTier) {
+		String timbermillAlias = ElasticsearchUtil.getTimbermillIndexAlias(env);
+		IndicesAliasesRequest request = new IndicesAliasesRequest();
+		request.addAliasAction(IndicesAliasesRequest.AliasActions.remove().index(SHARED_TIER_INDEX_WILDCARD).alias(timbermillAlias));
+		request.addAliasAction(IndicesAliasesRequest.AliasActions.add().index(SHARED_TIER_INDEX_WILDCARD).alias(getOldAlias(timbermillAlias)).filter(getEnvFilter(env)));
+		runWithRetries(() -> client.indices().updateAliases(request, RequestOptions.DEFAULT), "Move env alias " + timbermillAlias + " out of shared tier");
+		dedicatedEnvs.put(env, true);
+		createAlias(timbermillAlias);
+		LOG.info("Env {} was promoted to a dedicated index chain with {} tasks in the shared tier", env, tasksInSharedTier);
+	}
+
+	private static QueryBuilder getEnvFilter(String env) {
+		return QueryBuilders.termQuery(ENV_FIELD, env);
+	}
+
+	private Map<String, List<Task>> runScrollQuery(QueryBuilder query, String functionDescription, String[] taskFieldsToInclude, String[] taskFieldsToExclude, TaskSourceDecoder decoder,
+												   String flowId, int sliceId, String...indices){
 		MDC.put("id", flowId);
 		SearchRequest searchRequest = createSearchRequest(query, taskFieldsToInclude, taskFieldsToExclude, sliceId, indices);
 		List<SearchResponse> searchResponses = new ArrayList<>();
@@ -752,7 +1019,7 @@ public class ElasticsearchClient {
 		finally {
 			clearScroll(functionDescription, scrollIds);
 		}
-		return addHitsToMap(searchResponses);
+		return addHitsToMap(searchResponses, decoder);
     }
 
 	private void clearScroll(String functionDescription, Set<String> scrollIds) {
@@ -808,15 +1075,25 @@ public class ElasticsearchClient {
 		return status.getResult();
 	}
 
-	private Map<String, List<Task>> addHitsToMap(List<SearchResponse> searchResponses) {
+	private Map<String, List<Task>> addHitsToMap(List<SearchResponse> searchResponses, TaskSourceDecoder decoder) {
 		Map<String, List<Task>> tasks = Maps.newHashMap();
 		for (SearchResponse searchResponse : searchResponses) {
 			SearchHit[] hits = searchResponse.getHits().getHits();
 			for (SearchHit searchHit : hits) {
-				String sourceAsString = searchHit.getSourceAsString();
-				Task task = GSON.fromJson(sourceAsString, Task.class);
-				fixMetrics(task);
 				String id = searchHit.getId();
+				BytesReference source = searchHit.getSourceRef();
+				if (source == null) {
+					LOG.warn("Task {} from index {} has no source, skipping it", id, searchHit.getIndex());
+					continue;
+				}
+				Task task;
+				try {
+					BytesRef bytesRef = source.toBytesRef();
+					task = decoder.decode(bytesRef.bytes, bytesRef.offset, bytesRef.length);
+				} catch (IOException | RuntimeException e) {
+					LOG.error("Failed decoding task " + id + " from index " + searchHit.getIndex(), e);
+					continue;
+				}
 				if (!tasks.containsKey(id)){
 					tasks.put(id, Lists.newArrayList(task));
 				}
@@ -828,25 +1105,6 @@ public class ElasticsearchClient {
 		return tasks;
     }
 
-    private void fixMetrics(Task task) {
-        Map<String, Number> metric = task.getMetric();
-        Map<String, Number> newMetrics = new HashMap<>();
-        for (Map.Entry<String, Number> entry : metric.entrySet()) {
-            Number value = entry.getValue();
-            if (value instanceof LazilyParsedNumber){
-                if (value.toString().contains(".")){
-                    Double newValue = value.doubleValue();
-                    newMetrics.put(entry.getKey(), newValue);
-                }
-                else{
-                    Long newValue = value.longValue();
-                    newMetrics.put(entry.getKey(), newValue);
-                }
-            }
-        }
-        metric.putAll(newMetrics);
-    }
-
     private void deleteTasksFromIndex(Set<String> idsSet, String index) {
         List<String> ids = new ArrayList<>();
 		idsSet.forEach(id -> ids.add('"' + id + '"'));
@@ -858,6 +1116,7 @@ public class ElasticsearchClient {
 		deleteByQuery(index, query);
     }
 
+    @Override
     public void deleteExpiredTasks() {
         LOG.info("About to delete expired tasks");
 		String query = "{\n"
@@ -942,6 +1201,36 @@ public class ElasticsearchClient {
 		return bulker;
 	}
 
+	public int getIndexBulkSize() {
+		return indexBulkSize;
+	}
+
+	// a batch that is already being split into bulks keeps the size it started with
+	public void setIndexBulkSize(int indexBulkSize) {
+		if (indexBulkSize < 1) {
+			throw new RuntimeException("Index bulk size property should be larger than 0");
+		}
+		this.indexBulkSize = indexBulkSize;
+	}
+
+	public int getIndexingThreads() {
+		return executorService.getCorePoolSize();
+	}
+
+	// running bulks are not interrupted, extra threads end once they finish their current bulk
+	public synchronized void setIndexingThreads(int indexingThreads) {
+		if (indexingThreads < 1) {
+			throw new RuntimeException("Indexing threads property should be larger than 0");
+		}
+		if (indexingThreads > executorService.getMaximumPoolSize()) {
+			executorService.setMaximumPoolSize(indexingThreads);
+			executorService.setCorePoolSize(indexingThreads);
+		} else {
+			executorService.setCorePoolSize(indexingThreads);
+			executorService.setMaximumPoolSize(indexingThreads);
+		}
+	}
+
 	public IndexRetryManager getRetryManager() {
 		return retryManager;
 	}
@@ -0,0 +1,342 @@
+package com.datorama.oss.timbermill;
+
+/**
+ * Settings of an ElasticsearchClient, validated when built.
+ * Defaults match the LocalOutputPipe builder, only the url has none.
+ */
+public class ElasticsearchClientConfig {
+
+	private final String elasticUrl;
+	private final int indexBulkSize;
+	private final int indexingThreads;
+	private final String awsRegion;
+	private final String elasticUser;
+	private final String elasticPassword;
+	private final long maxIndexAge;
+	private final long maxIndexSizeInGB;
+	private final long maxIndexDocs;
+	private final int numOfElasticSearchActionsTries;
+	private final int maxBulkIndexFetches;
+	private final int searchMaxSize;
+	private final int numberOfShards;
+	private final int numberOfReplicas;
+	private final int maxTotalFields;
+	private final int scrollLimitation;
+	private final int scrollTimeoutSeconds;
+	private final int fetchByIdsPartitions;
+	private final int expiredMaxIndicesToDeleteInParallel;
+	private final boolean tieredIndices;
+	private final long sharedIndexMaxDocs;
+	private final long tierPromotionDocsThreshold;
+	private final boolean bootstrapOnCreate;
+
+	private ElasticsearchClientConfig(Builder builder) {
+		this.elasticUrl = builder.elasticUrl;
+		this.indexBulkSize = builder.indexBulkSize;
+		this.indexingThreads = builder.indexingThreads;
+		this.awsRegion = builder.awsRegion;
+		this.elasticUser = builder.elasticUser;
+		this.elasticPassword = builder.elasticPassword;
+		this.maxIndexAge = builder.maxIndexAge;
+		this.maxIndexSizeInGB = builder.maxIndexSizeInGB;
+		this.maxIndexDocs = builder.maxIndexDocs;
+		this.numOfElasticSearchActionsTries = builder.numOfElasticSearchActionsTries;
+		this.maxBulkIndexFetches = builder.maxBulkIndexFetches;
+		this.searchMaxSize = builder.searchMaxSize;
+		this.numberOfShards = builder.numberOfShards;
+		this.numberOfReplicas = builder.numberOfReplicas;
+		this.maxTotalFields = builder.maxTotalFields;
+		this.scrollLimitation = builder.scrollLimitation;
+		this.scrollTimeoutSeconds = builder.scrollTimeoutSeconds;
+		this.fetchByIdsPartitions = builder.fetchByIdsPartitions;
+		this.expiredMaxIndicesToDeleteInParallel = builder.expiredMaxIndicesToDeleteInParallel;
+		this.tieredIndices = builder.tieredIndices;
+		this.sharedIndexMaxDocs = builder.sharedIndexMaxDocs;
+		this.tierPromotionDocsThreshold = builder.tierPromotionDocsThreshold;
+		this.bootstrapOnCreate = builder.bootstrapOnCreate;
+	}
+
+	public String getElasticUrl() {
+		return elasticUrl;
+	}
+
+	public int getIndexBulkSize() {
+		return indexBulkSize;
+	}
+
+	public int getIndexingThreads() {
+		return indexingThreads;
+	}
+
+	public String getAwsRegion() {
+		return awsRegion;
+	}
+
+	public String getElasticUser() {
+		return elasticUser;
+	}
+
+	public String getElasticPassword() {
+		return elasticPassword;
+	}
+
+	public long getMaxIndexAge() {
+		return maxIndexAge;
+	}
+
+	public long getMaxIndexSizeInGB() {
+		return maxIndexSizeInGB;
+	}
+
+	public long getMaxIndexDocs() {
+		return maxIndexDocs;
+	}
+
+	public int getNumOfElasticSearchActionsTries() {
+		return numOfElasticSearchActionsTries;
+	}
+
+	public int getMaxBulkIndexFetches() {
+		return maxBulkIndexFetches;
+	}
+
+	public int getSearchMaxSize() {
+		return searchMaxSize;
+	}
+
+	public int getNumberOfShards() {
+		return numberOfShards;
+	}
+
+	public int getNumberOfReplicas() {
+		return numberOfReplicas;
+	}
+
+	public int getMaxTotalFields() {
+		return maxTotalFields;
+	}
+
+	public int getScrollLimitation() {
+		return scrollLimitation;
+	}
+
+	public int getScrollTimeoutSeconds() {
+		return scrollTimeoutSeconds;
+	}
+
+	public int getFetchByIdsPartitions() {
+		return fetchByIdsPartitions;
+	}
+
+	public int getExpiredMaxIndicesToDeleteInParallel() {
+		return expiredMaxIndicesToDeleteInParallel;
+	}
+
+	public boolean isTieredIndices() {
+		return tieredIndices;
+	}
+
+	public long getSharedIndexMaxDocs() {
+		return sharedIndexMaxDocs;
+	}
+
+	public long getTierPromotionDocsThreshold() {
+		return tierPromotionDocsThreshold;
+	}
+
+	// without it no request is sent to Elasticsearch until bootstrap is called
+	public boolean isBootstrapOnCreate() {
+		return bootstrapOnCreate;
+	}
+
+	public static class Builder {
+		private String elasticUrl = null;
+		private int indexBulkSize = 200000;
+		private int indexingThreads = 1;
+		private String awsRegion = null;
+		private String elasticUser = null;
+		private String elasticPassword = null;
+		private long maxIndexAge = 7;
+		private long maxIndexSizeInGB = 100;
+		private long maxIndexDocs = 1000000000;
+		private int numOfElasticSearchActionsTries = 3;
+		private int maxBulkIndexFetches = 3;
+		private int searchMaxSize = 1000;
+		private int numberOfShards = 10;
+		private int numberOfReplicas = 1;
+		private int maxTotalFields = 4000;
+		private int scrollLimitation = 1000;
+		private int scrollTimeoutSeconds = 60;
+		private int fetchByIdsPartitions = 10000;
+		private int expiredMaxIndicesToDeleteInParallel = 2;
+		private boolean tieredIndices = false;
+		private long sharedIndexMaxDocs = 1000000000;
+		private long tierPromotionDocsThreshold = 1000000;
+		private boolean bootstrapOnCreate = true;
+
+		public Builder url(String elasticUrl) {
+			this.elasticUrl = elasticUrl;
+			return this;
+		}
+
+		public Builder indexBulkSize(int indexBulkSize) {
+			this.indexBulkSize = indexBulkSize;
+			return this;
+		}
+
+		public Builder indexingThreads(int indexingThreads) {
+			this.indexingThreads = indexingThreads;
+			return this;
+		}
+
+		public Builder awsRegion(String awsRegion) {
+			this.awsRegion = awsRegion;
+			return this;
+		}
+
+		public Builder elasticUser(String elasticUser) {
+			this.elasticUser = elasticUser;
+			return this;
+		}
+
+		public Builder elasticPassword(String elasticPassword) {
+			this.elasticPassword = elasticPassword;
+			return this;
+		}
+
+		public Builder maxIndexAge(long maxIndexAge) {
+			this.maxIndexAge = maxIndexAge;
+			return this;
+		}
+
+		public Builder maxIndexSizeInGB(long maxIndexSizeInGB) {
+			this.maxIndexSizeInGB = maxIndexSizeInGB;
+			return this;
+		}
+
+		public Builder maxIndexDocs(long maxIndexDocs) {
+			this.maxIndexDocs = maxIndexDocs;
+			return this;
+		}
+
+		public Builder numOfElasticSearchActionsTries(int numOfElasticSearchActionsTries) {
+			this.numOfElasticSearchActionsTries = numOfElasticSearchActionsTries;
+			return this;
+		}
+
+		public Builder maxBulkIndexFetches(int maxBulkIndexFetches) {
+			this.maxBulkIndexFetches = maxBulkIndexFetches;
+			return this;
+		}
+
+		public Builder searchMaxSize(int searchMaxSize) {
+			this.searchMaxSize = searchMaxSize;
+			return this;
+		}
+
+		public Builder numberOfShards(int numberOfShards) {
+			this.numberOfShards = numberOfShards;
+			return this;
+		}
+
+		public Builder numberOfReplicas(int numberOfReplicas) {
+			this.numberOfReplicas = numberOfReplicas;
+			return this;
+		}
+
+		public Builder maxTotalFields(int maxTotalFields) {
+			this.maxTotalFields = maxTotalFields;
+			return this;
+		}
+
+		public Builder scrollLimitation(int scrollLimitation) {
+			this.scrollLimitation = scrollLimitation;
+			return this;
+		}
+
+		public Builder scrollTimeoutSeconds(int scrollTimeoutSeconds) {
+			this.scrollTimeoutSeconds = scrollTimeoutSeconds;
+			return this;
+		}
+
+		public Builder fetchByIdsPartitions(int fetchByIdsPartitions) {
+			this.fetchByIdsPartitions = fetchByIdsPartitions;
+			return this;
+		}
+
+		public Builder expiredMaxIndicesToDeleteInParallel(int expiredMaxIndicesToDeleteInParallel) {
+			this.expiredMaxIndicesToDeleteInParallel = expiredMaxIndicesToDeleteInParallel;
+			return this;
+		}
+
+		public Builder tieredIndices(boolean tieredIndices) {
+			this.tieredIndices = tieredIndices;
+			return this;
+		}
+
+		public Builder sharedIndexMaxDocs(long sharedIndexMaxDocs) {
+			this.sharedIndexMaxDocs = sharedIndexMaxDocs;
+			return this;
+		}
+
+		public Builder tierPromotionDocsThreshold(long tierPromotionDocsThreshold) {
+			this.tierPromotionDocsThreshold = tierPromotionDocsThreshold;
+			return this;
+		}
+
+		public Builder bootstrapOnCreate(boolean bootstrapOnCreate) {
+			this.bootstrapOnCreate = bootstrapOnCreate;
+			return this;
+		}
+
+		public ElasticsearchClientConfig build() {
+			validate();
+			return new ElasticsearchClientConfig(this);
+		}
+
+		private void validate() {
+			if (elasticUrl == null) {
+				throw new RuntimeException("Elasticsearch url property is missing");
+			}
+			if (indexBulkSize < 1) {
+				throw new RuntimeException("Index bulk size property should be larger than 0");
+			}
+			if (indexingThreads < 1) {
+				throw new RuntimeException("Indexing threads property should be larger than 0");
+			}
+			if (maxIndexAge < 1) {
+				throw new RuntimeException("Index max age property should be larger than 0");
+			}
+			if (maxIndexSizeInGB < 1) {
+				throw new RuntimeException("Index max size property should be larger than 0");
+			}
+			if (maxIndexDocs < 1) {
+				throw new RuntimeException("Index max docs property should be larger than 0");
+			}
+			if (numOfElasticSearchActionsTries < 0) {
+				throw new RuntimeException("Max elasticsearch actions tries property should not be below 0");
+			}
+			if (scrollLimitation < 0) {
+				throw new RuntimeException("Elasticsearch scroll limitation property should not be below 0");
+			}
+			if (scrollTimeoutSeconds < 1) {
+				throw new RuntimeException("Elasticsearch scroll timeout limitation  property should not be below 1");
+			}
+			if (fetchByIdsPartitions < 1) {
+				throw new RuntimeException("Fetch By Ids Partitions property should not be below 1");
+			}
+			if (numberOfShards < 1) {
+				throw new RuntimeException("Number of shards property should not be below 1");
+			}
+			if (expiredMaxIndicesToDeleteInParallel < 1) {
+				throw new RuntimeException("Max Expired Indices To Delete In Parallel property should not be below 1");
+			}
+			if (sharedIndexMaxDocs < 1) {
+				throw new RuntimeException("Shared index max docs property should be larger than 0");
+			}
+			if (tierPromotionDocsThreshold < 1) {
+				throw new RuntimeException("Tier promotion docs threshold property should be larger than 0");
+			}
+		}
+	}
+}
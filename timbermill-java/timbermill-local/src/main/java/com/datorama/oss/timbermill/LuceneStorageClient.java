@@ -0,0 +1,306 @@
+package com.datorama.oss.timbermill;
+
+import com.datorama.oss.timbermill.common.ElasticsearchUtil;
+import com.datorama.oss.timbermill.common.TaskSourceDecoder;
+import com.datorama.oss.timbermill.unit.Task;
+import com.google.common.collect.Maps;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.*;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.*;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.datorama.oss.timbermill.ElasticsearchClient.GSON;
+
+/**
+ * Embedded single node storage, keeps all environments in one Lucene index under the given directory.
+ * Readers are near-real-time and refreshed before every indexing batch, so partial tasks are merged on write
+ * and there is no old index to migrate partials from.
+ */
+public class LuceneStorageClient implements StorageClient {
+
+	private static final Logger LOG = LoggerFactory.getLogger(LuceneStorageClient.class);
+	private static final String ID_FIELD = "_id";
+	private static final String ENV_FIELD = "env";
+	private static final String NAME_FIELD = "name";
+	private static final String STATUS_FIELD = "status";
+	private static final String PARENT_ID_FIELD = "parentId";
+	private static final String PRIMARY_ID_FIELD = "primaryId";
+	private static final String TASK_BEGIN_FIELD = "meta.taskBegin";
+	private static final String TTL_FIELD = "meta.dateToDelete";
+	private static final String SOURCE_FIELD = "_source";
+	private static final int COMMIT_INTERVAL_SECONDS = 30;
+	private static final double RAM_BUFFER_SIZE_MB = 64;
+
+	private final IndexWriter writer;
+	private final SearcherManager searcherManager;
+	private final ScheduledExecutorService committer;
+	private final ReentrantLock indexLock = new ReentrantLock();
+
+	public LuceneStorageClient(String locationInDisk) {
+		if (locationInDisk == null) {
+			throw new RuntimeException("Must enclose a location in disk for Lucene storage");
+		}
+		try {
+			IndexWriterConfig config = new IndexWriterConfig(new StandardAnalyzer());
+			config.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+			config.setRAMBufferSizeMB(RAM_BUFFER_SIZE_MB);
+			writer = new IndexWriter(FSDirectory.open(Paths.get(locationInDisk)), config);
+			searcherManager = new SearcherManager(writer, new SearcherFactory());
+		} catch (IOException e) {
+			throw new RuntimeException("Failed opening Lucene index at " + locationInDisk, e);
+		}
+		LOG.info("Opened Lucene storage at {}", locationInDisk);
+		committer = Executors.newSingleThreadScheduledExecutor();
+		committer.scheduleWithFixedDelay(this::commit, COMMIT_INTERVAL_SECONDS, COMMIT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+	}
+
+	@Override
+	public String createTimbermillAlias(String env) {
+		return ElasticsearchUtil.getTimbermillIndexAlias(env);
+	}
+
+	@Override
+	public String rolloverIndex(String timbermillAlias) {
+		return timbermillAlias;
+	}
+
+	@Override
+	public Map<String, String> index(Map<String, Task> tasksMap) {
+		Map<String, String> idToIndex = Maps.newHashMap();
+		indexLock.lock();
+		try {
+			Map<String, Task> storedTasks = getTasksByIds(tasksMap.keySet(), null);
+			for (Map.Entry<String, Task> entry : tasksMap.entrySet()) {
+				String id = entry.getKey();
+				Task task = entry.getValue();
+				Task stored = storedTasks.get(id);
+				if (stored != null) {
+					StoredTaskMerger.merge(stored, task);
+					task = stored;
+				}
+				try {
+					writer.updateDocument(new Term(ID_FIELD, id), toDocument(id, task));
+					idToIndex.put(id, task.getIndex());
+				} catch (IOException | RuntimeException e) {
+					LOG.error("Failed indexing task " + id + " to Lucene", e);
+				}
+			}
+			searcherManager.maybeRefreshBlocking();
+		} catch (IOException e) {
+			LOG.error("Failed refreshing Lucene searcher after indexing " + tasksMap.size() + " tasks", e);
+		} finally {
+			indexLock.unlock();
+		}
+		return idToIndex;
+	}
+
+	@Override
+	public void indexMetaDataTasks(String env, Collection<String> metadataEvents) {
+		String index = createTimbermillAlias(env);
+		for (String metadataEvent : metadataEvents) {
+			Document document = new Document();
+			document.add(new StringField(ID_FIELD, UUID.randomUUID().toString(), Field.Store.NO));
+			document.add(new StringField(ENV_FIELD, env, Field.Store.NO));
+			JsonObject metadata = new JsonParser().parse(metadataEvent).getAsJsonObject();
+			metadata.addProperty("index", index);
+			addStringField(document, NAME_FIELD, metadata.get(NAME_FIELD));
+			addTtlField(document, metadata.getAsJsonObject("meta"));
+			document.add(new StoredField(SOURCE_FIELD, new BytesRef(metadata.toString())));
+			try {
+				writer.addDocument(document);
+			} catch (IOException e) {
+				LOG.error("Couldn't index metadata event " + metadataEvent + " to Lucene", e);
+			}
+		}
+	}
+
+	@Override
+	public Task getTaskById(String taskId) {
+		return getTasksByIds(Collections.singleton(taskId), null).get(taskId);
+	}
+
+	@Override
+	public Map<String, Task> getMissingParents(Set<String> parentIds, String env) {
+		return getTasksByIds(parentIds, env);
+	}
+
+	@Override
+	public TreeTasks getTasksByPrimaryId(String primaryId, String env, int maxTasks) {
+		// only the primary task scores, so it is always in a truncated tree
+		BooleanQuery.Builder query = new BooleanQuery.Builder();
+		query.add(new TermQuery(new Term(PRIMARY_ID_FIELD, primaryId)), BooleanClause.Occur.FILTER);
+		query.add(new TermQuery(new Term(ID_FIELD, primaryId)), BooleanClause.Occur.SHOULD);
+		Map<String, Task> tasks = Maps.newHashMap();
+		boolean truncated = search(query, env, maxTasks, tasks);
+		if (truncated) {
+			LOG.warn("Tree of task {} has more than {} tasks, returning partial tree", primaryId, maxTasks);
+		}
+		return new TreeTasks(tasks, truncated);
+	}
+
+	@Override
+	public void migrateTasksToNewIndex() {
+		LOG.debug("Lucene storage merges partial tasks on write, nothing to migrate");
+	}
+
+	@Override
+	public void deleteExpiredTasks() {
+		LOG.info("About to delete expired tasks");
+		long now = ZonedDateTime.now().toInstant().toEpochMilli();
+		try {
+			writer.deleteDocuments(LongPoint.newRangeQuery(TTL_FIELD, Long.MIN_VALUE, now));
+			searcherManager.maybeRefresh();
+		} catch (IOException e) {
+			LOG.warn("Could not perform deletion.", e);
+		}
+		commit();
+	}
+
+	@Override
+	public void close() {
+		committer.shutdown();
+		try {
+			searcherManager.close();
+			writer.close();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	// counts tasks and metadata tasks by name as of the last refresh
+	int countByName(String env, String name) {
+		IndexSearcher searcher = null;
+		try {
+			searcher = searcherManager.acquire();
+			BooleanQuery.Builder query = new BooleanQuery.Builder();
+			query.add(new TermQuery(new Term(ENV_FIELD, env)), BooleanClause.Occur.FILTER);
+			query.add(new TermQuery(new Term(NAME_FIELD, name)), BooleanClause.Occur.FILTER);
+			return searcher.count(query.build());
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			release(searcher);
+		}
+	}
+
+	private Map<String, Task> getTasksByIds(Collection<String> taskIds, String env) {
+		if (taskIds.isEmpty()) {
+			return Maps.newHashMap();
+		}
+		List<BytesRef> terms = new ArrayList<>(taskIds.size());
+		for (String taskId : taskIds) {
+			terms.add(new BytesRef(taskId));
+		}
+		BooleanQuery.Builder query = new BooleanQuery.Builder();
+		query.add(new TermInSetQuery(ID_FIELD, terms), BooleanClause.Occur.FILTER);
+		return search(query, env, taskIds.size());
+	}
+
+	private Map<String, Task> search(BooleanQuery.Builder query, String env, int maxTasks) {
+		Map<String, Task> tasks = Maps.newHashMap();
+		search(query, env, maxTasks, tasks);
+		return tasks;
+	}
+
+	// returns whether more than maxTasks tasks matched
+	private boolean search(BooleanQuery.Builder query, String env, int maxTasks, Map<String, Task> tasks) {
+		boolean truncated = false;
+		if (env != null) {
+			query.add(new TermQuery(new Term(ENV_FIELD, env)), BooleanClause.Occur.FILTER);
+		}
+		IndexSearcher searcher = null;
+		try {
+			searcher = searcherManager.acquire();
+			TopDocs topDocs = searcher.search(query.build(), maxTasks);
+			// past the counting threshold the total is a lower bound
+			truncated = topDocs.totalHits.value > maxTasks || topDocs.totalHits.relation == TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO;
+			for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+				Document document = searcher.doc(scoreDoc.doc);
+				BytesRef source = document.getBinaryValue(SOURCE_FIELD);
+				Task task = TaskSourceDecoder.ALL_FIELDS.decode(source.bytes, source.offset, source.length);
+				tasks.put(document.get(ID_FIELD), task);
+			}
+		} catch (IOException e) {
+			LOG.error("Failed searching tasks in Lucene", e);
+		} finally {
+			release(searcher);
+		}
+		return truncated;
+	}
+
+	private Document toDocument(String id, Task task) {
+		if (task.getStartTime() == null) {
+			throw new RuntimeException("No taskBegin");
+		}
+		Document document = new Document();
+		document.add(new StringField(ID_FIELD, id, Field.Store.YES));
+		addStringField(document, ENV_FIELD, task.getEnv());
+		addStringField(document, NAME_FIELD, task.getName());
+		addStringField(document, STATUS_FIELD, task.getStatus() == null ? null : task.getStatus().toString());
+		addStringField(document, PARENT_ID_FIELD, task.getParentId());
+		addStringField(document, PRIMARY_ID_FIELD, task.getPrimaryId());
+		document.add(new LongPoint(TASK_BEGIN_FIELD, task.getStartTime().toInstant().toEpochMilli()));
+		if (task.getDateToDelete() != null) {
+			document.add(new LongPoint(TTL_FIELD, task.getDateToDelete().toInstant().toEpochMilli()));
+		}
+		document.add(new StoredField(SOURCE_FIELD, new BytesRef(GSON.toJson(task))));
+		return document;
+	}
+
+	private static void addTtlField(Document document, JsonObject meta) {
+		JsonElement dateToDelete = meta == null ? null : meta.get("dateToDelete");
+		if (dateToDelete != null && !dateToDelete.isJsonNull()) {
+			document.add(new LongPoint(TTL_FIELD, GSON.fromJson(dateToDelete, ZonedDateTime.class).toInstant().toEpochMilli()));
+		}
+	}
+
+	private static void addStringField(Document document, String name, String value) {
+		if (value != null) {
+			document.add(new StringField(name, value, Field.Store.NO));
+		}
+	}
+
+	private static void addStringField(Document document, String name, JsonElement value) {
+		if (value != null && value.isJsonPrimitive()) {
+			addStringField(document, name, value.getAsString());
+		}
+	}
+
+	private void release(IndexSearcher searcher) {
+		if (searcher != null) {
+			try {
+				searcherManager.release(searcher);
+			} catch (IOException e) {
+				LOG.warn("Failed releasing Lucene searcher", e);
+			}
+		}
+	}
+
+	private void commit() {
+		try {
+			if (writer.hasUncommittedChanges()) {
+				writer.commit();
+			}
+		} catch (IOException | RuntimeException e) {
+			LOG.error("Failed committing Lucene index", e);
+		}
+	}
+}
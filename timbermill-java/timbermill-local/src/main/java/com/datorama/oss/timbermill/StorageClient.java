@@ -0,0 +1,44 @@
+package com.datorama.oss.timbermill;
+
+import com.datorama.oss.timbermill.common.BatchTimings;
+import com.datorama.oss.timbermill.unit.Task;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Storage backend used by {@link TaskIndexer} and the crons.
+ * Indexing is an upsert - tasks with an id that already exists are merged into the stored task.
+ */
+public interface StorageClient {
+
+	String createTimbermillAlias(String env);
+
+	String rolloverIndex(String timbermillAlias);
+
+	// return map of successfully indexed task id to the index it was written to
+	Map<String, String> index(Map<String, Task> tasksMap);
+
+	// same as index, recording the indexing stages and bytes into the batch's timings
+	default Map<String, String> index(Map<String, Task> tasksMap, BatchTimings timings) {
+		Map<String, String> idToIndex = index(tasksMap);
+		timings.lap(BatchTimings.Stage.INDEX);
+		return idToIndex;
+	}
+
+	void indexMetaDataTasks(String env, Collection<String> metadataEvents);
+
+	Task getTaskById(String taskId);
+
+	Map<String, Task> getMissingParents(Set<String> parentIds, String env);
+
+	// returns tasks holding only the fields needed to build the tree of the given primary task, the primary task is fetched first
+	TreeTasks getTasksByPrimaryId(String primaryId, String env, int maxTasks);
+
+	void migrateTasksToNewIndex();
+
+	void deleteExpiredTasks();
+
+	void close();
+}
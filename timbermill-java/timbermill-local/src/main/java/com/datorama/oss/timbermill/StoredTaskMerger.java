@@ -0,0 +1,183 @@
+package com.datorama.oss.timbermill;
+
+import com.datorama.oss.timbermill.unit.FlattenedField;
+import com.datorama.oss.timbermill.unit.Task;
+import com.datorama.oss.timbermill.unit.TaskStatus;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static com.datorama.oss.timbermill.common.Constants.CORRUPTED_REASON;
+import static com.datorama.oss.timbermill.unit.TaskStatus.*;
+
+/**
+ * Java port of the Elasticsearch stored script (see {@link com.datorama.oss.timbermill.common.ElasticsearchUtil#SCRIPT}),
+ * used by storage backends that merge an updated task into the stored one on the client side.
+ */
+final class StoredTaskMerger {
+
+	private static final String ALREADY_CLOSED_DIFFERENT_CLOSE_STATUS = "ALREADY_CLOSED_DIFFERENT_CLOSE_STATUS";
+	private static final String ALREADY_CLOSED_DIFFERENT_CLOSE_TIME = "ALREADY_CLOSED_DIFFERENT_CLOSE_TIME";
+	private static final String ALREADY_STARTED_DIFFERENT_START_TIME = "ALREADY_STARTED_DIFFERENT_START_TIME";
+
+	private StoredTaskMerger() {
+	}
+
+	static void merge(Task stored, Task update) {
+		Boolean orphan = update.isOrphan();
+		if (orphan != null && !orphan) {
+			stored.setOrphan(false);
+		}
+		if (update.getDateToDelete() != null && !isClosedOrStarted(stored.getStatus())) {
+			stored.setDateToDelete(update.getDateToDelete());
+		}
+		if (update.getStatus() != null) {
+			mergeStatus(stored, update);
+		}
+
+		stored.setCtx(putAll(stored.getCtx(), update.getCtx()));
+		stored.setString(putAll(stored.getString(), update.getString()));
+		stored.setText(putAll(stored.getText(), update.getText()));
+		stored.setMetric(putAll(stored.getMetric(), update.getMetric()));
+		if (update.getFlattened() != null) {
+			List<FlattenedField> flattened = stored.getFlattened() == null ? new ArrayList<>() : stored.getFlattened();
+			for (FlattenedField field : update.getFlattened()) {
+				flattened.removeIf(existing -> Objects.equals(existing.getKey(), field.getKey()));
+				flattened.add(field);
+			}
+			stored.setFlattened(flattened);
+		}
+
+		if (update.getName() != null) {
+			stored.setName(update.getName());
+		}
+		if (update.getParentId() != null) {
+			stored.setParentId(update.getParentId());
+		}
+		if (update.getPrimaryId() != null) {
+			stored.setPrimaryId(update.getPrimaryId());
+		}
+		if (update.getParentsPath() != null) {
+			stored.setParentsPath(update.getParentsPath());
+		}
+		if (orphan != null && orphan) {
+			stored.setOrphan(true);
+		}
+	}
+
+	private static void mergeStatus(Task stored, Task update) {
+		TaskStatus storedStatus = stored.getStatus();
+		TaskStatus newStatus = update.getStatus();
+		if (newStatus == CORRUPTED) {
+			stored.setStatus(CORRUPTED);
+			return;
+		}
+		if (storedStatus == null) {
+			stored.setStatus(CORRUPTED);
+			return;
+		}
+		switch (storedStatus) {
+			case SUCCESS:
+			case ERROR:
+				if (newStatus == SUCCESS || newStatus == ERROR) {
+					if (storedStatus != newStatus) {
+						corrupt(stored, ALREADY_CLOSED_DIFFERENT_CLOSE_STATUS);
+					} else if (!sameTime(stored.getEndTime(), update.getEndTime())) {
+						corrupt(stored, ALREADY_CLOSED_DIFFERENT_CLOSE_TIME);
+					} else if (!sameTime(stored.getStartTime(), update.getStartTime())) {
+						corrupt(stored, ALREADY_STARTED_DIFFERENT_START_TIME);
+					}
+				} else if (newStatus == UNTERMINATED) {
+					if (!sameTime(stored.getStartTime(), update.getStartTime())) {
+						corrupt(stored, ALREADY_STARTED_DIFFERENT_START_TIME);
+					}
+				} else if (newStatus == PARTIAL_SUCCESS || newStatus == PARTIAL_ERROR) {
+					if (storedStatus == (newStatus == PARTIAL_SUCCESS ? ERROR : SUCCESS)) {
+						corrupt(stored, ALREADY_CLOSED_DIFFERENT_CLOSE_STATUS);
+					} else if (!sameTime(stored.getEndTime(), update.getEndTime())) {
+						corrupt(stored, ALREADY_CLOSED_DIFFERENT_CLOSE_TIME);
+					}
+				}
+				break;
+			case UNTERMINATED:
+				if (newStatus == SUCCESS || newStatus == ERROR || newStatus == UNTERMINATED) {
+					if (!sameTime(stored.getStartTime(), update.getStartTime())) {
+						corrupt(stored, ALREADY_STARTED_DIFFERENT_START_TIME);
+					}
+				} else if (newStatus == PARTIAL_SUCCESS || newStatus == PARTIAL_ERROR) {
+					close(stored, stored.getStartTime(), update.getEndTime(), newStatus == PARTIAL_SUCCESS ? SUCCESS : ERROR);
+				}
+				break;
+			case PARTIAL_SUCCESS:
+				if (newStatus == SUCCESS || newStatus == PARTIAL_SUCCESS) {
+					if (!sameTime(stored.getEndTime(), update.getEndTime())) {
+						corrupt(stored, ALREADY_CLOSED_DIFFERENT_CLOSE_TIME);
+					}
+				} else if (newStatus == ERROR || newStatus == PARTIAL_ERROR) {
+					corrupt(stored, ALREADY_CLOSED_DIFFERENT_CLOSE_STATUS);
+				} else if (newStatus == UNTERMINATED) {
+					close(stored, update.getStartTime(), stored.getEndTime(), SUCCESS);
+				}
+				break;
+			case PARTIAL_ERROR:
+				if (newStatus == SUCCESS || newStatus == PARTIAL_SUCCESS) {
+					corrupt(stored, ALREADY_CLOSED_DIFFERENT_CLOSE_STATUS);
+				} else if (newStatus == ERROR || newStatus == PARTIAL_ERROR) {
+					if (!sameTime(stored.getEndTime(), update.getEndTime())) {
+						corrupt(stored, ALREADY_CLOSED_DIFFERENT_CLOSE_TIME);
+					}
+				} else if (newStatus == UNTERMINATED) {
+					close(stored, update.getStartTime(), stored.getEndTime(), ERROR);
+				}
+				break;
+			case PARTIAL_INFO_ONLY:
+				if (newStatus == SUCCESS || newStatus == ERROR) {
+					close(stored, update.getStartTime(), update.getEndTime(), newStatus);
+				} else if (newStatus == UNTERMINATED) {
+					stored.setStartTime(update.getStartTime());
+					stored.setStatus(newStatus);
+				} else if (newStatus == PARTIAL_SUCCESS || newStatus == PARTIAL_ERROR) {
+					stored.setEndTime(update.getEndTime());
+					stored.setStatus(newStatus);
+				}
+				break;
+			default:
+				stored.setStatus(CORRUPTED);
+		}
+	}
+
+	private static void close(Task stored, ZonedDateTime taskBegin, ZonedDateTime taskEnd, TaskStatus status) {
+		stored.setStartTime(taskBegin);
+		stored.setEndTime(taskEnd);
+		if (taskBegin != null && taskEnd != null) {
+			stored.setDuration(taskEnd.toInstant().toEpochMilli() - taskBegin.toInstant().toEpochMilli());
+		}
+		stored.setStatus(status);
+	}
+
+	private static void corrupt(Task stored, String reason) {
+		stored.setStatus(CORRUPTED);
+		stored.getString().put(CORRUPTED_REASON, reason);
+	}
+
+	private static boolean isClosedOrStarted(TaskStatus status) {
+		return status == SUCCESS || status == UNTERMINATED || status == ERROR;
+	}
+
+	private static boolean sameTime(ZonedDateTime first, ZonedDateTime second) {
+		return Objects.equals(first == null ? null : first.toInstant(), second == null ? null : second.toInstant());
+	}
+
+	private static <T> Map<String, T> putAll(Map<String, T> stored, Map<String, T> update) {
+		if (stored == null) {
+			return update;
+		}
+		if (update != null) {
+			stored.putAll(update);
+		}
+		return stored;
+	}
+}
@@ -1,9 +1,17 @@
 package com.datorama.oss.timbermill;
 
+import com.datorama.oss.timbermill.common.BatchTimings;
+import com.datorama.oss.timbermill.common.BatchTimings.Stage;
 import com.datorama.oss.timbermill.common.Constants;
 import com.datorama.oss.timbermill.common.ElasticsearchUtil;
 import com.datorama.oss.timbermill.common.KamonConstants;
 import com.datorama.oss.timbermill.common.cache.AbstractCacheHandler;
+import com.datorama.oss.timbermill.common.cardinality.FieldCardinalityGuard;
+import com.datorama.oss.timbermill.common.jfr.PipelineEvent;
+import com.datorama.oss.timbermill.common.jfr.PipelineEventType;
+import com.datorama.oss.timbermill.common.jfr.PipelineEvents;
+import com.datorama.oss.timbermill.common.offload.TextOffloader;
+import com.datorama.oss.timbermill.common.stats.PipelineStats;
 import com.datorama.oss.timbermill.plugins.PluginsConfig;
 import com.datorama.oss.timbermill.plugins.TaskLogPlugin;
 import com.datorama.oss.timbermill.unit.*;
@@ -27,19 +35,26 @@ import static com.datorama.oss.timbermill.ParentResolver.populateParentParams;
 public class TaskIndexer {
 
     private static final Logger LOG = LoggerFactory.getLogger(TaskIndexer.class);
+    private static final long DEFAULT_SLOW_BATCH_THRESHOLD_MILLIS = 10000;
 
-    private final ElasticsearchClient es;
+    private final StorageClient storageClient;
     private final Collection<TaskLogPlugin> logPlugins;
     private AbstractCacheHandler cacheHandler;
+    private final FieldCardinalityGuard fieldCardinalityGuard;
+    private final TextOffloader textOffloader;
     private long daysRotation;
     private String timbermillVersion;
+    private volatile long slowBatchThresholdMillis = DEFAULT_SLOW_BATCH_THRESHOLD_MILLIS;
 
-    public TaskIndexer(String pluginsJson, Integer daysRotation, ElasticsearchClient es, String timbermillVersion, AbstractCacheHandler cacheHandler) {
+    public TaskIndexer(String pluginsJson, Integer daysRotation, StorageClient storageClient, String timbermillVersion, AbstractCacheHandler cacheHandler,
+            FieldCardinalityGuard fieldCardinalityGuard, TextOffloader textOffloader) {
         this.daysRotation = calculateDaysRotation(daysRotation);
         this.logPlugins = PluginsConfig.initPluginsFromJson(pluginsJson);
-        this.es = es;
+        this.storageClient = storageClient;
         this.timbermillVersion = timbermillVersion;
         this.cacheHandler = cacheHandler;
+        this.fieldCardinalityGuard = fieldCardinalityGuard;
+        this.textOffloader = textOffloader;
     }
 
     private static int calculateDaysRotation(int daysRotationParam) {
@@ -47,15 +62,29 @@ public class TaskIndexer {
     }
 
     public void close() {
-        es.close();
+        storageClient.close();
         cacheHandler.close();
+        textOffloader.close();
+    }
+
+    public long getSlowBatchThresholdMillis() {
+        return slowBatchThresholdMillis;
+    }
+
+    // batches that take longer are logged with their stages breakdown
+    public void setSlowBatchThresholdMillis(long slowBatchThresholdMillis) {
+        this.slowBatchThresholdMillis = slowBatchThresholdMillis;
     }
 
     public void retrieveAndIndex(Collection<Event> events, String env) {
+        PipelineEvent batchDrainEvent = PipelineEvents.start(PipelineEventType.BATCH_DRAIN);
+        BatchTimings timings = new BatchTimings();
         String flowId = "Task Indexer - " + UUID.randomUUID().toString();
         ThreadContext.put("id", flowId);
         LOG.info("#### Batch Start ####");
         Timer.Started start = KamonConstants.BATCH_DURATION_TIMER.withoutTags().start();
+        long startNanos = System.nanoTime();
+        PipelineStats.BATCH_EVENTS_HISTOGRAM.record(events.size());
         ZonedDateTime taskIndexerStartTime = ZonedDateTime.now();
         LOG.info("{} events to be handled in current batch", events.size());
 
@@ -75,25 +104,35 @@ public class TaskIndexer {
                     e.fixErrors();
                     e.replaceAllFieldsWithDots();
                     e.trimAllStrings();
+                    timings.addEventsBytes(e.estimatedSize());
                     timbermillEvents.add(e);
                 }
             }
         });
 
+        timings.lap(Stage.PREPARE);
+
         if (!heartbeatEvents.isEmpty()) {
-            this.es.indexMetaDataTasks(env, heartbeatEvents);
+            storageClient.indexMetaDataTasks(env, heartbeatEvents);
         }
+        timings.lap(Stage.HEARTBEATS);
 
+        int previouslyIndexedParentSize = 0;
         if (!timbermillEvents.isEmpty()) {
-            int previouslyIndexedParentSize = handleTimbermillEvents(env, timbermillEvents);
-            reportBatchMetrics(env, previouslyIndexedParentSize, taskIndexerStartTime, timbermillEvents.size());
+            previouslyIndexedParentSize = handleTimbermillEvents(env, timbermillEvents, timings);
+            reportBatchMetrics(env, previouslyIndexedParentSize, taskIndexerStartTime, timbermillEvents.size(), timings);
         }
+        batchDrainEvent.finish(env, events.size(), previouslyIndexedParentSize, timings.getEventsBytes(), timings.getIndexRequestsBytes());
         start.stop();
+        PipelineStats.BATCH_DURATION_TIMER.recordNanosSince(startNanos);
         LOG.info("#### Batch End ####");
     }
 
-    private int handleTimbermillEvents(String env, Collection<Event> timbermillEvents) {
+    private int handleTimbermillEvents(String env, Collection<Event> timbermillEvents, BatchTimings timings) {
+        PipelineEvent pluginsApplyEvent = PipelineEvents.start(PipelineEventType.PLUGINS_APPLY);
         applyPlugins(timbermillEvents, env);
+        pluginsApplyEvent.finish(env, timbermillEvents.size());
+        timings.lap(Stage.PLUGINS);
 
         Map<String, DefaultMutableTreeNode> nodesMap = Maps.newHashMap();
         Set<String> startEventsIds = Sets.newHashSet();
@@ -103,38 +142,58 @@ public class TaskIndexer {
         connectNodesByParentId(nodesMap);
 
         Set<String> missingParentsIds = parentIds.stream().filter(id -> !startEventsIds.contains(id)).collect(Collectors.toSet());
+        timings.lap(Stage.TREE);
 
         Map<String, Task> tasksMap;
         Map<String, Task> previouslyIndexedParentTasks;
 
-        String alias = es.createTimbermillAlias(env);
+        String alias = storageClient.createTimbermillAlias(env);
 
         String index;
         if (!alias.endsWith(ElasticsearchUtil.getIndexSerial(1))){
-            index = es.rolloverIndex(alias);
+            index = storageClient.rolloverIndex(alias);
         }
         else{
             index = alias;
         }
+        timings.lap(Stage.ALIAS);
 
+        PipelineEvent cacheLockWaitEvent = PipelineEvents.start(PipelineEventType.CACHE_LOCK_WAIT);
         cacheHandler.lock();
+        cacheLockWaitEvent.finish(env);
+        timings.lap(Stage.CACHE_LOCK);
         try {
             LOG.info("Fetching {} missing parents", missingParentsIds.size());
+            PipelineEvent parentsFetchEvent = PipelineEvents.start(PipelineEventType.PARENTS_FETCH);
+            int missingParentsAmount = missingParentsIds.size();
             previouslyIndexedParentTasks = getMissingParents(missingParentsIds, env);
+            parentsFetchEvent.finish(env, missingParentsAmount, previouslyIndexedParentTasks.size());
             LOG.info("Fetched {} missing parents", previouslyIndexedParentTasks.size());
+            timings.lap(Stage.MISSING_PARENTS);
+            PipelineEvent enrichmentEvent = PipelineEvents.start(PipelineEventType.ENRICHMENT);
             tasksMap = createEnrichedTasks(nodesMap, eventsMap, previouslyIndexedParentTasks, index);
+            enrichmentEvent.finish(env, tasksMap.size());
+            timings.lap(Stage.ENRICHMENT);
             resolveOrphansFromCache(tasksMap);
+            timings.lap(Stage.ORPHANS);
 
             LOG.info("Caching {} tasks", tasksMap.size());
             cacheTasks(tasksMap);
+            timings.lap(Stage.CACHE_TASKS);
             LOG.info("Caching {} orphans", tasksMap.size());
             cacheOrphans(tasksMap);
         } finally {
             cacheHandler.release();
         }
-        LOG.info("{} tasks to be indexed to elasticsearch", tasksMap.size());
-        es.index(tasksMap);
-        LOG.info("Tasks were indexed to elasticsearch");
+        timings.lap(Stage.CACHE_ORPHANS);
+        LOG.info("{} tasks to be indexed", tasksMap.size());
+        // long texts are offloaded before the guard may flatten their fields, where they would be indexed in full
+        textOffloader.apply(env, tasksMap);
+        fieldCardinalityGuard.apply(env, tasksMap);
+        timings.lap(Stage.FIELDS);
+        storageClient.index(tasksMap, timings);
+        PipelineStats.TASKS_INDEXED_COUNTER.add(tasksMap.size());
+        LOG.info("Tasks were indexed");
         return previouslyIndexedParentTasks.size();
     }
 
@@ -237,38 +296,50 @@ public class TaskIndexer {
 
         parentIds.removeAll(previouslyIndexedParentTasks.keySet());
         if (!parentIds.isEmpty()) {
-            Map<String, Task> fromEs = es.getMissingParents(parentIds, env);
-            for (Task value : fromEs.values()) {
+            long startNanos = System.nanoTime();
+            Map<String, Task> fromStorage = storageClient.getMissingParents(parentIds, env);
+            PipelineStats.MISSING_PARENTS_FETCH_TIMER.recordNanosSince(startNanos);
+            PipelineStats.MISSING_PARENTS_FETCHED_COUNTER.add(fromStorage.size());
+            for (Task value : fromStorage.values()) {
                 if (value.getPrimaryId() == null && value.getParentsPath() != null && !value.getParentsPath().isEmpty()){
-                    LOG.info("getMissingParents ES missing primary task: {}", GSON.toJson(value));
+                    LOG.info("getMissingParents storage missing primary task: {}", GSON.toJson(value));
                 }
             }
-            previouslyIndexedParentTasks.putAll(fromEs);
+            previouslyIndexedParentTasks.putAll(fromStorage);
 
-            if (!fromEs.isEmpty()) {
-                LOG.info("Fetched {} missing parents from Elasticsearch", fromEs.size());
+            if (!fromStorage.isEmpty()) {
+                LOG.info("Fetched {} missing parents from storage", fromStorage.size());
             }
         }
 
         return previouslyIndexedParentTasks;
     }
 
-    private void reportBatchMetrics(String env, int tasksFetchedSize, ZonedDateTime taskIndexerStartTime, int indexedTasksSize) {
+    private void reportBatchMetrics(String env, int tasksFetchedSize, ZonedDateTime taskIndexerStartTime, int indexedTasksSize, BatchTimings timings) {
         ZonedDateTime taskIndexerEndTime = ZonedDateTime.now();
         long timesDuration = ElasticsearchUtil.getTimesDuration(taskIndexerStartTime, taskIndexerEndTime);
-        reportToElasticsearch(env, tasksFetchedSize, taskIndexerStartTime, indexedTasksSize, timesDuration, taskIndexerEndTime);
-        reportToKamon(tasksFetchedSize, indexedTasksSize);
+        if (timesDuration > slowBatchThresholdMillis) {
+            LOG.warn("Slow batch of {} tasks in env {} took {}ms: {}", indexedTasksSize, env, timesDuration, timings);
+        }
+        reportToStorage(env, tasksFetchedSize, taskIndexerStartTime, indexedTasksSize, timesDuration, taskIndexerEndTime, timings);
+        reportToKamon(tasksFetchedSize, indexedTasksSize, timings);
     }
 
-    private void reportToKamon(int tasksFetchedSize, int indexedTasksSize) {
+    private void reportToKamon(int tasksFetchedSize, int indexedTasksSize, BatchTimings timings) {
         KamonConstants.MISSING_PARENTS_TASKS_FETCHED_HISTOGRAM.withoutTags().record(tasksFetchedSize);
         KamonConstants.TASKS_INDEXED_HISTOGRAM.withoutTags().record(indexedTasksSize);
+        for (Stage stage : Stage.values()) {
+            KamonConstants.BATCH_STAGE_NANOS_HISTOGRAM.withTag("stage", stage.getTag()).record(timings.getStageNanos(stage));
+        }
+        KamonConstants.BATCH_BYTES_HISTOGRAM.withTag("type", "events").record(timings.getEventsBytes());
+        KamonConstants.BATCH_BYTES_HISTOGRAM.withTag("type", "index_requests").record(timings.getIndexRequestsBytes());
     }
 
-    private void reportToElasticsearch(String env, int tasksFetchedSize, ZonedDateTime taskIndexerStartTime, int indexedTasksSize, long timesDuration, ZonedDateTime now) {
+    private void reportToStorage(String env, int tasksFetchedSize, ZonedDateTime taskIndexerStartTime, int indexedTasksSize, long timesDuration, ZonedDateTime now,
+            BatchTimings timings) {
         IndexEvent indexEvent = new IndexEvent(env, tasksFetchedSize, taskIndexerStartTime, now, indexedTasksSize,  daysRotation,
-                timesDuration);
-        es.indexMetaDataTasks(env, Lists.newArrayList(GSON.toJson(indexEvent)));
+                timesDuration, timings.toMetrics());
+        storageClient.indexMetaDataTasks(env, Lists.newArrayList(GSON.toJson(indexEvent)));
     }
 
     private void populateCollections(Collection<Event> timbermillEvents, Map<String, DefaultMutableTreeNode> nodesMap, Set<String> startEventsIds, Set<String> parentIds,
@@ -410,7 +481,7 @@ public class TaskIndexer {
                 ZonedDateTime endTime = ZonedDateTime.now();
                 long duration = ElasticsearchUtil.getTimesDuration(startTime, endTime);
                 PluginApplierTask pluginApplierTask = new PluginApplierTask(env, plugin.getName(), plugin.getClass().getSimpleName(), status, exception, endTime, duration, startTime, daysRotation);
-                es.indexMetaDataTasks(env, Lists.newArrayList(GSON.toJson(pluginApplierTask)));
+                storageClient.indexMetaDataTasks(env, Lists.newArrayList(GSON.toJson(pluginApplierTask)));
             }
         } catch (Throwable t) {
             LOG.error("Error running plugins", t);
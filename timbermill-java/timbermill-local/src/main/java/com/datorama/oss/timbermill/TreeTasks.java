@@ -0,0 +1,28 @@
+package com.datorama.oss.timbermill;
+
+import com.datorama.oss.timbermill.unit.Task;
+
+import java.util.Map;
+
+/**
+ * Tasks of a tree as fetched by {@link StorageClient#getTasksByPrimaryId}, always holding the primary task if it exists.
+ * Truncated when the tree has more tasks than were asked for.
+ */
+public class TreeTasks {
+
+	private final Map<String, Task> tasks;
+	private final boolean truncated;
+
+	public TreeTasks(Map<String, Task> tasks, boolean truncated) {
+		this.tasks = tasks;
+		this.truncated = truncated;
+	}
+
+	public Map<String, Task> getTasks() {
+		return tasks;
+	}
+
+	public boolean isTruncated() {
+		return truncated;
+	}
+}
@@ -0,0 +1,93 @@
+package com.datorama.oss.timbermill.common;
+
+import com.google.common.base.CaseFormat;
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+
+/**
+ * Time spent in every stage of an indexing batch and the bytes it handled, measured on the indexing thread.
+ * Stages are timed by laps: lap(stage) adds the time since the previous lap to the stage, so the stages cover the whole batch.
+ */
+public class BatchTimings {
+
+	public enum Stage {
+		PREPARE, HEARTBEATS, PLUGINS, TREE, ALIAS, CACHE_LOCK, MISSING_PARENTS, ENRICHMENT, ORPHANS, CACHE_TASKS, CACHE_ORPHANS, FIELDS,
+		INDEX_REQUESTS, INDEX;
+
+		private final String tag = name().toLowerCase();
+		private final String metricName = CaseFormat.UPPER_UNDERSCORE.to(CaseFormat.LOWER_CAMEL, name()) + "Nanos";
+
+		public String getTag() {
+			return tag;
+		}
+	}
+
+	private final long startNanos;
+	private final long[] stagesNanos = new long[Stage.values().length];
+	private long lapNanos;
+	private long eventsBytes;
+	private long indexRequestsBytes;
+
+	public BatchTimings() {
+		startNanos = System.nanoTime();
+		lapNanos = startNanos;
+	}
+
+	public void lap(Stage stage) {
+		long now = System.nanoTime();
+		stagesNanos[stage.ordinal()] += now - lapNanos;
+		lapNanos = now;
+	}
+
+	public void addEventsBytes(long bytes) {
+		eventsBytes += bytes;
+	}
+
+	public void addIndexRequestsBytes(long bytes) {
+		indexRequestsBytes += bytes;
+	}
+
+	public long getStageNanos(Stage stage) {
+		return stagesNanos[stage.ordinal()];
+	}
+
+	public long getTotalNanos() {
+		return lapNanos - startNanos;
+	}
+
+	public long getEventsBytes() {
+		return eventsBytes;
+	}
+
+	public long getIndexRequestsBytes() {
+		return indexRequestsBytes;
+	}
+
+	// metric fields of the batch's IndexEvent
+	public Map<String, Number> toMetrics() {
+		Map<String, Number> metrics = Maps.newLinkedHashMap();
+		for (Stage stage : Stage.values()) {
+			metrics.put(stage.metricName, stagesNanos[stage.ordinal()]);
+		}
+		metrics.put("totalNanos", getTotalNanos());
+		metrics.put("eventsBytes", eventsBytes);
+		metrics.put("indexRequestsBytes", indexRequestsBytes);
+		return metrics;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder breakdown = new StringBuilder();
+		breakdown.append("total=").append(toMillis(getTotalNanos())).append("ms");
+		for (Stage stage : Stage.values()) {
+			breakdown.append(", ").append(stage.tag).append('=').append(toMillis(stagesNanos[stage.ordinal()])).append("ms");
+		}
+		breakdown.append(", eventsBytes=").append(eventsBytes).append(", indexRequestsBytes=").append(indexRequestsBytes);
+		return breakdown.toString();
+	}
+
+	private static String toMillis(long nanos) {
+		return String.format("%.1f", nanos / 1e6);
+	}
+}
@@ -0,0 +1,232 @@
+package com.datorama.oss.timbermill.common;
+
+import com.datorama.oss.timbermill.unit.Event;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Events queue bounded by the estimated size of its events in bytes.
+ * Once an offer would cross the high watermark the queue stops accepting events, so callers spill them to persistence,
+ * until it drained below the low watermark. An event that is larger than the high watermark is only accepted by an empty queue.
+ * put() does not spill, it accounts the event's bytes and only blocks on the events bound.
+ */
+public class ByteBoundedEventsQueue extends LinkedBlockingQueue<Event> {
+
+	private final String name;
+	private final long highWatermarkBytes;
+	private final long lowWatermarkBytes;
+	private final AtomicLong bytes = new AtomicLong();
+	private final LongAdder offered = new LongAdder();
+	private final LongAdder offeredBytes = new LongAdder();
+	private volatile boolean spilling;
+
+	public ByteBoundedEventsQueue(String name, int maxEvents, long highWatermarkBytes, double lowWatermarkRatio) {
+		super(maxEvents);
+		if (highWatermarkBytes <= 0 || lowWatermarkRatio <= 0 || lowWatermarkRatio > 1) {
+			throw new RuntimeException("Queue " + name + " high watermark must be positive and low watermark ratio must be in (0, 1]");
+		}
+		this.name = name;
+		this.highWatermarkBytes = highWatermarkBytes;
+		this.lowWatermarkBytes = (long) (highWatermarkBytes * lowWatermarkRatio);
+	}
+
+	@Override
+	public boolean offer(Event event) {
+		long eventBytes = event.estimatedSize();
+		if (!reserve(eventBytes)) {
+			return false;
+		}
+		if (!super.offer(event)) {
+			release(eventBytes);
+			return false;
+		}
+		offered.increment();
+		offeredBytes.add(eventBytes);
+		return true;
+	}
+
+	@Override
+	public void put(Event event) throws InterruptedException {
+		long eventBytes = event.estimatedSize();
+		bytes.addAndGet(eventBytes);
+		try {
+			super.put(event);
+		} catch (InterruptedException e) {
+			release(eventBytes);
+			throw e;
+		}
+		offered.increment();
+		offeredBytes.add(eventBytes);
+	}
+
+	@Override
+	public boolean offer(Event event, long timeout, TimeUnit unit) {
+		return offer(event);
+	}
+
+	@Override
+	public Event poll() {
+		return released(super.poll());
+	}
+
+	@Override
+	public Event poll(long timeout, TimeUnit unit) throws InterruptedException {
+		return released(super.poll(timeout, unit));
+	}
+
+	@Override
+	public Event take() throws InterruptedException {
+		return released(super.take());
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		boolean removed = super.remove(o);
+		if (removed) {
+			release(((Event) o).estimatedSize());
+		}
+		return removed;
+	}
+
+	@Override
+	public Iterator<Event> iterator() {
+		Iterator<Event> iterator = super.iterator();
+		return new Iterator<Event>() {
+			private Event last;
+
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public Event next() {
+				last = iterator.next();
+				return last;
+			}
+
+			@Override
+			public void remove() {
+				iterator.remove();
+				release(last.estimatedSize());
+			}
+		};
+	}
+
+	// the bulk removals of LinkedBlockingQueue unlink nodes directly on newer JDKs, they go through the iterator so the bytes are released
+	@Override
+	public boolean removeIf(Predicate<? super Event> filter) {
+		boolean removed = false;
+		Iterator<Event> iterator = iterator();
+		while (iterator.hasNext()) {
+			if (filter.test(iterator.next())) {
+				iterator.remove();
+				removed = true;
+			}
+		}
+		return removed;
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		return removeIf(c::contains);
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		return removeIf(event -> !c.contains(event));
+	}
+
+	@Override
+	public int drainTo(Collection<? super Event> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int drainTo(Collection<? super Event> c, int maxElements) {
+		List<Event> drained = new ArrayList<>(Math.min(maxElements, size()));
+		int amount = super.drainTo(drained, maxElements);
+		long drainedBytes = 0;
+		for (Event event : drained) {
+			drainedBytes += event.estimatedSize();
+		}
+		release(drainedBytes);
+		c.addAll(drained);
+		return amount;
+	}
+
+	@Override
+	public void clear() {
+		drainTo(new ArrayList<>());
+	}
+
+	public long getBytes() {
+		return bytes.get();
+	}
+
+	public long getOffered() {
+		return offered.sum();
+	}
+
+	public long getOfferedBytes() {
+		return offeredBytes.sum();
+	}
+
+	public long getHighWatermarkBytes() {
+		return highWatermarkBytes;
+	}
+
+	public boolean isSpilling() {
+		return spilling;
+	}
+
+	// replaying persisted events is only worth it when they will not be spilled right back
+	public boolean hasRoomForReplay() {
+		return !spilling && bytes.get() < lowWatermarkBytes;
+	}
+
+	public void reportMetrics() {
+		KamonConstants.QUEUED_EVENTS_BYTES_GAUGE.withTag("queue", name).update(bytes.get());
+	}
+
+	private boolean reserve(long eventBytes) {
+		while (true) {
+			long current = bytes.get();
+			if (spilling) {
+				return false;
+			}
+			if (current + eventBytes > highWatermarkBytes && current > 0) {
+				spilling = true;
+				// a drain may have released below the low watermark before the flag was set, and would never clear it
+				if (bytes.get() <= lowWatermarkBytes) {
+					spilling = false;
+				}
+				return false;
+			}
+			if (bytes.compareAndSet(current, current + eventBytes)) {
+				return true;
+			}
+		}
+	}
+
+	private Event released(Event event) {
+		if (event != null) {
+			release(event.estimatedSize());
+		}
+		return event;
+	}
+
+	private void release(long releasedBytes) {
+		if (releasedBytes > 0 && bytes.addAndGet(-releasedBytes) <= lowWatermarkBytes) {
+			spilling = false;
+		}
+	}
+}
@@ -1,6 +1,8 @@
 package com.datorama.oss.timbermill.common;
 
 import com.datorama.oss.timbermill.TaskIndexer;
+import com.datorama.oss.timbermill.common.scheduling.EnvFairScheduler;
+import com.datorama.oss.timbermill.common.scheduling.MicroBatcher;
 import com.datorama.oss.timbermill.unit.Event;
 import com.google.common.collect.Sets;
 import org.slf4j.Logger;
@@ -19,8 +21,8 @@ public class ElasticsearchUtil {
 	public static final String PERSISTENCE_HANDLER = "persistence_handler";
 	public static final String REDIS_SERVICE = "redis_service";
 	public static final String EVENTS_QUEUE = "events_queue";
-	public static final String OVERFLOWED_EVENTS_QUEUE = "overflowed_events_queue";
-	public static final String RATE_LIMITER_MAP = "rate_limiter_map";
+	public static final String EVENTS_SPILLER = "events_spiller";
+	public static final String RATE_LIMITER = "rate_limiter";
 	public static final int THREAD_SLEEP = 2000;
 	public static final String SCRIPT =
 					  "if (params.orphan != null && !params.orphan) {"
@@ -195,6 +197,15 @@ public class ElasticsearchUtil {
 					+ "                ctx._source.metric.putAll(params.metric);"
 					+ "            }"
 					+ "        }"
+					+ "        if (params.flattened != null) {"
+					+ "            if (ctx._source.flattened == null) {"
+					+ "                ctx._source.flattened = new ArrayList();"
+					+ "            }"
+					+ "            for (def field : params.flattened) {"
+					+ "                ctx._source.flattened.removeIf(existing -> existing.key.equals(field.key));"
+					+ "                ctx._source.flattened.add(field);"
+					+ "            }"
+					+ "        }"
 					+ "        if (params.name != null) {"
 					+ "            ctx._source.name = params.name;"
 					+ "        }"
@@ -211,7 +222,29 @@ public class ElasticsearchUtil {
 					+ "            ctx._source.orphan = true;"
 					+ "        }\"\n";
 
-	public static final String MAPPING = "   {\"dynamic_templates\": [\n"
+	private static final String FLATTENED_PROPERTY = "      \"flattened\": {\n"
+			+ "        \"type\": \"nested\",\n"
+			+ "        \"properties\": {\n"
+			+ "          \"key\": {\n"
+			+ "            \"type\": \"keyword\"\n"
+			+ "          },\n"
+			+ "          \"value\": {\n"
+			+ "            \"type\": \"keyword\",\n"
+			+ "            \"ignore_above\": 8191\n"
+			+ "          }\n"
+			+ "        }\n"
+			+ "      }\n";
+
+	// put on indices created before the flattened fields were in the template
+	public static final String FLATTENED_MAPPING = "   {\"properties\": {\n"
+			+ FLATTENED_PROPERTY
+			+ "    }\n"
+			+ "  }";
+
+	public static final String MAPPING = "   {\"properties\": {\n"
+			+ FLATTENED_PROPERTY
+			+ "    },\n"
+			+ "    \"dynamic_templates\": [\n"
 			+ "      {\n"
 			+ "        \"env\": {\n"
 			+ "          \"path_match\":   \"env\",\n"
@@ -302,6 +335,8 @@ public class ElasticsearchUtil {
 	public static final String TIMBERMILL_INDEX_WILDCARD = TIMBERMILL_INDEX_PREFIX + "*";
 	public static final String INDEX_DELIMITER = "-";
 	private static final String OLD_SUFFIX = "old";
+	public static final String SHARED_TIER_ALIAS = TIMBERMILL_INDEX_PREFIX + INDEX_DELIMITER + "_shared";
+	public static final String SHARED_TIER_INDEX_WILDCARD = SHARED_TIER_ALIAS + INDEX_DELIMITER + "*";
 
 	private static final Set<String> envsSet = Sets.newConcurrentHashSet();
 
@@ -309,41 +344,50 @@ public class ElasticsearchUtil {
 		return envsSet;
 	}
 
-	public static void drainAndIndex(BlockingQueue<Event> eventsQueue, TaskIndexer taskIndexer, int maxElement) {
-		while (!eventsQueue.isEmpty()) {
-			try {
-				Collection<Event> events = new ArrayList<>();
-				eventsQueue.drainTo(events, maxElement);
-				KamonConstants.MESSAGES_IN_INPUT_QUEUE_RANGE_SAMPLER.withoutTags().decrement(events.size());
-				logErrorInEventsMap(events.stream().filter(event -> event.getTaskId() != null).collect(Collectors.groupingBy(Event::getTaskId)), "drainAndIndex");
+	// indexes one batch, closed by the micro batcher, and returns right away when nothing is pending
+	public static void drainAndIndex(BlockingQueue<Event> eventsQueue, TaskIndexer taskIndexer, EnvFairScheduler scheduler, MicroBatcher microBatcher) {
+		if (!microBatcher.awaitBatch(eventsQueue, scheduler)) {
+			return;
+		}
+		long start = System.currentTimeMillis();
+		int batchEvents = 0;
+		try {
+			batchEvents = indexBatch(eventsQueue, taskIndexer, scheduler, microBatcher.getTargetBytes());
+		} finally {
+			microBatcher.batchDone(System.currentTimeMillis() - start, batchEvents);
+		}
+	}
 
-				events.forEach(e -> {
-					if (e.getEnv() == null){
-						e.setEnv(Constants.DEFAULT);
-					}
-				});
+	// used on shutdown, indexes the pending events in batches without waiting for them to fill, until nothing is pending or the deadline passed
+	public static void indexPending(BlockingQueue<Event> eventsQueue, TaskIndexer taskIndexer, EnvFairScheduler scheduler, long targetBytes, long deadlineMillis) {
+		while (scheduler.hasPending(eventsQueue) && System.currentTimeMillis() < deadlineMillis) {
+			indexBatch(eventsQueue, taskIndexer, scheduler, targetBytes);
+		}
+	}
 
-				Map<String, List<Event>> eventsPerEnvMap = events.stream().collect(Collectors.groupingBy(Event::getEnv));
-				for (Map.Entry<String, List<Event>> eventsPerEnv : eventsPerEnvMap.entrySet()) {
-					String env = eventsPerEnv.getKey().toLowerCase();
+	// returns the amount of events in the batch
+	private static int indexBatch(BlockingQueue<Event> eventsQueue, TaskIndexer taskIndexer, EnvFairScheduler scheduler, long targetBytes) {
+		int batchEvents = 0;
+		try {
+			Map<String, List<Event>> eventsPerEnvMap = scheduler.nextBatch(eventsQueue, targetBytes);
+			for (List<Event> events : eventsPerEnvMap.values()) {
+				batchEvents += events.size();
+			}
+			for (Map.Entry<String, List<Event>> eventsPerEnv : eventsPerEnvMap.entrySet()) {
+				String env = eventsPerEnv.getKey();
+				Collection<Event> currentEvents = eventsPerEnv.getValue();
+				logErrorInEventsMap(currentEvents.stream().filter(event -> event.getTaskId() != null).collect(Collectors.groupingBy(Event::getTaskId)), "drainAndIndex");
 
-					envsSet.add(env);
+				envsSet.add(env);
 
-					Collection<Event> currentEvents = eventsPerEnv.getValue();
-					taskIndexer.retrieveAndIndex(currentEvents, env);
-				}
-				//For refresh
-				try {
-					Thread.sleep(THREAD_SLEEP);
-				} catch (InterruptedException e) {
-					LOG.error("InterruptedException was thrown from TaskIndexer:", e);
-				}
-			} catch (NullPointerException e) {
-				LOG.error("NullPointerException was thrown from TaskIndexer:{}\n {}", e.getMessage(), e.getStackTrace());
-			} catch (RuntimeException e) {
-				LOG.error("Error was thrown from TaskIndexer:", e);
+				taskIndexer.retrieveAndIndex(currentEvents, env);
 			}
+		} catch (NullPointerException e) {
+			LOG.error("NullPointerException was thrown from TaskIndexer:{}\n {}", e.getMessage(), e.getStackTrace());
+		} catch (RuntimeException e) {
+			LOG.error("Error was thrown from TaskIndexer:", e);
 		}
+		return batchEvents;
 	}
 
 	public static long getTimesDuration(ZonedDateTime taskIndexerStartTime, ZonedDateTime taskIndexerEndTime) {
@@ -358,6 +402,14 @@ public class ElasticsearchUtil {
 		return currentAlias + INDEX_DELIMITER + OLD_SUFFIX;
 	}
 
+	public static boolean isOldAlias(String alias) {
+		return alias.endsWith(INDEX_DELIMITER + OLD_SUFFIX);
+	}
+
+	public static String getEnvFromAlias(String timbermillAlias) {
+		return timbermillAlias.substring((TIMBERMILL_INDEX_PREFIX + INDEX_DELIMITER).length());
+	}
+
 	public static String getIndexSerial(int serialNumber) {
 		return String.format("%06d", serialNumber);
 	}
@@ -0,0 +1,80 @@
+package com.datorama.oss.timbermill.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datorama.oss.timbermill.unit.Event;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Ids of the EventsWrappers received lately, so a wrapper a client resends because it did not get the response is skipped.
+ * An id is only kept once its whole body was read and handed over, a body that failed midway leaves no id behind and its resend is read again.
+ * A resend that arrives while the first request is still being read fails with InFlightException, so the client retries it later.
+ */
+public class EventsIdsCache {
+
+	private static final Logger LOG = LoggerFactory.getLogger(EventsIdsCache.class);
+	private static final long MAX_WEIGHT = 5000000; //5MB
+
+	private enum State {
+		IN_FLIGHT, RECEIVED
+	}
+
+	private final Cache<String, State> ids;
+
+	public EventsIdsCache(long ttlSeconds) {
+		ids = CacheBuilder.newBuilder()
+				.weigher((String key, State value) -> key.length())
+				.maximumWeight(MAX_WEIGHT)
+				.expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+				.build();
+	}
+
+	/**
+	 * Reads the body with the reader, skipping it when its wrapper id was already received.
+	 * @return the amount of events handed over.
+	 */
+	public int read(EventsStreamReader reader, InputStream in, Consumer<List<Event>> chunkConsumer) throws IOException {
+		String[] acquiredId = new String[1];
+		boolean completed = false;
+		try {
+			int read = reader.read(in, eventsId -> acquire(eventsId, acquiredId), chunkConsumer);
+			completed = true;
+			return read;
+		} finally {
+			if (acquiredId[0] != null) {
+				if (completed) {
+					ids.put(acquiredId[0], State.RECEIVED);
+				} else {
+					ids.asMap().remove(acquiredId[0], State.IN_FLIGHT);
+				}
+			}
+		}
+	}
+
+	private boolean acquire(String eventsId, String[] acquiredId) {
+		State previous = ids.asMap().putIfAbsent(eventsId, State.IN_FLIGHT);
+		if (previous == State.IN_FLIGHT) {
+			throw new InFlightException(eventsId);
+		}
+		if (previous == State.RECEIVED) {
+			LOG.warn("Got duplicated EventsWrapper {}", eventsId);
+			return false;
+		}
+		acquiredId[0] = eventsId;
+		return true;
+	}
+
+	public static class InFlightException extends RuntimeException {
+		public InFlightException(String eventsId) {
+			super("EventsWrapper " + eventsId + " is already being received");
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package com.datorama.oss.timbermill.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import com.datorama.oss.timbermill.unit.Event;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Reads events one by one from a request body and hands them over in chunks, so only a single chunk of parsed events is held
+ * in memory regardless of the batch size.
+ * The body is either an EventsWrapper object or a plain array of events (EventsList).
+ */
+public final class EventsStreamReader {
+
+	private static final String ID_FIELD = "id";
+	private static final String EVENTS_FIELD = "events";
+
+	private final ObjectMapper objectMapper;
+	private final int chunkSize;
+
+	public EventsStreamReader(ObjectMapper objectMapper, int chunkSize) {
+		if (chunkSize < 1) {
+			throw new RuntimeException("Events chunk size must be positive");
+		}
+		this.objectMapper = objectMapper;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * @param idAccepted called with the wrapper id, when it precedes the events and is rejected the events are skipped.
+	 * @return the amount of events handed over.
+	 */
+	public int read(InputStream in, Predicate<String> idAccepted, Consumer<List<Event>> chunkConsumer) throws IOException {
+		try (JsonParser parser = objectMapper.getFactory().createParser(in)) {
+			JsonToken token = parser.nextToken();
+			if (token == null) {
+				return 0;
+			}
+			if (token == JsonToken.START_ARRAY) {
+				return readEvents(parser, chunkConsumer);
+			}
+			if (token != JsonToken.START_OBJECT) {
+				throw new JsonParseException(parser, "Events body must be an object or an array");
+			}
+			int read = 0;
+			boolean accepted = true;
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String field = parser.getCurrentName();
+				token = parser.nextToken();
+				if (ID_FIELD.equals(field) && token == JsonToken.VALUE_STRING) {
+					accepted = idAccepted.test(parser.getText()) && accepted;
+				} else if (EVENTS_FIELD.equals(field) && token == JsonToken.START_ARRAY && accepted) {
+					read += readEvents(parser, chunkConsumer);
+				} else {
+					parser.skipChildren();
+				}
+			}
+			return read;
+		}
+	}
+
+	private int readEvents(JsonParser parser, Consumer<List<Event>> chunkConsumer) throws IOException {
+		int read = 0;
+		List<Event> chunk = new ArrayList<>(chunkSize);
+		while (parser.nextToken() != JsonToken.END_ARRAY) {
+			if (parser.currentToken() == null) {
+				throw new JsonParseException(parser, "Unexpected end of events array");
+			}
+			Event event = objectMapper.readValue(parser, Event.class);
+			if (event == null) {
+				continue;
+			}
+			chunk.add(event);
+			if (chunk.size() == chunkSize) {
+				chunkConsumer.accept(chunk);
+				read += chunk.size();
+				chunk = new ArrayList<>(chunkSize);
+			}
+		}
+		if (!chunk.isEmpty()) {
+			chunkConsumer.accept(chunk);
+			read += chunk.size();
+		}
+		return read;
+	}
+}
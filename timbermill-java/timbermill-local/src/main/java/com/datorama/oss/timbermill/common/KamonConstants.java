@@ -1,11 +1,13 @@
 package com.datorama.oss.timbermill.common;
 
+import com.datorama.oss.timbermill.common.stats.BufferedKamon;
 import kamon.Kamon;
 import kamon.metric.Metric;
 
 public class KamonConstants {
 	public static final Metric.RangeSampler MESSAGES_IN_INPUT_QUEUE_RANGE_SAMPLER = Kamon.rangeSampler("timbermill2.inputQueue.size.range.sampler");
 	public static final Metric.RangeSampler MESSAGES_IN_OVERFLOWED_QUEUE_RANGE_SAMPLER = Kamon.rangeSampler("timbermill2.overflowedQueue.size.range.sampler");
+	public static final Metric.RangeSampler MESSAGES_IN_DEFERRED_QUEUE_RANGE_SAMPLER = Kamon.rangeSampler("timbermill2.deferredQueue.size.range.sampler");
 	public static final Metric.RangeSampler ORPHANS_CACHE_SIZE_RANGE_SAMPLER = Kamon.rangeSampler("timbermill2.orphanCache.size.range.sampler");
 	public static final Metric.RangeSampler ORPHANS_CACHE_ENTRIES_RANGE_SAMPLER = Kamon.rangeSampler("timbermill2.orphanCache.entries.range.sampler");
 	public static final Metric.RangeSampler TASK_CACHE_SIZE_RANGE_SAMPLER = Kamon.rangeSampler("timbermill2.taskCache.size.range.sampler");
@@ -34,6 +36,42 @@ public class KamonConstants {
 	public static final Metric.Histogram TASKS_FETCHED_FROM_DISK_HISTOGRAM = Kamon.histogram("timbermill2.failed.tasks.fetched.from.disk.histogram");
 	public static final Metric.Timer EVENTS_FETCH_JOB_LATENCY = Kamon.timer("timbermill2.overflowed.events.fetch.job.latency.timer");
 	public static final Metric.Gauge CURRENT_DATA_IN_DB_GAUGE = Kamon.gauge("timbermill2.data.in.db.gauge");
+	public static final Metric.Timer TASK_TREE_QUERY_TIMER = Kamon.timer("timbermill2.task.tree.query.duration.timer");
+	public static final Metric.Gauge FIELD_NAMES_CARDINALITY_GAUGE = Kamon.gauge("timbermill2.field.names.cardinality.gauge");
+	public static final Metric.Counter FLATTENED_FIELDS_COUNTER = Kamon.counter("timbermill2.flattened.fields.counter");
+	public static final Metric.Counter OFFLOADED_TEXTS_COUNTER = Kamon.counter("timbermill2.offloaded.texts.counter");
+	public static final Metric.Counter OFFLOADED_TEXT_CHARS_COUNTER = Kamon.counter("timbermill2.offloaded.text.chars.counter");
+	public static final Metric.Gauge ADMISSION_PRESSURE_GAUGE = Kamon.gauge("timbermill2.admission.pressure.gauge");
+	public static final Metric.Gauge ADMISSION_ADMITTING_GAUGE = Kamon.gauge("timbermill2.admission.admitting.gauge");
+	public static final Metric.Gauge QUEUED_EVENTS_BYTES_GAUGE = Kamon.gauge("timbermill2.queued.events.bytes.gauge");
+	public static final Metric.Counter ADMISSION_REJECTED_REQUESTS_COUNTER = Kamon.counter("timbermill2.admission.rejected.requests.counter");
+	public static final Metric.Counter SPILLED_EVENTS_BYTES_COUNTER = Kamon.counter("timbermill2.spilled.events.bytes.counter");
+	public static final Metric.Counter REPLAYED_EVENTS_BYTES_COUNTER = Kamon.counter("timbermill2.replayed.events.bytes.counter");
+	public static final Metric.Counter DEDUP_CHECKED_EVENTS_COUNTER = Kamon.counter("timbermill2.dedup.checked.events.counter");
+	public static final Metric.Counter DUPLICATE_EVENTS_COUNTER = Kamon.counter("timbermill2.duplicate.events.counter");
+	public static final Metric.Gauge ENV_EVENTS_LAG_GAUGE = Kamon.gauge("timbermill2.env.events.lag.gauge");
+	public static final Metric.Gauge ENV_STAGED_EVENTS_GAUGE = Kamon.gauge("timbermill2.env.staged.events.gauge");
+	public static final Metric.Counter RATE_LIMITED_EVENTS_COUNTER = Kamon.counter("timbermill2.rate.limited.events.counter");
+	public static final Metric.Counter MICRO_BATCHES_COUNTER = Kamon.counter("timbermill2.micro.batches.counter");
+	public static final Metric.Gauge MICRO_BATCH_DEADLINE_GAUGE = Kamon.gauge("timbermill2.micro.batch.deadline.gauge");
+	public static final Metric.Histogram BATCH_EVENTS_LATENCY_HISTOGRAM = Kamon.histogram("timbermill2.batch.events.latency.histogram");
+	public static final Metric.Histogram BATCH_STAGE_NANOS_HISTOGRAM = Kamon.histogram("timbermill2.batch.stage.nanos.histogram");
+	public static final Metric.Histogram BATCH_BYTES_HISTOGRAM = Kamon.histogram("timbermill2.batch.bytes.histogram");
+	public static final Metric.Counter FORWARDED_EVENTS_COUNTER = Kamon.counter("timbermill2.forwarded.events.counter");
+
+	// updated per event, published by the BufferedKamon flusher
+	public static final BufferedKamon.RangeSampler INPUT_QUEUE_BUFFERED_SAMPLER = BufferedKamon.rangeSampler(MESSAGES_IN_INPUT_QUEUE_RANGE_SAMPLER.withoutTags());
+	public static final BufferedKamon.RangeSampler OVERFLOWED_QUEUE_BUFFERED_SAMPLER = BufferedKamon.rangeSampler(MESSAGES_IN_OVERFLOWED_QUEUE_RANGE_SAMPLER.withoutTags());
+	public static final BufferedKamon.RangeSampler DEFERRED_QUEUE_BUFFERED_SAMPLER = BufferedKamon.rangeSampler(MESSAGES_IN_DEFERRED_QUEUE_RANGE_SAMPLER.withoutTags());
+	public static final BufferedKamon.RangeSampler ORPHANS_CACHE_SIZE_BUFFERED_SAMPLER = BufferedKamon.rangeSampler(ORPHANS_CACHE_SIZE_RANGE_SAMPLER.withoutTags());
+	public static final BufferedKamon.RangeSampler ORPHANS_CACHE_ENTRIES_BUFFERED_SAMPLER = BufferedKamon.rangeSampler(ORPHANS_CACHE_ENTRIES_RANGE_SAMPLER.withoutTags());
+	public static final BufferedKamon.RangeSampler TASK_CACHE_SIZE_BUFFERED_SAMPLER = BufferedKamon.rangeSampler(TASK_CACHE_SIZE_RANGE_SAMPLER.withoutTags());
+	public static final BufferedKamon.RangeSampler TASK_CACHE_ENTRIES_BUFFERED_SAMPLER = BufferedKamon.rangeSampler(TASK_CACHE_ENTRIES_RANGE_SAMPLER.withoutTags());
+	public static final BufferedKamon.Counter DEDUP_CHECKED_EVENTS_BUFFERED_COUNTER = BufferedKamon.counter(DEDUP_CHECKED_EVENTS_COUNTER.withoutTags());
+	public static final BufferedKamon.Counter DUPLICATE_EVENTS_BUFFERED_COUNTER = BufferedKamon.counter(DUPLICATE_EVENTS_COUNTER.withoutTags());
+	public static final BufferedKamon.Counter FORWARDED_EVENTS_BUFFERED_COUNTER = BufferedKamon.counter(FORWARDED_EVENTS_COUNTER.withTag("result", "forwarded"));
+	public static final BufferedKamon.Counter FORWARD_RETRIED_EVENTS_BUFFERED_COUNTER = BufferedKamon.counter(FORWARDED_EVENTS_COUNTER.withTag("result", "retried"));
+	public static final BufferedKamon.Counter FORWARD_LOCAL_EVENTS_BUFFERED_COUNTER = BufferedKamon.counter(FORWARDED_EVENTS_COUNTER.withTag("result", "local"));
 
 
 }
@@ -0,0 +1,225 @@
+package com.datorama.oss.timbermill.common;
+
+import com.datorama.oss.timbermill.unit.FlattenedField;
+import com.datorama.oss.timbermill.unit.Task;
+import com.datorama.oss.timbermill.unit.TaskStatus;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a task document straight from its source bytes, without building an intermediate String or JSON tree.
+ * Metrics are read as Long or Double according to the JSON number type, so no LazilyParsedNumber fixing is needed.
+ * A parent fields decoder skips everything that is not used for enriching children (strings, texts, metrics).
+ */
+public class TaskSourceDecoder {
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+	private static final String FLATTENED_CTX_PREFIX = "ctx.";
+	public static final TaskSourceDecoder ALL_FIELDS = new TaskSourceDecoder(false);
+	public static final TaskSourceDecoder PARENT_FIELDS = new TaskSourceDecoder(true);
+
+	private final boolean parentFieldsOnly;
+
+	private TaskSourceDecoder(boolean parentFieldsOnly) {
+		this.parentFieldsOnly = parentFieldsOnly;
+	}
+
+	public Task decode(byte[] source, int offset, int length) throws IOException {
+		return decode(source, offset, length, new Task());
+	}
+
+	public <T extends Task> T decode(byte[] source, int offset, int length, T task) throws IOException {
+		try (JsonParser parser = JSON_FACTORY.createParser(source, offset, length)) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				throw new IOException("Task source is not a JSON object");
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String field = parser.getCurrentName();
+				JsonToken token = parser.nextToken();
+				if (token == JsonToken.VALUE_NULL) {
+					continue;
+				}
+				readField(parser, field, task);
+			}
+		}
+		return task;
+	}
+
+	private void readField(JsonParser parser, String field, Task task) throws IOException {
+		switch (field) {
+			case "index":
+				task.setIndex(parser.getText());
+				break;
+			case "env":
+				task.setEnv(parser.getText());
+				break;
+			case "name":
+				task.setName(parser.getText());
+				break;
+			case "status":
+				task.setStatus(TaskStatus.valueOf(parser.getText()));
+				break;
+			case "parentId":
+				task.setParentId(parser.getText());
+				break;
+			case "primaryId":
+				task.setPrimaryId(parser.getText());
+				break;
+			case "orphan":
+				task.setOrphan(parser.getValueAsBoolean());
+				break;
+			case "parentsPath":
+				task.setParentsPath(readStringList(parser));
+				break;
+			case "ctx":
+				task.getCtx().putAll(readStringMap(parser));
+				break;
+			case "meta":
+				readMeta(parser, task);
+				break;
+			case "flattened":
+				readFlattened(parser, task);
+				break;
+			case "string":
+				if (parentFieldsOnly) {
+					parser.skipChildren();
+				} else {
+					task.setString(readStringMap(parser));
+				}
+				break;
+			case "text":
+				if (parentFieldsOnly) {
+					parser.skipChildren();
+				} else {
+					task.setText(readStringMap(parser));
+				}
+				break;
+			case "metric":
+				if (parentFieldsOnly) {
+					parser.skipChildren();
+				} else {
+					task.setMetric(readMetrics(parser));
+				}
+				break;
+			default:
+				parser.skipChildren();
+		}
+	}
+
+	private static void readMeta(JsonParser parser, Task task) throws IOException {
+		if (parser.currentToken() != JsonToken.START_OBJECT) {
+			parser.skipChildren();
+			return;
+		}
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			JsonToken token = parser.nextToken();
+			if (token == JsonToken.VALUE_NULL) {
+				continue;
+			}
+			switch (field) {
+				case "taskBegin":
+					task.setStartTime(parseTime(parser.getText()));
+					break;
+				case "taskEnd":
+					task.setEndTime(parseTime(parser.getText()));
+					break;
+				case "dateToDelete":
+					task.setDateToDelete(parseTime(parser.getText()));
+					break;
+				case "duration":
+					task.setDuration(parser.getValueAsLong());
+					break;
+				default:
+					parser.skipChildren();
+			}
+		}
+	}
+
+	// a parent only needs its flattened context, which goes back into ctx so children are enriched with it
+	private void readFlattened(JsonParser parser, Task task) throws IOException {
+		if (parser.currentToken() != JsonToken.START_ARRAY) {
+			parser.skipChildren();
+			return;
+		}
+		List<FlattenedField> flattened = new ArrayList<>();
+		while (parser.nextToken() == JsonToken.START_OBJECT) {
+			Map<String, String> field = readStringMap(parser);
+			String key = field.get("key");
+			if (key == null) {
+				continue;
+			}
+			if (!parentFieldsOnly) {
+				flattened.add(new FlattenedField(key, field.get("value")));
+			} else if (key.startsWith(FLATTENED_CTX_PREFIX)) {
+				task.getCtx().put(key.substring(FLATTENED_CTX_PREFIX.length()), field.get("value"));
+			}
+		}
+		if (!parentFieldsOnly) {
+			task.setFlattened(flattened);
+		}
+	}
+
+	private static ZonedDateTime parseTime(String time) {
+		return ZonedDateTime.parse(time, DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+	}
+
+	private static List<String> readStringList(JsonParser parser) throws IOException {
+		List<String> list = new ArrayList<>();
+		if (parser.currentToken() != JsonToken.START_ARRAY) {
+			list.add(parser.getValueAsString());
+			return list;
+		}
+		while (parser.nextToken() != JsonToken.END_ARRAY) {
+			list.add(parser.getValueAsString());
+		}
+		return list;
+	}
+
+	private static Map<String, String> readStringMap(JsonParser parser) throws IOException {
+		Map<String, String> map = new HashMap<>();
+		if (parser.currentToken() != JsonToken.START_OBJECT) {
+			parser.skipChildren();
+			return map;
+		}
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String key = parser.getCurrentName();
+			JsonToken token = parser.nextToken();
+			if (token.isStructStart()) {
+				parser.skipChildren();
+			} else if (token != JsonToken.VALUE_NULL) {
+				map.put(key, parser.getValueAsString());
+			}
+		}
+		return map;
+	}
+
+	private static Map<String, Number> readMetrics(JsonParser parser) throws IOException {
+		Map<String, Number> map = new HashMap<>();
+		if (parser.currentToken() != JsonToken.START_OBJECT) {
+			parser.skipChildren();
+			return map;
+		}
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String key = parser.getCurrentName();
+			JsonToken token = parser.nextToken();
+			if (token == JsonToken.VALUE_NUMBER_INT) {
+				map.put(key, parser.getLongValue());
+			} else if (token == JsonToken.VALUE_NUMBER_FLOAT) {
+				map.put(key, parser.getDoubleValue());
+			} else {
+				parser.skipChildren();
+			}
+		}
+		return map;
+	}
+}
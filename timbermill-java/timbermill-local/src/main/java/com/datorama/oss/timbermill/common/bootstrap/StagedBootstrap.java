@@ -0,0 +1,205 @@
+package com.datorama.oss.timbermill.common.bootstrap;
+
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the startup stages that depend on external services concurrently, off the thread that creates the service, so ingestion can
+ * start before they are done. A failed stage is retried with exponential backoff until it succeeds or the bootstrap is closed.
+ * A stage that needs another one to be ready waits for it with awaitReady. Timbermill is ready once all of its stages are.
+ * A stage that throws an Error is not retried, it is marked failed and the Error is rethrown.
+ */
+public class StagedBootstrap {
+
+	private static final Logger LOG = LoggerFactory.getLogger(StagedBootstrap.class);
+
+	public enum StageState {
+		PENDING, RUNNING, RETRYING, READY, FAILED
+	}
+
+	private final long initialBackoffMillis;
+	private final long maxBackoffMillis;
+	private final Map<String, Stage> stages = Maps.newLinkedHashMap();
+	private final long createdAt = System.currentTimeMillis();
+	private ExecutorService executor;
+	private volatile boolean closed;
+
+	public StagedBootstrap(long initialBackoffMillis, long maxBackoffMillis) {
+		if (initialBackoffMillis < 1 || maxBackoffMillis < initialBackoffMillis) {
+			throw new RuntimeException("Bootstrap initial backoff must be positive and not larger than the max backoff");
+		}
+		this.initialBackoffMillis = initialBackoffMillis;
+		this.maxBackoffMillis = maxBackoffMillis;
+	}
+
+	// stages can only be added before start
+	public synchronized StagedBootstrap stage(String name, Runnable task) {
+		if (executor != null) {
+			throw new RuntimeException("Bootstrap already started, can not add stage " + name);
+		}
+		stages.put(name, new Stage(name, task));
+		return this;
+	}
+
+	public synchronized void start() {
+		if (executor != null) {
+			return;
+		}
+		executor = Executors.newFixedThreadPool(Math.max(stages.size(), 1), runnable -> {
+			Thread thread = new Thread(runnable, "timbermill-bootstrap");
+			thread.setDaemon(true);
+			return thread;
+		});
+		for (Stage stage : stages.values()) {
+			executor.submit(() -> run(stage));
+		}
+		executor.shutdown();
+	}
+
+	public boolean isReady() {
+		for (Stage stage : stages.values()) {
+			if (stage.state != StageState.READY) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public boolean isReady(String name) {
+		return getStage(name).state == StageState.READY;
+	}
+
+	public boolean isFailed() {
+		for (Stage stage : stages.values()) {
+			if (stage.state == StageState.FAILED) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// returns false if the stages were not all ready within the timeout
+	public boolean awaitReady(long timeoutMillis, String... names) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		for (String name : names) {
+			long left = deadline - System.currentTimeMillis();
+			if (left > 0) {
+				getStage(name).ready.await(left, TimeUnit.MILLISECONDS);
+			}
+			if (!isReady(name)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public Map<String, StageStatus> getStages() {
+		Map<String, StageStatus> statuses = Maps.newLinkedHashMap();
+		for (Stage stage : stages.values()) {
+			statuses.put(stage.name, new StageStatus(stage));
+		}
+		return statuses;
+	}
+
+	public void close() {
+		closed = true;
+		synchronized (this) {
+			if (executor != null) {
+				executor.shutdownNow();
+			}
+		}
+	}
+
+	private Stage getStage(String name) {
+		Stage stage = stages.get(name);
+		if (stage == null) {
+			throw new RuntimeException("Unknown bootstrap stage " + name);
+		}
+		return stage;
+	}
+
+	private void run(Stage stage) {
+		long backoffMillis = initialBackoffMillis;
+		while (!closed) {
+			stage.attempts++;
+			stage.state = stage.attempts == 1 ? StageState.RUNNING : StageState.RETRYING;
+			try {
+				stage.task.run();
+				stage.readyAfterMillis = System.currentTimeMillis() - createdAt;
+				stage.lastError = null;
+				stage.state = StageState.READY;
+				stage.ready.countDown();
+				LOG.info("Bootstrap stage {} is ready after {}ms and {} attempts", stage.name, stage.readyAfterMillis, stage.attempts);
+				return;
+			} catch (RuntimeException e) {
+				stage.lastError = e.toString();
+				LOG.error("Bootstrap stage " + stage.name + " failed on attempt " + stage.attempts + ", retrying in " + backoffMillis + "ms", e);
+			} catch (Throwable t) {
+				stage.lastError = t.toString();
+				stage.state = StageState.FAILED;
+				// releases awaitReady, which then finds the stage not ready
+				stage.ready.countDown();
+				LOG.error("Bootstrap stage " + stage.name + " failed on attempt " + stage.attempts + " and will not be retried", t);
+				throw t;
+			}
+			try {
+				Thread.sleep(backoffMillis);
+			} catch (InterruptedException e) {
+				return;
+			}
+			backoffMillis = Math.min(backoffMillis * 2, maxBackoffMillis);
+		}
+	}
+
+	private static class Stage {
+		private final String name;
+		private final Runnable task;
+		private final CountDownLatch ready = new CountDownLatch(1);
+		private volatile StageState state = StageState.PENDING;
+		private volatile int attempts;
+		private volatile String lastError;
+		private volatile long readyAfterMillis = -1;
+
+		Stage(String name, Runnable task) {
+			this.name = name;
+			this.task = task;
+		}
+	}
+
+	public static class StageStatus {
+		private final StageState state;
+		private final int attempts;
+		private final String lastError;
+		private final long readyAfterMillis;
+
+		StageStatus(Stage stage) {
+			this.state = stage.state;
+			this.attempts = stage.attempts;
+			this.lastError = stage.lastError;
+			this.readyAfterMillis = stage.readyAfterMillis;
+		}
+
+		public StageState getState() {
+			return state;
+		}
+
+		public int getAttempts() {
+			return attempts;
+		}
+
+		public String getLastError() {
+			return lastError;
+		}
+
+		public long getReadyAfterMillis() {
+			return readyAfterMillis;
+		}
+	}
+}
@@ -1,8 +1,9 @@
 package com.datorama.oss.timbermill.common.cache;
 
 import com.datorama.oss.timbermill.common.KamonConstants;
+import com.datorama.oss.timbermill.common.stats.BufferedKamon;
+import com.datorama.oss.timbermill.common.stats.PipelineStats;
 import com.datorama.oss.timbermill.unit.LocalTask;
-import kamon.metric.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -10,44 +11,60 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public abstract class AbstractCacheHandler {
     private static final Logger LOG = LoggerFactory.getLogger(AbstractCacheHandler.class);
+    private static final Map<String, FlowMetrics> FLOWS_METRICS = new ConcurrentHashMap<>();
 
     public Map<String, LocalTask> logGetFromTasksCache(Collection<String> idsList, String type){
-        Timer.Started start = KamonConstants.RETRIEVE_FROM_TASKS_CACHE_TIMER.withTag("type", type).start();
+        FlowMetrics metrics = getFlowMetrics(type);
+        long startNanos = System.nanoTime();
         Map<String, LocalTask> retMap = getFromTasksCache(idsList);
-        start.stop();
-        KamonConstants.TASKS_QUERIED_FROM_CACHE_HISTOGRAM.withTag("type", type).record(idsList.size());
-        KamonConstants.TASKS_RETRIEVED_FROM_CACHE_HISTOGRAM.withTag("type", type).record(retMap.size());
+        metrics.retrieveFromTasksCacheTimer.recordNanosSince(startNanos);
+        PipelineStats.CACHE_GET_TIMER.recordNanosSince(startNanos);
+        PipelineStats.CACHE_TASKS_QUERIED_COUNTER.add(idsList.size());
+        PipelineStats.CACHE_TASKS_HIT_COUNTER.add(retMap.size());
+        metrics.tasksQueriedHistogram.record(idsList.size());
+        metrics.tasksRetrievedHistogram.record(retMap.size());
         LOG.debug("{} tasks retrieved from cache, flow: [{}]", retMap.size(), type);
         return retMap;
     }
 
     public void logPushToTasksCache(Map<String, LocalTask> idsToMap, String type){
         LOG.debug("Pushing {} tasks to cache, flow: [{}]", idsToMap.size(), type);
-        Timer.Started start = KamonConstants.PUSH_TO_CACHE_TIMER.withTag("type", type).start();
+        FlowMetrics metrics = getFlowMetrics(type);
+        long startNanos = System.nanoTime();
         pushToTasksCache(idsToMap);
-        start.stop();
-        KamonConstants.TASKS_PUSHED_TO_CACHE_HISTOGRAM.withTag("type", type).record(idsToMap.size());
+        metrics.pushToCacheTimer.recordNanosSince(startNanos);
+        PipelineStats.CACHE_PUSH_TIMER.recordNanosSince(startNanos);
+        metrics.tasksPushedHistogram.record(idsToMap.size());
     }
 
     public Map<String, List<String>> logPullFromOrphansCache(Set<String> parentsIds, String type){
         LOG.debug("Pulling {} parents from orphan cache, flow: [{}]", parentsIds.size(), type);
-        Timer.Started start = KamonConstants.PULL_FROM_ORPHAN_CACHE_TIMER.withTag("type", type).start();
+        FlowMetrics metrics = getFlowMetrics(type);
+        long startNanos = System.nanoTime();
         Map<String, List<String>> retMap = pullFromOrphansCache(parentsIds);
-        start.stop();
-        KamonConstants.PARENTS_RETRIEVED_FROM_ORPHAN_CACHE_HISTOGRAM.withTag("type", type).record(retMap.size());
+        metrics.pullFromOrphanCacheTimer.recordNanosSince(startNanos);
+        PipelineStats.ORPHANS_CACHE_PULL_TIMER.recordNanosSince(startNanos);
+        metrics.parentsRetrievedHistogram.record(retMap.size());
         LOG.debug("{} parents retrieved from orphan cache, flow: [{}]", retMap.size(), type);
         return retMap;
     }
 
     public void logPushToOrphanCache(Map<String, List<String>> orphansMap, String type){
         LOG.debug("Pushing {} parents to orphan cache, flow: [{}]", orphansMap.size(), type);
-        Timer.Started start = KamonConstants.PUSH_TO_ORPHAN_CACHE_TIMER.withTag("type", type).start();
+        FlowMetrics metrics = getFlowMetrics(type);
+        long startNanos = System.nanoTime();
         pushToOrphanCache(orphansMap);
-        start.stop();
-        KamonConstants.PARENTS_PUSHED_TO_ORPHAN_CACHE_HISTOGRAM.withTag("type", type).record(orphansMap.size());
+        metrics.pushToOrphanCacheTimer.recordNanosSince(startNanos);
+        PipelineStats.ORPHANS_CACHE_PUSH_TIMER.recordNanosSince(startNanos);
+        metrics.parentsPushedHistogram.record(orphansMap.size());
+    }
+
+    private static FlowMetrics getFlowMetrics(String type) {
+        return FLOWS_METRICS.computeIfAbsent(type, FlowMetrics::new);
     }
 
     abstract Map<String, List<String>> pullFromOrphansCache(Collection<String> parentsIds);
@@ -67,4 +84,29 @@ public abstract class AbstractCacheHandler {
     public void release() {
         //do nothing
     }
+
+    // the Kamon instruments of a flow, tagged with its type once
+    private static class FlowMetrics {
+        private final BufferedKamon.Timer retrieveFromTasksCacheTimer;
+        private final BufferedKamon.Histogram tasksQueriedHistogram;
+        private final BufferedKamon.Histogram tasksRetrievedHistogram;
+        private final BufferedKamon.Timer pushToCacheTimer;
+        private final BufferedKamon.Histogram tasksPushedHistogram;
+        private final BufferedKamon.Timer pullFromOrphanCacheTimer;
+        private final BufferedKamon.Histogram parentsRetrievedHistogram;
+        private final BufferedKamon.Timer pushToOrphanCacheTimer;
+        private final BufferedKamon.Histogram parentsPushedHistogram;
+
+        FlowMetrics(String type) {
+            retrieveFromTasksCacheTimer = BufferedKamon.timer(KamonConstants.RETRIEVE_FROM_TASKS_CACHE_TIMER.withTag("type", type));
+            tasksQueriedHistogram = BufferedKamon.histogram(KamonConstants.TASKS_QUERIED_FROM_CACHE_HISTOGRAM.withTag("type", type));
+            tasksRetrievedHistogram = BufferedKamon.histogram(KamonConstants.TASKS_RETRIEVED_FROM_CACHE_HISTOGRAM.withTag("type", type));
+            pushToCacheTimer = BufferedKamon.timer(KamonConstants.PUSH_TO_CACHE_TIMER.withTag("type", type));
+            tasksPushedHistogram = BufferedKamon.histogram(KamonConstants.TASKS_PUSHED_TO_CACHE_HISTOGRAM.withTag("type", type));
+            pullFromOrphanCacheTimer = BufferedKamon.timer(KamonConstants.PULL_FROM_ORPHAN_CACHE_TIMER.withTag("type", type));
+            parentsRetrievedHistogram = BufferedKamon.histogram(KamonConstants.PARENTS_RETRIEVED_FROM_ORPHAN_CACHE_HISTOGRAM.withTag("type", type));
+            pushToOrphanCacheTimer = BufferedKamon.timer(KamonConstants.PUSH_TO_ORPHAN_CACHE_TIMER.withTag("type", type));
+            parentsPushedHistogram = BufferedKamon.histogram(KamonConstants.PARENTS_PUSHED_TO_ORPHAN_CACHE_HISTOGRAM.withTag("type", type));
+        }
+    }
 }
@@ -1,6 +1,7 @@
 package com.datorama.oss.timbermill.common.cache;
 
 import com.datorama.oss.timbermill.common.KamonConstants;
+import com.datorama.oss.timbermill.common.stats.BufferedKamon;
 import com.datorama.oss.timbermill.unit.LocalTask;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
@@ -10,32 +11,128 @@ import com.google.common.collect.Maps;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import static com.datorama.oss.timbermill.ElasticsearchClient.GSON;
 
 public class LocalCacheHandler extends AbstractCacheHandler {
-    private Cache<String, String> tasksCache;
-    private Cache<String, List<String>> orphansCache;
+    // the caches are only replaced under the write lock, so entries are not lost while they are copied to resized caches
+    private final ReadWriteLock resizeLock = new ReentrantReadWriteLock();
+    private volatile Cache<String, String> tasksCache;
+    private volatile Cache<String, List<String>> orphansCache;
+    private volatile long maximumTasksCacheWeight;
+    private volatile long maximumOrphansCacheWeight;
+    // evictions while entries are copied to a resized cache are not counted by the removal listeners
+    private volatile boolean resizing;
 
     LocalCacheHandler(long maximumTasksCacheWeight, long maximumOrphansCacheWeight) {
-        tasksCache = CacheBuilder.newBuilder()
+        this.maximumTasksCacheWeight = maximumTasksCacheWeight;
+        this.maximumOrphansCacheWeight = maximumOrphansCacheWeight;
+        tasksCache = buildTasksCache(maximumTasksCacheWeight);
+        orphansCache = buildOrphansCache(maximumOrphansCacheWeight);
+    }
+
+    public long getMaximumTasksCacheWeight() {
+        return maximumTasksCacheWeight;
+    }
+
+    public long getMaximumOrphansCacheWeight() {
+        return maximumOrphansCacheWeight;
+    }
+
+    // entries are copied to the new caches, the ones that do not fit are evicted
+    public void setMaximumWeights(long maximumTasksCacheWeight, long maximumOrphansCacheWeight) {
+        if (maximumTasksCacheWeight < 1 || maximumOrphansCacheWeight < 1) {
+            throw new RuntimeException("Cache weights must be positive");
+        }
+        resizeLock.writeLock().lock();
+        try {
+            if (maximumTasksCacheWeight != this.maximumTasksCacheWeight) {
+                Cache<String, String> resizedTasksCache = buildTasksCache(maximumTasksCacheWeight);
+                resizing = true;
+                try {
+                    resizedTasksCache.putAll(tasksCache.asMap());
+                    resizedTasksCache.cleanUp();
+                } finally {
+                    resizing = false;
+                }
+                // the samplers move by the difference between the caches
+                adjust(KamonConstants.TASK_CACHE_SIZE_BUFFERED_SAMPLER, getTasksCacheWeight(resizedTasksCache) - getTasksCacheWeight(tasksCache));
+                adjust(KamonConstants.TASK_CACHE_ENTRIES_BUFFERED_SAMPLER, resizedTasksCache.size() - tasksCache.size());
+                tasksCache = resizedTasksCache;
+                this.maximumTasksCacheWeight = maximumTasksCacheWeight;
+            }
+            if (maximumOrphansCacheWeight != this.maximumOrphansCacheWeight) {
+                Cache<String, List<String>> resizedOrphansCache = buildOrphansCache(maximumOrphansCacheWeight);
+                resizing = true;
+                try {
+                    resizedOrphansCache.putAll(orphansCache.asMap());
+                    resizedOrphansCache.cleanUp();
+                } finally {
+                    resizing = false;
+                }
+                adjust(KamonConstants.ORPHANS_CACHE_SIZE_BUFFERED_SAMPLER, getOrphansCacheWeight(resizedOrphansCache) - getOrphansCacheWeight(orphansCache));
+                adjust(KamonConstants.ORPHANS_CACHE_ENTRIES_BUFFERED_SAMPLER, resizedOrphansCache.size() - orphansCache.size());
+                orphansCache = resizedOrphansCache;
+                this.maximumOrphansCacheWeight = maximumOrphansCacheWeight;
+            }
+        } finally {
+            resizeLock.writeLock().unlock();
+        }
+    }
+
+    private static long getTasksCacheWeight(Cache<String, String> cache) {
+        long weight = 0;
+        for (Map.Entry<String, String> entry : cache.asMap().entrySet()) {
+            weight += 2 * (entry.getKey().length() + entry.getValue().length());
+        }
+        return weight;
+    }
+
+    private long getOrphansCacheWeight(Cache<String, List<String>> cache) {
+        long weight = 0;
+        for (Map.Entry<String, List<String>> entry : cache.asMap().entrySet()) {
+            weight += getEntryLength(entry.getKey(), entry.getValue());
+        }
+        return weight;
+    }
+
+    private static void adjust(BufferedKamon.RangeSampler sampler, long delta) {
+        if (delta > 0) {
+            sampler.increment(delta);
+        } else if (delta < 0) {
+            sampler.decrement(-delta);
+        }
+    }
+
+    private Cache<String, String> buildTasksCache(long maximumTasksCacheWeight) {
+        return CacheBuilder.newBuilder()
                 .maximumWeight(maximumTasksCacheWeight)
                 .weigher((Weigher<String, String>) (key, value) -> 2 * (key.length() + value.length()))
                 .removalListener(notification -> {
+                    if (resizing) {
+                        return;
+                    }
                     String key = notification.getKey();
                     String value = notification.getValue();
-                    KamonConstants.TASK_CACHE_SIZE_RANGE_SAMPLER.withoutTags().decrement(2 * (key.length() + value.length()));
-                    KamonConstants.TASK_CACHE_ENTRIES_RANGE_SAMPLER.withoutTags().decrement();
+                    KamonConstants.TASK_CACHE_SIZE_BUFFERED_SAMPLER.decrement(2 * (key.length() + value.length()));
+                    KamonConstants.TASK_CACHE_ENTRIES_BUFFERED_SAMPLER.decrement();
                 })
                 .build();
+    }
 
-        orphansCache = CacheBuilder.newBuilder()
+    private Cache<String, List<String>> buildOrphansCache(long maximumOrphansCacheWeight) {
+        return CacheBuilder.newBuilder()
                 .maximumWeight(maximumOrphansCacheWeight)
                 .weigher(this::getEntryLength)
                 .removalListener(notification -> {
+                    if (resizing) {
+                        return;
+                    }
                     int entryLength = getEntryLength(notification.getKey(), notification.getValue());
-                    KamonConstants.ORPHANS_CACHE_SIZE_RANGE_SAMPLER.withoutTags().decrement(entryLength);
-                    KamonConstants.ORPHANS_CACHE_ENTRIES_RANGE_SAMPLER.withoutTags().decrement();
+                    KamonConstants.ORPHANS_CACHE_SIZE_BUFFERED_SAMPLER.decrement(entryLength);
+                    KamonConstants.ORPHANS_CACHE_ENTRIES_BUFFERED_SAMPLER.decrement();
                 })
                 .build();
     }
@@ -48,24 +145,35 @@ public class LocalCacheHandler extends AbstractCacheHandler {
 
     @Override
     public Map<String, List<String>> pullFromOrphansCache(Collection<String> parentsIds) {
-        Map<String, List<String>> orphans = orphansCache.getAllPresent(parentsIds);
-        if (orphans != null){
-            orphansCache.invalidateAll(parentsIds);
+        resizeLock.readLock().lock();
+        try {
+            Map<String, List<String>> orphans = orphansCache.getAllPresent(parentsIds);
+            if (orphans != null){
+                orphansCache.invalidateAll(parentsIds);
+            }
+            return orphans;
+        } finally {
+            resizeLock.readLock().unlock();
         }
-        return orphans;
     }
 
     @Override
     public void pushToOrphanCache(Map<String, List<String>> orphansMap) {
-        orphansCache.putAll(orphansMap);
+        resizeLock.readLock().lock();
+        try {
+            orphansCache.putAll(orphansMap);
+        } finally {
+            resizeLock.readLock().unlock();
+        }
         int entryLength = orphansMap.entrySet().stream().mapToInt(value -> getEntryLength(value.getKey(), value.getValue())).sum();
-        KamonConstants.ORPHANS_CACHE_SIZE_RANGE_SAMPLER.withoutTags().increment(entryLength);
-        KamonConstants.ORPHANS_CACHE_ENTRIES_RANGE_SAMPLER.withoutTags().increment(orphansMap.size());
+        KamonConstants.ORPHANS_CACHE_SIZE_BUFFERED_SAMPLER.increment(entryLength);
+        KamonConstants.ORPHANS_CACHE_ENTRIES_BUFFERED_SAMPLER.increment(orphansMap.size());
     }
 
     @Override
     public Map<String, LocalTask> getFromTasksCache(Collection<String> idsList) {
         Map<String, LocalTask> retMap = Maps.newHashMap();
+        Cache<String, String> tasksCache = this.tasksCache;
         for (String id : idsList) {
             String taskString = tasksCache.getIfPresent(id);
             LocalTask localTask = GSON.fromJson(taskString, LocalTask.class);
@@ -77,13 +185,18 @@ public class LocalCacheHandler extends AbstractCacheHandler {
 
     @Override
     public void pushToTasksCache(Map<String, LocalTask> idsToMap) {
-        for (Map.Entry<String, LocalTask> entry : idsToMap.entrySet()) {
-            String id = entry.getKey();
-            LocalTask localTask = entry.getValue();
-            String taskString = GSON.toJson(localTask);
-            tasksCache.put(id, taskString);
-            KamonConstants.TASK_CACHE_SIZE_RANGE_SAMPLER.withoutTags().increment(2 * (id.length() + taskString.length()));
-            KamonConstants.TASK_CACHE_ENTRIES_RANGE_SAMPLER.withoutTags().increment();
+        resizeLock.readLock().lock();
+        try {
+            for (Map.Entry<String, LocalTask> entry : idsToMap.entrySet()) {
+                String id = entry.getKey();
+                LocalTask localTask = entry.getValue();
+                String taskString = GSON.toJson(localTask);
+                tasksCache.put(id, taskString);
+                KamonConstants.TASK_CACHE_SIZE_BUFFERED_SAMPLER.increment(2 * (id.length() + taskString.length()));
+                KamonConstants.TASK_CACHE_ENTRIES_BUFFERED_SAMPLER.increment();
+            }
+        } finally {
+            resizeLock.readLock().unlock();
         }
     }
 
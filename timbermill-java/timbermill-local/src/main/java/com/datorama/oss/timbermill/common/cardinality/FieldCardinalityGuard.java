@@ -0,0 +1,198 @@
+package com.datorama.oss.timbermill.common.cardinality;
+
+import com.datorama.oss.timbermill.common.KamonConstants;
+import com.datorama.oss.timbermill.common.redis.RedisService;
+import com.datorama.oss.timbermill.common.stats.BufferedKamon;
+import com.datorama.oss.timbermill.unit.FlattenedField;
+import com.datorama.oss.timbermill.unit.Task;
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the number of mapped field names under ctx, string, text and metric bounded per env.
+ * Once a prefix used its budget of field names, fields with new names are moved to the flattened key-value field of the task
+ * instead of creating new mappings. Names used before the budget ran out keep being mapped.
+ * With Redis the budget is shared by all the servers indexing to the same cluster, the mapped names of a prefix are a Redis set that a name
+ * is added to only while the set is under budget. Without Redis, or while it is unreachable, each server keeps a budget of its own
+ * in memory: it is not persisted, so every restart grants a fresh budget of new names on top of the ones already mapped, and only the
+ * index's total fields limit bounds the mapping of an index that lives through many restarts. Deployments that restart often should use Redis.
+ */
+public class FieldCardinalityGuard {
+
+	private static final Logger LOG = LoggerFactory.getLogger(FieldCardinalityGuard.class);
+	private static final int HLL_PRECISION = 12;
+	public static final String CTX = "ctx";
+	public static final String STRING = "string";
+	public static final String TEXT = "text";
+	public static final String METRIC = "metric";
+	private static final String FIELD_NAMES_SET_PREFIX = "field_names#";
+
+	private final int maxFieldNamesPerPrefix;
+	private final RedisService redisService;
+	private final Map<String, PrefixCardinality> cardinalities = new ConcurrentHashMap<>();
+
+	public FieldCardinalityGuard(int maxFieldNamesPerPrefix) {
+		this(maxFieldNamesPerPrefix, null);
+	}
+
+	// a non positive budget disables the guard
+	public FieldCardinalityGuard(int maxFieldNamesPerPrefix, RedisService redisService) {
+		this.maxFieldNamesPerPrefix = maxFieldNamesPerPrefix;
+		this.redisService = redisService;
+	}
+
+	public void apply(String env, Map<String, Task> tasksMap) {
+		if (maxFieldNamesPerPrefix <= 0) {
+			return;
+		}
+		Set<PrefixCardinality> touched = new HashSet<>();
+		for (Task task : tasksMap.values()) {
+			List<FlattenedField> flattened = Lists.newArrayList();
+			flatten(env, CTX, task.getCtx(), flattened, touched);
+			flatten(env, STRING, task.getString(), flattened, touched);
+			flatten(env, TEXT, task.getText(), flattened, touched);
+			flatten(env, METRIC, task.getMetric(), flattened, touched);
+			if (!flattened.isEmpty()) {
+				if (task.getFlattened() != null) {
+					flattened.addAll(0, task.getFlattened());
+				}
+				task.setFlattened(flattened);
+			}
+		}
+		for (PrefixCardinality cardinality : touched) {
+			cardinality.cardinalityGauge.update(cardinality.getEstimatedFieldNames());
+		}
+	}
+
+	private <T> void flatten(String env, String prefix, Map<String, T> fields, List<FlattenedField> flattened, Set<PrefixCardinality> touched) {
+		if (fields == null || fields.isEmpty()) {
+			return;
+		}
+		PrefixCardinality cardinality = cardinalities.computeIfAbsent(env + "." + prefix, k -> new PrefixCardinality(env, prefix));
+		touched.add(cardinality);
+		Iterator<Map.Entry<String, T>> iterator = fields.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<String, T> field = iterator.next();
+			if (!cardinality.admit(field.getKey())) {
+				flattened.add(new FlattenedField(prefix + "." + field.getKey(), String.valueOf(field.getValue())));
+				iterator.remove();
+			}
+		}
+	}
+
+	public List<PrefixCardinality> getCardinalities() {
+		List<PrefixCardinality> list = new ArrayList<>(cardinalities.values());
+		list.sort(Comparator.comparing(PrefixCardinality::getEnv).thenComparing(PrefixCardinality::getPrefix));
+		return list;
+	}
+
+	public class PrefixCardinality {
+		private final String env;
+		private final String prefix;
+		private final HyperLogLog fieldNames = new HyperLogLog(HLL_PRECISION);
+		private final Set<String> mappedFieldNames = ConcurrentHashMap.newKeySet();
+		// names reserved in mappedFieldNames, only grows by a compare and set under the budget so concurrent batches cannot overshoot it
+		private final AtomicInteger reservedFieldNames = new AtomicInteger();
+		private final AtomicLong flattenedFields = new AtomicLong();
+		// tagged once, as they are updated for every field
+		private final kamon.metric.Gauge cardinalityGauge;
+		private final BufferedKamon.Counter flattenedFieldsCounter;
+		private volatile boolean overBudget;
+
+		PrefixCardinality(String env, String prefix) {
+			this.env = env;
+			this.prefix = prefix;
+			cardinalityGauge = KamonConstants.FIELD_NAMES_CARDINALITY_GAUGE.withTag("env", env).withTag("prefix", prefix);
+			flattenedFieldsCounter = BufferedKamon.counter(KamonConstants.FLATTENED_FIELDS_COUNTER.withTag("env", env).withTag("prefix", prefix));
+		}
+
+		private boolean admit(String fieldName) {
+			fieldNames.offer(fieldName);
+			if (mappedFieldNames.contains(fieldName)) {
+				return true;
+			}
+			if (!overBudget && (redisService == null ? reserveLocally(fieldName) : reserveShared(fieldName))) {
+				return true;
+			}
+			flattenedFields.incrementAndGet();
+			flattenedFieldsCounter.increment();
+			return false;
+		}
+
+		private boolean reserveLocally(String fieldName) {
+			while (true) {
+				int reserved = reservedFieldNames.get();
+				if (reserved >= maxFieldNamesPerPrefix) {
+					reachedBudget();
+					return false;
+				}
+				if (reservedFieldNames.compareAndSet(reserved, reserved + 1)) {
+					if (!mappedFieldNames.add(fieldName)) {
+						// another batch admitted the same name meanwhile
+						reservedFieldNames.decrementAndGet();
+					}
+					return true;
+				}
+			}
+		}
+
+		private boolean reserveShared(String fieldName) {
+			String setName = FIELD_NAMES_SET_PREFIX + env + "." + prefix;
+			Boolean admitted = redisService.addToBoundedSet(setName, fieldName, maxFieldNamesPerPrefix);
+			if (admitted == null) {
+				return reserveLocally(fieldName);
+			}
+			if (admitted) {
+				mappedFieldNames.add(fieldName);
+				reservedFieldNames.incrementAndGet();
+				return true;
+			}
+			// the set is full and can no longer change, so names other servers mapped are fetched once and later names are decided locally
+			Set<String> sharedFieldNames = redisService.getSetMembers(setName);
+			if (sharedFieldNames == null) {
+				return false;
+			}
+			mappedFieldNames.addAll(sharedFieldNames);
+			reservedFieldNames.set(mappedFieldNames.size());
+			reachedBudget();
+			return mappedFieldNames.contains(fieldName);
+		}
+
+		private void reachedBudget() {
+			if (!overBudget) {
+				overBudget = true;
+				LOG.warn("Env {} reached {} field names under {}, new field names will be flattened", env, maxFieldNamesPerPrefix, prefix);
+			}
+		}
+
+		public String getEnv() {
+			return env;
+		}
+
+		public String getPrefix() {
+			return prefix;
+		}
+
+		public long getEstimatedFieldNames() {
+			return fieldNames.cardinality();
+		}
+
+		public int getMappedFieldNames() {
+			return mappedFieldNames.size();
+		}
+
+		public long getFlattenedFields() {
+			return flattenedFields.get();
+		}
+
+		public boolean isOverBudget() {
+			return overBudget;
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package com.datorama.oss.timbermill.common.cardinality;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Distinct count estimation with a fixed memory of 2^precision bytes, standard error is about 1.04 / sqrt(2^precision).
+ */
+public class HyperLogLog {
+
+	private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+	private final int precision;
+	private final byte[] registers;
+
+	public HyperLogLog(int precision) {
+		if (precision < 4 || precision > 16) {
+			throw new RuntimeException("HyperLogLog precision should be between 4 and 16");
+		}
+		this.precision = precision;
+		this.registers = new byte[1 << precision];
+	}
+
+	// returns true if the estimation may have changed
+	public synchronized boolean offer(String value) {
+		long hash = HASH_FUNCTION.hashString(value, StandardCharsets.UTF_8).asLong();
+		int index = (int) (hash >>> (Long.SIZE - precision));
+		byte rank = (byte) (Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1);
+		if (rank > registers[index]) {
+			registers[index] = rank;
+			return true;
+		}
+		return false;
+	}
+
+	public synchronized long cardinality() {
+		int registersAmount = registers.length;
+		double sum = 0;
+		int emptyRegisters = 0;
+		for (byte register : registers) {
+			sum += 1.0 / (1L << register);
+			if (register == 0) {
+				emptyRegisters++;
+			}
+		}
+		double estimate = alpha(registersAmount) * registersAmount * registersAmount / sum;
+		if (estimate <= 2.5 * registersAmount && emptyRegisters > 0) {
+			estimate = registersAmount * Math.log((double) registersAmount / emptyRegisters);
+		}
+		return Math.round(estimate);
+	}
+
+	private static double alpha(int registersAmount) {
+		switch (registersAmount) {
+			case 16:
+				return 0.673;
+			case 32:
+				return 0.697;
+			case 64:
+				return 0.709;
+			default:
+				return 0.7213 / (1 + 1.079 / registersAmount);
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package com.datorama.oss.timbermill.common.cluster;
+
+import com.datorama.oss.timbermill.common.redis.RedisService;
+import com.datorama.oss.timbermill.unit.Event;
+import com.google.common.collect.Sets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Membership table of the servers in a cluster, kept in a Redis sorted set where every member is scored with the time its lease expires.
+ * Each server renews its own lease three times per lease period, drops the expired leases and rebuilds the partition table from the live members.
+ * A server that could not renew its lease for a whole period is out of the cluster, its partitions were taken over by the other members,
+ * so it stops accepting and indexing events until it renews its lease again.
+ * Events are routed by the root id the client sends on every event of a tree, so all the servers route a tree to the same owner.
+ */
+public class ClusterMembership {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ClusterMembership.class);
+	private static final String MEMBERS_KEY_PREFIX = "timbermill_cluster_members_";
+
+	private final RedisService redisService;
+	private final String membersKey;
+	private final String self;
+	private final long leaseMillis;
+	private final int partitions;
+	private final LongSupplier clock;
+	private final ScheduledExecutorService renewer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "timbermill-cluster-membership");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private volatile PartitionTable partitionTable;
+	private volatile long leaseExpiresAt;
+
+	public ClusterMembership(RedisService redisService, String clusterName, String self, long leaseMillis, int partitions) {
+		this(redisService, clusterName, self, leaseMillis, partitions, System::currentTimeMillis);
+	}
+
+	ClusterMembership(RedisService redisService, String clusterName, String self, long leaseMillis, int partitions, LongSupplier clock) {
+		if (redisService == null) {
+			throw new RuntimeException("Cluster mode requires Redis");
+		}
+		if (leaseMillis < 3) {
+			throw new RuntimeException("Cluster lease must be at least 3 milliseconds");
+		}
+		this.redisService = redisService;
+		this.membersKey = MEMBERS_KEY_PREFIX + clusterName;
+		this.self = self;
+		this.leaseMillis = leaseMillis;
+		this.partitions = partitions;
+		this.clock = clock;
+		this.partitionTable = new PartitionTable(Collections.singleton(self), partitions);
+	}
+
+	public void start() {
+		LOG.info("Joining cluster {} as {}", membersKey, self);
+		renew();
+		renewer.scheduleWithFixedDelay(() -> {
+			try {
+				renew();
+			} catch (RuntimeException e) {
+				LOG.error("Failed renewing cluster lease", e);
+			}
+		}, leaseMillis / 3, leaseMillis / 3, TimeUnit.MILLISECONDS);
+	}
+
+	public String getSelf() {
+		return self;
+	}
+
+	// events of clients that do not send the root id, and of ongoing tasks, are routed by their own task id
+	public static String getRoutingKey(Event event) {
+		if (event.getRootId() != null) {
+			return event.getRootId();
+		}
+		return event.getTaskId() == null ? "" : event.getTaskId();
+	}
+
+	// returns null if the event's partition is owned by this server
+	public String getRemoteOwner(Event event) {
+		String owner = partitionTable.getOwner(getRoutingKey(event));
+		return owner == null || owner.equals(self) ? null : owner;
+	}
+
+	public boolean hasLease() {
+		return clock.getAsLong() < leaseExpiresAt;
+	}
+
+	public boolean isMember(String member) {
+		return partitionTable.getMembers().contains(member);
+	}
+
+	public PartitionTable getPartitionTable() {
+		return partitionTable;
+	}
+
+	public void close() {
+		renewer.shutdownNow();
+		redisService.removeFromSortedSet(membersKey, self);
+		LOG.info("Left cluster {}", membersKey);
+	}
+
+	void renew() {
+		long now = clock.getAsLong();
+		boolean hadLease = now < leaseExpiresAt;
+		if (redisService.addToSortedSet(membersKey, self, now + leaseMillis)) {
+			leaseExpiresAt = now + leaseMillis;
+		}
+		if (now >= leaseExpiresAt) {
+			if (hadLease) {
+				LOG.error("Lost the lease in cluster {}, not accepting or indexing events until it is renewed", membersKey);
+			}
+			return;
+		}
+		if (!hadLease) {
+			LOG.info("Got a lease in cluster {}", membersKey);
+		}
+		redisService.removeFromSortedSetByScore(membersKey, Double.NEGATIVE_INFINITY, now);
+		Set<String> members = redisService.getSortedSetRangeByScore(membersKey, now, Double.POSITIVE_INFINITY);
+		if (members == null) {
+			return;
+		}
+		members = Sets.newHashSet(members);
+		members.add(self);
+		if (!members.equals(Sets.newHashSet(partitionTable.getMembers()))) {
+			LOG.info("Cluster {} members changed from {} to {}", membersKey, partitionTable.getMembers(), members);
+			partitionTable = new PartitionTable(members, partitions);
+		}
+	}
+}
@@ -0,0 +1,256 @@
+package com.datorama.oss.timbermill.common.cluster;
+
+import com.datorama.oss.timbermill.common.KamonConstants;
+import com.datorama.oss.timbermill.unit.Event;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Sends events to the server that owns their partition, batched per owner. A batch is sent when it reaches the batch size or every flush interval,
+ * as an EventsWrapper to the owner's /events/v2 with the FORWARDED_HEADER set to this server, so the owner indexes it without forwarding it again.
+ * A batch that could not be sent is retried with a backoff, and before every retry its events are routed again, so events whose partition moved
+ * meanwhile go to their new owner, or to the local consumer when this server owns them now. Callers check hasRoom() before forwarding and
+ * reject the events when the forwarder is full.
+ */
+public class EventsForwarder {
+
+	public static final String FORWARDED_HEADER = "X-Timbermill-Forwarded";
+	private static final Logger LOG = LoggerFactory.getLogger(EventsForwarder.class);
+	private static final int HTTP_TIMEOUT = 10000;
+	private static final long INITIAL_RETRY_BACKOFF_MILLIS = 100;
+	private static final long MAX_RETRY_BACKOFF_MILLIS = 5000;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final Map<String, OwnerQueue> ownerQueues = new ConcurrentHashMap<>();
+	private final AtomicInteger pendingEvents = new AtomicInteger();
+	private final String self;
+	private final int batchSize;
+	private final int capacity;
+	private final Function<Event, String> router;
+	private final Consumer<List<Event>> localConsumer;
+	private final ScheduledExecutorService flusher;
+	private final ExecutorService senders;
+	private volatile boolean closed;
+
+	/**
+	 * @param router returns the current owner of an event, or null if this server owns it
+	 */
+	public EventsForwarder(String self, int batchSize, long flushIntervalMillis, int capacity, int senderThreads, Function<Event, String> router,
+						   Consumer<List<Event>> localConsumer) {
+		if (batchSize < 1 || flushIntervalMillis < 1 || capacity < batchSize || senderThreads < 1) {
+			throw new RuntimeException("Forward batch size, interval and sender threads must be positive and the queue capacity not lower than the batch size");
+		}
+		this.self = self;
+		this.batchSize = batchSize;
+		this.capacity = capacity;
+		this.router = router;
+		this.localConsumer = localConsumer;
+		this.senders = Executors.newFixedThreadPool(senderThreads, runnable -> {
+			Thread thread = new Thread(runnable, "timbermill-events-forwarder");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "timbermill-events-forwarder-flusher");
+			thread.setDaemon(true);
+			return thread;
+		});
+		flusher.scheduleWithFixedDelay(this::flushAll, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	// events waiting to be forwarded, including the ones being retried, are bounded by the capacity
+	public boolean hasRoom() {
+		return pendingEvents.get() < capacity;
+	}
+
+	public void forward(String owner, Event event) {
+		pendingEvents.incrementAndGet();
+		OwnerQueue ownerQueue = getOwnerQueue(owner);
+		ownerQueue.events.add(event);
+		if (ownerQueue.events.size() >= batchSize) {
+			submitFlush(owner, ownerQueue);
+		}
+	}
+
+	public int getPendingEvents() {
+		return pendingEvents.get();
+	}
+
+	// waits for the batches being sent, whatever was not forwarded by then is handed to the local consumer
+	public void close() {
+		closed = true;
+		flusher.shutdownNow();
+		senders.shutdown();
+		try {
+			senders.awaitTermination(HTTP_TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ignored) {
+		}
+		for (Map.Entry<String, OwnerQueue> ownerQueue : ownerQueues.entrySet()) {
+			List<Event> events = Lists.newArrayList();
+			ownerQueue.getValue().events.drainTo(events);
+			if (!events.isEmpty()) {
+				LOG.warn("Shutting down with {} events that were not forwarded to {}, indexing them locally", events.size(), ownerQueue.getKey());
+				handOverLocally(events);
+			}
+		}
+	}
+
+	private OwnerQueue getOwnerQueue(String owner) {
+		return ownerQueues.computeIfAbsent(owner, key -> new OwnerQueue());
+	}
+
+	private void flushAll() {
+		for (Map.Entry<String, OwnerQueue> ownerQueue : ownerQueues.entrySet()) {
+			if (!ownerQueue.getValue().events.isEmpty()) {
+				submitFlush(ownerQueue.getKey(), ownerQueue.getValue());
+			}
+		}
+	}
+
+	private void submitFlush(String owner, OwnerQueue ownerQueue) {
+		if (ownerQueue.flushing.compareAndSet(false, true)) {
+			try {
+				senders.submit(() -> flush(owner, ownerQueue));
+			} catch (RejectedExecutionException e) {
+				ownerQueue.flushing.set(false);
+			}
+		}
+	}
+
+	// a single flush per owner at a time, so a slow or unreachable owner holds one sender thread at most
+	private void flush(String owner, OwnerQueue ownerQueue) {
+		try {
+			List<Event> events = Lists.newArrayListWithCapacity(batchSize);
+			while (!closed && ownerQueue.events.drainTo(events, batchSize) > 0) {
+				deliver(owner, events);
+				events = Lists.newArrayListWithCapacity(batchSize);
+			}
+		} finally {
+			ownerQueue.flushing.set(false);
+		}
+	}
+
+	private void deliver(String owner, List<Event> events) {
+		Map<String, List<Event>> eventsByOwner = new LinkedHashMap<>();
+		eventsByOwner.put(owner, events);
+		long backoff = INITIAL_RETRY_BACKOFF_MILLIS;
+		while (true) {
+			eventsByOwner.entrySet().removeIf(ownerEvents -> send(ownerEvents.getKey(), ownerEvents.getValue()));
+			if (eventsByOwner.isEmpty()) {
+				return;
+			}
+			List<Event> failed = Lists.newArrayList();
+			eventsByOwner.values().forEach(failed::addAll);
+			KamonConstants.FORWARD_RETRIED_EVENTS_BUFFERED_COUNTER.increment(failed.size());
+			if (closed) {
+				// back to the queue, close() hands it over
+				getOwnerQueue(owner).events.addAll(failed);
+				return;
+			}
+			try {
+				Thread.sleep(backoff);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				getOwnerQueue(owner).events.addAll(failed);
+				return;
+			}
+			backoff = Math.min(backoff * 2, MAX_RETRY_BACKOFF_MILLIS);
+			eventsByOwner = route(failed);
+		}
+	}
+
+	private Map<String, List<Event>> route(List<Event> events) {
+		Map<String, List<Event>> eventsByOwner = new LinkedHashMap<>();
+		List<Event> localEvents = Lists.newArrayList();
+		for (Event event : events) {
+			String owner = router.apply(event);
+			if (owner == null) {
+				localEvents.add(event);
+			} else {
+				eventsByOwner.computeIfAbsent(owner, key -> Lists.newArrayList()).add(event);
+			}
+		}
+		if (!localEvents.isEmpty()) {
+			handOverLocally(localEvents);
+		}
+		return eventsByOwner;
+	}
+
+	private void handOverLocally(List<Event> events) {
+		KamonConstants.FORWARD_LOCAL_EVENTS_BUFFERED_COUNTER.increment(events.size());
+		pendingEvents.addAndGet(-events.size());
+		localConsumer.accept(events);
+	}
+
+	private boolean send(String owner, List<Event> events) {
+		try {
+			int responseCode = post(owner, events);
+			if (responseCode == 200) {
+				KamonConstants.FORWARDED_EVENTS_BUFFERED_COUNTER.increment(events.size());
+				pendingEvents.addAndGet(-events.size());
+				return true;
+			}
+			LOG.warn("Forwarding {} events to {} returned status {}, retrying", events.size(), owner, responseCode);
+		} catch (IOException | RuntimeException e) {
+			LOG.warn("Forwarding " + events.size() + " events to " + owner + " failed, retrying", e);
+		}
+		return false;
+	}
+
+	private int post(String owner, List<Event> events) throws IOException {
+		byte[] body = objectMapper.writeValueAsBytes(new ForwardedEvents(UUID.randomUUID().toString(), events));
+		HttpURLConnection httpCon = (HttpURLConnection) new URL(owner + "/events/v2").openConnection();
+		httpCon.setRequestMethod("POST");
+		httpCon.setRequestProperty("content-type", "application/json");
+		httpCon.setRequestProperty("Content-Encoding", "gzip");
+		httpCon.setRequestProperty(FORWARDED_HEADER, self);
+		httpCon.setDoOutput(true);
+		httpCon.setConnectTimeout(HTTP_TIMEOUT);
+		httpCon.setReadTimeout(HTTP_TIMEOUT);
+		try (OutputStream os = new GZIPOutputStream(httpCon.getOutputStream())) {
+			os.write(body);
+		}
+		return httpCon.getResponseCode();
+	}
+
+	private static class OwnerQueue {
+		private final BlockingQueue<Event> events = new LinkedBlockingQueue<>();
+		private final AtomicBoolean flushing = new AtomicBoolean();
+	}
+
+	// same JSON as the client's EventsWrapper, the declared element type keeps the event type ids
+	static class ForwardedEvents {
+		private final String id;
+		private final List<Event> events;
+
+		ForwardedEvents(String id, List<Event> events) {
+			this.id = id;
+			this.events = events;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public List<Event> getEvents() {
+			return events;
+		}
+	}
+}
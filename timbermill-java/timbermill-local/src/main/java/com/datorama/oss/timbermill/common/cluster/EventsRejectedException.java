@@ -0,0 +1,12 @@
+package com.datorama.oss.timbermill.common.cluster;
+
+/**
+ * Thrown when a server in cluster mode can not take events right now, because it has no lease or too many events wait to be forwarded.
+ * The client should send them again later.
+ */
+public class EventsRejectedException extends RuntimeException {
+
+	public EventsRejectedException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,68 @@
+package com.datorama.oss.timbermill.common.cluster;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Owner of every partition for a given set of members, chosen by rendezvous hashing: a partition is owned by the member with the highest
+ * hash of (member, partition). Every server computes the same table from the same members, and when a member joins or leaves
+ * only the partitions it gains or loses change owner.
+ */
+public class PartitionTable {
+
+	private static final HashFunction HASH_FUNCTION = Hashing.murmur3_32();
+
+	private final List<String> members;
+	private final String[] owners;
+
+	public PartitionTable(Collection<String> members, int partitions) {
+		if (partitions < 1) {
+			throw new RuntimeException("Cluster partitions must be positive");
+		}
+		this.members = ImmutableList.copyOf(new TreeSet<>(members));
+		this.owners = new String[partitions];
+		for (int partition = 0; partition < partitions; partition++) {
+			owners[partition] = findOwner(partition);
+		}
+	}
+
+	public static int getPartition(String routingKey, int partitions) {
+		return Math.floorMod(HASH_FUNCTION.hashString(routingKey, StandardCharsets.UTF_8).asInt(), partitions);
+	}
+
+	// returns null if there are no members
+	public String getOwner(String routingKey) {
+		return owners[getPartition(routingKey, owners.length)];
+	}
+
+	public String getPartitionOwner(int partition) {
+		return owners[partition];
+	}
+
+	public int getPartitions() {
+		return owners.length;
+	}
+
+	public List<String> getMembers() {
+		return members;
+	}
+
+	private String findOwner(int partition) {
+		String owner = null;
+		long maxWeight = Long.MIN_VALUE;
+		for (String member : members) {
+			long weight = HASH_FUNCTION.newHasher().putString(member, StandardCharsets.UTF_8).putInt(partition).hash().asInt() & 0xFFFFFFFFL;
+			if (weight > maxWeight) {
+				maxWeight = weight;
+				owner = member;
+			}
+		}
+		return owner;
+	}
+}
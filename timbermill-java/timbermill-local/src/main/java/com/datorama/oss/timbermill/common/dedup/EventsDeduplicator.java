@@ -0,0 +1,103 @@
+package com.datorama.oss.timbermill.common.dedup;
+
+import com.datorama.oss.timbermill.common.KamonConstants;
+import com.datorama.oss.timbermill.unit.Event;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drops events that were already received within the window. An event is keyed by the 128 bit hash of its task id, type, time and content,
+ * as the time alone only has millisecond resolution on Java 8 and a task can report distinct info events within the same millisecond.
+ * Every content field is hashed as is, so events that differ in content never share a key.
+ * Keys are kept in a cache bounded by the max keys, so when more events arrive within a window the oldest keys are forgotten first.
+ * A key costs about 100 bytes of heap with its cache entry, so the max keys bound the memory used, e.g. about 20MB for 200000 keys.
+ */
+public class EventsDeduplicator {
+
+	private static final HashFunction KEY_HASH = Hashing.murmur3_128();
+
+	private final Cache<HashCode, Boolean> recentKeys;
+
+	// a non positive window disables deduplication
+	public EventsDeduplicator(long windowSeconds, long maxKeys) {
+		if (windowSeconds > 0) {
+			recentKeys = CacheBuilder.newBuilder().maximumSize(maxKeys).expireAfterWrite(windowSeconds, TimeUnit.SECONDS).build();
+		} else {
+			recentKeys = null;
+		}
+	}
+
+	// returns the events that were not seen in the window, in their original order
+	public List<Event> filter(Collection<Event> events) {
+		List<Event> unique = new ArrayList<>(events.size());
+		if (recentKeys == null) {
+			unique.addAll(events);
+			return unique;
+		}
+		int duplicates = 0;
+		for (Event event : events) {
+			HashCode key = getKey(event);
+			if (key != null && recentKeys.asMap().putIfAbsent(key, Boolean.TRUE) != null) {
+				duplicates++;
+			} else {
+				unique.add(event);
+			}
+		}
+		KamonConstants.DEDUP_CHECKED_EVENTS_BUFFERED_COUNTER.increment(events.size());
+		KamonConstants.DUPLICATE_EVENTS_BUFFERED_COUNTER.increment(duplicates);
+		return unique;
+	}
+
+	private static HashCode getKey(Event event) {
+		if (event.getTaskId() == null || event.getTime() == null) {
+			return null;
+		}
+		Instant time = event.getTime().toInstant();
+		Hasher hasher = KEY_HASH.newHasher();
+		putString(hasher, event.getTaskId());
+		putString(hasher, event.getClass().getSimpleName());
+		hasher.putLong(time.getEpochSecond()).putInt(time.getNano());
+		putString(hasher, event.getName());
+		putString(hasher, event.getParentId());
+		putMap(hasher, event.getStrings());
+		putMap(hasher, event.getText());
+		putMap(hasher, event.getContext());
+		putMap(hasher, event.getMetrics());
+		return hasher.hash();
+	}
+
+	// length prefixed, so the boundaries between fields are part of the key
+	private static void putString(Hasher hasher, String value) {
+		if (value == null) {
+			hasher.putInt(-1);
+		} else {
+			hasher.putInt(value.length()).putUnencodedChars(value);
+		}
+	}
+
+	// by sorted keys, as equal maps may iterate in different orders
+	private static void putMap(Hasher hasher, Map<String, ?> map) {
+		if (map == null) {
+			hasher.putInt(-1);
+			return;
+		}
+		hasher.putInt(map.size());
+		List<String> keys = new ArrayList<>(map.keySet());
+		if (keys.size() > 1) {
+			Collections.sort(keys);
+		}
+		for (String key : keys) {
+			putString(hasher, key);
+			Object value = map.get(key);
+			putString(hasher, value == null ? null : value.toString());
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package com.datorama.oss.timbermill.common.jfr;
+
+import jdk.jfr.*;
+
+@Name("timbermill.BatchDrain")
+@Label("Batch Drain")
+@Description("An indexing batch of one env, from its events to their tasks in storage")
+public class BatchDrainEvent extends TimbermillEvent {
+
+	@Label("Env")
+	String env;
+
+	@Label("Events")
+	int events;
+
+	@Label("Missing Parents")
+	int missingParents;
+
+	@Label("Events Bytes")
+	@DataAmount
+	long eventsBytes;
+
+	@Label("Index Requests Bytes")
+	@DataAmount
+	long indexRequestsBytes;
+
+	@Override
+	void setFields(Object[] fields) {
+		env = (String) fields[0];
+		events = intField(fields[1]);
+		missingParents = intField(fields[2]);
+		eventsBytes = longField(fields[3]);
+		indexRequestsBytes = longField(fields[4]);
+	}
+}
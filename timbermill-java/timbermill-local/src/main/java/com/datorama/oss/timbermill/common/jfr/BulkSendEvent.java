@@ -0,0 +1,34 @@
+package com.datorama.oss.timbermill.common.jfr;
+
+import jdk.jfr.*;
+
+@Name("timbermill.BulkSend")
+@Label("Bulk Send")
+@Description("A try of sending a bulk request to storage")
+public class BulkSendEvent extends TimbermillEvent {
+
+	@Label("Bulk Number")
+	int bulkNum;
+
+	@Label("Try")
+	int attempt;
+
+	@Label("Actions")
+	int actions;
+
+	@Label("Bytes")
+	@DataAmount
+	long bytes;
+
+	@Label("Failed")
+	boolean failed;
+
+	@Override
+	void setFields(Object[] fields) {
+		bulkNum = intField(fields[0]);
+		attempt = intField(fields[1]);
+		actions = intField(fields[2]);
+		bytes = longField(fields[3]);
+		failed = (boolean) fields[4];
+	}
+}
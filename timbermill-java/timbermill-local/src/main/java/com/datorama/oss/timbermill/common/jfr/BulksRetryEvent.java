@@ -0,0 +1,25 @@
+package com.datorama.oss.timbermill.common.jfr;
+
+import jdk.jfr.*;
+
+@Name("timbermill.BulksRetry")
+@Label("Bulks Retry")
+@Description("Sending the failed bulk requests fetched from persistence again")
+public class BulksRetryEvent extends TimbermillEvent {
+
+	@Label("Bulks")
+	int bulks;
+
+	@Label("Actions")
+	int actions;
+
+	@Label("Successful")
+	int successful;
+
+	@Override
+	void setFields(Object[] fields) {
+		bulks = intField(fields[0]);
+		actions = intField(fields[1]);
+		successful = intField(fields[2]);
+	}
+}
@@ -0,0 +1,17 @@
+package com.datorama.oss.timbermill.common.jfr;
+
+import jdk.jfr.*;
+
+@Name("timbermill.CacheLockWait")
+@Label("Cache Lock Wait")
+@Description("Waiting for the cache lock before reading and writing the batch tasks")
+public class CacheLockWaitEvent extends TimbermillEvent {
+
+	@Label("Env")
+	String env;
+
+	@Override
+	void setFields(Object[] fields) {
+		env = (String) fields[0];
+	}
+}
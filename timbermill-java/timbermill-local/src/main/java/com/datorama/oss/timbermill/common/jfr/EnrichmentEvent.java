@@ -0,0 +1,21 @@
+package com.datorama.oss.timbermill.common.jfr;
+
+import jdk.jfr.*;
+
+@Name("timbermill.Enrichment")
+@Label("Enrichment")
+@Description("Enriching the start events of a batch from their parents and building its tasks")
+public class EnrichmentEvent extends TimbermillEvent {
+
+	@Label("Env")
+	String env;
+
+	@Label("Tasks")
+	int tasks;
+
+	@Override
+	void setFields(Object[] fields) {
+		env = (String) fields[0];
+		tasks = intField(fields[1]);
+	}
+}
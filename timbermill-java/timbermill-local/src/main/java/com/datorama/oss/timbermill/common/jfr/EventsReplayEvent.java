@@ -0,0 +1,26 @@
+package com.datorama.oss.timbermill.common.jfr;
+
+import jdk.jfr.*;
+
+@Name("timbermill.EventsReplay")
+@Label("Events Replay")
+@Description("Replaying overflowed events from persistence to the events queue")
+public class EventsReplayEvent extends TimbermillEvent {
+
+	@Label("Events")
+	int events;
+
+	@Label("Admitted")
+	int admitted;
+
+	@Label("Bytes")
+	@DataAmount
+	long bytes;
+
+	@Override
+	void setFields(Object[] fields) {
+		events = intField(fields[0]);
+		admitted = intField(fields[1]);
+		bytes = longField(fields[2]);
+	}
+}
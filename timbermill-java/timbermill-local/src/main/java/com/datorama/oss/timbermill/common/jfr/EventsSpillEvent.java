@@ -0,0 +1,22 @@
+package com.datorama.oss.timbermill.common.jfr;
+
+import jdk.jfr.*;
+
+@Name("timbermill.EventsSpill")
+@Label("Events Spill")
+@Description("Spilling the overflowed queue to persistence")
+public class EventsSpillEvent extends TimbermillEvent {
+
+	@Label("Events")
+	int events;
+
+	@Label("Bytes")
+	@DataAmount
+	long bytes;
+
+	@Override
+	void setFields(Object[] fields) {
+		events = intField(fields[0]);
+		bytes = longField(fields[1]);
+	}
+}
@@ -0,0 +1,33 @@
+package com.datorama.oss.timbermill.common.jfr;
+
+// only loaded when Flight Recorder is available
+final class JfrPipelineEvents {
+
+	private JfrPipelineEvents() {
+	}
+
+	static PipelineEvent create(PipelineEventType type) {
+		switch (type) {
+			case BATCH_DRAIN:
+				return new BatchDrainEvent();
+			case PLUGINS_APPLY:
+				return new PluginsApplyEvent();
+			case CACHE_LOCK_WAIT:
+				return new CacheLockWaitEvent();
+			case PARENTS_FETCH:
+				return new ParentsFetchEvent();
+			case ENRICHMENT:
+				return new EnrichmentEvent();
+			case BULK_SEND:
+				return new BulkSendEvent();
+			case BULKS_RETRY:
+				return new BulksRetryEvent();
+			case EVENTS_SPILL:
+				return new EventsSpillEvent();
+			case EVENTS_REPLAY:
+				return new EventsReplayEvent();
+			default:
+				throw new IllegalArgumentException("Unknown pipeline event type " + type);
+		}
+	}
+}
@@ -0,0 +1,23 @@
+package com.datorama.oss.timbermill.common.jfr;
+
+public final class JfrSupport {
+
+	// Flight Recorder exists from JDK 8u262 and 11, on older JVMs the events are not created
+	private static final boolean AVAILABLE = isJfrPresent();
+
+	private JfrSupport() {
+	}
+
+	public static boolean isAvailable() {
+		return AVAILABLE;
+	}
+
+	private static boolean isJfrPresent() {
+		try {
+			Class.forName("jdk.jfr.Event", false, JfrSupport.class.getClassLoader());
+			return true;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+}
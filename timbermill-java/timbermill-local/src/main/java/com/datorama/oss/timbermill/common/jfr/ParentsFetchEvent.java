@@ -0,0 +1,25 @@
+package com.datorama.oss.timbermill.common.jfr;
+
+import jdk.jfr.*;
+
+@Name("timbermill.ParentsFetch")
+@Label("Parents Fetch")
+@Description("Fetching the parents that are not in the batch from the cache and storage")
+public class ParentsFetchEvent extends TimbermillEvent {
+
+	@Label("Env")
+	String env;
+
+	@Label("Requested")
+	int requested;
+
+	@Label("Fetched")
+	int fetched;
+
+	@Override
+	void setFields(Object[] fields) {
+		env = (String) fields[0];
+		requested = intField(fields[1]);
+		fetched = intField(fields[2]);
+	}
+}
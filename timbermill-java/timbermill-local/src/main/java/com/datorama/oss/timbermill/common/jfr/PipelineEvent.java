@@ -0,0 +1,13 @@
+package com.datorama.oss.timbermill.common.jfr;
+
+/**
+ * A started Flight Recorder event of the indexing pipeline, as seen by the code that records it.
+ * It does not extend jdk.jfr.Event, so referencing it is safe on JVMs without Flight Recorder.
+ */
+public interface PipelineEvent {
+
+	/**
+	 * Ends the event and commits it with the given field values, in the order its type declares them, when its type is enabled.
+	 */
+	void finish(Object... fields);
+}
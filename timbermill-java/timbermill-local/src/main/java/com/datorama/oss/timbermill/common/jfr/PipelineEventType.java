@@ -0,0 +1,14 @@
+package com.datorama.oss.timbermill.common.jfr;
+
+// the fields each type is finished with
+public enum PipelineEventType {
+	BATCH_DRAIN, // env, events, missing parents, events bytes, index requests bytes
+	PLUGINS_APPLY, // env, events
+	CACHE_LOCK_WAIT, // env
+	PARENTS_FETCH, // env, requested, fetched
+	ENRICHMENT, // env, tasks
+	BULK_SEND, // bulk number, try, actions, bytes, failed
+	BULKS_RETRY, // bulks, actions, successful
+	EVENTS_SPILL, // events, bytes
+	EVENTS_REPLAY // events, admitted, bytes
+}
@@ -0,0 +1,20 @@
+package com.datorama.oss.timbermill.common.jfr;
+
+import java.util.function.Function;
+
+/**
+ * Starts the pipeline events. The implementation is chosen once: on JVMs without Flight Recorder the events are a no-op
+ * and the jdk.jfr.Event subclasses are never loaded.
+ */
+public final class PipelineEvents {
+
+	private static final PipelineEvent NO_OP = fields -> {};
+	private static final Function<PipelineEventType, PipelineEvent> FACTORY = JfrSupport.isAvailable() ? JfrPipelineEvents::create : type -> NO_OP;
+
+	private PipelineEvents() {
+	}
+
+	public static PipelineEvent start(PipelineEventType type) {
+		return FACTORY.apply(type);
+	}
+}
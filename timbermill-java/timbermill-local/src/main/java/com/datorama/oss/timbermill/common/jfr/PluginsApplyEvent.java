@@ -0,0 +1,21 @@
+package com.datorama.oss.timbermill.common.jfr;
+
+import jdk.jfr.*;
+
+@Name("timbermill.PluginsApply")
+@Label("Plugins Apply")
+@Description("Applying the task log plugins to the events of a batch")
+public class PluginsApplyEvent extends TimbermillEvent {
+
+	@Label("Env")
+	String env;
+
+	@Label("Events")
+	int events;
+
+	@Override
+	void setFields(Object[] fields) {
+		env = (String) fields[0];
+		events = intField(fields[1]);
+	}
+}
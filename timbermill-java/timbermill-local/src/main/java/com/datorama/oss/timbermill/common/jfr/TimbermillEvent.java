@@ -0,0 +1,36 @@
+package com.datorama.oss.timbermill.common.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+
+/**
+ * Flight Recorder events of the indexing pipeline, so a recording shows which env, batch and stage was running next to GC and I/O events.
+ * Events are begun when created by PipelineEvents.start(...) and ended with finish(...), which only sets the fields and commits
+ * when the event type is enabled and over its threshold. While nothing is recording, a start and finish cost about as much as reading the clock.
+ */
+@Category("Timbermill")
+public abstract class TimbermillEvent extends Event implements PipelineEvent {
+
+	TimbermillEvent() {
+		begin();
+	}
+
+	@Override
+	public final void finish(Object... fields) {
+		end();
+		if (shouldCommit()) {
+			setFields(fields);
+			commit();
+		}
+	}
+
+	abstract void setFields(Object[] fields);
+
+	static int intField(Object field) {
+		return ((Number) field).intValue();
+	}
+
+	static long longField(Object field) {
+		return ((Number) field).longValue();
+	}
+}
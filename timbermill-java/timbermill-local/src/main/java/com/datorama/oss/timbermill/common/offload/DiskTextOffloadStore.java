@@ -0,0 +1,113 @@
+package com.datorama.oss.timbermill.common.offload;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Stores the texts as gzipped files in a directory. Files that were not written or referenced again for the retention period are deleted.
+ * The directory is only shared by servers that mount the same volume, otherwise a text can only be fetched from the server that offloaded it.
+ */
+public class DiskTextOffloadStore extends TextOffloadStore {
+
+	private static final Logger LOG = LoggerFactory.getLogger(DiskTextOffloadStore.class);
+	private static final String FILE_SUFFIX = ".gz";
+	private static final int CLEANUP_INTERVAL_HOURS = 6;
+
+	private final Path root;
+	private final long retentionMillis;
+	private final ScheduledExecutorService cleaner;
+
+	public DiskTextOffloadStore(String locationInDisk, long retentionDays) {
+		if (locationInDisk == null) {
+			throw new RuntimeException("Must enclose a location in disk for offloaded texts");
+		}
+		root = Paths.get(locationInDisk);
+		try {
+			Files.createDirectories(root);
+		} catch (IOException e) {
+			throw new RuntimeException("Failed creating offloaded texts directory " + locationInDisk, e);
+		}
+		retentionMillis = TimeUnit.DAYS.toMillis(Math.max(retentionDays, 1));
+		cleaner = Executors.newSingleThreadScheduledExecutor();
+		cleaner.scheduleWithFixedDelay(this::deleteExpired, CLEANUP_INTERVAL_HOURS, CLEANUP_INTERVAL_HOURS, TimeUnit.HOURS);
+	}
+
+	@Override
+	public String put(String text) throws IOException {
+		String hash = getHash(text);
+		Path path = getPath(hash);
+		if (Files.exists(path)) {
+			Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+			return hash;
+		}
+		Files.createDirectories(path.getParent());
+		Path tempPath = Files.createTempFile(path.getParent(), hash, ".tmp");
+		try {
+			try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tempPath))) {
+				out.write(text.getBytes(StandardCharsets.UTF_8));
+			}
+			Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tempPath);
+		}
+		return hash;
+	}
+
+	@Override
+	public String get(String hash) throws IOException {
+		if (!isValidHash(hash)) {
+			return null;
+		}
+		Path path = getPath(hash);
+		if (!Files.exists(path)) {
+			return null;
+		}
+		try (InputStream in = new GZIPInputStream(Files.newInputStream(path))) {
+			return IOUtils.toString(in, StandardCharsets.UTF_8);
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public void close() {
+		cleaner.shutdown();
+	}
+
+	void deleteExpired() {
+		long minLastModified = System.currentTimeMillis() - retentionMillis;
+		int deleted = 0;
+		try (Stream<Path> files = Files.walk(root)) {
+			for (Path path : (Iterable<Path>) files::iterator) {
+				if (Files.isRegularFile(path) && Files.getLastModifiedTime(path).toMillis() < minLastModified) {
+					Files.deleteIfExists(path);
+					deleted++;
+				}
+			}
+		} catch (IOException | UncheckedIOException e) {
+			LOG.warn("Failed deleting expired offloaded texts from " + root, e);
+		}
+		if (deleted > 0) {
+			LOG.info("Deleted {} expired offloaded texts", deleted);
+		}
+	}
+
+	private Path getPath(String hash) {
+		return root.resolve(hash.substring(0, 2)).resolve(hash + FILE_SUFFIX);
+	}
+}
@@ -0,0 +1,68 @@
+package com.datorama.oss.timbermill.common.offload;
+
+import com.datorama.oss.timbermill.common.redis.RedisService;
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Stores the texts gzipped in Redis, so every server of a cluster can serve a text whichever server offloaded it.
+ * A text expires after the retention period unless it is offloaded again.
+ */
+public class RedisTextOffloadStore extends TextOffloadStore {
+
+	private static final String KEY_PREFIX = "offloaded_text#";
+
+	private final RedisService redisService;
+	private final int ttlSeconds;
+
+	public RedisTextOffloadStore(RedisService redisService, long retentionDays) {
+		if (redisService == null) {
+			throw new RuntimeException("Must enclose a Redis service for offloading texts to Redis");
+		}
+		this.redisService = redisService;
+		this.ttlSeconds = (int) Math.min(TimeUnit.DAYS.toSeconds(Math.max(retentionDays, 1)), Integer.MAX_VALUE);
+	}
+
+	@Override
+	public String put(String text) throws IOException {
+		String hash = getHash(text);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (OutputStream out = new GZIPOutputStream(bytes)) {
+			out.write(text.getBytes(StandardCharsets.UTF_8));
+		}
+		if (!redisService.pushToRedis(Collections.singletonMap(KEY_PREFIX + hash, bytes.toByteArray()), ttlSeconds)) {
+			throw new IOException("Failed storing offloaded text " + hash + " in Redis");
+		}
+		return hash;
+	}
+
+	@Override
+	public String get(String hash) throws IOException {
+		if (!isValidHash(hash)) {
+			return null;
+		}
+		Map<String, byte[]> texts = redisService.getFromRedis(Collections.singleton(KEY_PREFIX + hash));
+		byte[] bytes = texts.get(KEY_PREFIX + hash);
+		if (bytes == null) {
+			return null;
+		}
+		try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+			return IOUtils.toString(in, StandardCharsets.UTF_8);
+		}
+	}
+
+	@Override
+	public void close() {
+	}
+}
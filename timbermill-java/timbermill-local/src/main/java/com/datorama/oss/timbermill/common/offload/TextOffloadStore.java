@@ -0,0 +1,31 @@
+package com.datorama.oss.timbermill.common.offload;
+
+import com.google.common.hash.Hashing;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+
+/**
+ * Content addressed store of offloaded texts, a text is kept under its sha256 so identical texts are stored once.
+ */
+public abstract class TextOffloadStore {
+
+	private static final Pattern HASH_PATTERN = Pattern.compile("[0-9a-f]{64}");
+
+	// returns the hash the text can be fetched by
+	public abstract String put(String text) throws IOException;
+
+	// returns null if no text is stored under the given hash
+	public abstract String get(String hash) throws IOException;
+
+	public abstract void close();
+
+	static String getHash(String text) {
+		return Hashing.sha256().hashString(text, StandardCharsets.UTF_8).toString();
+	}
+
+	static boolean isValidHash(String hash) {
+		return hash != null && HASH_PATTERN.matcher(hash).matches();
+	}
+}
@@ -0,0 +1,129 @@
+package com.datorama.oss.timbermill.common.offload;
+
+import com.datorama.oss.timbermill.common.KamonConstants;
+import com.datorama.oss.timbermill.common.redis.RedisService;
+import com.datorama.oss.timbermill.common.stats.BufferedKamon;
+import com.datorama.oss.timbermill.unit.Task;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Moves text values longer than the threshold to a {@link TextOffloadStore}, the task keeps a preview followed by a reference to the full text.
+ * The disk strategy keeps the texts on the server that offloaded them, unless its location is a volume all the servers mount,
+ * the redis strategy lets any server of a cluster serve them.
+ */
+public class TextOffloader {
+
+	private static final Logger LOG = LoggerFactory.getLogger(TextOffloader.class);
+	private static final String REFERENCE_PREFIX = "\n[offloaded:";
+	private static final Pattern REFERENCE_PATTERN = Pattern.compile("\\[offloaded:([0-9a-f]{64})]$");
+	public static final String DISK_STRATEGY = "disk";
+	public static final String REDIS_STRATEGY = "redis";
+	private static final Map<String, EnvMetrics> ENVS_METRICS = new ConcurrentHashMap<>();
+
+	private final int thresholdChars;
+	private final int previewChars;
+	private final TextOffloadStore store;
+
+	// a non positive threshold disables offloading
+	public TextOffloader(int thresholdChars, int previewChars, TextOffloadStore store) {
+		if (thresholdChars > 0 && store == null) {
+			throw new RuntimeException("Must enclose a store for offloading texts");
+		}
+		this.thresholdChars = thresholdChars;
+		this.previewChars = Math.max(0, Math.min(previewChars, thresholdChars));
+		this.store = store;
+	}
+
+	public static TextOffloader create(int thresholdChars, int previewChars, String locationInDisk, long retentionDays) {
+		return create(thresholdChars, previewChars, DISK_STRATEGY, locationInDisk, retentionDays, null);
+	}
+
+	public static TextOffloader create(int thresholdChars, int previewChars, String strategy, String locationInDisk, long retentionDays, RedisService redisService) {
+		if (thresholdChars <= 0) {
+			return new TextOffloader(0, 0, null);
+		}
+		TextOffloadStore store;
+		if (REDIS_STRATEGY.equalsIgnoreCase(strategy)) {
+			store = new RedisTextOffloadStore(redisService, retentionDays);
+		}
+		else if (DISK_STRATEGY.equalsIgnoreCase(strategy)) {
+			store = new DiskTextOffloadStore(locationInDisk, retentionDays);
+		}
+		else {
+			throw new RuntimeException("Unsupported text offload strategy " + strategy);
+		}
+		return new TextOffloader(thresholdChars, previewChars, store);
+	}
+
+	public void apply(String env, Map<String, Task> tasksMap) {
+		if (thresholdChars <= 0) {
+			return;
+		}
+		EnvMetrics metrics = ENVS_METRICS.computeIfAbsent(env, EnvMetrics::new);
+		for (Map.Entry<String, Task> entry : tasksMap.entrySet()) {
+			Map<String, String> text = entry.getValue().getText();
+			if (text == null) {
+				continue;
+			}
+			for (Map.Entry<String, String> field : text.entrySet()) {
+				String value = field.getValue();
+				if (value == null || value.length() <= thresholdChars) {
+					continue;
+				}
+				try {
+					String hash = store.put(value);
+					field.setValue(value.substring(0, getPreviewEnd(value)) + REFERENCE_PREFIX + hash + "]");
+					metrics.offloadedTextsCounter.increment();
+					metrics.offloadedTextCharsCounter.increment(value.length());
+				} catch (IOException | RuntimeException e) {
+					LOG.warn("Failed offloading text " + field.getKey() + " of task " + entry.getKey() + ", keeping it in the task", e);
+				}
+			}
+		}
+	}
+
+	// never ends the preview between the two chars of a surrogate pair
+	private int getPreviewEnd(String value) {
+		if (previewChars > 0 && Character.isHighSurrogate(value.charAt(previewChars - 1))) {
+			return previewChars - 1;
+		}
+		return previewChars;
+	}
+
+	public String getText(String hash) throws IOException {
+		return store == null ? null : store.get(hash);
+	}
+
+	public void close() {
+		if (store != null) {
+			store.close();
+		}
+	}
+
+	// returns null if the value was not offloaded
+	public static String getReference(String value) {
+		if (value == null) {
+			return null;
+		}
+		Matcher matcher = REFERENCE_PATTERN.matcher(value);
+		return matcher.find() ? matcher.group(1) : null;
+	}
+
+	// the Kamon instruments of an env, tagged with it once
+	private static class EnvMetrics {
+		private final BufferedKamon.Counter offloadedTextsCounter;
+		private final BufferedKamon.Counter offloadedTextCharsCounter;
+
+		EnvMetrics(String env) {
+			offloadedTextsCounter = BufferedKamon.counter(KamonConstants.OFFLOADED_TEXTS_COUNTER.withTag("env", env));
+			offloadedTextCharsCounter = BufferedKamon.counter(KamonConstants.OFFLOADED_TEXT_CHARS_COUNTER.withTag("env", env));
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package com.datorama.oss.timbermill.common.persistence;
+
+import com.datorama.oss.timbermill.common.ByteBoundedEventsQueue;
+import com.datorama.oss.timbermill.common.ElasticsearchUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Owns the queues of events that wait for persistence, the overflowed queue of events that found the events queue full and the deferred
+ * queue of events that were over the rate limit, and spills both on its own thread. The thread spills every THREAD_SLEEP, or as soon as
+ * a full queue asks for it, so the threads that push events never write to persistence themselves.
+ * Without persistence nothing is spilled and the thread only reports the queues metrics.
+ */
+public class EventsSpiller {
+
+	private static final Logger LOG = LoggerFactory.getLogger(EventsSpiller.class);
+
+	private final PersistenceHandler persistenceHandler;
+	private final ByteBoundedEventsQueue eventsQueue;
+	private final ByteBoundedEventsQueue overflowedQueue;
+	private final ByteBoundedEventsQueue deferredQueue;
+	private final Thread thread;
+	private final Object roundsLock = new Object();
+	private long rounds;
+	private boolean spillRequested;
+	private volatile boolean keepRunning = true;
+
+	public EventsSpiller(PersistenceHandler persistenceHandler, ByteBoundedEventsQueue eventsQueue, ByteBoundedEventsQueue overflowedQueue,
+						 ByteBoundedEventsQueue deferredQueue) {
+		this.persistenceHandler = persistenceHandler;
+		this.eventsQueue = eventsQueue;
+		this.overflowedQueue = overflowedQueue;
+		this.deferredQueue = deferredQueue;
+		this.thread = new Thread(this::run, "timbermill-queue-spiller");
+	}
+
+	public void start() {
+		thread.start();
+	}
+
+	// stops the thread after its current round, what is left in the queues is spilled by the caller
+	public void close() {
+		keepRunning = false;
+		synchronized (roundsLock) {
+			roundsLock.notifyAll();
+		}
+		try {
+			thread.join(ElasticsearchUtil.THREAD_SLEEP);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public boolean isAlive() {
+		return thread.isAlive();
+	}
+
+	public boolean hasPersistence() {
+		return persistenceHandler != null;
+	}
+
+	public void spill() {
+		if (persistenceHandler != null) {
+			persistenceHandler.spillOverflownEvents(overflowedQueue);
+			persistenceHandler.spillDeferredEvents(deferredQueue);
+		}
+	}
+
+	// wakes the thread up and waits up to maxWaitMillis for it to finish a round, returns false if it did not
+	public boolean awaitSpill(long maxWaitMillis) {
+		if (persistenceHandler == null || !keepRunning) {
+			return false;
+		}
+		long deadline = System.currentTimeMillis() + maxWaitMillis;
+		synchronized (roundsLock) {
+			long round = rounds;
+			spillRequested = true;
+			roundsLock.notifyAll();
+			while (rounds == round && keepRunning) {
+				long waitMillis = deadline - System.currentTimeMillis();
+				if (waitMillis <= 0) {
+					return false;
+				}
+				try {
+					roundsLock.wait(waitMillis);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+			return rounds != round;
+		}
+	}
+
+	public ByteBoundedEventsQueue getOverflowedQueue() {
+		return overflowedQueue;
+	}
+
+	public ByteBoundedEventsQueue getDeferredQueue() {
+		return deferredQueue;
+	}
+
+	private void run() {
+		LOG.info("Starting Queue Spiller Thread");
+		while (keepRunning) {
+			try {
+				spill();
+			} catch (RuntimeException e) {
+				LOG.error("Spilling events to persistence has failed", e);
+			}
+			eventsQueue.reportMetrics();
+			overflowedQueue.reportMetrics();
+			deferredQueue.reportMetrics();
+			synchronized (roundsLock) {
+				rounds++;
+				roundsLock.notifyAll();
+				if (!spillRequested && keepRunning) {
+					try {
+						roundsLock.wait(ElasticsearchUtil.THREAD_SLEEP);
+					} catch (InterruptedException e) {
+						LOG.error("InterruptedException was thrown from Queue Spiller Thread:", e);
+					}
+				}
+				spillRequested = false;
+			}
+		}
+	}
+}
@@ -11,6 +11,10 @@ import org.slf4j.LoggerFactory;
 
 import com.datorama.oss.timbermill.Bulker;
 import com.datorama.oss.timbermill.common.KamonConstants;
+import com.datorama.oss.timbermill.common.jfr.PipelineEvent;
+import com.datorama.oss.timbermill.common.jfr.PipelineEventType;
+import com.datorama.oss.timbermill.common.jfr.PipelineEvents;
+import com.datorama.oss.timbermill.common.stats.PipelineStats;
 import com.google.common.collect.Lists;
 
 public class IndexRetryManager {
@@ -41,11 +45,23 @@ public class IndexRetryManager {
 					LOG.debug("Bulk #{} Started bulk try # {}/{}", bulkNum, tryNum, numOfElasticSearchActionsTries);
 				}
 				LOG.debug("Bulk #{} Batch of {} index requests sent to Elasticsearch. Batch size: {} bytes", bulkNum, dbBulkRequest.numOfActions(), dbBulkRequest.estimatedSize());
-				BulkResponse response = bulker.bulk(dbBulkRequest);
+				PipelineStats.BULK_ACTIONS_HISTOGRAM.record(dbBulkRequest.numOfActions());
+				long startNanos = System.nanoTime();
+				PipelineEvent bulkSendEvent = PipelineEvents.start(PipelineEventType.BULK_SEND);
+				BulkResponse response;
+				try {
+					response = bulker.bulk(dbBulkRequest);
+				} catch (Throwable t) {
+					finishBulkSendEvent(bulkSendEvent, dbBulkRequest, bulkNum, tryNum, true);
+					throw t;
+				}
+				finishBulkSendEvent(bulkSendEvent, dbBulkRequest, bulkNum, tryNum, response.hasFailures());
+				PipelineStats.BULK_DURATION_TIMER.recordNanosSince(startNanos);
 				resList.add(response);
 				if (!response.hasFailures()) {
 					return successfulResponseHandling(dbBulkRequest, bulkNum, resList, tryNum, response);
 				} else {
+					PipelineStats.BULK_FAILED_TRIES_COUNTER.increment();
 					dbBulkRequest = failureResponseHandling(dbBulkRequest, bulkNum, tryNum, response);
 					if (dbBulkRequest.numOfActions() < 1) {
 						LOG.info("Bulk #{} Started bulk try # {}/{} all failed response were blacklisted, no further actions will be sent.", bulkNum, tryNum, numOfElasticSearchActionsTries);
@@ -53,6 +69,7 @@ public class IndexRetryManager {
 					}
 				}
 			} catch (Throwable t) {
+				PipelineStats.BULK_FAILED_TRIES_COUNTER.increment();
 				LOG.warn("Bulk #{} Try number #{}/{} has failed, failure message: {}.", bulkNum, tryNum, numOfElasticSearchActionsTries, t.getMessage());
 			}
 		}
@@ -62,6 +79,10 @@ public class IndexRetryManager {
 		return resList;
 	}
 
+	private static void finishBulkSendEvent(PipelineEvent bulkSendEvent, DbBulkRequest dbBulkRequest, int bulkNum, int tryNum, boolean failed) {
+		bulkSendEvent.finish(bulkNum, tryNum, dbBulkRequest.numOfActions(), dbBulkRequest.estimatedSize(), failed);
+	}
+
 	private DbBulkRequest failureResponseHandling(DbBulkRequest dbBulkRequest, int bulkNum, int tryNum, BulkResponse response) {
 		dbBulkRequest = extractFailedRequestsFromBulk(dbBulkRequest, response);
 		String failureMessage = response.buildFailureMessage();
@@ -88,6 +109,7 @@ public class IndexRetryManager {
 	private void tryPersistBulkRequest(DbBulkRequest dbBulkRequest, int bulkNum) {
 		if (hasPersistence()) {
 			if (dbBulkRequest.getTimesFetched() < maxBulkIndexFetches) {
+				PipelineStats.BULKS_PERSISTED_COUNTER.increment();
 				persistenceHandler.persistBulkRequest(dbBulkRequest, bulkNum);
 			} else {
 				LOG.error("Bulk #{} Requests will not be indexed because it was fetched maximum times ({}).", bulkNum, maxBulkIndexFetches);
@@ -1,7 +1,11 @@
 package com.datorama.oss.timbermill.common.persistence;
 
 import com.datorama.oss.timbermill.common.KamonConstants;
+import com.datorama.oss.timbermill.common.jfr.PipelineEvent;
+import com.datorama.oss.timbermill.common.jfr.PipelineEventType;
+import com.datorama.oss.timbermill.common.jfr.PipelineEvents;
 import com.datorama.oss.timbermill.common.redis.RedisService;
+import com.datorama.oss.timbermill.common.stats.BufferedKamon;
 import com.datorama.oss.timbermill.unit.Event;
 import com.google.common.collect.Lists;
 
@@ -10,6 +14,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
 
 public abstract class PersistenceHandler {
 
@@ -31,10 +36,15 @@ public abstract class PersistenceHandler {
 
 	public abstract List<Event> fetchAndDeleteOverflowedEvents();
 
+	public abstract List<Event> fetchAndDeleteDeferredEvents();
+
 	public abstract void persistBulkRequest(DbBulkRequest dbBulkRequest, int bulkNum);
 
 	public abstract void persistEvents(ArrayList<Event> events);
 
+	// rate limited events are kept apart from the overflowed ones, they do not show the server is overloaded
+	public abstract void persistDeferredEvents(ArrayList<Event> events);
+
 	public abstract boolean hasFailedBulks();
 
 	public abstract boolean isCreatedSuccessfully();
@@ -43,6 +53,8 @@ public abstract class PersistenceHandler {
 
 	public abstract long overFlowedEventsListsAmount();
 
+	public abstract long deferredEventsListsAmount();
+
 	public abstract void close();
 
 	public abstract void reset();
@@ -67,11 +79,23 @@ public abstract class PersistenceHandler {
 	}
 
 	public void spillOverflownEvents(BlockingQueue<Event> overflowedQueue) {
-		while (!overflowedQueue.isEmpty()) {
+		spillEvents(overflowedQueue, KamonConstants.OVERFLOWED_QUEUE_BUFFERED_SAMPLER, this::persistEvents);
+	}
+
+	public void spillDeferredEvents(BlockingQueue<Event> deferredQueue) {
+		spillEvents(deferredQueue, KamonConstants.DEFERRED_QUEUE_BUFFERED_SAMPLER, this::persistDeferredEvents);
+	}
+
+	private void spillEvents(BlockingQueue<Event> queue, BufferedKamon.RangeSampler queueSampler, Consumer<ArrayList<Event>> persister) {
+		while (!queue.isEmpty()) {
+			PipelineEvent spillEvent = PipelineEvents.start(PipelineEventType.EVENTS_SPILL);
 			ArrayList<Event> events = Lists.newArrayList();
-			overflowedQueue.drainTo(events, 100000);
-			KamonConstants.MESSAGES_IN_OVERFLOWED_QUEUE_RANGE_SAMPLER.withoutTags().decrement(events.size());
-			persistEvents(events);
+			queue.drainTo(events, 100000);
+			long eventsBytes = events.stream().mapToLong(Event::estimatedSize).sum();
+			queueSampler.decrement(events.size());
+			KamonConstants.SPILLED_EVENTS_BYTES_COUNTER.withoutTags().increment(eventsBytes);
+			persister.accept(events);
+			spillEvent.finish(events.size(), eventsBytes);
 		}
 	}
 }
@@ -14,10 +14,13 @@ public class RedisPersistenceHandler extends PersistenceHandler {
     private static final Logger LOG = LoggerFactory.getLogger(RedisPersistenceHandler.class);
     private static final String FAILED_BULKS_QUEUE_NAME = "failed_bulks_queue";
     private static final String OVERFLOWED_EVENTS_QUEUE_NAME = "overflowed_events_queue";
+    private static final String DEFERRED_EVENTS_QUEUE_NAME = "deferred_events_queue";
     private static final String FAILED_BULK_PREFIX = "failed_bulk#";
     private static final String OVERFLOW_EVENTS_PREFIX = "overflow_events#";
+    private static final String DEFERRED_EVENTS_PREFIX = "deferred_events#";
     private static final String FAILED_BULKS_LOCK = "failed_bulks_lock";
     private static final String OVERFLOWED_EVENTS_LOCK = "overflowed_events_lock";
+    private static final String DEFERRED_EVENTS_LOCK = "deferred_events_lock";
 
     static final String REDIS_SERVICE = "redis_service";
     static final String TTL = "ttl";
@@ -52,16 +55,12 @@ public class RedisPersistenceHandler extends PersistenceHandler {
 
     @Override
     public List<Event> fetchAndDeleteOverflowedEvents() {
-        JedisLock lock;
-        if ((lock = redisService.lockIfUnlocked(OVERFLOWED_EVENTS_LOCK)) != null) {
-            try {
-                return fetchAndDeleteOverflowedEventsLogic();
-            } finally {
-                redisService.release(lock);
-            }
-        } else {
-            return new ArrayList<>();
-        }
+        return fetchAndDeleteEvents(OVERFLOWED_EVENTS_LOCK, OVERFLOWED_EVENTS_QUEUE_NAME);
+    }
+
+    @Override
+    public List<Event> fetchAndDeleteDeferredEvents() {
+        return fetchAndDeleteEvents(DEFERRED_EVENTS_LOCK, DEFERRED_EVENTS_QUEUE_NAME);
     }
 
     @Override
@@ -71,7 +70,12 @@ public class RedisPersistenceHandler extends PersistenceHandler {
 
     @Override
     public void persistEvents(ArrayList<Event> events) {
-        persistEvents(events, ttl);
+        persistEvents(events, OVERFLOWED_EVENTS_QUEUE_NAME, OVERFLOW_EVENTS_PREFIX);
+    }
+
+    @Override
+    public void persistDeferredEvents(ArrayList<Event> events) {
+        persistEvents(events, DEFERRED_EVENTS_QUEUE_NAME, DEFERRED_EVENTS_PREFIX);
     }
 
     @Override
@@ -100,13 +104,19 @@ public class RedisPersistenceHandler extends PersistenceHandler {
         return redisService.getListLength(OVERFLOWED_EVENTS_QUEUE_NAME);
     }
 
+    @Override
+    public long deferredEventsListsAmount() {
+        // including expired deferred events
+        return redisService.getListLength(DEFERRED_EVENTS_QUEUE_NAME);
+    }
+
     @Override
     public void close() {
     }
 
     @Override
     public void reset() {
-        List<String> queues = Arrays.asList(OVERFLOWED_EVENTS_QUEUE_NAME, FAILED_BULKS_QUEUE_NAME);
+        List<String> queues = Arrays.asList(OVERFLOWED_EVENTS_QUEUE_NAME, DEFERRED_EVENTS_QUEUE_NAME, FAILED_BULKS_QUEUE_NAME);
         for (String queue : queues) {
             List<String> ids;
             do {
@@ -134,18 +144,31 @@ public class RedisPersistenceHandler extends PersistenceHandler {
         return new ArrayList<>(failedBulkRequests.values());
     }
 
-    private List<Event> fetchAndDeleteOverflowedEventsLogic() {
-        LOG.info("Fetching overflowed events from Redis.");
-        List<String> ids = redisService.popFromRedisList(OVERFLOWED_EVENTS_QUEUE_NAME, maxFetchedEventsListsInOneTime);
-        // get matching overflowed events from redis
-        Map<String, List<Event>> overflowedEventsLists = redisService.getFromRedis(ids, true);
-        redisService.deleteFromRedis(overflowedEventsLists.keySet());
+    private List<Event> fetchAndDeleteEvents(String lockName, String queueName) {
+        JedisLock lock;
+        if ((lock = redisService.lockIfUnlocked(lockName)) != null) {
+            try {
+                return fetchAndDeleteEventsLogic(queueName);
+            } finally {
+                redisService.release(lock);
+            }
+        } else {
+            return new ArrayList<>();
+        }
+    }
+
+    private List<Event> fetchAndDeleteEventsLogic(String queueName) {
+        LOG.info("Fetching events of {} from Redis.", queueName);
+        List<String> ids = redisService.popFromRedisList(queueName, maxFetchedEventsListsInOneTime);
+        // get matching events lists from redis
+        Map<String, List<Event>> eventsLists = redisService.getFromRedis(ids, true);
+        redisService.deleteFromRedis(eventsLists.keySet());
 
-        List<Event> overflowedEvents = overflowedEventsLists.values().stream()
+        List<Event> events = eventsLists.values().stream()
                 .flatMap(Collection::stream)
                 .collect(Collectors.toList());
-        LOG.info("Overflowed events fetch from Redis succeeded. Number of overflowed events: {}.", overflowedEvents.size());
-        return overflowedEvents;
+        LOG.info("Events fetch of {} from Redis succeeded. Number of events: {}.", queueName, events.size());
+        return events;
     }
 
     private void persistBulkRequest(DbBulkRequest dbBulkRequest, int bulkNum, int ttl) {
@@ -160,14 +183,14 @@ public class RedisPersistenceHandler extends PersistenceHandler {
         }
     }
 
-    private void persistEvents(ArrayList<Event> events, int ttl) {
+    private void persistEvents(ArrayList<Event> events, String queueName, String keyPrefix) {
         Map<String, ArrayList<Event>> map = new HashMap<>();
-        String key = OVERFLOW_EVENTS_PREFIX + UUID.randomUUID().toString();
+        String key = keyPrefix + UUID.randomUUID().toString();
         map.put(key, events);
-        if (!(redisService.pushToRedisList(OVERFLOWED_EVENTS_QUEUE_NAME, key) && redisService.pushToRedis(map, ttl))) {
-            LOG.error("Failed to persist overflowed events list to Redis");
+        if (!(redisService.pushToRedisList(queueName, key) && redisService.pushToRedis(map, ttl))) {
+            LOG.error("Failed to persist events list to Redis {}", queueName);
         } else {
-            LOG.info("Key {}: List of {} overflowed events was pushed successfully to Redis.", key, events.size());
+            LOG.info("Key {}: List of {} events was pushed successfully to Redis.", key, events.size());
         }
     }
 
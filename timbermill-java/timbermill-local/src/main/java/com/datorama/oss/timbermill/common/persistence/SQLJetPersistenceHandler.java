@@ -33,6 +33,7 @@ public class SQLJetPersistenceHandler extends PersistenceHandler {
 	private static final String DB_NAME = "timbermillJetDB24042022.db";
 	private static final String FAILED_BULKS_TABLE_NAME = "failed_bulks";
 	private static final String OVERFLOWED_EVENTS_TABLE_NAME = "overflowed_events";
+	private static final String DEFERRED_EVENTS_TABLE_NAME = "deferred_events";
 	private static final String ID = "id";
 	private static final String FAILED_TASK = "failedTask";
 	private static final String OVERFLOWED_EVENT = "overflowedEvent";
@@ -43,12 +44,15 @@ public class SQLJetPersistenceHandler extends PersistenceHandler {
 					+ TIMES_FETCHED + " INTEGER)";
 	private static final String CREATE_EVENT_TABLE =
 			"CREATE TABLE IF NOT EXISTS " + OVERFLOWED_EVENTS_TABLE_NAME + " (" + ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " + OVERFLOWED_EVENT + " BLOB NOT NULL, " + INSERT_TIME + " TEXT)";
+	private static final String CREATE_DEFERRED_EVENT_TABLE =
+			"CREATE TABLE IF NOT EXISTS " + DEFERRED_EVENTS_TABLE_NAME + " (" + ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " + OVERFLOWED_EVENT + " BLOB NOT NULL, " + INSERT_TIME + " TEXT)";
 	private static final Logger LOG = LoggerFactory.getLogger(SQLJetPersistenceHandler.class);
 
 	private String locationInDisk;
 	private SqlJetDb db;
 	private ISqlJetTable failedBulkTable;
 	private ISqlJetTable overFlowedEventsTable;
+	private ISqlJetTable deferredEventsTable;
 
 	SQLJetPersistenceHandler(int maxFetchedBulks, int maxFetchedEvents, int maxInsertTries, String locationInDisk) {
 		super(maxFetchedBulks, maxFetchedEvents, maxInsertTries);
@@ -73,12 +77,15 @@ public class SQLJetPersistenceHandler extends PersistenceHandler {
 			db.getOptions().setUserVersion(1);
 			db.createTable(CREATE_BULK_TABLE);
 			db.createTable(CREATE_EVENT_TABLE);
+			db.createTable(CREATE_DEFERRED_EVENT_TABLE);
 			failedBulkTable = db.getTable(FAILED_BULKS_TABLE_NAME);
 			overFlowedEventsTable = db.getTable(OVERFLOWED_EVENTS_TABLE_NAME);
+			deferredEventsTable = db.getTable(DEFERRED_EVENTS_TABLE_NAME);
 
 			// update kamon gauge (counter)
 			KamonConstants.CURRENT_DATA_IN_DB_GAUGE.withTag("type", FAILED_BULKS_TABLE_NAME).update(failedBulksAmount());
 			KamonConstants.CURRENT_DATA_IN_DB_GAUGE.withTag("type", OVERFLOWED_EVENTS_TABLE_NAME).update(overFlowedEventsListsAmount());
+			KamonConstants.CURRENT_DATA_IN_DB_GAUGE.withTag("type", DEFERRED_EVENTS_TABLE_NAME).update(deferredEventsListsAmount());
 
 			silentDbCommit();
 			LOG.info("SQLite was created successfully");
@@ -97,35 +104,12 @@ public class SQLJetPersistenceHandler extends PersistenceHandler {
 
 	@Override
 	public synchronized List<Event> fetchAndDeleteOverflowedEvents() {
-		List<Event> allEvents = new ArrayList<>();
-		ISqlJetCursor resultCursor = null;
-		List<Event> events;
-
-		try {
-			db.beginTransaction(SqlJetTransactionMode.WRITE);
-			resultCursor = overFlowedEventsTable.lookup(overFlowedEventsTable.getPrimaryKeyIndexName());
+		return fetchAndDeleteEvents(overFlowedEventsTable, OVERFLOWED_EVENTS_TABLE_NAME);
+	}
 
-			for (int i = 0; i < maxFetchedEventsListsInOneTime && !resultCursor.eof() ; i++) {
-				events = deserializeEvents(resultCursor.getBlobAsArray(OVERFLOWED_EVENT));
-				int eventsSize = events.size();
-				LOG.info("Fetched bulk of {} overflowed events from SQLite.", eventsSize);
-				allEvents.addAll(events);
-				resultCursor.delete(); // also do next
-				KamonConstants.CURRENT_DATA_IN_DB_GAUGE.withTag("type", OVERFLOWED_EVENTS_TABLE_NAME).decrement(); // removed events from db
-			}
-			if (!allEvents.isEmpty()) {
-				LOG.info("Overflowed events fetch was successful. Number of fetched events: {}.", allEvents.size());
-			}
-			else {
-				LOG.info("There are no overflowed events to fetch from disk.");
-			}
-		} catch (Exception e) {
-			LOG.error("Fetching of overflowed events has failed.",e);
-		} finally {
-			closeCursor(resultCursor);
-			silentDbCommit();
-		}
-		return allEvents;
+	@Override
+	public synchronized List<Event> fetchAndDeleteDeferredEvents() {
+		return fetchAndDeleteEvents(deferredEventsTable, DEFERRED_EVENTS_TABLE_NAME);
 	}
 
 	@Override
@@ -141,16 +125,12 @@ public class SQLJetPersistenceHandler extends PersistenceHandler {
 
 	@Override
 	public synchronized void persistEvents(ArrayList<Event> events) {
-		try {
-			db.beginTransaction(SqlJetTransactionMode.WRITE);
-			overFlowedEventsTable.insert(serializeEvents(events), DateTime.now().toString());
-			LOG.info("List of {} overflowed events was inserted successfully to disk.", events.size());
-			KamonConstants.CURRENT_DATA_IN_DB_GAUGE.withTag("type", OVERFLOWED_EVENTS_TABLE_NAME).increment();
-		} catch (Exception e) {
-			LOG.error("Insertion of overflowed events has failed. Events: "+ events.toString() , e);
-		} finally {
-			silentDbCommit();
-		}
+		persistEvents(overFlowedEventsTable, OVERFLOWED_EVENTS_TABLE_NAME, events);
+	}
+
+	@Override
+	public synchronized void persistDeferredEvents(ArrayList<Event> events) {
+		persistEvents(deferredEventsTable, DEFERRED_EVENTS_TABLE_NAME, events);
 	}
 
 	@Override
@@ -188,6 +168,11 @@ public class SQLJetPersistenceHandler extends PersistenceHandler {
 		return getTableRowCount(overFlowedEventsTable);
 	}
 
+	@Override
+	public synchronized long deferredEventsListsAmount() {
+		return getTableRowCount(deferredEventsTable);
+	}
+
 	private long getTableRowCount(ISqlJetTable table) {
 		ISqlJetCursor resultCursor = null;
 		try {
@@ -211,10 +196,13 @@ public class SQLJetPersistenceHandler extends PersistenceHandler {
 		try {
 			db.dropTable(FAILED_BULKS_TABLE_NAME);
 			db.dropTable(OVERFLOWED_EVENTS_TABLE_NAME);
+			db.dropTable(DEFERRED_EVENTS_TABLE_NAME);
 			db.createTable(CREATE_BULK_TABLE);
 			db.createTable(CREATE_EVENT_TABLE);
+			db.createTable(CREATE_DEFERRED_EVENT_TABLE);
 			failedBulkTable = db.getTable(FAILED_BULKS_TABLE_NAME);
 			overFlowedEventsTable = db.getTable(OVERFLOWED_EVENTS_TABLE_NAME);
+			deferredEventsTable = db.getTable(DEFERRED_EVENTS_TABLE_NAME);
 			LOG.info("Recreated table successfully.");
 			db.commit();
 		} catch (Exception e) {
@@ -296,6 +284,51 @@ public class SQLJetPersistenceHandler extends PersistenceHandler {
 		return dbBulkRequests;
 	}
 
+	private List<Event> fetchAndDeleteEvents(ISqlJetTable table, String tableName) {
+		List<Event> allEvents = new ArrayList<>();
+		ISqlJetCursor resultCursor = null;
+		List<Event> events;
+
+		try {
+			db.beginTransaction(SqlJetTransactionMode.WRITE);
+			resultCursor = table.lookup(table.getPrimaryKeyIndexName());
+
+			for (int i = 0; i < maxFetchedEventsListsInOneTime && !resultCursor.eof() ; i++) {
+				events = deserializeEvents(resultCursor.getBlobAsArray(OVERFLOWED_EVENT));
+				int eventsSize = events.size();
+				LOG.info("Fetched bulk of {} events from SQLite table {}.", eventsSize, tableName);
+				allEvents.addAll(events);
+				resultCursor.delete(); // also do next
+				KamonConstants.CURRENT_DATA_IN_DB_GAUGE.withTag("type", tableName).decrement(); // removed events from db
+			}
+			if (!allEvents.isEmpty()) {
+				LOG.info("Fetch from {} was successful. Number of fetched events: {}.", tableName, allEvents.size());
+			}
+			else {
+				LOG.info("There are no events in {} to fetch from disk.", tableName);
+			}
+		} catch (Exception e) {
+			LOG.error("Fetching of events from " + tableName + " has failed.",e);
+		} finally {
+			closeCursor(resultCursor);
+			silentDbCommit();
+		}
+		return allEvents;
+	}
+
+	private void persistEvents(ISqlJetTable table, String tableName, ArrayList<Event> events) {
+		try {
+			db.beginTransaction(SqlJetTransactionMode.WRITE);
+			table.insert(serializeEvents(events), DateTime.now().toString());
+			LOG.info("List of {} events was inserted successfully to {} on disk.", events.size(), tableName);
+			KamonConstants.CURRENT_DATA_IN_DB_GAUGE.withTag("type", tableName).increment();
+		} catch (Exception e) {
+			LOG.error("Insertion of events to " + tableName + " has failed. Events: "+ events.toString() , e);
+		} finally {
+			silentDbCommit();
+		}
+	}
+
 	private byte[] serializeEvents(ArrayList<Event> events) {
 		return SerializationUtils.serialize(events);
 	}
@@ -0,0 +1,187 @@
+package com.datorama.oss.timbermill.common.ratelimiter;
+
+import com.datorama.oss.timbermill.common.Constants;
+import com.datorama.oss.timbermill.common.KamonConstants;
+import com.datorama.oss.timbermill.common.stats.BufferedKamon;
+import com.datorama.oss.timbermill.unit.Event;
+import com.datorama.oss.timbermill.unit.Task;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits incoming events with a global bucket, a bucket per env and a bucket per task name, all refilled every period.
+ * An event is admitted only when all three levels have a permit. Permits are taken from the task name up to the global bucket,
+ * and the ones already taken are given back when a higher level refuses, so a refused event does not use up the lower levels.
+ * The limiter only decides, a refused event is deferred by the caller and is counted as dropped only if it could not be deferred.
+ * Changing the limits replaces all buckets at once, the counters are kept until the limiter is closed.
+ */
+public class HierarchicalRateLimiter {
+
+	private static final Duration BUCKETS_EXPIRE_AFTER_ACCESS = Duration.ofMinutes(1);
+	private static final int GLOBAL_STRIPES = Integer.highestOneBit(Runtime.getRuntime().availableProcessors()) * 2;
+	private static final int ENV_STRIPES = 4;
+	private static final int NAME_STRIPES = 1;
+
+	public enum Level {
+		NAME, ENV, GLOBAL;
+
+		private final String tag = name().toLowerCase();
+	}
+
+	private final long periodNanos;
+	private final int bucketsCapacity;
+	private final LongSupplier nanoClock;
+	private final Map<Level, LevelCounters> counters = new EnumMap<>(Level.class);
+	private volatile Buckets buckets;
+
+	// a non positive limit disables its level
+	public HierarchicalRateLimiter(int globalLimitForPeriod, int envLimitForPeriod, int nameLimitForPeriod, Duration limitRefreshPeriod, int bucketsCapacity) {
+		this(globalLimitForPeriod, envLimitForPeriod, nameLimitForPeriod, limitRefreshPeriod, bucketsCapacity, System::nanoTime);
+	}
+
+	HierarchicalRateLimiter(int globalLimitForPeriod, int envLimitForPeriod, int nameLimitForPeriod, Duration limitRefreshPeriod, int bucketsCapacity, LongSupplier nanoClock) {
+		this.periodNanos = limitRefreshPeriod.toNanos();
+		this.bucketsCapacity = bucketsCapacity;
+		this.nanoClock = nanoClock;
+		for (Level level : Level.values()) {
+			counters.put(level, new LevelCounters(level));
+		}
+		setLimits(globalLimitForPeriod, envLimitForPeriod, nameLimitForPeriod);
+	}
+
+	// the new limits start with full buckets
+	public void setLimits(int globalLimitForPeriod, int envLimitForPeriod, int nameLimitForPeriod) {
+		buckets = new Buckets(globalLimitForPeriod, envLimitForPeriod, nameLimitForPeriod);
+	}
+
+	public int getLimit(Level level) {
+		return buckets.limits.get(level);
+	}
+
+	// permits the global level has left in the current period, unlimited when the level is disabled
+	public long getAvailablePermits() {
+		TokenBucket globalBucket = buckets.globalBucket;
+		return globalBucket == null ? Long.MAX_VALUE : globalBucket.availablePermits();
+	}
+
+	// returns null if the event was admitted, otherwise the level that had no permits left
+	public Level tryAcquire(Event event) {
+		String env = event.getEnv() == null ? Constants.DEFAULT : event.getEnv().toLowerCase();
+		String name = Task.getNameFromId(event.getName(), event.getTaskId());
+		Buckets buckets = this.buckets;
+		TokenBucket globalBucket = buckets.globalBucket;
+		LoadingCache<String, TokenBucket> envBuckets = buckets.envBuckets;
+		LoadingCache<String, TokenBucket> nameBuckets = buckets.nameBuckets;
+
+		TokenBucket nameBucket = name == null || nameBuckets == null ? null : nameBuckets.getUnchecked(name);
+		if (nameBucket != null && !nameBucket.tryAcquire()) {
+			return defer(Level.NAME);
+		}
+		TokenBucket envBucket = envBuckets == null ? null : envBuckets.getUnchecked(env);
+		if (envBucket != null && !envBucket.tryAcquire()) {
+			release(nameBucket);
+			return defer(Level.ENV);
+		}
+		if (globalBucket != null && !globalBucket.tryAcquire()) {
+			release(nameBucket);
+			release(envBucket);
+			return defer(Level.GLOBAL);
+		}
+		admit(Level.NAME, nameBucket != null);
+		admit(Level.ENV, envBucket != null);
+		admit(Level.GLOBAL, globalBucket != null);
+		return null;
+	}
+
+	// a deferred event that could not be put aside
+	public void recordDropped(Level level) {
+		counters.get(level).dropped.increment();
+	}
+
+	public Map<Level, LevelCounters> getCounters() {
+		return counters;
+	}
+
+	// stops publishing the counters to Kamon
+	public void close() {
+		for (LevelCounters levelCounters : counters.values()) {
+			BufferedKamon.unregister(levelCounters.admitted, levelCounters.deferred, levelCounters.dropped);
+		}
+	}
+
+	private Level defer(Level level) {
+		counters.get(level).deferred.increment();
+		return level;
+	}
+
+	private void admit(Level level, boolean limited) {
+		if (limited) {
+			counters.get(level).admitted.increment();
+		}
+	}
+
+	private static void release(TokenBucket bucket) {
+		if (bucket != null) {
+			bucket.release();
+		}
+	}
+
+	private LoadingCache<String, TokenBucket> createBuckets(int limitForPeriod, int stripes) {
+		return CacheBuilder.newBuilder()
+				.maximumSize(bucketsCapacity)
+				.expireAfterAccess(BUCKETS_EXPIRE_AFTER_ACCESS)
+				.build(new CacheLoader<String, TokenBucket>() {
+					@Override
+					public TokenBucket load(String key) {
+						return new TokenBucket(limitForPeriod, periodNanos, stripes, nanoClock);
+					}
+				});
+	}
+
+	private class Buckets {
+		private final Map<Level, Integer> limits = new EnumMap<>(Level.class);
+		private final TokenBucket globalBucket;
+		private final LoadingCache<String, TokenBucket> envBuckets;
+		private final LoadingCache<String, TokenBucket> nameBuckets;
+
+		Buckets(int globalLimitForPeriod, int envLimitForPeriod, int nameLimitForPeriod) {
+			limits.put(Level.GLOBAL, globalLimitForPeriod);
+			limits.put(Level.ENV, envLimitForPeriod);
+			limits.put(Level.NAME, nameLimitForPeriod);
+			globalBucket = globalLimitForPeriod > 0 ? new TokenBucket(globalLimitForPeriod, periodNanos, GLOBAL_STRIPES, nanoClock) : null;
+			envBuckets = envLimitForPeriod > 0 ? createBuckets(envLimitForPeriod, ENV_STRIPES) : null;
+			nameBuckets = nameLimitForPeriod > 0 ? createBuckets(nameLimitForPeriod, NAME_STRIPES) : null;
+		}
+	}
+
+	// also published to Kamon, tagged with the level and the result
+	public static class LevelCounters {
+		private final BufferedKamon.Counter admitted;
+		private final BufferedKamon.Counter deferred;
+		private final BufferedKamon.Counter dropped;
+
+		LevelCounters(Level level) {
+			admitted = BufferedKamon.counter(KamonConstants.RATE_LIMITED_EVENTS_COUNTER.withTag("level", level.tag).withTag("result", "admitted"));
+			deferred = BufferedKamon.counter(KamonConstants.RATE_LIMITED_EVENTS_COUNTER.withTag("level", level.tag).withTag("result", "deferred"));
+			dropped = BufferedKamon.counter(KamonConstants.RATE_LIMITED_EVENTS_COUNTER.withTag("level", level.tag).withTag("result", "dropped"));
+		}
+
+		public long getAdmitted() {
+			return admitted.get();
+		}
+
+		public long getDeferred() {
+			return deferred.get();
+		}
+
+		public long getDropped() {
+			return dropped.get();
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package com.datorama.oss.timbermill.common.ratelimiter;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Fixed window token bucket, refilled with limitForPeriod permits at the start of every period.
+ * Permits are split over stripes so concurrent callers mostly hit different counters. A caller starts at a random stripe
+ * and moves on to the others when it is empty, so a permit is only refused when all stripes are empty.
+ * Each stripe keeps its window and its permits left in one long (window in the high 32 bits), updated with CAS only.
+ */
+class TokenBucket {
+
+	// a long is 8 slots, so neighbouring stripes do not share a cache line
+	private static final int PADDING = 8;
+
+	private final long periodNanos;
+	private final long origin;
+	private final LongSupplier nanoClock;
+	private final int stripes;
+	private final int[] stripeLimits;
+	private final AtomicLongArray states;
+
+	TokenBucket(int limitForPeriod, long periodNanos, int maxStripes, LongSupplier nanoClock) {
+		this.periodNanos = periodNanos;
+		this.nanoClock = nanoClock;
+		this.origin = nanoClock.getAsLong();
+		this.stripes = Math.max(1, Math.min(maxStripes, limitForPeriod));
+		this.stripeLimits = new int[stripes];
+		for (int i = 0; i < stripes; i++) {
+			stripeLimits[i] = limitForPeriod / stripes + (i < limitForPeriod % stripes ? 1 : 0);
+		}
+		this.states = new AtomicLongArray(stripes * PADDING);
+		for (int i = 0; i < stripes; i++) {
+			states.set(i * PADDING, pack(0, stripeLimits[i]));
+		}
+	}
+
+	boolean tryAcquire() {
+		int window = currentWindow();
+		int first = stripes == 1 ? 0 : ThreadLocalRandom.current().nextInt(stripes);
+		for (int i = 0; i < stripes; i++) {
+			int stripe = (first + i) % stripes;
+			if (tryAcquire(stripe, window)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// gives back a permit taken in the current window, when a higher level of the hierarchy refused the event
+	void release() {
+		int window = currentWindow();
+		for (int stripe = 0; stripe < stripes; stripe++) {
+			int slot = stripe * PADDING;
+			while (true) {
+				long state = states.get(slot);
+				int permits = permits(state);
+				if (window(state) != window || permits >= stripeLimits[stripe]) {
+					break;
+				}
+				if (states.compareAndSet(slot, state, pack(window, permits + 1))) {
+					return;
+				}
+			}
+		}
+	}
+
+	// permits left in the current window over all stripes
+	long availablePermits() {
+		int window = currentWindow();
+		long available = 0;
+		for (int stripe = 0; stripe < stripes; stripe++) {
+			long state = states.get(stripe * PADDING);
+			available += window(state) == window ? permits(state) : stripeLimits[stripe];
+		}
+		return available;
+	}
+
+	private boolean tryAcquire(int stripe, int window) {
+		int slot = stripe * PADDING;
+		while (true) {
+			long state = states.get(slot);
+			int permits = window(state) == window ? permits(state) : stripeLimits[stripe];
+			if (permits == 0) {
+				return false;
+			}
+			if (states.compareAndSet(slot, state, pack(window, permits - 1))) {
+				return true;
+			}
+		}
+	}
+
+	private int currentWindow() {
+		return (int) ((nanoClock.getAsLong() - origin) / periodNanos);
+	}
+
+	private static long pack(int window, int permits) {
+		return ((long) window << 32) | (permits & 0xFFFFFFFFL);
+	}
+
+	private static int window(long state) {
+		return (int) (state >>> 32);
+	}
+
+	private static int permits(long state) {
+		return (int) state;
+	}
+}
@@ -28,6 +28,12 @@ public class RedisService {
     private static final Logger LOG = LoggerFactory.getLogger(RedisService.class);
     public static final int REDIS_SERIALIZATIONPART_SIZE = 100;
 
+    // adds the member only while the set is smaller than maxSize, in one script so concurrent adders cannot overshoot it
+    private static final String ADD_TO_BOUNDED_SET_SCRIPT =
+            "if redis.call('SISMEMBER', KEYS[1], ARGV[1]) == 1 then return 1 end " +
+            "if redis.call('SCARD', KEYS[1]) < tonumber(ARGV[2]) then redis.call('SADD', KEYS[1], ARGV[1]) return 1 end " +
+            "return 0";
+
     private final JedisPool jedisPool;
     private final Pool<Kryo> kryoPool;
     private final RetryConfig retryConfig;
@@ -227,6 +233,67 @@ public class RedisService {
 
     // region SORTED SET
 
+    public boolean addToSortedSet(String setName, String member, double score) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            runWithRetries(() -> jedis.zadd(setName, score, member), "ZADD");
+            return true;
+        } catch (Exception e) {
+            LOG.error("Error adding " + member + " to Redis " + setName + " sorted set", e);
+            return false;
+        }
+    }
+
+    // returns null if the members could not be read
+    public Set<String> getSortedSetRangeByScore(String setName, double min, double max) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            return runWithRetries(() -> jedis.zrangeByScore(setName, min, max), "ZRANGEBYSCORE");
+        } catch (Exception e) {
+            LOG.error("Error getting members of Redis " + setName + " sorted set", e);
+            return null;
+        }
+    }
+
+    public void removeFromSortedSetByScore(String setName, double min, double max) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            runWithRetries(() -> jedis.zremrangeByScore(setName, min, max), "ZREMRANGEBYSCORE");
+        } catch (Exception e) {
+            LOG.error("Error removing members from Redis " + setName + " sorted set", e);
+        }
+    }
+
+    public void removeFromSortedSet(String setName, String member) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            runWithRetries(() -> jedis.zrem(setName, member), "ZREM");
+        } catch (Exception e) {
+            LOG.error("Error removing " + member + " from Redis " + setName + " sorted set", e);
+        }
+    }
+
+    // endregion
+
+    // region SET
+
+    // returns whether the member is in the set, or null if the set could not be updated
+    public Boolean addToBoundedSet(String setName, String member, long maxSize) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            Object added = runWithRetries(() -> jedis.eval(ADD_TO_BOUNDED_SET_SCRIPT, Collections.singletonList(setName), Arrays.asList(member, String.valueOf(maxSize))), "EVAL");
+            return Long.valueOf(1).equals(added);
+        } catch (Exception e) {
+            LOG.error("Error adding " + member + " to Redis " + setName + " set", e);
+            return null;
+        }
+    }
+
+    // returns null if the members could not be read
+    public Set<String> getSetMembers(String setName) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            return runWithRetries(() -> jedis.smembers(setName), "SMEMBERS");
+        } catch (Exception e) {
+            LOG.error("Error getting members of Redis " + setName + " set", e);
+            return null;
+        }
+    }
+
     // endregion
 
     public JedisLock lockIfUnlocked(String lockName) {
@@ -0,0 +1,233 @@
+package com.datorama.oss.timbermill.common.scheduling;
+
+import com.datorama.oss.timbermill.common.Constants;
+import com.datorama.oss.timbermill.common.KamonConstants;
+import com.datorama.oss.timbermill.unit.Event;
+import com.google.common.collect.Maps;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Function;
+
+/**
+ * Splits the events queue into per env sub queues and builds indexing batches from them with weighted deficit round robin,
+ * so an env that floods the queue can not starve the others.
+ * Each round an env earns weight * QUANTUM events of credit and takes up to its credit. While other envs are waiting an env is
+ * capped at its maximum share of the batch, when nobody else is waiting the batch is filled by whoever has events.
+ * Events are staged from the shared queue until the staged bytes reach the staging budget.
+ */
+public class EnvFairScheduler {
+
+	private static final int QUANTUM = 100;
+	private static final int STAGE_CHUNK = 10000;
+
+	private volatile int batchSize;
+	private final long stagingMaxBytes;
+	private final Map<String, Integer> weights;
+	private final int defaultWeight;
+	private final Map<String, Double> maxBatchShares;
+	private final double defaultMaxBatchShare;
+	private final Map<String, EnvQueue> envQueues = Maps.newLinkedHashMap();
+	private final Map<String, EnvGauges> envGauges = Maps.newHashMap();
+	private volatile long stagedBytes;
+	private volatile int stagedEvents;
+
+	public EnvFairScheduler(int batchSize, long stagingMaxBytes, String weights, int defaultWeight, String maxBatchShares, double defaultMaxBatchShare) {
+		if (batchSize < 1 || defaultWeight < 1 || defaultMaxBatchShare <= 0 || defaultMaxBatchShare > 1) {
+			throw new RuntimeException("Batch size and weights must be positive and max batch share must be in (0, 1]");
+		}
+		this.batchSize = batchSize;
+		this.stagingMaxBytes = stagingMaxBytes;
+		this.weights = parseEnvValues(weights, Integer::parseInt);
+		this.defaultWeight = defaultWeight;
+		this.maxBatchShares = parseEnvValues(maxBatchShares, Double::parseDouble);
+		this.defaultMaxBatchShare = defaultMaxBatchShare;
+	}
+
+	// only called from the indexing thread
+	public boolean hasPending(BlockingQueue<Event> eventsQueue) {
+		return !eventsQueue.isEmpty() || !envQueues.isEmpty();
+	}
+
+	public long getStagedBytes() {
+		return stagedBytes;
+	}
+
+	public long getStagingMaxBytes() {
+		return stagingMaxBytes;
+	}
+
+	public int getStagedEvents() {
+		return stagedEvents;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	// takes effect from the next batch
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new RuntimeException("Batch size must be positive");
+		}
+		this.batchSize = batchSize;
+	}
+
+	public Map<String, List<Event>> nextBatch(BlockingQueue<Event> eventsQueue) {
+		return nextBatch(eventsQueue, Long.MAX_VALUE);
+	}
+
+	// returns the next batch grouped by env, closed at batchSize events or once it reaches maxBatchBytes, only called from the indexing thread
+	public Map<String, List<Event>> nextBatch(BlockingQueue<Event> eventsQueue, long maxBatchBytes) {
+		stage(eventsQueue);
+		int batchSize = this.batchSize;
+		Map<String, List<Event>> batch = Maps.newLinkedHashMap();
+		int remaining = batchSize;
+		long batchBytes = 0;
+		boolean capped = true;
+		while (remaining > 0 && batchBytes < maxBatchBytes && !envQueues.isEmpty()) {
+			int takenInRound = 0;
+			Iterator<EnvQueue> iterator = envQueues.values().iterator();
+			while (iterator.hasNext() && remaining > 0 && batchBytes < maxBatchBytes) {
+				EnvQueue envQueue = iterator.next();
+				List<Event> envBatch = batch.computeIfAbsent(envQueue.env, env -> new ArrayList<>());
+				envQueue.deficit = Math.min(envQueue.deficit + (long) getWeight(envQueue.env) * QUANTUM, batchSize);
+				long allowed = Math.min(envQueue.deficit, remaining);
+				if (capped) {
+					allowed = Math.min(allowed, getMaxEventsInBatch(envQueue.env, batchSize) - envBatch.size());
+				}
+				int taken = 0;
+				while (taken < allowed && batchBytes < maxBatchBytes && !envQueue.events.isEmpty()) {
+					Event event = envQueue.events.poll();
+					envBatch.add(event);
+					batchBytes += event.estimatedSize();
+					taken++;
+				}
+				envQueue.deficit -= taken;
+				remaining -= taken;
+				takenInRound += taken;
+				if (envQueue.events.isEmpty()) {
+					iterator.remove();
+				}
+			}
+			if (takenInRound == 0 && batchBytes < maxBatchBytes) {
+				// every waiting env reached its share, let the rest of the batch be work conserving
+				if (!capped) {
+					break;
+				}
+				capped = false;
+			}
+		}
+		batch.values().removeIf(List::isEmpty);
+		// the env that started this round starts the next one last
+		if (!envQueues.isEmpty()) {
+			String first = envQueues.keySet().iterator().next();
+			envQueues.put(first, envQueues.remove(first));
+		}
+		stagedBytes -= batchBytes;
+		stagedEvents -= batchSize - remaining;
+		reportLag(batch.keySet());
+		return batch;
+	}
+
+	// hands back every staged event, only called from the indexing thread once it stopped indexing
+	public List<Event> drainStaged() {
+		List<Event> events = new ArrayList<>(stagedEvents);
+		for (EnvQueue envQueue : envQueues.values()) {
+			events.addAll(envQueue.events);
+		}
+		envQueues.clear();
+		stagedBytes = 0;
+		stagedEvents = 0;
+		return events;
+	}
+
+	private void stage(BlockingQueue<Event> eventsQueue) {
+		List<Event> drained = new ArrayList<>();
+		while (stagedBytes < stagingMaxBytes && !eventsQueue.isEmpty()) {
+			drained.clear();
+			eventsQueue.drainTo(drained, STAGE_CHUNK);
+			KamonConstants.INPUT_QUEUE_BUFFERED_SAMPLER.decrement(drained.size());
+			long drainedBytes = 0;
+			for (Event event : drained) {
+				if (event.getEnv() == null) {
+					event.setEnv(Constants.DEFAULT);
+				}
+				String env = event.getEnv().toLowerCase();
+				envQueues.computeIfAbsent(env, EnvQueue::new).events.add(event);
+				drainedBytes += event.estimatedSize();
+			}
+			stagedBytes += drainedBytes;
+			stagedEvents += drained.size();
+		}
+	}
+
+	// lag is the age of the oldest event still waiting, envs that were drained report 0
+	private void reportLag(Set<String> servedEnvs) {
+		long now = System.currentTimeMillis();
+		for (String env : servedEnvs) {
+			if (!envQueues.containsKey(env)) {
+				EnvGauges gauges = getEnvGauges(env);
+				gauges.lagGauge.update(0);
+				gauges.stagedEventsGauge.update(0);
+			}
+		}
+		for (EnvQueue envQueue : envQueues.values()) {
+			Event oldest = envQueue.events.peek();
+			long lag = oldest == null || oldest.getTime() == null ? 0 : Math.max(0, now - oldest.getTime().toInstant().toEpochMilli());
+			EnvGauges gauges = getEnvGauges(envQueue.env);
+			gauges.lagGauge.update(lag);
+			gauges.stagedEventsGauge.update(envQueue.events.size());
+		}
+	}
+
+	private EnvGauges getEnvGauges(String env) {
+		return envGauges.computeIfAbsent(env, EnvGauges::new);
+	}
+
+	private int getWeight(String env) {
+		return weights.getOrDefault(env, defaultWeight);
+	}
+
+	private int getMaxEventsInBatch(String env, int batchSize) {
+		return Math.max(1, (int) (batchSize * maxBatchShares.getOrDefault(env, defaultMaxBatchShare)));
+	}
+
+	// parses "env1:value1,env2:value2"
+	static <T> Map<String, T> parseEnvValues(String envValues, Function<String, T> parser) {
+		Map<String, T> map = Maps.newHashMap();
+		if (StringUtils.isBlank(envValues)) {
+			return map;
+		}
+		for (String envValue : envValues.split(",")) {
+			String[] split = envValue.trim().split(":");
+			if (split.length != 2) {
+				throw new RuntimeException("Illegal env value " + envValue + ", expected env:value");
+			}
+			map.put(split[0].trim().toLowerCase(), parser.apply(split[1].trim()));
+		}
+		return map;
+	}
+
+	// tagged with the env once, as they are updated for every batch
+	private static class EnvGauges {
+		private final kamon.metric.Gauge lagGauge;
+		private final kamon.metric.Gauge stagedEventsGauge;
+
+		EnvGauges(String env) {
+			lagGauge = KamonConstants.ENV_EVENTS_LAG_GAUGE.withTag("env", env);
+			stagedEventsGauge = KamonConstants.ENV_STAGED_EVENTS_GAUGE.withTag("env", env);
+		}
+	}
+
+	private static class EnvQueue {
+		private final String env;
+		private final Deque<Event> events = new ArrayDeque<>();
+		private long deficit;
+
+		EnvQueue(String env) {
+			this.env = env;
+		}
+	}
+}
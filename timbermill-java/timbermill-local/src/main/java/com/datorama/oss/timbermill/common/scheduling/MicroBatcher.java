@@ -0,0 +1,143 @@
+package com.datorama.oss.timbermill.common.scheduling;
+
+import com.datorama.oss.timbermill.common.ByteBoundedEventsQueue;
+import com.datorama.oss.timbermill.common.KamonConstants;
+import com.datorama.oss.timbermill.unit.Event;
+
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Decides when the indexing thread closes its next batch: when the pending events reach the scheduler's batch size,
+ * when they reach the target bytes, or when the first of them waited for the deadline, whichever comes first.
+ * The deadline is tuned after every batch to the latency SLO minus the p99 of the recent batch processing times,
+ * so an event waits for at most the deadline and is indexed by the p99 processing time after it.
+ * The wait is counted from when the oldest pending event arrived: events that arrived while the previous batch was processed are counted
+ * from when it was closed, and events that did not fit in it keep the time of the batch they were pending for.
+ * Only called from the indexing thread.
+ */
+public class MicroBatcher {
+
+	private static final long POLL_INTERVAL_MILLIS = 10;
+	private static final int PROCESSING_TIMES_WINDOW = 100;
+
+	enum CloseReason {
+		EVENTS, BYTES, DEADLINE;
+
+		private final String tag = name().toLowerCase();
+	}
+
+	private volatile long targetBytes;
+	private final long minDeadlineMillis;
+	private final long maxDeadlineMillis;
+	private final long latencySloMillis;
+	private final LongSupplier clock;
+	private final long[] processingTimes = new long[PROCESSING_TIMES_WINDOW];
+	private int processingTimesCount;
+	private long deadlineMillis;
+	private long pendingSince = -1;
+	private long batchClosedAt;
+	private int pendingAtClose;
+
+	public MicroBatcher(long targetBytes, long minDeadlineMillis, long maxDeadlineMillis, long latencySloMillis) {
+		this(targetBytes, minDeadlineMillis, maxDeadlineMillis, latencySloMillis, System::currentTimeMillis);
+	}
+
+	MicroBatcher(long targetBytes, long minDeadlineMillis, long maxDeadlineMillis, long latencySloMillis, LongSupplier clock) {
+		if (targetBytes < 1 || minDeadlineMillis < 0 || maxDeadlineMillis < minDeadlineMillis) {
+			throw new RuntimeException("Batch target bytes must be positive and max deadline must not be lower than min deadline");
+		}
+		this.targetBytes = targetBytes;
+		this.minDeadlineMillis = minDeadlineMillis;
+		this.maxDeadlineMillis = maxDeadlineMillis;
+		this.latencySloMillis = latencySloMillis;
+		this.clock = clock;
+		this.deadlineMillis = maxDeadlineMillis;
+	}
+
+	// blocks until the next batch should be closed, returns false if nothing was pending so the caller can check if it should stop
+	public boolean awaitBatch(BlockingQueue<Event> eventsQueue, EnvFairScheduler scheduler) {
+		while (true) {
+			if (!scheduler.hasPending(eventsQueue)) {
+				pendingSince = -1;
+				sleep();
+				return false;
+			}
+			if (pendingSince < 0) {
+				pendingSince = clock.getAsLong();
+			}
+			CloseReason reason = getCloseReason(eventsQueue, scheduler);
+			if (reason != null) {
+				batchClosedAt = clock.getAsLong();
+				pendingAtClose = eventsQueue.size() + scheduler.getStagedEvents();
+				KamonConstants.MICRO_BATCHES_COUNTER.withTag("reason", reason.tag).increment();
+				return true;
+			}
+			sleep();
+		}
+	}
+
+	public long getTargetBytes() {
+		return targetBytes;
+	}
+
+	public void setTargetBytes(long targetBytes) {
+		if (targetBytes < 1) {
+			throw new RuntimeException("Batch target bytes must be positive");
+		}
+		this.targetBytes = targetBytes;
+	}
+
+	public long getDeadlineMillis() {
+		return deadlineMillis;
+	}
+
+	// called after the batch that awaitBatch closed was indexed, with the amount of events in it
+	public void batchDone(long processingMillis, int batchEvents) {
+		long now = clock.getAsLong();
+		if (pendingSince >= 0) {
+			KamonConstants.BATCH_EVENTS_LATENCY_HISTOGRAM.withoutTags().record(now - pendingSince);
+		}
+		// events left out of the batch are still waiting since pendingSince, the ones that arrived meanwhile at most since it was closed
+		if (batchEvents >= pendingAtClose) {
+			pendingSince = batchClosedAt;
+		}
+		processingTimes[processingTimesCount % PROCESSING_TIMES_WINDOW] = processingMillis;
+		processingTimesCount++;
+		deadlineMillis = Math.max(minDeadlineMillis, Math.min(maxDeadlineMillis, latencySloMillis - getProcessingTimeP99()));
+		KamonConstants.MICRO_BATCH_DEADLINE_GAUGE.withoutTags().update(deadlineMillis);
+	}
+
+	long getProcessingTimeP99() {
+		int count = Math.min(processingTimesCount, PROCESSING_TIMES_WINDOW);
+		if (count == 0) {
+			return 0;
+		}
+		long[] sorted = Arrays.copyOf(processingTimes, count);
+		Arrays.sort(sorted);
+		return sorted[(int) Math.ceil(count * 0.99) - 1];
+	}
+
+	CloseReason getCloseReason(BlockingQueue<Event> eventsQueue, EnvFairScheduler scheduler) {
+		if (eventsQueue.size() + scheduler.getStagedEvents() >= scheduler.getBatchSize()) {
+			return CloseReason.EVENTS;
+		}
+		long queuedBytes = eventsQueue instanceof ByteBoundedEventsQueue ? ((ByteBoundedEventsQueue) eventsQueue).getBytes() : 0;
+		if (queuedBytes + scheduler.getStagedBytes() >= targetBytes) {
+			return CloseReason.BYTES;
+		}
+		if (clock.getAsLong() - pendingSince >= deadlineMillis) {
+			return CloseReason.DEADLINE;
+		}
+		return null;
+	}
+
+	private static void sleep() {
+		try {
+			TimeUnit.MILLISECONDS.sleep(POLL_INTERVAL_MILLIS);
+		} catch (InterruptedException ignored) {
+		}
+	}
+}
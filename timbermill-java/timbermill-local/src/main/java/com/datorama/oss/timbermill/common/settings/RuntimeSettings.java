@@ -0,0 +1,131 @@
+package com.datorama.oss.timbermill.common.settings;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.quartz.CronExpression;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.*;
+
+/**
+ * Performance settings that can be changed while Timbermill is running, keyed by the name of their startup property.
+ * An update is parsed and validated as a whole before anything is applied, and if applying one of its settings fails the settings
+ * that were already applied are set back, so an update is applied entirely or not at all. Every applied change is logged with its requester.
+ * Each setting is applied by the component that owns it, which hands it over to in-flight work without dropping it.
+ */
+public class RuntimeSettings {
+
+	private static final Logger LOG = LoggerFactory.getLogger(RuntimeSettings.class);
+
+	private final Map<String, Setting> settings = Maps.newLinkedHashMap();
+
+	public RuntimeSettings registerInt(String name, int minValue, IntSupplier getter, IntConsumer setter) {
+		return register(name, getter::getAsInt, value -> {
+			int parsed = Integer.parseInt(value);
+			if (parsed < minValue) {
+				throw new IllegalArgumentException(name + " must be at least " + minValue);
+			}
+			return parsed;
+		}, value -> setter.accept((Integer) value));
+	}
+
+	public RuntimeSettings registerLong(String name, long minValue, LongSupplier getter, LongConsumer setter) {
+		return register(name, getter::getAsLong, value -> {
+			long parsed = Long.parseLong(value);
+			if (parsed < minValue) {
+				throw new IllegalArgumentException(name + " must be at least " + minValue);
+			}
+			return parsed;
+		}, value -> setter.accept((Long) value));
+	}
+
+	public RuntimeSettings registerCron(String name, Supplier<String> getter, Consumer<String> setter) {
+		return register(name, getter::get, value -> {
+			if (!CronExpression.isValidExpression(value)) {
+				throw new IllegalArgumentException(name + " is not a valid cron expression");
+			}
+			return value;
+		}, value -> setter.accept((String) value));
+	}
+
+	private synchronized RuntimeSettings register(String name, Supplier<Object> getter, Function<String, Object> parser, Consumer<Object> setter) {
+		settings.put(name, new Setting(name, getter, parser, setter));
+		return this;
+	}
+
+	public synchronized Map<String, String> getValues() {
+		Map<String, String> values = Maps.newLinkedHashMap();
+		for (Setting setting : settings.values()) {
+			values.put(setting.name, String.valueOf(setting.getter.get()));
+		}
+		return values;
+	}
+
+	// throws IllegalArgumentException without applying anything if one of the changes is unknown or invalid
+	public synchronized Map<String, String> update(Map<String, String> changes, String requester) {
+		Map<Setting, Object> parsedChanges = Maps.newLinkedHashMap();
+		List<String> errors = Lists.newArrayList();
+		for (Map.Entry<String, String> change : changes.entrySet()) {
+			Setting setting = settings.get(change.getKey());
+			if (setting == null) {
+				errors.add(change.getKey() + " can not be changed at runtime");
+				continue;
+			}
+			try {
+				parsedChanges.put(setting, setting.parser.apply(change.getValue() == null ? "" : change.getValue().trim()));
+			} catch (IllegalArgumentException e) {
+				errors.add(e instanceof NumberFormatException ? change.getKey() + " must be a number" : e.getMessage());
+			}
+		}
+		if (!errors.isEmpty()) {
+			LOG.warn("Settings update {} by {} was rejected: {}", changes, requester, errors);
+			throw new IllegalArgumentException(String.join(", ", errors));
+		}
+
+		List<Map.Entry<Setting, Object>> applied = Lists.newArrayList();
+		for (Map.Entry<Setting, Object> change : parsedChanges.entrySet()) {
+			Setting setting = change.getKey();
+			Object oldValue = setting.getter.get();
+			try {
+				setting.setter.accept(change.getValue());
+			} catch (RuntimeException e) {
+				LOG.error("Failed applying " + setting.name + "=" + change.getValue() + " requested by " + requester + ", rolling back the update", e);
+				rollback(applied);
+				throw new RuntimeException("Failed applying " + setting.name + ", no setting was changed", e);
+			}
+			applied.add(Maps.immutableEntry(setting, oldValue));
+		}
+		for (Map.Entry<Setting, Object> oldValue : applied) {
+			Setting setting = oldValue.getKey();
+			LOG.info("Setting {} was changed from {} to {} by {}", setting.name, oldValue.getValue(), parsedChanges.get(setting), requester);
+		}
+		return getValues();
+	}
+
+	private static void rollback(List<Map.Entry<Setting, Object>> applied) {
+		for (Map.Entry<Setting, Object> oldValue : Lists.reverse(applied)) {
+			try {
+				oldValue.getKey().setter.accept(oldValue.getValue());
+			} catch (RuntimeException e) {
+				LOG.error("Failed rolling back " + oldValue.getKey().name + " to " + oldValue.getValue(), e);
+			}
+		}
+	}
+
+	private static class Setting {
+		private final String name;
+		private final Supplier<Object> getter;
+		private final Function<String, Object> parser;
+		private final Consumer<Object> setter;
+
+		Setting(String name, Supplier<Object> getter, Function<String, Object> parser, Consumer<Object> setter) {
+			this.name = name;
+			this.getter = getter;
+			this.parser = parser;
+			this.setter = setter;
+		}
+	}
+}
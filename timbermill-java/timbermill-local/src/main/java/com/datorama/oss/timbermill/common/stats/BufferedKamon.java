@@ -0,0 +1,211 @@
+package com.datorama.oss.timbermill.common.stats;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Kamon instruments for hot paths. Updates are accumulated in LongAdders and HDR style bucket counts and published to the
+ * already tagged Kamon instrument by a daemon thread every FLUSH_INTERVAL_MILLIS, so recording never builds tag sets
+ * or takes Kamon's locks. Instruments are created once, with their tags resolved, and kept by their owner.
+ * A range sampler only sees the net change of every flush interval, so it misses peaks shorter than the interval.
+ */
+public final class BufferedKamon {
+
+	private static final Logger LOG = LoggerFactory.getLogger(BufferedKamon.class);
+	private static final long FLUSH_INTERVAL_MILLIS = 1000;
+	private static final List<Buffer> BUFFERS = new CopyOnWriteArrayList<>();
+
+	static {
+		ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "timbermill-kamon-flusher");
+			thread.setDaemon(true);
+			return thread;
+		});
+		flusher.scheduleWithFixedDelay(BufferedKamon::flush, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	private BufferedKamon() {
+	}
+
+	public static Counter counter(kamon.metric.Counter instrument) {
+		return register(new Counter(instrument));
+	}
+
+	public static RangeSampler rangeSampler(kamon.metric.RangeSampler instrument) {
+		return register(new RangeSampler(instrument));
+	}
+
+	public static Histogram histogram(kamon.metric.Histogram instrument) {
+		return register(new Histogram(instrument));
+	}
+
+	public static Timer timer(kamon.metric.Timer instrument) {
+		return register(new Timer(instrument));
+	}
+
+	// publishes everything recorded so far, called by the flusher thread and on shutdown
+	public static synchronized void flush() {
+		for (Buffer buffer : BUFFERS) {
+			try {
+				buffer.flush();
+			} catch (RuntimeException e) {
+				LOG.warn("Failed publishing buffered metrics to Kamon", e);
+			}
+		}
+	}
+
+	// publishes what is left of the instruments and stops flushing them, for owners that are dropped before the process ends
+	public static synchronized void unregister(Buffer... buffers) {
+		for (Buffer buffer : buffers) {
+			if (BUFFERS.remove(buffer)) {
+				buffer.flush();
+			}
+		}
+	}
+
+	private static <T extends Buffer> T register(T buffer) {
+		BUFFERS.add(buffer);
+		return buffer;
+	}
+
+	public interface Buffer {
+		void flush();
+	}
+
+	// cumulative, so owners can also read it
+	public static class Counter implements Buffer {
+		private final kamon.metric.Counter instrument;
+		private final LongAdder value = new LongAdder();
+		private long published;
+
+		private Counter(kamon.metric.Counter instrument) {
+			this.instrument = instrument;
+		}
+
+		public void increment() {
+			value.increment();
+		}
+
+		public void increment(long amount) {
+			value.add(amount);
+		}
+
+		public long get() {
+			return value.sum();
+		}
+
+		@Override
+		public void flush() {
+			long current = value.sum();
+			if (current > published) {
+				instrument.increment(current - published);
+				published = current;
+			}
+		}
+	}
+
+	public static class RangeSampler implements Buffer {
+		private final kamon.metric.RangeSampler instrument;
+		private final LongAdder delta = new LongAdder();
+
+		private RangeSampler(kamon.metric.RangeSampler instrument) {
+			this.instrument = instrument;
+		}
+
+		public void increment() {
+			delta.increment();
+		}
+
+		public void increment(long amount) {
+			delta.add(amount);
+		}
+
+		public void decrement() {
+			delta.decrement();
+		}
+
+		public void decrement(long amount) {
+			delta.add(-amount);
+		}
+
+		@Override
+		public void flush() {
+			long current = delta.sumThenReset();
+			if (current > 0) {
+				instrument.increment(current);
+			} else if (current < 0) {
+				instrument.decrement(-current);
+			}
+		}
+	}
+
+	public static class Histogram implements Buffer {
+		private final kamon.metric.Histogram instrument;
+		private final Buckets buckets = new Buckets();
+
+		private Histogram(kamon.metric.Histogram instrument) {
+			this.instrument = instrument;
+		}
+
+		public void record(long value) {
+			buckets.record(value);
+		}
+
+		@Override
+		public void flush() {
+			buckets.drain((value, times) -> instrument.record(value, times));
+		}
+	}
+
+	public static class Timer implements Buffer {
+		private final kamon.metric.Timer instrument;
+		private final Buckets buckets = new Buckets();
+
+		private Timer(kamon.metric.Timer instrument) {
+			this.instrument = instrument;
+		}
+
+		public void recordNanosSince(long startNanos) {
+			buckets.record(System.nanoTime() - startNanos);
+		}
+
+		// Kamon timers only take one measurement at a time
+		@Override
+		public void flush() {
+			buckets.drain((nanos, times) -> {
+				for (long i = 0; i < times; i++) {
+					instrument.record(nanos);
+				}
+			});
+		}
+	}
+
+	// values are published as the highest value equivalent to their bucket, the same precision as StatsHistogram
+	private static class Buckets {
+		private final AtomicLongArray counts = new AtomicLongArray(StatsHistogram.BUCKETS);
+
+		void record(long value) {
+			counts.incrementAndGet(StatsHistogram.bucketOf(Math.max(value, 0)));
+		}
+
+		void drain(BucketConsumer consumer) {
+			for (int bucket = 0; bucket < StatsHistogram.BUCKETS; bucket++) {
+				if (counts.get(bucket) > 0) {
+					consumer.accept(StatsHistogram.highestValueOf(bucket), counts.getAndSet(bucket, 0));
+				}
+			}
+		}
+	}
+
+	private interface BucketConsumer {
+		void accept(long value, long times);
+	}
+}
@@ -0,0 +1,31 @@
+package com.datorama.oss.timbermill.common.stats;
+
+public class PipelineStats {
+	private static final StatsRegistry REGISTRY = StatsRegistry.getInstance();
+
+	public static final StatsCounter EVENTS_RECEIVED_COUNTER = REGISTRY.counter("timbermill_events_received_total", "Events pushed to the events queues");
+	public static final StatsCounter EVENTS_DEFERRED_COUNTER = REGISTRY.counter("timbermill_events_deferred_total", "Events over the rate limit that were deferred to the deferred queue");
+	public static final StatsCounter EVENTS_DISCARDED_COUNTER = REGISTRY.counter("timbermill_events_discarded_total", "Events over the rate limit that could not be deferred");
+	public static final StatsHistogram BATCH_DURATION_TIMER = REGISTRY.timer("timbermill_batch_duration_seconds", "Time to handle an indexing batch");
+	public static final StatsHistogram BATCH_EVENTS_HISTOGRAM = REGISTRY.histogram("timbermill_batch_events", "Events in an indexing batch");
+	public static final StatsCounter TASKS_INDEXED_COUNTER = REGISTRY.counter("timbermill_tasks_indexed_total", "Tasks sent to storage");
+	public static final StatsHistogram MISSING_PARENTS_FETCH_TIMER = REGISTRY.timer("timbermill_missing_parents_fetch_seconds", "Time to fetch the parents that were not in the batch nor the cache from storage");
+	public static final StatsCounter MISSING_PARENTS_FETCHED_COUNTER = REGISTRY.counter("timbermill_missing_parents_fetched_total", "Parents fetched from storage");
+	public static final StatsHistogram CACHE_GET_TIMER = REGISTRY.timer("timbermill_cache_get_seconds", "Time to get tasks from the tasks cache");
+	public static final StatsHistogram CACHE_PUSH_TIMER = REGISTRY.timer("timbermill_cache_push_seconds", "Time to push tasks to the tasks cache");
+	public static final StatsHistogram ORPHANS_CACHE_PULL_TIMER = REGISTRY.timer("timbermill_orphans_cache_pull_seconds", "Time to pull orphans from the orphans cache");
+	public static final StatsHistogram ORPHANS_CACHE_PUSH_TIMER = REGISTRY.timer("timbermill_orphans_cache_push_seconds", "Time to push orphans to the orphans cache");
+	public static final StatsCounter CACHE_TASKS_QUERIED_COUNTER = REGISTRY.counter("timbermill_cache_tasks_queried_total", "Tasks looked up in the tasks cache");
+	public static final StatsCounter CACHE_TASKS_HIT_COUNTER = REGISTRY.counter("timbermill_cache_tasks_hit_total", "Tasks found in the tasks cache");
+	public static final StatsHistogram BULK_DURATION_TIMER = REGISTRY.timer("timbermill_bulk_duration_seconds", "Time of a bulk request to storage, per try");
+	public static final StatsHistogram BULK_ACTIONS_HISTOGRAM = REGISTRY.histogram("timbermill_bulk_actions", "Index requests in a bulk request");
+	public static final StatsCounter BULK_FAILED_TRIES_COUNTER = REGISTRY.counter("timbermill_bulk_failed_tries_total", "Bulk request tries that failed entirely or partially");
+	public static final StatsCounter BULKS_PERSISTED_COUNTER = REGISTRY.counter("timbermill_bulks_persisted_total", "Bulk requests that ran out of tries and were handed to persistence");
+
+	static {
+		REGISTRY.gauge("timbermill_cache_hit_ratio", "Ratio of the tasks looked up in the tasks cache that were found", () -> {
+			long queried = CACHE_TASKS_QUERIED_COUNTER.get();
+			return queried == 0 ? 0 : (double) CACHE_TASKS_HIT_COUNTER.get() / queried;
+		});
+	}
+}
@@ -0,0 +1,64 @@
+package com.datorama.oss.timbermill.common.stats;
+
+/**
+ * Writes a StatsRegistry in the Prometheus text exposition format (version 0.0.4). Histograms are written as summaries
+ * with their percentiles over the last few minutes as quantiles, like the sliding quantiles of Prometheus client summaries,
+ * plus a <name>_max gauge over the same window.
+ */
+public final class PrometheusExporter {
+
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private PrometheusExporter() {
+	}
+
+	public static String export(StatsRegistry registry) {
+		StringBuilder text = new StringBuilder();
+		for (StatsCounter counter : registry.getCounters()) {
+			writeHeader(text, counter.getName(), counter.getHelp(), "counter");
+			writeSample(text, counter.getName(), null, counter.get());
+		}
+		for (StatsRegistry.Gauge gauge : registry.getGauges()) {
+			writeHeader(text, gauge.getName(), gauge.getHelp(), "gauge");
+			writeSample(text, gauge.getName(), null, gauge.get());
+		}
+		for (StatsHistogram histogram : registry.getHistograms()) {
+			String name = histogram.getName();
+			writeHeader(text, name, histogram.getHelp(), "summary");
+			for (double percentile : StatsRegistry.PERCENTILES) {
+				writeSample(text, name, "quantile=\"" + percentile / 100 + "\"", histogram.getValueAtPercentile(percentile));
+			}
+			writeSample(text, name + "_sum", null, histogram.getSum());
+			writeSample(text, name + "_count", null, histogram.getCount());
+			writeHeader(text, name + "_max", histogram.getHelp() + ", maximum", "gauge");
+			writeSample(text, name + "_max", null, histogram.getMax());
+		}
+		return text.toString();
+	}
+
+	private static void writeHeader(StringBuilder text, String name, String help, String type) {
+		text.append("# HELP ").append(name).append(' ').append(help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+		text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	private static void writeSample(StringBuilder text, String name, String labels, double value) {
+		text.append(name);
+		if (labels != null) {
+			text.append('{').append(labels).append('}');
+		}
+		text.append(' ').append(formatValue(value)).append('\n');
+	}
+
+	private static String formatValue(double value) {
+		if (Double.isNaN(value)) {
+			return "NaN";
+		}
+		if (Double.isInfinite(value)) {
+			return value > 0 ? "+Inf" : "-Inf";
+		}
+		if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+			return Long.toString((long) value);
+		}
+		return Double.toString(value);
+	}
+}
@@ -0,0 +1,35 @@
+package com.datorama.oss.timbermill.common.stats;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class StatsCounter {
+
+	private final String name;
+	private final String help;
+	private final LongAdder value = new LongAdder();
+
+	StatsCounter(String name, String help) {
+		this.name = name;
+		this.help = help;
+	}
+
+	public void increment() {
+		value.increment();
+	}
+
+	public void add(long amount) {
+		value.add(amount);
+	}
+
+	public long get() {
+		return value.sum();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getHelp() {
+		return help;
+	}
+}
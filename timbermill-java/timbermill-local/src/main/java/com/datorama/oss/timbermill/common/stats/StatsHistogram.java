@@ -0,0 +1,177 @@
+package com.datorama.oss.timbermill.common.stats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Lock free histogram of non negative long values with HDR style buckets: values below 64 are counted exactly and larger values
+ * in 32 linear sub buckets per power of two, so a reported percentile is at most ~3% above the recorded value whatever its magnitude.
+ * Recording is a few atomic increments and allocates nothing but a new slot once a minute, so it can be called on every event.
+ * Percentiles and max are of the values recorded in the last WINDOW_MILLIS, kept in slots of a fifth of the window that are replaced
+ * as they age out, so a latency regression shows within minutes however long the process ran. Count and sum are cumulative since startup,
+ * like the Prometheus summaries they are exported as.
+ */
+public class StatsHistogram {
+
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int EXACT_VALUES = SUB_BUCKETS << 1;
+	private static final int FIRST_EXPONENT = SUB_BUCKET_BITS + 1;
+	static final int BUCKETS = EXACT_VALUES + (63 - FIRST_EXPONENT) * SUB_BUCKETS;
+	static final long WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(5);
+	private static final int WINDOW_SLOTS = 5;
+	private static final long SLOT_MILLIS = WINDOW_MILLIS / WINDOW_SLOTS;
+
+	private final String name;
+	private final String help;
+	private final double unitScale;
+	private final LongSupplier clock;
+	private final AtomicReferenceArray<Slot> slots = new AtomicReferenceArray<>(WINDOW_SLOTS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+
+	// unitScale converts the recorded values to the exported unit, e.g. 1e-9 for timers that record nanos and export seconds
+	StatsHistogram(String name, String help, double unitScale) {
+		this(name, help, unitScale, System::currentTimeMillis);
+	}
+
+	StatsHistogram(String name, String help, double unitScale, LongSupplier clock) {
+		this.name = name;
+		this.help = help;
+		this.unitScale = unitScale;
+		this.clock = clock;
+	}
+
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		Slot slot = getSlot(clock.getAsLong() / SLOT_MILLIS);
+		slot.counts.incrementAndGet(bucketOf(value));
+		slot.max.accumulateAndGet(value, Math::max);
+		count.increment();
+		sum.add(value);
+	}
+
+	public void recordNanosSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getHelp() {
+		return help;
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public double getSum() {
+		return sum.sum() * unitScale;
+	}
+
+	public double getMax() {
+		long windowMax = 0;
+		for (Slot slot : getWindowSlots()) {
+			windowMax = Math.max(windowMax, slot.max.get());
+		}
+		return windowMax * unitScale;
+	}
+
+	public double getMean() {
+		long currentCount = count.sum();
+		return currentCount == 0 ? 0 : getSum() / currentCount;
+	}
+
+	// the highest value that is equivalent to the value at the percentile, 0 when nothing was recorded
+	public double getValueAtPercentile(double percentile) {
+		long[] snapshot = new long[BUCKETS];
+		long total = 0;
+		long windowMax = 0;
+		for (Slot slot : getWindowSlots()) {
+			for (int bucket = 0; bucket < BUCKETS; bucket++) {
+				long bucketCount = slot.counts.get(bucket);
+				snapshot[bucket] += bucketCount;
+				total += bucketCount;
+			}
+			windowMax = Math.max(windowMax, slot.max.get());
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * total));
+		long seen = 0;
+		for (int bucket = 0; bucket < BUCKETS; bucket++) {
+			seen += snapshot[bucket];
+			if (seen >= rank) {
+				return Math.min(highestValueOf(bucket), windowMax) * unitScale;
+			}
+		}
+		return windowMax * unitScale;
+	}
+
+	// a slot of an interval that left the window is replaced rather than cleared, so a concurrent record never lands in a half cleared slot
+	private Slot getSlot(long interval) {
+		int index = (int) (interval % WINDOW_SLOTS);
+		while (true) {
+			Slot slot = slots.get(index);
+			if (slot != null && slot.interval >= interval) {
+				return slot;
+			}
+			Slot newSlot = new Slot(interval);
+			if (slots.compareAndSet(index, slot, newSlot)) {
+				return newSlot;
+			}
+		}
+	}
+
+	private List<Slot> getWindowSlots() {
+		long oldestInterval = clock.getAsLong() / SLOT_MILLIS - WINDOW_SLOTS + 1;
+		List<Slot> windowSlots = new ArrayList<>(WINDOW_SLOTS);
+		for (int index = 0; index < WINDOW_SLOTS; index++) {
+			Slot slot = slots.get(index);
+			if (slot != null && slot.interval >= oldestInterval) {
+				windowSlots.add(slot);
+			}
+		}
+		return windowSlots;
+	}
+
+	static int bucketOf(long value) {
+		if (value < EXACT_VALUES) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int mantissa = (int) (value >>> (exponent - SUB_BUCKET_BITS));
+		return EXACT_VALUES + (exponent - FIRST_EXPONENT) * SUB_BUCKETS + mantissa - SUB_BUCKETS;
+	}
+
+	static long highestValueOf(int bucket) {
+		if (bucket < EXACT_VALUES) {
+			return bucket;
+		}
+		int exponent = (bucket - EXACT_VALUES) / SUB_BUCKETS + FIRST_EXPONENT;
+		long mantissa = (bucket - EXACT_VALUES) % SUB_BUCKETS + SUB_BUCKETS;
+		int shift = exponent - SUB_BUCKET_BITS;
+		return ((mantissa + 1) << shift) - 1;
+	}
+
+	private static class Slot {
+		private final long interval;
+		private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+		private final AtomicLong max = new AtomicLong();
+
+		Slot(long interval) {
+			this.interval = interval;
+		}
+	}
+}
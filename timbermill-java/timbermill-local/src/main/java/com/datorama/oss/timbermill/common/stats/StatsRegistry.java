@@ -0,0 +1,114 @@
+package com.datorama.oss.timbermill.common.stats;
+
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Pipeline counters, gauges and histograms that are kept in process and read by the /admin/stats and /metrics endpoints,
+ * so they are available whether or not a Kamon reporter is configured. Counters and histograms are created once by PipelineStats,
+ * gauges are registered by the components that own the measured state and are read only when the stats are read.
+ */
+public class StatsRegistry {
+
+	private static final StatsRegistry INSTANCE = new StatsRegistry();
+	static final double[] PERCENTILES = {50, 90, 99, 99.9};
+	private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p999"};
+
+	private final Map<String, StatsCounter> counters = new ConcurrentSkipListMap<>();
+	private final Map<String, StatsHistogram> histograms = new ConcurrentSkipListMap<>();
+	private final Map<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+
+	public static StatsRegistry getInstance() {
+		return INSTANCE;
+	}
+
+	public StatsCounter counter(String name, String help) {
+		return counters.computeIfAbsent(name, key -> new StatsCounter(name, help));
+	}
+
+	public StatsHistogram histogram(String name, String help) {
+		return histograms.computeIfAbsent(name, key -> new StatsHistogram(name, help, 1));
+	}
+
+	// records nanos, read in seconds
+	public StatsHistogram timer(String name, String help) {
+		return histograms.computeIfAbsent(name, key -> new StatsHistogram(name, help, 1e-9));
+	}
+
+	// a gauge registered again under the same name replaces the previous one
+	public void gauge(String name, String help, DoubleSupplier value) {
+		gauges.put(name, new Gauge(name, help, value));
+	}
+
+	public Iterable<StatsCounter> getCounters() {
+		return counters.values();
+	}
+
+	public Iterable<StatsHistogram> getHistograms() {
+		return histograms.values();
+	}
+
+	public Iterable<Gauge> getGauges() {
+		return gauges.values();
+	}
+
+	public Map<String, Object> snapshot() {
+		Map<String, Object> snapshot = Maps.newLinkedHashMap();
+		Map<String, Long> countersSnapshot = Maps.newLinkedHashMap();
+		for (StatsCounter counter : counters.values()) {
+			countersSnapshot.put(counter.getName(), counter.get());
+		}
+		Map<String, Double> gaugesSnapshot = Maps.newLinkedHashMap();
+		for (Gauge gauge : gauges.values()) {
+			gaugesSnapshot.put(gauge.getName(), gauge.get());
+		}
+		Map<String, Map<String, Object>> histogramsSnapshot = Maps.newLinkedHashMap();
+		for (StatsHistogram histogram : histograms.values()) {
+			Map<String, Object> values = Maps.newLinkedHashMap();
+			values.put("count", histogram.getCount());
+			values.put("sum", histogram.getSum());
+			values.put("mean", histogram.getMean());
+			values.put("max", histogram.getMax());
+			for (int i = 0; i < PERCENTILES.length; i++) {
+				values.put(PERCENTILE_NAMES[i], histogram.getValueAtPercentile(PERCENTILES[i]));
+			}
+			histogramsSnapshot.put(histogram.getName(), values);
+		}
+		snapshot.put("counters", countersSnapshot);
+		snapshot.put("gauges", gaugesSnapshot);
+		snapshot.put("histograms", histogramsSnapshot);
+		return snapshot;
+	}
+
+	public static class Gauge {
+		private final String name;
+		private final String help;
+		private final DoubleSupplier value;
+
+		Gauge(String name, String help, DoubleSupplier value) {
+			this.name = name;
+			this.help = help;
+			this.value = value;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getHelp() {
+			return help;
+		}
+
+		// a gauge whose owner fails to report it reads as NaN instead of failing the whole scrape
+		public double get() {
+			try {
+				return value.getAsDouble();
+			} catch (RuntimeException e) {
+				return Double.NaN;
+			}
+		}
+	}
+}
@@ -2,6 +2,9 @@ package com.datorama.oss.timbermill.cron;
 
 import com.datorama.oss.timbermill.ElasticsearchClient;
 import com.datorama.oss.timbermill.common.KamonConstants;
+import com.datorama.oss.timbermill.common.jfr.PipelineEvent;
+import com.datorama.oss.timbermill.common.jfr.PipelineEventType;
+import com.datorama.oss.timbermill.common.jfr.PipelineEvents;
 import com.datorama.oss.timbermill.common.persistence.DbBulkRequest;
 import com.datorama.oss.timbermill.common.persistence.PersistenceHandler;
 import kamon.metric.Timer;
@@ -43,6 +46,7 @@ public class BulkPersistentFetchJob implements Job {
         String flowId = MDC.get("id");
         while (persistenceHandler.hasFailedBulks()) {
             LOG.info("#### Retry Failed-Requests Start ####");
+            PipelineEvent retryEvent = PipelineEvents.start(PipelineEventType.BULKS_RETRY);
             List<DbBulkRequest> failedRequests = persistenceHandler.fetchAndDeleteFailedBulks();
             int numOfFailedRequests = failedRequests.stream().mapToInt(DbBulkRequest::numOfActions).sum();
 
@@ -51,6 +55,7 @@ public class BulkPersistentFetchJob implements Job {
             for (DbBulkRequest failedDbBulkRequest : failedRequests) {
                 successRequests += es.sendDbFailedBulkRequest(failedDbBulkRequest, flowId, bulkNum++);
             }
+            retryEvent.finish(failedRequests.size(), numOfFailedRequests, successRequests);
             LOG.info("#### Retry Failed-Requests End ({}/{} fetched bulks re-processed successfully) ####", successRequests, numOfFailedRequests);
             if (successRequests == 0) {
                 break;
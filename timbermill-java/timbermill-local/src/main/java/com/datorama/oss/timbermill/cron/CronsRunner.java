@@ -1,10 +1,11 @@
 package com.datorama.oss.timbermill.cron;
 
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.datorama.oss.timbermill.common.redis.RedisService;
-import com.google.common.cache.LoadingCache;
-import io.github.resilience4j.ratelimiter.RateLimiter;
+import com.datorama.oss.timbermill.common.ratelimiter.HierarchicalRateLimiter;
 import org.elasticsearch.common.Strings;
 import org.quartz.*;
 import org.quartz.impl.StdSchedulerFactory;
@@ -12,6 +13,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.datorama.oss.timbermill.ElasticsearchClient;
+import com.datorama.oss.timbermill.StorageClient;
+import com.datorama.oss.timbermill.common.persistence.EventsSpiller;
 import com.datorama.oss.timbermill.common.persistence.PersistenceHandler;
 import com.datorama.oss.timbermill.unit.Event;
 
@@ -22,29 +25,55 @@ import static org.quartz.TriggerBuilder.newTrigger;
 
 public class CronsRunner {
 
+	public static final String BULK_PERSISTENT_FETCH_CRON = "bulk_persistent_fetch";
+	public static final String EVENTS_PERSISTENT_FETCH_CRON = "events_persistent_fetch";
+	public static final String DELETION_CRON = "deletion";
+	public static final String MERGING_CRON = "merging";
+	public static final String TIER_PROMOTION_CRON = "tier_promotion";
+
 	private static final Logger LOG = LoggerFactory.getLogger(CronsRunner.class);
 	private Scheduler scheduler;
+	private final Map<String, TriggerKey> cronTriggers = new ConcurrentHashMap<>();
+
+	public void runCrons(String bulkPersistentFetchCronExp, String eventsPersistentFetchCronExp, PersistenceHandler persistenceHandler, StorageClient storageClient, String deletionCronExp, BlockingQueue<Event> buffer,
+						 EventsSpiller eventsSpiller, String mergingCronExp, RedisService redisService, HierarchicalRateLimiter rateLimiter, String tierPromotionCronExp) {
+		registerCrons(bulkPersistentFetchCronExp, eventsPersistentFetchCronExp, persistenceHandler, storageClient, deletionCronExp, buffer, eventsSpiller, mergingCronExp, redisService,
+				rateLimiter, tierPromotionCronExp);
+		start();
+	}
 
-	public void runCrons(String bulkPersistentFetchCronExp, String eventsPersistentFetchCronExp, PersistenceHandler persistenceHandler, ElasticsearchClient es, String deletionCronExp, BlockingQueue<Event> buffer,
-						 BlockingQueue<Event> overFlowedEvents, String mergingCronExp, RedisService redisService, LoadingCache<String, RateLimiter> rateLimiterMap) {
+	// the registered crons do not fire until start is called
+	public void registerCrons(String bulkPersistentFetchCronExp, String eventsPersistentFetchCronExp, PersistenceHandler persistenceHandler, StorageClient storageClient, String deletionCronExp,
+			BlockingQueue<Event> buffer, EventsSpiller eventsSpiller, String mergingCronExp, RedisService redisService, HierarchicalRateLimiter rateLimiter, String tierPromotionCronExp) {
 		final StdSchedulerFactory sf = new StdSchedulerFactory();
 		try {
 			 scheduler = sf.getScheduler();
 			if (persistenceHandler != null) {
-				if (!Strings.isEmpty(bulkPersistentFetchCronExp)) {
-					runBulkPersistentFetchCron(bulkPersistentFetchCronExp, es, persistenceHandler, rateLimiterMap);
+				if (!Strings.isEmpty(bulkPersistentFetchCronExp) && storageClient instanceof ElasticsearchClient) {
+					runBulkPersistentFetchCron(bulkPersistentFetchCronExp, (ElasticsearchClient) storageClient, persistenceHandler);
 				}
 
 				if (!Strings.isEmpty(eventsPersistentFetchCronExp)) {
-					runEventsPersistentFetchCron(eventsPersistentFetchCronExp, persistenceHandler, buffer, overFlowedEvents);
+					runEventsPersistentFetchCron(eventsPersistentFetchCronExp, persistenceHandler, buffer, eventsSpiller, rateLimiter);
 				}
 			}
 			if (!Strings.isEmpty(deletionCronExp)) {
-				runDeletionTaskCron(deletionCronExp, es, redisService);
+				runDeletionTaskCron(deletionCronExp, storageClient, redisService);
 			}
 			if (!Strings.isEmpty(mergingCronExp)) {
-				runPartialMergingTasksCron(es, mergingCronExp, redisService);
+				runPartialMergingTasksCron(storageClient, mergingCronExp, redisService);
 			}
+			if (!Strings.isEmpty(tierPromotionCronExp) && storageClient instanceof ElasticsearchClient) {
+				runTierPromotionCron((ElasticsearchClient) storageClient, tierPromotionCronExp, redisService);
+			}
+		} catch (SchedulerException e) {
+			LOG.error("Could not register crons", e);
+			throw new RuntimeException(e);
+		}
+	}
+
+	public void start() {
+		try {
 			scheduler.start();
 		} catch (SchedulerException e) {
 			LOG.error("Could not start crons", e);
@@ -52,7 +81,40 @@ public class CronsRunner {
 		}
 	}
 
+	// returns null if the cron is not running
+	public String getCronExpression(String cron) {
+		TriggerKey triggerKey = cronTriggers.get(cron);
+		if (triggerKey == null) {
+			return null;
+		}
+		try {
+			Trigger trigger = scheduler.getTrigger(triggerKey);
+			return trigger instanceof CronTrigger ? ((CronTrigger) trigger).getCronExpression() : null;
+		} catch (SchedulerException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	// a run that already started is not interrupted, the next runs follow the new expression
+	public void rescheduleCron(String cron, String cronExp) {
+		TriggerKey triggerKey = cronTriggers.get(cron);
+		if (triggerKey == null) {
+			throw new RuntimeException("Cron " + cron + " is not running");
+		}
+		if (!CronExpression.isValidExpression(cronExp)) {
+			throw new RuntimeException("Illegal cron expression " + cronExp);
+		}
+		try {
+			scheduler.rescheduleJob(triggerKey, newTrigger().withIdentity(triggerKey).withSchedule(cronSchedule(cronExp)).build());
+		} catch (SchedulerException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
 	public void close(){
+		if (scheduler == null) {
+			return;
+		}
 		try {
 			scheduler.shutdown();
 		} catch (SchedulerException e) {
@@ -61,11 +123,12 @@ public class CronsRunner {
 	}
 
 	private void runEventsPersistentFetchCron(String eventsPersistentFetchCronExp, PersistenceHandler persistenceHandler, BlockingQueue<Event> buffer,
-											  BlockingQueue<Event> overFlowedEvents) throws SchedulerException {
+											  EventsSpiller eventsSpiller, HierarchicalRateLimiter rateLimiter) throws SchedulerException {
 		JobDataMap jobDataMap = new JobDataMap();
 		jobDataMap.put(PERSISTENCE_HANDLER, persistenceHandler);
 		jobDataMap.put(EVENTS_QUEUE, buffer);
-		jobDataMap.put(OVERFLOWED_EVENTS_QUEUE, overFlowedEvents);
+		jobDataMap.put(EVENTS_SPILLER, eventsSpiller);
+		jobDataMap.put(RATE_LIMITER, rateLimiter);
 
 		JobDetail job = newJob(EventsPersistentFetchJob.class)
 				.withIdentity("job3", "group3").usingJobData(jobDataMap)
@@ -76,13 +139,13 @@ public class CronsRunner {
 				.build();
 
 		scheduler.scheduleJob(job, trigger);
+		cronTriggers.put(EVENTS_PERSISTENT_FETCH_CRON, trigger.getKey());
 	}
 
-	private void runBulkPersistentFetchCron(String bulkPersistentFetchCronExp, ElasticsearchClient es, PersistenceHandler persistenceHandler, LoadingCache<String, RateLimiter> rateLimiterMap) throws SchedulerException {
+	private void runBulkPersistentFetchCron(String bulkPersistentFetchCronExp, ElasticsearchClient es, PersistenceHandler persistenceHandler) throws SchedulerException {
 		JobDataMap jobDataMap = new JobDataMap();
 		jobDataMap.put(CLIENT, es);
 		jobDataMap.put(PERSISTENCE_HANDLER, persistenceHandler);
-		jobDataMap.put(RATE_LIMITER_MAP, rateLimiterMap);
 		JobDetail job = newJob(BulkPersistentFetchJob.class)
 				.withIdentity("job2", "group2").usingJobData(jobDataMap)
 				.build();
@@ -91,11 +154,12 @@ public class CronsRunner {
 				.withSchedule(cronSchedule(bulkPersistentFetchCronExp))
 				.build();
 		scheduler.scheduleJob(job, trigger);
+		cronTriggers.put(BULK_PERSISTENT_FETCH_CRON, trigger.getKey());
 	}
 
-	private void runDeletionTaskCron(String deletionCronExp, ElasticsearchClient es, RedisService redisService) throws SchedulerException {
+	private void runDeletionTaskCron(String deletionCronExp, StorageClient storageClient, RedisService redisService) throws SchedulerException {
 		JobDataMap jobDataMap = new JobDataMap();
-		jobDataMap.put(CLIENT, es);
+		jobDataMap.put(CLIENT, storageClient);
 		jobDataMap.put(REDIS_SERVICE, redisService);
 		JobDetail job = newJob(ExpiredTasksDeletionJob.class)
 				.withIdentity("job1", "group1").usingJobData(jobDataMap)
@@ -106,11 +170,12 @@ public class CronsRunner {
 				.build();
 
 		scheduler.scheduleJob(job, trigger);
+		cronTriggers.put(DELETION_CRON, trigger.getKey());
 	}
 
-	private void runPartialMergingTasksCron(ElasticsearchClient es, String mergingCronExp, RedisService redisService) throws SchedulerException{
+	private void runPartialMergingTasksCron(StorageClient storageClient, String mergingCronExp, RedisService redisService) throws SchedulerException{
 		JobDataMap jobDataMap = new JobDataMap();
-		jobDataMap.put(CLIENT, es);
+		jobDataMap.put(CLIENT, storageClient);
 		jobDataMap.put(REDIS_SERVICE, redisService);
 		JobDetail job = newJob(TasksMergerJobs.class)
 				.withIdentity("job5", "group5").usingJobData(jobDataMap)
@@ -120,6 +185,22 @@ public class CronsRunner {
 				.withSchedule(cronSchedule(mergingCronExp))
 				.build();
 		scheduler.scheduleJob(job, trigger);
+		cronTriggers.put(MERGING_CRON, trigger.getKey());
+	}
+
+	private void runTierPromotionCron(ElasticsearchClient es, String tierPromotionCronExp, RedisService redisService) throws SchedulerException {
+		JobDataMap jobDataMap = new JobDataMap();
+		jobDataMap.put(CLIENT, es);
+		jobDataMap.put(REDIS_SERVICE, redisService);
+		JobDetail job = newJob(EnvTiersPromotionJob.class)
+				.withIdentity("job6", "group6").usingJobData(jobDataMap)
+				.build();
+		CronTrigger trigger = newTrigger()
+				.withIdentity("trigger6", "group6")
+				.withSchedule(cronSchedule(tierPromotionCronExp))
+				.build();
+		scheduler.scheduleJob(job, trigger);
+		cronTriggers.put(TIER_PROMOTION_CRON, trigger.getKey());
 	}
 
 }
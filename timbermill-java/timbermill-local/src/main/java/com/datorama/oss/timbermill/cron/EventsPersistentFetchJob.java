@@ -1,11 +1,15 @@
 package com.datorama.oss.timbermill.cron;
 
+import com.datorama.oss.timbermill.common.ByteBoundedEventsQueue;
 import com.datorama.oss.timbermill.common.KamonConstants;
+import com.datorama.oss.timbermill.common.jfr.PipelineEvent;
+import com.datorama.oss.timbermill.common.jfr.PipelineEventType;
+import com.datorama.oss.timbermill.common.jfr.PipelineEvents;
+import com.datorama.oss.timbermill.common.persistence.EventsSpiller;
 import com.datorama.oss.timbermill.common.persistence.PersistenceHandler;
+import com.datorama.oss.timbermill.common.ratelimiter.HierarchicalRateLimiter;
 import com.datorama.oss.timbermill.pipe.LocalOutputPipe;
 import com.datorama.oss.timbermill.unit.Event;
-import com.google.common.cache.LoadingCache;
-import io.github.resilience4j.ratelimiter.RateLimiter;
 import kamon.metric.Timer;
 import org.quartz.DisallowConcurrentExecution;
 import org.quartz.Job;
@@ -14,6 +18,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
@@ -28,22 +34,38 @@ public class EventsPersistentFetchJob implements Job {
 	@Override public void execute(JobExecutionContext context) {
 		PersistenceHandler persistenceHandler = (PersistenceHandler) context.getJobDetail().getJobDataMap().get(PERSISTENCE_HANDLER);
 		BlockingQueue<Event> eventsQueue = (BlockingQueue<Event>) context.getJobDetail().getJobDataMap().get(EVENTS_QUEUE);
-		BlockingQueue<Event> overflowedQueue = (BlockingQueue<Event>) context.getJobDetail().getJobDataMap().get(OVERFLOWED_EVENTS_QUEUE);
-		LoadingCache<String, RateLimiter> rateLimiterMap = (LoadingCache<String, RateLimiter>) context.getJobDetail().getJobDataMap().get(RATE_LIMITER_MAP);
+		EventsSpiller eventsSpiller = (EventsSpiller) context.getJobDetail().getJobDataMap().get(EVENTS_SPILLER);
+		HierarchicalRateLimiter rateLimiter = (HierarchicalRateLimiter) context.getJobDetail().getJobDataMap().get(RATE_LIMITER);
 		if (persistenceHandler != null && hasEnoughRoomLeft(eventsQueue)) {
 			KamonConstants.CURRENT_DATA_IN_DB_GAUGE.withTag("type", "overflowed_events_lists_amount").update(persistenceHandler.overFlowedEventsListsAmount());
+			KamonConstants.CURRENT_DATA_IN_DB_GAUGE.withTag("type", "deferred_events_lists_amount").update(persistenceHandler.deferredEventsListsAmount());
 			String flowId = "Overflowed Event Persistent Fetch Job - " + UUID.randomUUID().toString();
 			MDC.put("id", flowId);
 			LOG.info("Overflowed Events Fetch Job started.");
 			Timer.Started start = KamonConstants.EVENTS_FETCH_JOB_LATENCY.withoutTags().start();
 			while (hasEnoughRoomLeft(eventsQueue)){
+				PipelineEvent replayEvent = PipelineEvents.start(PipelineEventType.EVENTS_REPLAY);
+				// overflowed events first, the deferred ones are replayed once there are none
 				List<Event> events = persistenceHandler.fetchAndDeleteOverflowedEvents();
+				if (events.isEmpty()) {
+					events = fetchDeferredEvents(persistenceHandler, rateLimiter);
+				}
 				if (events.isEmpty()){
 					break;
 				}
 				else {
+					int admitted = 0;
 					for (Event event : events) {
-                        LocalOutputPipe.pushEventToQueues(persistenceHandler, eventsQueue, overflowedQueue, rateLimiterMap, event);
+						if (LocalOutputPipe.pushEventToQueues(eventsSpiller, eventsQueue, rateLimiter, event)) {
+							admitted++;
+						}
+					}
+					long eventsBytes = events.stream().mapToLong(Event::estimatedSize).sum();
+					KamonConstants.REPLAYED_EVENTS_BYTES_COUNTER.withoutTags().increment(eventsBytes);
+					replayEvent.finish(events.size(), admitted, eventsBytes);
+					// everything went back to the deferred queue, wait for the limits to refill before replaying more
+					if (admitted == 0) {
+						break;
 					}
 				}
 			}
@@ -52,7 +74,24 @@ public class EventsPersistentFetchJob implements Job {
 		}
 	}
 
+	// deferred events over the global permits left in this period stay in the spill store
+	private List<Event> fetchDeferredEvents(PersistenceHandler persistenceHandler, HierarchicalRateLimiter rateLimiter) {
+		long permits = rateLimiter.getAvailablePermits();
+		if (permits == 0) {
+			return Collections.emptyList();
+		}
+		List<Event> events = persistenceHandler.fetchAndDeleteDeferredEvents();
+		if (events.size() > permits) {
+			persistenceHandler.persistDeferredEvents(new ArrayList<>(events.subList((int) permits, events.size())));
+			events = events.subList(0, (int) permits);
+		}
+		return events;
+	}
+
 	private boolean hasEnoughRoomLeft(BlockingQueue<Event> eventsQueue) {
+		if (eventsQueue instanceof ByteBoundedEventsQueue) {
+			return ((ByteBoundedEventsQueue) eventsQueue).hasRoomForReplay();
+		}
 		double threshold = (eventsQueue.remainingCapacity() + eventsQueue.size()) * 0.2; // Only when queue had at least 20% free we will start adding persistent events
 		return eventsQueue.remainingCapacity() > threshold;
 	}
@@ -1,6 +1,6 @@
 package com.datorama.oss.timbermill.cron;
 
-import com.datorama.oss.timbermill.ElasticsearchClient;
+import com.datorama.oss.timbermill.StorageClient;
 import com.datorama.oss.timbermill.common.ElasticsearchUtil;
 import com.datorama.oss.timbermill.common.redis.RedisService;
 import com.github.jedis.lock.JedisLock;
@@ -18,7 +18,7 @@ public class ExpiredTasksDeletionJob implements Job {
 
     @Override
     public void execute(JobExecutionContext context) {
-        ElasticsearchClient client = (ElasticsearchClient) context.getJobDetail().getJobDataMap().get(ElasticsearchUtil.CLIENT);
+        StorageClient client = (StorageClient) context.getJobDetail().getJobDataMap().get(ElasticsearchUtil.CLIENT);
         RedisService redisService = (RedisService) context.getJobDetail().getJobDataMap().get(ElasticsearchUtil.REDIS_SERVICE);
         JedisLock lock;
         String flowId = "Expired Tasks Deletion Job - " + UUID.randomUUID().toString();
@@ -1,6 +1,6 @@
 package com.datorama.oss.timbermill.cron;
 
-import com.datorama.oss.timbermill.ElasticsearchClient;
+import com.datorama.oss.timbermill.StorageClient;
 import com.datorama.oss.timbermill.common.ElasticsearchUtil;
 import com.datorama.oss.timbermill.common.KamonConstants;
 import com.datorama.oss.timbermill.common.redis.RedisService;
@@ -24,7 +24,7 @@ public class TasksMergerJobs implements Job {
 
 	@Override public void execute(JobExecutionContext context) {
 		JobDataMap jobDataMap = context.getJobDetail().getJobDataMap();
-		ElasticsearchClient client = (ElasticsearchClient) jobDataMap.get(ElasticsearchUtil.CLIENT);
+		StorageClient client = (StorageClient) jobDataMap.get(ElasticsearchUtil.CLIENT);
         RedisService redisService = (RedisService) jobDataMap.get(ElasticsearchUtil.REDIS_SERVICE);
         JedisLock lock;
         String flowId = "Partials Tasks Merger Job - " + UUID.randomUUID().toString();
@@ -1,22 +1,26 @@
 package com.datorama.oss.timbermill.pipe;
 
 import com.datorama.oss.timbermill.*;
+import com.datorama.oss.timbermill.common.ByteBoundedEventsQueue;
 import com.datorama.oss.timbermill.common.ElasticsearchUtil;
 import com.datorama.oss.timbermill.common.KamonConstants;
+import com.datorama.oss.timbermill.common.bootstrap.StagedBootstrap;
 import com.datorama.oss.timbermill.common.cache.AbstractCacheHandler;
 import com.datorama.oss.timbermill.common.cache.CacheConfig;
 import com.datorama.oss.timbermill.common.cache.CacheHandlerUtil;
+import com.datorama.oss.timbermill.common.cardinality.FieldCardinalityGuard;
+import com.datorama.oss.timbermill.common.offload.TextOffloader;
+import com.datorama.oss.timbermill.common.scheduling.EnvFairScheduler;
+import com.datorama.oss.timbermill.common.scheduling.MicroBatcher;
+import com.datorama.oss.timbermill.common.persistence.EventsSpiller;
 import com.datorama.oss.timbermill.common.persistence.PersistenceHandler;
 import com.datorama.oss.timbermill.common.persistence.PersistenceHandlerUtil;
-import com.datorama.oss.timbermill.common.ratelimiter.RateLimiterUtil;
+import com.datorama.oss.timbermill.common.ratelimiter.HierarchicalRateLimiter;
+import com.datorama.oss.timbermill.common.stats.BufferedKamon;
+import com.datorama.oss.timbermill.common.stats.PipelineStats;
 import com.datorama.oss.timbermill.common.redis.RedisService;
 import com.datorama.oss.timbermill.cron.CronsRunner;
 import com.datorama.oss.timbermill.unit.Event;
-import com.datorama.oss.timbermill.unit.Task;
-import com.google.common.cache.LoadingCache;
-import io.github.resilience4j.ratelimiter.RateLimiter;
-import io.vavr.CheckedRunnable;
-import io.vavr.control.Try;
 import org.apache.commons.lang3.StringUtils;
 import org.elasticsearch.ElasticsearchException;
 import org.slf4j.Logger;
@@ -24,28 +28,41 @@ import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
 import java.util.Map;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 
 public class LocalOutputPipe implements EventOutputPipe {
 
     private static final int EVENT_QUEUE_CAPACITY = 1000000;
-
-    private final BlockingQueue<Event> buffer = new ArrayBlockingQueue<>(EVENT_QUEUE_CAPACITY);
-    private BlockingQueue<Event> overflowedQueue = new ArrayBlockingQueue<>(EVENT_QUEUE_CAPACITY);
+    private static final long SPILL_WAIT_MILLIS = 500;
+    public static final String LUCENE_STORAGE_STRATEGY = "lucene";
+    private static final String STORAGE_STAGE = "storage";
+    private static final String CRONS_STAGE = "crons";
+
+    private final ByteBoundedEventsQueue buffer;
+    private final EventsSpiller eventsSpiller;
+    private final EnvFairScheduler envFairScheduler;
+    private final MicroBatcher microBatcher;
     private PersistenceHandler persistenceHandler;
     private ElasticsearchClient esClient;
+    private StorageClient storageClient;
     private TaskIndexer taskIndexer;
     private final CronsRunner cronsRunner;
-    private boolean keepRunning = true;
-    private boolean stoppedRunning = false;
+    private final StagedBootstrap bootstrap;
+    private volatile boolean keepRunning = true;
+    private volatile boolean stoppedRunning = false;
     private static final Logger LOG = LoggerFactory.getLogger(LocalOutputPipe.class);
-    private LoadingCache<String, RateLimiter> rateLimiterMap;
+    private HierarchicalRateLimiter rateLimiter;
 
     private LocalOutputPipe(Builder builder) {
-        if (builder.elasticUrl == null){
+        boolean luceneStorage = LUCENE_STORAGE_STRATEGY.equalsIgnoreCase(builder.storageStrategy);
+        if (builder.elasticUrl == null && !luceneStorage){
             throw new ElasticsearchException("Must enclose an Elasticsearch URL");
         }
+        buffer = new ByteBoundedEventsQueue("events", EVENT_QUEUE_CAPACITY, builder.eventsQueueMaxBytes, builder.queuesLowWatermarkRatio);
+        ByteBoundedEventsQueue overflowedQueue = new ByteBoundedEventsQueue("overflowed", EVENT_QUEUE_CAPACITY, builder.overflowedQueueMaxBytes, builder.queuesLowWatermarkRatio);
+        ByteBoundedEventsQueue deferredQueue = new ByteBoundedEventsQueue("deferred", EVENT_QUEUE_CAPACITY, builder.deferredQueueMaxBytes, builder.queuesLowWatermarkRatio);
+        envFairScheduler = new EnvFairScheduler(10000, builder.eventsStagingMaxBytes, builder.envWeights, 1, builder.envMaxBatchShares, builder.defaultEnvMaxBatchShare);
+        microBatcher = new MicroBatcher(builder.batchTargetBytes, builder.batchMinDeadlineMillis, builder.batchMaxDeadlineMillis, builder.indexingLatencySloMillis);
 
         RedisService redisService = null;
         if (!StringUtils.isEmpty(builder.redisHost)) {
@@ -53,79 +70,154 @@ public class LocalOutputPipe implements EventOutputPipe {
         }
         Map<String, Object> params = PersistenceHandler.buildPersistenceHandlerParams(builder.maxFetchedBulksInOneTime, builder.maxFetchedEventsInOneTime, builder.maxInsertTries, builder.locationInDisk, builder.redisTtlInSeconds, redisService);
         persistenceHandler = PersistenceHandlerUtil.getPersistenceHandler(builder.persistenceHandlerStrategy, params);
-        esClient = new ElasticsearchClient(builder.elasticUrl, builder.indexBulkSize, builder.indexingThreads, builder.awsRegion, builder.elasticUser, builder.elasticPassword,
-                builder.maxIndexAge, builder.maxIndexSizeInGB, builder.maxIndexDocs, builder.numOfElasticSearchActionsTries, builder.maxBulkIndexFetched, builder.searchMaxSize, persistenceHandler,
-                builder.numberOfShards, builder.numberOfReplicas, builder.maxTotalFields, builder.bulker, builder.scrollLimitation, builder.scrollTimeoutSeconds, builder.fetchByIdsPartitions,
-                builder.expiredMaxIndicesToDeleteInParallel);
-        rateLimiterMap = RateLimiterUtil.initRateLimiter(builder.limitForPeriod, builder.limitRefreshPeriodMinutes, builder.rateLimiterCapacity);
+        eventsSpiller = new EventsSpiller(persistenceHandler, buffer, overflowedQueue, deferredQueue);
+        if (luceneStorage) {
+            storageClient = new LuceneStorageClient(builder.luceneLocationInDisk);
+        }
+        else {
+            ElasticsearchClientConfig esClientConfig = new ElasticsearchClientConfig.Builder()
+                    .url(builder.elasticUrl)
+                    .indexBulkSize(builder.indexBulkSize)
+                    .indexingThreads(builder.indexingThreads)
+                    .awsRegion(builder.awsRegion)
+                    .elasticUser(builder.elasticUser)
+                    .elasticPassword(builder.elasticPassword)
+                    .maxIndexAge(builder.maxIndexAge)
+                    .maxIndexSizeInGB(builder.maxIndexSizeInGB)
+                    .maxIndexDocs(builder.maxIndexDocs)
+                    .numOfElasticSearchActionsTries(builder.numOfElasticSearchActionsTries)
+                    .maxBulkIndexFetches(builder.maxBulkIndexFetched)
+                    .searchMaxSize(builder.searchMaxSize)
+                    .numberOfShards(builder.numberOfShards)
+                    .numberOfReplicas(builder.numberOfReplicas)
+                    .maxTotalFields(builder.maxTotalFields)
+                    .scrollLimitation(builder.scrollLimitation)
+                    .scrollTimeoutSeconds(builder.scrollTimeoutSeconds)
+                    .fetchByIdsPartitions(builder.fetchByIdsPartitions)
+                    .expiredMaxIndicesToDeleteInParallel(builder.expiredMaxIndicesToDeleteInParallel)
+                    .tieredIndices(builder.tieredIndices)
+                    .sharedIndexMaxDocs(builder.sharedIndexMaxDocs)
+                    .tierPromotionDocsThreshold(builder.tierPromotionDocsThreshold)
+                    .bootstrapOnCreate(false)
+                    .build();
+            esClient = new ElasticsearchClient(esClientConfig, persistenceHandler, builder.bulker);
+            storageClient = esClient;
+        }
+        rateLimiter = new HierarchicalRateLimiter(builder.globalLimitForPeriod, builder.envLimitForPeriod, builder.limitForPeriod, builder.limitRefreshPeriodMinutes, builder.rateLimiterCapacity);
 
         CacheConfig cacheParams = new CacheConfig(redisService, builder.redisTtlInSeconds, builder.maximumTasksCacheWeight, builder.maximumOrphansCacheWeight);
         AbstractCacheHandler cacheHandler = CacheHandlerUtil.getCacheHandler(builder.cacheStrategy, cacheParams);
-        taskIndexer = new TaskIndexer(builder.pluginsJson, builder.daysRotation, esClient, builder.timbermillVersion,cacheHandler);
+        taskIndexer = new TaskIndexer(builder.pluginsJson, builder.daysRotation, storageClient, builder.timbermillVersion,cacheHandler,
+                new FieldCardinalityGuard(builder.maxFieldNamesPerPrefix, redisService),
+                TextOffloader.create(builder.textOffloadThresholdChars, builder.textOffloadPreviewChars, builder.textOffloadStrategy, builder.textOffloadLocationInDisk,
+                        builder.daysRotation, redisService));
         cronsRunner = new CronsRunner();
-        cronsRunner.runCrons(builder.bulkPersistentFetchCronExp, builder.eventsPersistentFetchCronExp, persistenceHandler, esClient,
-                builder.deletionCronExp, buffer, overflowedQueue,
-                builder.mergingCronExp, redisService, rateLimiterMap);
-        startQueueSpillerThread();
+        cronsRunner.registerCrons(builder.bulkPersistentFetchCronExp, builder.eventsPersistentFetchCronExp, persistenceHandler, storageClient,
+                builder.deletionCronExp, buffer, eventsSpiller,
+                builder.mergingCronExp, redisService, rateLimiter, builder.tieredIndices ? builder.tierPromotionCronExp : null);
+
+        // events are queued (and spilled to persistence) from now on, they are indexed once Elasticsearch is bootstrapped
+        bootstrap = new StagedBootstrap(builder.bootstrapInitialBackoffMillis, builder.bootstrapMaxBackoffMillis)
+                .stage(STORAGE_STAGE, () -> {
+                    if (esClient != null) {
+                        esClient.bootstrap();
+                    }
+                })
+                .stage(CRONS_STAGE, () -> {
+                    // the crons write to storage, so they only fire once it is bootstrapped
+                    if (awaitStorage()) {
+                        cronsRunner.start();
+                    }
+                });
+        eventsSpiller.start();
         startWorkingThread();
-    }
-
-    private void startQueueSpillerThread() {
-        Thread spillerThread = new Thread(() -> {
-            LOG.info("Starting Queue Spiller Thread");
-            while (keepRunning) {
-                persistenceHandler.spillOverflownEvents(overflowedQueue);
-                try {
-                    Thread.sleep(ElasticsearchUtil.THREAD_SLEEP);
-                } catch (InterruptedException e) {
-                    LOG.error("InterruptedException was thrown from TaskIndexer:", e);
-                }
-            }
-        });
-        spillerThread.start();
+        bootstrap.start();
     }
 
     private void startWorkingThread() {
         Thread workingThread = new Thread(() -> {
+            if (!awaitStorage()) {
+                stoppedRunning = true;
+                return;
+            }
             LOG.info("Timbermill has started");
             while (keepRunning) {
-                ElasticsearchUtil.drainAndIndex(buffer, taskIndexer, 10000);
+                ElasticsearchUtil.drainAndIndex(buffer, taskIndexer, envFairScheduler, microBatcher);
             }
+            ElasticsearchUtil.indexPending(buffer, taskIndexer, envFairScheduler, microBatcher.getTargetBytes(), Long.MAX_VALUE);
             stoppedRunning = true;
         });
         workingThread.start();
     }
 
+    // returns false if the pipe was closed before the storage was bootstrapped
+    private boolean awaitStorage() {
+        while (keepRunning) {
+            try {
+                if (bootstrap.awaitReady(ElasticsearchUtil.THREAD_SLEEP, STORAGE_STAGE)) {
+                    return true;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return false;
+    }
+
     @Override
     public void send(Event event){
-        pushEventToQueues(persistenceHandler, buffer, overflowedQueue, rateLimiterMap, event);
+        pushEventToQueues(eventsSpiller, buffer, rateLimiter, event);
     }
 
-    public static void pushEventToQueues(PersistenceHandler persistenceHandler, BlockingQueue<Event> eventsQueue, BlockingQueue<Event> overflowedQueue, LoadingCache<String, RateLimiter> rateLimiterMap, Event event) {
-        RateLimiter rateLimiter = rateLimiterMap.getUnchecked(Task.getNameFromId(event.getName(), event.getTaskId()));
-        CheckedRunnable restrictedCall = RateLimiter
-                .decorateCheckedRunnable(rateLimiter, () -> doPushEventToQueues(persistenceHandler, eventsQueue, overflowedQueue, event));
-
-        Try.run(restrictedCall)
-                .onFailure(e -> LOG.error("event {} was discarded because of rate limit", event.getTaskId()));
+    // returns false if the event was over the rate limit, it is then deferred to the deferred queue and replayed from persistence later
+    public static boolean pushEventToQueues(EventsSpiller eventsSpiller, BlockingQueue<Event> eventsQueue, HierarchicalRateLimiter rateLimiter, Event event) {
+        PipelineStats.EVENTS_RECEIVED_COUNTER.increment();
+        HierarchicalRateLimiter.Level limitedLevel = rateLimiter.tryAcquire(event);
+        if (limitedLevel == null) {
+            doPushEventToQueues(eventsSpiller, eventsQueue, event);
+            return true;
+        }
+        if (deferEvent(eventsSpiller, event)) {
+            PipelineStats.EVENTS_DEFERRED_COUNTER.increment();
+        } else {
+            PipelineStats.EVENTS_DISCARDED_COUNTER.increment();
+            rateLimiter.recordDropped(limitedLevel);
+            LOG.error("Event {} was over the {} rate limit and could not be deferred, it was discarded", event.getTaskId(), limitedLevel);
+        }
+        return false;
     }
 
+    private static boolean deferEvent(EventsSpiller eventsSpiller, Event event) {
+        // without persistence nothing replays the deferred queue
+        if (!eventsSpiller.hasPersistence()) {
+            return false;
+        }
+        if (!offerOrAwaitSpill(eventsSpiller, eventsSpiller.getDeferredQueue(), event)) {
+            return false;
+        }
+        KamonConstants.DEFERRED_QUEUE_BUFFERED_SAMPLER.increment();
+        return true;
+    }
 
-    private static void doPushEventToQueues(PersistenceHandler persistenceHandler, BlockingQueue<Event> eventsQueue, BlockingQueue<Event> overflowedQueue, Event event) {
+    private static void doPushEventToQueues(EventsSpiller eventsSpiller, BlockingQueue<Event> eventsQueue, Event event) {
         if (!eventsQueue.offer(event)) {
-            if (!overflowedQueue.offer(event)) {
-                persistenceHandler.spillOverflownEvents(overflowedQueue);
-                if (!overflowedQueue.offer(event)) {
-                    LOG.error("OverflowedQueue is full, event {} was discarded", event.getTaskId());
-                }
+            if (!offerOrAwaitSpill(eventsSpiller, eventsSpiller.getOverflowedQueue(), event)) {
+                PipelineStats.EVENTS_DISCARDED_COUNTER.increment();
+                LOG.error("OverflowedQueue is full, event {} was discarded", event.getTaskId());
             } else {
-                KamonConstants.MESSAGES_IN_OVERFLOWED_QUEUE_RANGE_SAMPLER.withoutTags().increment();
+                KamonConstants.OVERFLOWED_QUEUE_BUFFERED_SAMPLER.increment();
             }
         } else {
-            KamonConstants.MESSAGES_IN_INPUT_QUEUE_RANGE_SAMPLER.withoutTags().increment();
+            KamonConstants.INPUT_QUEUE_BUFFERED_SAMPLER.increment();
         }
     }
 
+    // a full queue is spilled by the spiller thread, the caller only waits a bounded time for it
+    private static boolean offerOrAwaitSpill(EventsSpiller eventsSpiller, BlockingQueue<Event> queue, Event event) {
+        return queue.offer(event) || (eventsSpiller.awaitSpill(SPILL_WAIT_MILLIS) && queue.offer(event));
+    }
+
     public void close() {
         LOG.info("Gracefully shutting down Timbermill Server.");
         keepRunning = false;
@@ -135,11 +227,18 @@ public class LocalOutputPipe implements EventOutputPipe {
             } catch (InterruptedException ignored) {
             }
         }
+        bootstrap.close();
+        eventsSpiller.close();
         if (persistenceHandler != null){
+            // left in the events queue when the storage was never bootstrapped
+            persistenceHandler.spillOverflownEvents(buffer);
+            eventsSpiller.spill();
             persistenceHandler.close();
         }
         taskIndexer.close();
         cronsRunner.close();
+        rateLimiter.close();
+        BufferedKamon.flush();
         LOG.info("Timbermill server was shut down.");
     }
 
@@ -151,24 +250,36 @@ public class LocalOutputPipe implements EventOutputPipe {
         return esClient;
     }
 
+    public StorageClient getStorageClient() {
+        return storageClient;
+    }
+
     public BlockingQueue<Event> getBuffer() {
         return buffer;
     }
 
     public BlockingQueue<Event> getOverflowedQueue() {
-        return overflowedQueue;
+        return eventsSpiller.getOverflowedQueue();
+    }
+
+    public BlockingQueue<Event> getDeferredQueue() {
+        return eventsSpiller.getDeferredQueue();
+    }
+
+    public EventsSpiller getEventsSpiller() {
+        return eventsSpiller;
     }
 
     public PersistenceHandler getPersistenceHandler() {
         return persistenceHandler;
     }
 
-    public LoadingCache<String, RateLimiter> getRateLimiterMap() {
-        return rateLimiterMap;
+    public HierarchicalRateLimiter getRateLimiter() {
+        return rateLimiter;
     }
 
-    public void setRateLimiterMap(LoadingCache<String, RateLimiter> rateLimiterMap) {
-        this.rateLimiterMap = rateLimiterMap;
+    public void setRateLimiter(HierarchicalRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
     }
 
     public static class Builder {
@@ -221,9 +332,36 @@ public class LocalOutputPipe implements EventOutputPipe {
         private int fetchByIdsPartitions = 10000;
         private int expiredMaxIndicesToDeleteInParallel = 2;
         private String timbermillVersion = "";
+        private String storageStrategy = "elasticsearch";
+        private String luceneLocationInDisk = "/tmp/timbermill-lucene";
         private int limitForPeriod = 10000;
         private Duration limitRefreshPeriodMinutes = Duration.ofMinutes(1);
         private int rateLimiterCapacity = 30000;
+        private int globalLimitForPeriod = 0;
+        private int envLimitForPeriod = 0;
+        private boolean tieredIndices = false;
+        private long sharedIndexMaxDocs = 1000000000;
+        private long tierPromotionDocsThreshold = 1000000;
+        private String tierPromotionCronExp = "0 0/10 * 1/1 * ? *";
+        private int maxFieldNamesPerPrefix = 1000;
+        private long eventsQueueMaxBytes = 268435456;
+        private long overflowedQueueMaxBytes = 67108864;
+        private long deferredQueueMaxBytes = 67108864;
+        private double queuesLowWatermarkRatio = 0.7;
+        private long eventsStagingMaxBytes = 67108864;
+        private String envWeights = "";
+        private String envMaxBatchShares = "";
+        private double defaultEnvMaxBatchShare = 0.5;
+        private long batchTargetBytes = 16777216;
+        private long batchMinDeadlineMillis = 100;
+        private long batchMaxDeadlineMillis = ElasticsearchUtil.THREAD_SLEEP;
+        private long indexingLatencySloMillis = 5000;
+        private int textOffloadThresholdChars = 0;
+        private int textOffloadPreviewChars = 1000;
+        private String textOffloadStrategy = TextOffloader.DISK_STRATEGY;
+        private String textOffloadLocationInDisk = "/tmp/timbermill-texts";
+        private long bootstrapInitialBackoffMillis = 1000;
+        private long bootstrapMaxBackoffMillis = 60000;
 
         public Builder url(String elasticUrl) {
             this.elasticUrl = elasticUrl;
@@ -446,6 +584,16 @@ public class LocalOutputPipe implements EventOutputPipe {
             return this;
         }
 
+        public Builder storageStrategy(String storageStrategy) {
+            this.storageStrategy = storageStrategy;
+            return this;
+        }
+
+        public Builder luceneLocationInDisk(String luceneLocationInDisk) {
+            this.luceneLocationInDisk = luceneLocationInDisk;
+            return this;
+        }
+
         public Builder limitForPeriod(int limitForPeriod) {
             this.limitForPeriod = limitForPeriod;
             return this;
@@ -461,6 +609,134 @@ public class LocalOutputPipe implements EventOutputPipe {
             return this;
         }
 
+        public Builder globalLimitForPeriod(int globalLimitForPeriod) {
+            this.globalLimitForPeriod = globalLimitForPeriod;
+            return this;
+        }
+
+        public Builder envLimitForPeriod(int envLimitForPeriod) {
+            this.envLimitForPeriod = envLimitForPeriod;
+            return this;
+        }
+
+        public Builder tieredIndices(boolean tieredIndices) {
+            this.tieredIndices = tieredIndices;
+            return this;
+        }
+
+        public Builder sharedIndexMaxDocs(long sharedIndexMaxDocs) {
+            this.sharedIndexMaxDocs = sharedIndexMaxDocs;
+            return this;
+        }
+
+        public Builder tierPromotionDocsThreshold(long tierPromotionDocsThreshold) {
+            this.tierPromotionDocsThreshold = tierPromotionDocsThreshold;
+            return this;
+        }
+
+        public Builder tierPromotionCronExp(String tierPromotionCronExp) {
+            this.tierPromotionCronExp = tierPromotionCronExp;
+            return this;
+        }
+
+        // kept in memory without Redis, so each restart grants a fresh budget
+        public Builder maxFieldNamesPerPrefix(int maxFieldNamesPerPrefix) {
+            this.maxFieldNamesPerPrefix = maxFieldNamesPerPrefix;
+            return this;
+        }
+
+        public Builder eventsQueueMaxBytes(long eventsQueueMaxBytes) {
+            this.eventsQueueMaxBytes = eventsQueueMaxBytes;
+            return this;
+        }
+
+        public Builder overflowedQueueMaxBytes(long overflowedQueueMaxBytes) {
+            this.overflowedQueueMaxBytes = overflowedQueueMaxBytes;
+            return this;
+        }
+
+        public Builder deferredQueueMaxBytes(long deferredQueueMaxBytes) {
+            this.deferredQueueMaxBytes = deferredQueueMaxBytes;
+            return this;
+        }
+
+        public Builder bootstrapInitialBackoffMillis(long bootstrapInitialBackoffMillis) {
+            this.bootstrapInitialBackoffMillis = bootstrapInitialBackoffMillis;
+            return this;
+        }
+
+        public Builder bootstrapMaxBackoffMillis(long bootstrapMaxBackoffMillis) {
+            this.bootstrapMaxBackoffMillis = bootstrapMaxBackoffMillis;
+            return this;
+        }
+
+        public Builder queuesLowWatermarkRatio(double queuesLowWatermarkRatio) {
+            this.queuesLowWatermarkRatio = queuesLowWatermarkRatio;
+            return this;
+        }
+
+        public Builder eventsStagingMaxBytes(long eventsStagingMaxBytes) {
+            this.eventsStagingMaxBytes = eventsStagingMaxBytes;
+            return this;
+        }
+
+        // "env1:weight1,env2:weight2", envs that are not listed get a weight of 1
+        public Builder envWeights(String envWeights) {
+            this.envWeights = envWeights;
+            return this;
+        }
+
+        // "env1:share1,env2:share2", envs that are not listed get defaultEnvMaxBatchShare
+        public Builder envMaxBatchShares(String envMaxBatchShares) {
+            this.envMaxBatchShares = envMaxBatchShares;
+            return this;
+        }
+
+        public Builder defaultEnvMaxBatchShare(double defaultEnvMaxBatchShare) {
+            this.defaultEnvMaxBatchShare = defaultEnvMaxBatchShare;
+            return this;
+        }
+
+        public Builder batchTargetBytes(long batchTargetBytes) {
+            this.batchTargetBytes = batchTargetBytes;
+            return this;
+        }
+
+        public Builder batchMinDeadlineMillis(long batchMinDeadlineMillis) {
+            this.batchMinDeadlineMillis = batchMinDeadlineMillis;
+            return this;
+        }
+
+        public Builder batchMaxDeadlineMillis(long batchMaxDeadlineMillis) {
+            this.batchMaxDeadlineMillis = batchMaxDeadlineMillis;
+            return this;
+        }
+
+        public Builder indexingLatencySloMillis(long indexingLatencySloMillis) {
+            this.indexingLatencySloMillis = indexingLatencySloMillis;
+            return this;
+        }
+
+        public Builder textOffloadThresholdChars(int textOffloadThresholdChars) {
+            this.textOffloadThresholdChars = textOffloadThresholdChars;
+            return this;
+        }
+
+        public Builder textOffloadPreviewChars(int textOffloadPreviewChars) {
+            this.textOffloadPreviewChars = textOffloadPreviewChars;
+            return this;
+        }
+
+        public Builder textOffloadStrategy(String textOffloadStrategy) {
+            this.textOffloadStrategy = textOffloadStrategy;
+            return this;
+        }
+
+        public Builder textOffloadLocationInDisk(String textOffloadLocationInDisk) {
+            this.textOffloadLocationInDisk = textOffloadLocationInDisk;
+            return this;
+        }
+
         public LocalOutputPipe build() {
             return new LocalOutputPipe(this);
         }
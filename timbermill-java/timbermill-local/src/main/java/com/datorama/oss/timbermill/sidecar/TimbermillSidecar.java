@@ -0,0 +1,183 @@
+package com.datorama.oss.timbermill.sidecar;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datorama.oss.timbermill.common.ByteBoundedEventsQueue;
+import com.datorama.oss.timbermill.common.EventsIdsCache;
+import com.datorama.oss.timbermill.common.EventsStreamReader;
+import com.datorama.oss.timbermill.pipe.EventOutputPipe;
+import com.datorama.oss.timbermill.pipe.LocalOutputPipe;
+import com.datorama.oss.timbermill.unit.Event;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Standalone Timbermill server for running next to the application on the same host, without Spring Boot.
+ * Serves the same /events and /events/v2 protocol as the Timbermill server on the JDK's built in HTTP server and hands the events to a LocalOutputPipe,
+ * so they go through the same rate limiting, queues, persistence and TaskIndexer pipeline.
+ * Configured from system properties or environment variables with the Timbermill server names, with queue and batch defaults sized for a small heap.
+ * It starts serving right away, events are queued while the pipe bootstraps Elasticsearch in the background.
+ * Packaged as the timbermill-local sidecar jar: java -jar timbermill-local-&lt;version&gt;-sidecar.jar
+ */
+public class TimbermillSidecar {
+
+	private static final Logger LOG = LoggerFactory.getLogger(TimbermillSidecar.class);
+	private static final String RETRY_AFTER_SECONDS = "1";
+	private static final long EVENTS_IDS_TTL_SECONDS = 60;
+
+	private final HttpServer httpServer;
+	private final ExecutorService executor;
+	private final EventOutputPipe pipe;
+	private final ByteBoundedEventsQueue eventsQueue;
+	private final EventsStreamReader eventsStreamReader;
+	private final EventsIdsCache eventsIdsCache = new EventsIdsCache(EVENTS_IDS_TTL_SECONDS);
+
+	TimbermillSidecar(LocalOutputPipe pipe, int port, int httpThreads, int eventsChunkSize) throws IOException {
+		this(pipe, (ByteBoundedEventsQueue) pipe.getBuffer(), port, httpThreads, eventsChunkSize);
+	}
+
+	TimbermillSidecar(EventOutputPipe pipe, ByteBoundedEventsQueue eventsQueue, int port, int httpThreads, int eventsChunkSize) throws IOException {
+		this.pipe = pipe;
+		this.eventsQueue = eventsQueue;
+		ObjectMapper objectMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+		this.eventsStreamReader = new EventsStreamReader(objectMapper, eventsChunkSize);
+		this.executor = Executors.newFixedThreadPool(httpThreads);
+		this.httpServer = HttpServer.create(new InetSocketAddress(port), 0);
+		httpServer.createContext("/events", this::handleEvents);
+		httpServer.createContext("/health", exchange -> respond(exchange, 200, "OK"));
+		httpServer.setExecutor(executor);
+	}
+
+	public static void main(String[] args) throws IOException {
+		long start = System.currentTimeMillis();
+		LocalOutputPipe pipe = new LocalOutputPipe.Builder()
+				.url(getSetting("ELASTICSEARCH_URL", "http://localhost:9200"))
+				.awsRegion(StringUtils.defaultIfEmpty(getSetting("ELASTICSEARCH_AWS_REGION", ""), null))
+				.elasticUser(StringUtils.defaultIfEmpty(getSetting("ELASTICSEARCH_USER", ""), null))
+				.elasticPassword(StringUtils.defaultIfEmpty(getSetting("ELASTICSEARCH_PASSWORD", ""), null))
+				.storageStrategy(getSetting("STORAGE_STRATEGY", "elasticsearch"))
+				.luceneLocationInDisk(getSetting("LUCENE_LOCATION_IN_DISK", "/tmp/timbermill-lucene"))
+				.pluginsJson(getSetting("PLUGINS_JSON", "[]"))
+				.daysRotation(Integer.parseInt(getSetting("DAYS_ROTATION", "90")))
+				.timbermillVersion(getSetting("TIMBERMILL_VERSION", ""))
+				.indexBulkSize(Integer.parseInt(getSetting("INDEX_BULK_SIZE", "20000")))
+				.indexingThreads(Integer.parseInt(getSetting("INDEXING_THREADS", "2")))
+				.persistenceHandlerStrategy(getSetting("PERSISTENCE_STRATEGY", "sqlite"))
+				.locationInDisk(getSetting("LOCATION_IN_DISK", "/tmp"))
+				.cacheStrategy(getSetting("CACHE_STRATEGY", ""))
+				.maximumTasksCacheWeight(Integer.parseInt(getSetting("MAXIMUM_TASKS_CACHE_WEIGHT", "16777216")))
+				.maximumOrphansCacheWeight(Integer.parseInt(getSetting("MAXIMUM_ORPHANS_CACHE_WEIGHT", "16777216")))
+				.limitForPeriod(Integer.parseInt(getSetting("LIMIT_FOR_PERIOD", "30000")))
+				.envLimitForPeriod(Integer.parseInt(getSetting("ENV_LIMIT_FOR_PERIOD", "0")))
+				.globalLimitForPeriod(Integer.parseInt(getSetting("GLOBAL_LIMIT_FOR_PERIOD", "0")))
+				.eventsQueueMaxBytes(Long.parseLong(getSetting("EVENT_QUEUE_MAX_BYTES", "33554432")))
+				.overflowedQueueMaxBytes(Long.parseLong(getSetting("OVERFLOWED_QUEUE_MAX_BYTES", "8388608")))
+				.deferredQueueMaxBytes(Long.parseLong(getSetting("DEFERRED_QUEUE_MAX_BYTES", "8388608")))
+				.eventsStagingMaxBytes(Long.parseLong(getSetting("EVENTS_STAGING_MAX_BYTES", "8388608")))
+				.batchTargetBytes(Long.parseLong(getSetting("BATCH_TARGET_BYTES", "4194304")))
+				.batchMaxDeadlineMillis(Long.parseLong(getSetting("BATCH_MAX_DEADLINE_MILLIS", "2000")))
+				.indexingLatencySloMillis(Long.parseLong(getSetting("INDEXING_LATENCY_SLO_MILLIS", "5000")))
+				.build();
+		TimbermillSidecar sidecar = new TimbermillSidecar(pipe, Integer.parseInt(getSetting("SERVER_PORT", "8484")),
+				Integer.parseInt(getSetting("HTTP_THREADS", "4")), Integer.parseInt(getSetting("EVENTS_STREAM_CHUNK_SIZE", "1000")));
+		Runtime.getRuntime().addShutdownHook(new Thread(sidecar::stop));
+		sidecar.start();
+		LOG.info("Timbermill sidecar started on port {} in {}ms", sidecar.getPort(), System.currentTimeMillis() - start);
+	}
+
+	void start() {
+		httpServer.start();
+	}
+
+	// stops accepting requests first, so events already received are indexed by the pipe before it closes
+	void stop() {
+		httpServer.stop(1);
+		executor.shutdown();
+		pipe.close();
+	}
+
+	int getPort() {
+		return httpServer.getAddress().getPort();
+	}
+
+	private void handleEvents(HttpExchange exchange) throws IOException {
+		String path = exchange.getRequestURI().getPath();
+		if (!"/events".equals(path) && !"/events/v2".equals(path)) {
+			respond(exchange, 404, "Not found");
+			return;
+		}
+		if (!"POST".equals(exchange.getRequestMethod())) {
+			respond(exchange, 405, "Method not allowed");
+			return;
+		}
+		// the events queue keeps spilling until it drains to its low watermark, clients retry rather than fill the overflowed queue
+		if (eventsQueue.isSpilling()) {
+			exchange.getResponseHeaders().set("Retry-After", RETRY_AFTER_SECONDS);
+			respond(exchange, 429, "Timbermill is overloaded, retry in " + RETRY_AFTER_SECONDS + " seconds");
+			return;
+		}
+		try (InputStream in = getBodyStream(exchange)) {
+			eventsIdsCache.read(eventsStreamReader, in, this::sendEvents);
+		} catch (JsonProcessingException e) {
+			LOG.error("Error parsing request", e);
+			respond(exchange, 400, "Error parsing request: " + e.getOriginalMessage());
+			return;
+		} catch (EventsIdsCache.InFlightException e) {
+			LOG.warn(e.getMessage());
+			exchange.getResponseHeaders().set("Retry-After", RETRY_AFTER_SECONDS);
+			respond(exchange, 503, e.getMessage());
+			return;
+		} catch (RuntimeException e) {
+			LOG.error("Error handling request", e);
+			respond(exchange, 500, "Error handling request");
+			return;
+		}
+		respond(exchange, 200, "Event received");
+	}
+
+	private void sendEvents(List<Event> events) {
+		for (Event event : events) {
+			pipe.send(event);
+		}
+	}
+
+	private static InputStream getBodyStream(HttpExchange exchange) throws IOException {
+		String contentEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+		if (contentEncoding != null && contentEncoding.contains("gzip")) {
+			return new GZIPInputStream(exchange.getRequestBody());
+		}
+		return exchange.getRequestBody();
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	private static String getSetting(String name, String defaultValue) {
+		String value = System.getProperty(name);
+		if (value == null) {
+			value = System.getenv(name);
+		}
+		return value == null ? defaultValue : value;
+	}
+}
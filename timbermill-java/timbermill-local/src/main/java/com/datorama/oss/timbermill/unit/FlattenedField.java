@@ -0,0 +1,52 @@
+package com.datorama.oss.timbermill.unit;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+// a field that was kept out of the dynamic mapping, key is the full field name (e.g. string.user_123)
+public class FlattenedField {
+
+	private String key;
+	private String value;
+
+	public FlattenedField() {
+	}
+
+	public FlattenedField(String key, String value) {
+		this.key = key;
+		this.value = value;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	public String getValue() {
+		return value;
+	}
+
+	Map<String, String> toMap() {
+		Map<String, String> map = new HashMap<>();
+		map.put("key", key);
+		map.put("value", value);
+		return map;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (o == null || getClass() != o.getClass()) {
+			return false;
+		}
+		FlattenedField that = (FlattenedField) o;
+		return Objects.equals(key, that.key) && Objects.equals(value, that.value);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(key, value);
+	}
+}
@@ -8,12 +8,13 @@ import com.datorama.oss.timbermill.common.TimbermillDatesUtils;
 public class IndexEvent extends Task {
 
     public IndexEvent(String env, Integer fetchedAmount, ZonedDateTime startTime, ZonedDateTime endTime, Integer eventsAmount, long defaultDaysRotation,
-            long timesDuration) {
+            long timesDuration, Map<String, Number> stagesMetrics) {
         setName("metadata_timbermill_index");
         setEnv(env);
         Map<String, Number> metric = getMetric();
         metric.put("eventsAmount", eventsAmount);
         metric.put("fetchedAmount", fetchedAmount);
+        metric.putAll(stagesMetrics);
         setStatus(TaskStatus.SUCCESS);
 
         setStartTime(startTime);
@@ -42,6 +42,7 @@ public class Task {
 	private Map<String, String> string = new HashMap<>();
 	private Map<String, String> text = new HashMap<>();
 	private Map<String, Number> metric = new HashMap<>();
+	private List<FlattenedField> flattened;
 	protected Boolean orphan;
 
 	public Task() {
@@ -283,6 +284,14 @@ public class Task {
         this.meta = meta;
     }
 
+	public List<FlattenedField> getFlattened() {
+		return flattened;
+	}
+
+	public void setFlattened(List<FlattenedField> flattened) {
+		this.flattened = flattened;
+	}
+
 	public String getEnv() {
 		return env;
 	}
@@ -338,6 +347,11 @@ public class Task {
 		params.put("string", string);
 		params.put("text", text);
 		params.put("metric", metric);
+		if (flattened != null) {
+			List<Map<String, String>> flattenedParams = new ArrayList<>();
+			flattened.forEach(field -> flattenedParams.add(field.toMap()));
+			params.put("flattened", flattenedParams);
+		}
 		params.put("parentsPath", parentsPath);
 		params.put("status", status != null ? status.toString() : "");
 		if (orphan != null){
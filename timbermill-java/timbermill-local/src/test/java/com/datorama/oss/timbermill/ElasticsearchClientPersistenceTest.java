@@ -34,9 +34,13 @@ public class ElasticsearchClientPersistenceTest {
 		if (StringUtils.isEmpty(elasticUrl)) {
 			elasticUrl = DEFAULT_ELASTICSEARCH_URL;
 		}
-		elasticsearchClient = new ElasticsearchClient(elasticUrl, 1000, 1, null, null, null,
-				7, 100, 1000000000, 3, 3, 1000, null, 1,
-				1, 4000, null, 10, 60, 10000, 2);
+		ElasticsearchClientConfig config = new ElasticsearchClientConfig.Builder()
+				.url(elasticUrl)
+				.indexBulkSize(1000)
+				.numberOfShards(1)
+				.scrollLimitation(10)
+				.build();
+		elasticsearchClient = new ElasticsearchClient(config, null, null);
 	}
 
 	@Test
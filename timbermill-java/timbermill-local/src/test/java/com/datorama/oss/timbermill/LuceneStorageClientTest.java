@@ -0,0 +1,127 @@
+package com.datorama.oss.timbermill;
+
+import com.datorama.oss.timbermill.unit.*;
+import com.google.common.collect.Lists;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.datorama.oss.timbermill.ElasticsearchClient.GSON;
+import static org.junit.Assert.*;
+
+public class LuceneStorageClientTest {
+
+	private static final String ENV = "test";
+	private static LuceneStorageClient storageClient;
+
+	@BeforeClass
+	public static void init() throws Exception {
+		storageClient = new LuceneStorageClient(Files.createTempDirectory("timbermill-lucene").toString());
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		storageClient.close();
+	}
+
+	@Test
+	public void mergePartialTaskOnWrite() {
+		String taskId = UUID.randomUUID().toString();
+		StartEvent startEvent = new StartEvent(taskId, "lucene_test", LogParams.create().string("first", "1"), null);
+		SuccessEvent successEvent = new SuccessEvent(taskId, LogParams.create().string("second", "2").metric("count", 3));
+		startEvent.setEnv(ENV);
+		successEvent.setEnv(ENV);
+
+		index(taskId, new Task(Lists.newArrayList(successEvent), "timbermill2-test", 1, null));
+		assertEquals(TaskStatus.PARTIAL_SUCCESS, storageClient.getTaskById(taskId).getStatus());
+
+		index(taskId, new Task(Lists.newArrayList(startEvent), "timbermill2-test", 1, null));
+		Task task = storageClient.getTaskById(taskId);
+		assertEquals(TaskStatus.SUCCESS, task.getStatus());
+		assertEquals("lucene_test", task.getName());
+		assertEquals("1", task.getString().get("first"));
+		assertEquals("2", task.getString().get("second"));
+		assertEquals(3L, task.getMetric().get("count"));
+		assertNotNull(task.getDuration());
+	}
+
+	@Test
+	public void fetchMissingParentsByEnv() {
+		String taskId = UUID.randomUUID().toString();
+		StartEvent startEvent = new StartEvent(taskId, "lucene_parent", LogParams.create(), null);
+		startEvent.setEnv(ENV);
+		index(taskId, new Task(Lists.newArrayList(startEvent), "timbermill2-test", 1, null));
+
+		Map<String, Task> parents = storageClient.getMissingParents(Collections.singleton(taskId), ENV);
+		assertEquals(1, parents.size());
+		assertTrue(storageClient.getMissingParents(Collections.singleton(taskId), "other").isEmpty());
+	}
+
+	@Test
+	public void deleteExpiredTasks() {
+		String taskId = UUID.randomUUID().toString();
+		SpotEvent spotEvent = new SpotEvent(taskId, "lucene_expired", null, TaskStatus.SUCCESS, LogParams.create());
+		spotEvent.setEnv(ENV);
+		Task task = new Task(Lists.newArrayList(spotEvent), "timbermill2-test", 1, null);
+		task.setDateToDelete(task.getStartTime().minusDays(1));
+		index(taskId, task);
+		assertNotNull(storageClient.getTaskById(taskId));
+
+		storageClient.deleteExpiredTasks();
+		assertNull(storageClient.getTaskById(taskId));
+	}
+
+	@Test
+	public void deleteExpiredMetadataTasks() {
+		ZonedDateTime now = ZonedDateTime.now();
+		IndexEvent expired = new IndexEvent(ENV, 1, now, now, 1, 1, 0, Collections.emptyMap());
+		expired.setName("lucene_expired_metadata");
+		expired.setDateToDelete(now.minusDays(1));
+		IndexEvent kept = new IndexEvent(ENV, 1, now, now, 1, 1, 0, Collections.emptyMap());
+		kept.setName("lucene_kept_metadata");
+		storageClient.indexMetaDataTasks(ENV, Lists.newArrayList(GSON.toJson(expired), GSON.toJson(kept)));
+
+		storageClient.deleteExpiredTasks();
+		assertEquals(0, storageClient.countByName(ENV, "lucene_expired_metadata"));
+		assertEquals(1, storageClient.countByName(ENV, "lucene_kept_metadata"));
+	}
+
+	@Test
+	public void keepPrimaryTaskInTruncatedTree() {
+		String primaryId = UUID.randomUUID().toString();
+		for (int i = 0; i < 5; i++) {
+			String childId = UUID.randomUUID().toString();
+			StartEvent childEvent = new StartEvent(childId, "lucene_child", LogParams.create(), primaryId);
+			childEvent.setEnv(ENV);
+			Task child = new Task(Lists.newArrayList(childEvent), "timbermill2-test", 1, null);
+			child.setPrimaryId(primaryId);
+			index(childId, child);
+		}
+		// indexed last, so it would not be among the first matches
+		StartEvent primaryEvent = new StartEvent(primaryId, "lucene_primary", LogParams.create(), null);
+		primaryEvent.setEnv(ENV);
+		Task primary = new Task(Lists.newArrayList(primaryEvent), "timbermill2-test", 1, null);
+		primary.setPrimaryId(primaryId);
+		index(primaryId, primary);
+
+		TreeTasks truncated = storageClient.getTasksByPrimaryId(primaryId, ENV, 3);
+		assertTrue(truncated.isTruncated());
+		assertEquals(3, truncated.getTasks().size());
+		assertTrue(truncated.getTasks().containsKey(primaryId));
+
+		TreeTasks whole = storageClient.getTasksByPrimaryId(primaryId, ENV, 6);
+		assertFalse(whole.isTruncated());
+		assertEquals(6, whole.getTasks().size());
+	}
+
+	private void index(String taskId, Task task) {
+		Map<String, String> indexed = storageClient.index(Collections.singletonMap(taskId, task));
+		assertEquals("timbermill2-test", indexed.get(taskId));
+	}
+}
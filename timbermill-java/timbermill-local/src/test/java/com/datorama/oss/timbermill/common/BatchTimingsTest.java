@@ -0,0 +1,35 @@
+package com.datorama.oss.timbermill.common;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BatchTimingsTest {
+
+	@Test
+	public void stagesCoverTheWholeBatch() throws InterruptedException {
+		BatchTimings timings = new BatchTimings();
+		Thread.sleep(5);
+		timings.lap(BatchTimings.Stage.PLUGINS);
+		timings.lap(BatchTimings.Stage.MISSING_PARENTS);
+		Thread.sleep(5);
+		timings.lap(BatchTimings.Stage.INDEX);
+		timings.addEventsBytes(100);
+		timings.addIndexRequestsBytes(300);
+
+		long stagesNanos = 0;
+		for (BatchTimings.Stage stage : BatchTimings.Stage.values()) {
+			stagesNanos += timings.getStageNanos(stage);
+		}
+		assertEquals(timings.getTotalNanos(), stagesNanos);
+		assertTrue(timings.getStageNanos(BatchTimings.Stage.PLUGINS) >= 5000000);
+		assertTrue(timings.getStageNanos(BatchTimings.Stage.INDEX) >= 5000000);
+
+		Map<String, Number> metrics = timings.toMetrics();
+		assertEquals(timings.getStageNanos(BatchTimings.Stage.MISSING_PARENTS), metrics.get("missingParentsNanos"));
+		assertEquals(100L, metrics.get("eventsBytes"));
+		assertEquals(300L, metrics.get("indexRequestsBytes"));
+	}
+}
@@ -0,0 +1,91 @@
+package com.datorama.oss.timbermill.common;
+
+import com.datorama.oss.timbermill.unit.Event;
+import com.datorama.oss.timbermill.unit.InfoEvent;
+import com.datorama.oss.timbermill.unit.LogParams;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ByteBoundedEventsQueueTest {
+
+	@Test
+	public void spillBetweenWatermarks() {
+		Event event = createEvent(1000);
+		int eventSize = event.estimatedSize();
+		ByteBoundedEventsQueue queue = new ByteBoundedEventsQueue("test", 100, eventSize * 10L, 0.5);
+		for (int i = 0; i < 10; i++) {
+			assertTrue(queue.offer(createEvent(1000)));
+		}
+		assertEquals(eventSize * 10L, queue.getBytes());
+		assertFalse(queue.offer(event));
+		assertFalse(queue.hasRoomForReplay());
+
+		// stays closed until drained below the low watermark
+		List<Event> drained = new ArrayList<>();
+		queue.drainTo(drained, 4);
+		assertEquals(eventSize * 6L, queue.getBytes());
+		assertFalse(queue.offer(event));
+
+		assertNotNull(queue.poll());
+		assertEquals(eventSize * 5L, queue.getBytes());
+		assertTrue(queue.offer(event));
+		assertEquals(11, queue.getOffered());
+		assertEquals(eventSize * 11L, queue.getOfferedBytes());
+	}
+
+	@Test
+	public void acceptHugeEventOnlyWhenEmpty() {
+		ByteBoundedEventsQueue queue = new ByteBoundedEventsQueue("test", 100, 100, 0.5);
+		Event huge = createEvent(1000);
+		assertTrue(queue.offer(huge));
+		assertFalse(queue.offer(createEvent(10)));
+		queue.clear();
+		assertEquals(0, queue.getBytes());
+		assertTrue(queue.hasRoomForReplay());
+	}
+
+	@Test
+	public void stayOpenWhenRejectedBelowLowWatermark() {
+		Event event = createEvent(1000);
+		ByteBoundedEventsQueue queue = new ByteBoundedEventsQueue("test", 100, event.estimatedSize() * 3L, 0.5);
+		assertTrue(queue.offer(event));
+		assertFalse(queue.offer(createEvent(3000)));
+		assertFalse(queue.isSpilling());
+		assertTrue(queue.offer(createEvent(1000)));
+	}
+
+	@Test
+	public void releaseBytesOfRemovedEvents() throws InterruptedException {
+		ByteBoundedEventsQueue queue = new ByteBoundedEventsQueue("test", 100, Long.MAX_VALUE, 0.5);
+		Event first = createEvent(10);
+		Event second = createEvent(20);
+		Event third = createEvent(30);
+		queue.put(first);
+		queue.put(second);
+		queue.put(third);
+		assertEquals(first.estimatedSize() + second.estimatedSize() + third.estimatedSize(), queue.getBytes());
+
+		Iterator<Event> iterator = queue.iterator();
+		iterator.next();
+		iterator.remove();
+		assertEquals(second.estimatedSize() + third.estimatedSize(), queue.getBytes());
+
+		assertTrue(queue.removeIf(event -> event == second));
+		assertEquals(third.estimatedSize(), queue.getBytes());
+
+		assertTrue(queue.removeAll(Collections.singletonList(third)));
+		assertEquals(0, queue.getBytes());
+		assertTrue(queue.isEmpty());
+	}
+
+	private static Event createEvent(int textLength) {
+		return new InfoEvent("id", LogParams.create().text("text", StringUtils.repeat("a", textLength)));
+	}
+}
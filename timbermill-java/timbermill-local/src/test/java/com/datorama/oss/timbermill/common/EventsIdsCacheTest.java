@@ -0,0 +1,68 @@
+package com.datorama.oss.timbermill.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.datorama.oss.timbermill.unit.*;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import static org.junit.Assert.*;
+
+public class EventsIdsCacheTest {
+
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+	private static final EventsStreamReader READER = new EventsStreamReader(OBJECT_MAPPER, 1);
+
+	@Test
+	public void skipReceivedWrapper() throws IOException {
+		EventsIdsCache eventsIdsCache = new EventsIdsCache(60);
+		byte[] body = OBJECT_MAPPER.writeValueAsBytes(createWrapper());
+		List<Event> events = new ArrayList<>();
+
+		assertEquals(2, eventsIdsCache.read(READER, new ByteArrayInputStream(body), events::addAll));
+		assertEquals(0, eventsIdsCache.read(READER, new ByteArrayInputStream(body), events::addAll));
+		assertEquals(2, events.size());
+	}
+
+	@Test
+	public void readResendOfFailedWrapper() throws IOException {
+		EventsIdsCache eventsIdsCache = new EventsIdsCache(60);
+		byte[] body = OBJECT_MAPPER.writeValueAsBytes(createWrapper());
+		List<Event> events = new ArrayList<>();
+
+		try {
+			eventsIdsCache.read(READER, new ByteArrayInputStream(Arrays.copyOf(body, body.length - 10)), events::addAll);
+			fail("A truncated body must fail");
+		} catch (JsonProcessingException ignored) {
+		}
+		assertEquals(2, eventsIdsCache.read(READER, new ByteArrayInputStream(body), events::addAll));
+	}
+
+	@Test
+	public void rejectResendWhileInFlight() throws IOException {
+		EventsIdsCache eventsIdsCache = new EventsIdsCache(60);
+		byte[] body = OBJECT_MAPPER.writeValueAsBytes(createWrapper());
+		List<Exception> failures = new ArrayList<>();
+
+		int read = eventsIdsCache.read(READER, new ByteArrayInputStream(body), chunk -> {
+			try {
+				eventsIdsCache.read(READER, new ByteArrayInputStream(body), ignored -> {});
+			} catch (EventsIdsCache.InFlightException | IOException e) {
+				failures.add(e);
+			}
+		});
+		assertEquals(2, read);
+		assertEquals(2, failures.size());
+		assertTrue(failures.get(0) instanceof EventsIdsCache.InFlightException);
+	}
+
+	private static EventsWrapper createWrapper() {
+		return new EventsWrapper(Arrays.asList(new StartEvent("id1", "name", LogParams.create(), null), new SuccessEvent("id1", LogParams.create())));
+	}
+}
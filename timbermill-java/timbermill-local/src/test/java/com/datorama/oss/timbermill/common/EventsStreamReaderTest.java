@@ -0,0 +1,73 @@
+package com.datorama.oss.timbermill.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.datorama.oss.timbermill.unit.*;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import static org.junit.Assert.*;
+
+public class EventsStreamReaderTest {
+
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+	@Test
+	public void readWrapperInChunks() throws IOException {
+		EventsWrapper eventsWrapper = new EventsWrapper(createEvents(25));
+		List<Integer> chunkSizes = new ArrayList<>();
+		List<Event> events = new ArrayList<>();
+		int read = new EventsStreamReader(OBJECT_MAPPER, 10).read(toStream(eventsWrapper), id -> true, chunk -> {
+			chunkSizes.add(chunk.size());
+			events.addAll(chunk);
+		});
+
+		assertEquals(25, read);
+		assertEquals(25, events.size());
+		assertEquals(3, chunkSizes.size());
+		assertEquals(10, (int) chunkSizes.get(0));
+		assertEquals(5, (int) chunkSizes.get(2));
+		assertTrue(events.get(0) instanceof StartEvent);
+		assertEquals("name", events.get(0).getName());
+		assertTrue(events.get(1) instanceof InfoEvent);
+	}
+
+	@Test
+	public void skipRejectedWrapperId() throws IOException {
+		EventsWrapper eventsWrapper = new EventsWrapper(createEvents(5));
+		List<Event> events = new ArrayList<>();
+		int read = new EventsStreamReader(OBJECT_MAPPER, 10).read(toStream(eventsWrapper), id -> !id.equals(eventsWrapper.getId()), events::addAll);
+		assertEquals(0, read);
+		assertTrue(events.isEmpty());
+	}
+
+	@Test
+	public void readEventsList() throws IOException {
+		EventsList eventsList = new EventsList(createEvents(4));
+		List<Event> events = new ArrayList<>();
+		int read = new EventsStreamReader(OBJECT_MAPPER, 3).read(toStream(eventsList), id -> true, events::addAll);
+		assertEquals(4, read);
+		assertEquals(4, events.size());
+	}
+
+	private static List<Event> createEvents(int amount) {
+		List<Event> events = new ArrayList<>();
+		for (int i = 0; i < amount; i++) {
+			String taskId = "id" + i;
+			if (i % 2 == 0) {
+				events.add(new StartEvent(taskId, "name", LogParams.create().context("key", "value"), null));
+			} else {
+				events.add(new InfoEvent(taskId, LogParams.create().string("key", "value")));
+			}
+		}
+		return events;
+	}
+
+	private static ByteArrayInputStream toStream(Object body) throws IOException {
+		return new ByteArrayInputStream(OBJECT_MAPPER.writeValueAsBytes(body));
+	}
+}
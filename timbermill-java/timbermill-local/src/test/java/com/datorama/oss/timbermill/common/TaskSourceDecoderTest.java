@@ -0,0 +1,83 @@
+package com.datorama.oss.timbermill.common;
+
+import com.datorama.oss.timbermill.unit.LocalTask;
+import com.datorama.oss.timbermill.unit.Task;
+import com.datorama.oss.timbermill.unit.TaskStatus;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.util.Map;
+
+import static com.datorama.oss.timbermill.ElasticsearchClient.GSON;
+import static org.junit.Assert.*;
+
+public class TaskSourceDecoderTest {
+
+	private static Task task;
+	private static byte[] source;
+
+	@BeforeClass
+	public static void init() {
+		task = new Task();
+		task.setEnv("test");
+		task.setName("decoder_test");
+		task.setStatus(TaskStatus.SUCCESS);
+		task.setParentId("parent");
+		task.setPrimaryId("primary");
+		task.setOrphan(false);
+		task.setParentsPath(Lists.newArrayList("primary", "parent"));
+		ZonedDateTime now = ZonedDateTime.now();
+		task.setStartTime(now);
+		task.setEndTime(now.plusSeconds(2));
+		task.setDuration(2000L);
+		Map<String, String> ctx = Maps.newHashMap();
+		ctx.put("ctx", "ctxValue");
+		task.setCtx(ctx);
+		Map<String, String> strings = Maps.newHashMap();
+		strings.put("string", "stringValue");
+		task.setString(strings);
+		Map<String, String> texts = Maps.newHashMap();
+		texts.put("text", "textValue");
+		task.setText(texts);
+		Map<String, Number> metrics = Maps.newHashMap();
+		metrics.put("long", 3L);
+		metrics.put("double", 1.5);
+		task.setMetric(metrics);
+		source = GSON.toJson(task).getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void decodeAllFields() throws Exception {
+		Task decoded = TaskSourceDecoder.ALL_FIELDS.decode(source, 0, source.length);
+		assertEquals(task.getName(), decoded.getName());
+		assertEquals(task.getStatus(), decoded.getStatus());
+		assertEquals(task.getParentId(), decoded.getParentId());
+		assertEquals(task.getPrimaryId(), decoded.getPrimaryId());
+		assertEquals(task.getParentsPath(), decoded.getParentsPath());
+		assertEquals(task.getStartTime().toInstant(), decoded.getStartTime().toInstant());
+		assertEquals(task.getEndTime().toInstant(), decoded.getEndTime().toInstant());
+		assertEquals(task.getDuration(), decoded.getDuration());
+		assertEquals(task.getCtx(), decoded.getCtx());
+		assertEquals(task.getString(), decoded.getString());
+		assertEquals(task.getText(), decoded.getText());
+		assertEquals(3L, decoded.getMetric().get("long"));
+		assertEquals(1.5, decoded.getMetric().get("double"));
+	}
+
+	@Test
+	public void decodeParentFieldsIntoLocalTask() throws Exception {
+		byte[] padded = new byte[source.length + 2];
+		System.arraycopy(source, 0, padded, 1, source.length);
+		LocalTask decoded = TaskSourceDecoder.PARENT_FIELDS.decode(padded, 1, source.length, new LocalTask());
+		assertEquals(task.getName(), decoded.getName());
+		assertEquals(task.getCtx(), decoded.getCtx());
+		assertEquals(task.getParentsPath(), decoded.getParentsPath());
+		assertTrue(decoded.getString().isEmpty());
+		assertTrue(decoded.getText().isEmpty());
+		assertTrue(decoded.getMetric().isEmpty());
+	}
+}
@@ -0,0 +1,74 @@
+package com.datorama.oss.timbermill.common.bootstrap;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StagedBootstrapTest {
+
+	@Test
+	public void failedStageIsRetriedUntilReady() throws InterruptedException {
+		AtomicInteger attempts = new AtomicInteger();
+		StagedBootstrap bootstrap = new StagedBootstrap(1, 4)
+				.stage("flaky", () -> {
+					if (attempts.incrementAndGet() < 3) {
+						throw new RuntimeException("not yet");
+					}
+				});
+		bootstrap.start();
+
+		assertTrue(bootstrap.awaitReady(5000, "flaky"));
+		StagedBootstrap.StageStatus status = bootstrap.getStages().get("flaky");
+		assertEquals(StagedBootstrap.StageState.READY, status.getState());
+		assertEquals(3, status.getAttempts());
+		assertNull(status.getLastError());
+		assertTrue(bootstrap.isReady());
+	}
+
+	@Test
+	public void slowStageDoesNotBlockOthers() throws InterruptedException {
+		CountDownLatch release = new CountDownLatch(1);
+		StagedBootstrap bootstrap = new StagedBootstrap(1, 1)
+				.stage("slow", () -> {
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						throw new RuntimeException(e);
+					}
+				})
+				.stage("fast", () -> {});
+		bootstrap.start();
+
+		assertTrue(bootstrap.awaitReady(5000, "fast"));
+		assertFalse(bootstrap.awaitReady(50, "slow", "fast"));
+		assertFalse(bootstrap.isReady());
+		assertEquals(StagedBootstrap.StageState.RUNNING, bootstrap.getStages().get("slow").getState());
+
+		release.countDown();
+		assertTrue(bootstrap.awaitReady(5000, "slow", "fast"));
+		assertTrue(bootstrap.isReady());
+		bootstrap.close();
+	}
+
+	@Test
+	public void stageThrowingErrorIsMarkedFailed() throws InterruptedException {
+		AtomicInteger attempts = new AtomicInteger();
+		StagedBootstrap bootstrap = new StagedBootstrap(1, 1)
+				.stage("broken", () -> {
+					attempts.incrementAndGet();
+					throw new NoClassDefFoundError("missing");
+				});
+		bootstrap.start();
+
+		assertFalse(bootstrap.awaitReady(5000, "broken"));
+		StagedBootstrap.StageStatus status = bootstrap.getStages().get("broken");
+		assertEquals(StagedBootstrap.StageState.FAILED, status.getState());
+		assertEquals(1, attempts.get());
+		assertTrue(status.getLastError().contains("missing"));
+		assertTrue(bootstrap.isFailed());
+		assertFalse(bootstrap.isReady());
+	}
+}
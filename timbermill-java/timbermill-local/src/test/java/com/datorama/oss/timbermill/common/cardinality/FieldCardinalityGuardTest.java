@@ -0,0 +1,115 @@
+package com.datorama.oss.timbermill.common.cardinality;
+
+import com.datorama.oss.timbermill.common.redis.RedisService;
+import com.datorama.oss.timbermill.unit.FlattenedField;
+import com.datorama.oss.timbermill.unit.Task;
+import com.google.common.collect.Sets;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class FieldCardinalityGuardTest {
+
+	private static final String ENV = "test";
+
+	@Test
+	public void estimateDistinctValues() {
+		HyperLogLog hyperLogLog = new HyperLogLog(12);
+		for (int i = 0; i < 100000; i++) {
+			hyperLogLog.offer("field_" + i);
+			hyperLogLog.offer("field_" + i);
+		}
+		assertEquals(100000, hyperLogLog.cardinality(), 5000);
+	}
+
+	@Test
+	public void flattenNewFieldNamesOverBudget() {
+		FieldCardinalityGuard guard = new FieldCardinalityGuard(2);
+		Task first = new Task();
+		first.getString().put("a", "1");
+		first.getString().put("b", "2");
+		guard.apply(ENV, Collections.singletonMap("first", first));
+		assertNull(first.getFlattened());
+
+		Task second = new Task();
+		second.getString().put("a", "3");
+		second.getString().put("user_123", "4");
+		second.getMetric().put("count", 5L);
+		guard.apply(ENV, Collections.singletonMap("second", second));
+
+		assertEquals("3", second.getString().get("a"));
+		assertFalse(second.getString().containsKey("user_123"));
+		assertEquals(5L, second.getMetric().get("count"));
+		List<FlattenedField> flattened = second.getFlattened();
+		assertEquals(Collections.singletonList(new FlattenedField("string.user_123", "4")), flattened);
+
+		FieldCardinalityGuard.PrefixCardinality stringCardinality = guard.getCardinalities().stream()
+				.filter(cardinality -> cardinality.getPrefix().equals(FieldCardinalityGuard.STRING)).findFirst().orElse(null);
+		assertNotNull(stringCardinality);
+		assertTrue(stringCardinality.isOverBudget());
+		assertEquals(2, stringCardinality.getMappedFieldNames());
+		assertEquals(1, stringCardinality.getFlattenedFields());
+		assertEquals(3, stringCardinality.getEstimatedFieldNames());
+	}
+
+	@Test
+	public void neverAdmitOverBudgetConcurrently() throws InterruptedException {
+		FieldCardinalityGuard guard = new FieldCardinalityGuard(10);
+		Set<String> mappedFieldNames = ConcurrentHashMap.newKeySet();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		for (int i = 0; i < 8; i++) {
+			int thread = i;
+			executor.submit(() -> {
+				for (int j = 0; j < 100; j++) {
+					Task task = new Task();
+					task.getString().put("field_" + thread + "_" + j, "value");
+					task.getString().put("field_" + j, "value");
+					guard.apply(ENV, Collections.singletonMap("task", task));
+					mappedFieldNames.addAll(task.getString().keySet());
+				}
+			});
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+		assertEquals(10, mappedFieldNames.size());
+		assertEquals(10, guard.getCardinalities().get(0).getMappedFieldNames());
+	}
+
+	@Test
+	public void shareBudgetThroughRedis() {
+		RedisService redisService = mock(RedisService.class);
+		String setName = "field_names#" + ENV + "." + FieldCardinalityGuard.STRING;
+		when(redisService.addToBoundedSet(eq(setName), anyString(), anyLong())).thenReturn(false);
+		when(redisService.addToBoundedSet(setName, "a", 2)).thenReturn(true);
+		when(redisService.getSetMembers(setName)).thenReturn(Sets.newHashSet("a", "b"));
+		FieldCardinalityGuard guard = new FieldCardinalityGuard(2, redisService);
+
+		Task task = new Task();
+		task.getString().put("a", "1");
+		task.getString().put("c", "2");
+		guard.apply(ENV, Collections.singletonMap("task", task));
+		assertEquals("1", task.getString().get("a"));
+		assertEquals(Collections.singletonList(new FlattenedField("string.c", "2")), task.getFlattened());
+
+		// mapped by another server before the budget ran out
+		Task other = new Task();
+		other.getString().put("b", "3");
+		guard.apply(ENV, Collections.singletonMap("other", other));
+		assertEquals("3", other.getString().get("b"));
+		assertNull(other.getFlattened());
+	}
+}
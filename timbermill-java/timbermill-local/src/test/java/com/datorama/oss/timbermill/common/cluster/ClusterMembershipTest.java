@@ -0,0 +1,91 @@
+package com.datorama.oss.timbermill.common.cluster;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.datorama.oss.timbermill.common.redis.RedisService;
+import com.datorama.oss.timbermill.unit.LogParams;
+import com.datorama.oss.timbermill.unit.StartEvent;
+import com.datorama.oss.timbermill.unit.SuccessEvent;
+import com.google.common.collect.Sets;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyDouble;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ClusterMembershipTest {
+
+	private static final String SELF = "http://a:8484";
+	private static final String OTHER = "http://b:8484";
+	private static final long LEASE_MILLIS = 3000;
+
+	private final AtomicLong now = new AtomicLong(1000);
+	private RedisService redisService;
+	private ClusterMembership membership;
+
+	@Before
+	public void setUp() {
+		redisService = mock(RedisService.class);
+		when(redisService.addToSortedSet(anyString(), eq(SELF), anyDouble())).thenReturn(true);
+		when(redisService.getSortedSetRangeByScore(anyString(), anyDouble(), anyDouble())).thenReturn(Sets.newHashSet(SELF, OTHER));
+		membership = new ClusterMembership(redisService, "test", SELF, LEASE_MILLIS, 64, now::get);
+	}
+
+	@Test
+	public void noLeaseBeforeFirstRenewal() {
+		assertFalse(membership.hasLease());
+		membership.renew();
+		assertTrue(membership.hasLease());
+		assertTrue(membership.isMember(OTHER));
+		assertFalse(membership.isMember("http://c:8484"));
+	}
+
+	@Test
+	public void stopOwningWhenLeaseExpires() {
+		membership.renew();
+		when(redisService.addToSortedSet(anyString(), eq(SELF), anyDouble())).thenReturn(false);
+
+		now.addAndGet(LEASE_MILLIS - 1);
+		membership.renew();
+		assertTrue(membership.hasLease());
+
+		now.addAndGet(1);
+		membership.renew();
+		assertFalse(membership.hasLease());
+
+		when(redisService.addToSortedSet(anyString(), eq(SELF), anyDouble())).thenReturn(true);
+		membership.renew();
+		assertTrue(membership.hasLease());
+	}
+
+	@Test
+	public void keepMembersWhenRedisIsUnreadable() {
+		membership.renew();
+		when(redisService.getSortedSetRangeByScore(anyString(), anyDouble(), anyDouble())).thenReturn(null);
+		now.addAndGet(LEASE_MILLIS / 3);
+		membership.renew();
+		assertTrue(membership.isMember(OTHER));
+	}
+
+	@Test
+	public void routeEventsOfTreeToOneOwner() {
+		membership.renew();
+		StartEvent child = new StartEvent("child", "child", LogParams.create(), "root");
+		child.setRootId("root");
+		SuccessEvent childSuccess = new SuccessEvent("child", LogParams.create());
+		childSuccess.setRootId("root");
+
+		String owner = membership.getPartitionTable().getOwner("root");
+		assertEquals(owner, membership.getPartitionTable().getOwner(ClusterMembership.getRoutingKey(child)));
+		assertEquals(owner, membership.getPartitionTable().getOwner(ClusterMembership.getRoutingKey(childSuccess)));
+		assertEquals(owner.equals(SELF) ? null : owner, membership.getRemoteOwner(child));
+
+		// older clients do not send the root id
+		assertEquals("child", ClusterMembership.getRoutingKey(new SuccessEvent("child", LogParams.create())));
+	}
+}
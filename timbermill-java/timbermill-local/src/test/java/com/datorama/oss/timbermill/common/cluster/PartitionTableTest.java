@@ -0,0 +1,46 @@
+package com.datorama.oss.timbermill.common.cluster;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PartitionTableTest {
+
+	private static final int PARTITIONS = 1024;
+
+	@Test
+	public void sameMembersGiveSameOwners() {
+		PartitionTable table = new PartitionTable(Arrays.asList("http://a:8484", "http://b:8484", "http://c:8484"), PARTITIONS);
+		PartitionTable reordered = new PartitionTable(Arrays.asList("http://c:8484", "http://a:8484", "http://b:8484"), PARTITIONS);
+
+		Map<String, Integer> owned = new HashMap<>();
+		for (int partition = 0; partition < PARTITIONS; partition++) {
+			assertEquals(table.getPartitionOwner(partition), reordered.getPartitionOwner(partition));
+			owned.merge(table.getPartitionOwner(partition), 1, Integer::sum);
+		}
+		assertEquals(3, owned.size());
+		for (int partitions : owned.values()) {
+			assertTrue(partitions > PARTITIONS / 6);
+		}
+	}
+
+	@Test
+	public void joiningMemberOnlyTakesPartitions() {
+		PartitionTable before = new PartitionTable(Arrays.asList("http://a:8484", "http://b:8484"), PARTITIONS);
+		PartitionTable after = new PartitionTable(Arrays.asList("http://a:8484", "http://b:8484", "http://c:8484"), PARTITIONS);
+
+		int moved = 0;
+		for (int partition = 0; partition < PARTITIONS; partition++) {
+			String owner = after.getPartitionOwner(partition);
+			if (!owner.equals(before.getPartitionOwner(partition))) {
+				assertEquals("http://c:8484", owner);
+				moved++;
+			}
+		}
+		assertTrue(moved > 0 && moved < PARTITIONS / 2);
+	}
+}
@@ -0,0 +1,62 @@
+package com.datorama.oss.timbermill.common.dedup;
+
+import com.datorama.oss.timbermill.unit.*;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EventsDeduplicatorTest {
+
+	@Test
+	public void dropResentEvents() {
+		EventsDeduplicator deduplicator = new EventsDeduplicator(60, 1000);
+		StartEvent start = new StartEvent("id1", "name", LogParams.create(), null);
+		InfoEvent info = new InfoEvent("id1", LogParams.create().string("key", "value"));
+		SuccessEvent success = new SuccessEvent("id1", LogParams.create());
+
+		List<Event> first = deduplicator.filter(Lists.newArrayList(start, info));
+		assertEquals(2, first.size());
+
+		List<Event> resent = deduplicator.filter(Lists.newArrayList(start, info, success));
+		assertEquals(1, resent.size());
+		assertSame(success, resent.get(0));
+	}
+
+	@Test
+	public void keepDistinctInfoEventsOfTheSameTime() {
+		EventsDeduplicator deduplicator = new EventsDeduplicator(60, 1000);
+		InfoEvent first = new InfoEvent("id1", LogParams.create().string("key", "first"));
+		InfoEvent second = new InfoEvent("id1", LogParams.create().string("key", "second"));
+		second.setTime(first.getTime());
+
+		assertEquals(2, deduplicator.filter(Lists.newArrayList(first, second)).size());
+
+		InfoEvent resent = new InfoEvent("id1", LogParams.create().string("key", "second"));
+		resent.setTime(first.getTime());
+		assertTrue(deduplicator.filter(Lists.newArrayList(resent)).isEmpty());
+	}
+
+	@Test
+	public void keyByEveryContentField() {
+		EventsDeduplicator deduplicator = new EventsDeduplicator(60, 1000);
+		InfoEvent first = new InfoEvent("id1", LogParams.create().string("ab", "c"));
+		InfoEvent second = new InfoEvent("id1", LogParams.create().string("a", "bc"));
+		second.setTime(first.getTime());
+		assertEquals(2, deduplicator.filter(Lists.newArrayList(first, second)).size());
+
+		InfoEvent reordered = new InfoEvent("id1", LogParams.create().string("key2", "2").string("key1", "1").metric("count", 3));
+		InfoEvent resent = new InfoEvent("id1", LogParams.create().metric("count", 3).string("key1", "1").string("key2", "2"));
+		resent.setTime(reordered.getTime());
+		assertEquals(1, deduplicator.filter(Lists.newArrayList(reordered, resent)).size());
+	}
+
+	@Test
+	public void keepEventsWhenDisabled() {
+		EventsDeduplicator deduplicator = new EventsDeduplicator(0, 1000);
+		StartEvent start = new StartEvent("id1", "name", LogParams.create(), null);
+		assertEquals(2, deduplicator.filter(Lists.newArrayList(start, start)).size());
+	}
+}
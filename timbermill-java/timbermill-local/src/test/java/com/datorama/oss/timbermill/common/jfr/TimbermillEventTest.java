@@ -0,0 +1,42 @@
+package com.datorama.oss.timbermill.common.jfr;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import static org.junit.Assert.*;
+
+public class TimbermillEventTest {
+
+	@Test
+	public void committedOnlyWhileRecording() throws Exception {
+		PipelineEvent notRecorded = PipelineEvents.start(PipelineEventType.BULK_SEND);
+		notRecorded.finish(1, 1, 10, 1000, false);
+
+		Path file = Files.createTempFile("timbermill", ".jfr");
+		try (Recording recording = new Recording()) {
+			recording.enable(BulkSendEvent.class).withoutThreshold();
+			recording.start();
+			PipelineEvent recorded = PipelineEvents.start(PipelineEventType.BULK_SEND);
+			recorded.finish(2, 3, 20, 2000, true);
+			recording.stop();
+			recording.dump(file);
+		}
+
+		List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+		Files.delete(file);
+		assertEquals(1, events.size());
+		RecordedEvent event = events.get(0);
+		assertEquals("timbermill.BulkSend", event.getEventType().getName());
+		assertEquals(2, event.getInt("bulkNum"));
+		assertEquals(3, event.getInt("attempt"));
+		assertEquals(2000, event.getLong("bytes"));
+		assertTrue(event.getBoolean("failed"));
+	}
+}
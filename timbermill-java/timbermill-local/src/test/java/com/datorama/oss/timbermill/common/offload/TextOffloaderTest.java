@@ -0,0 +1,63 @@
+package com.datorama.oss.timbermill.common.offload;
+
+import com.datorama.oss.timbermill.unit.Task;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class TextOffloaderTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void offloadLongTexts() throws IOException {
+		TextOffloader offloader = TextOffloader.create(100, 10, folder.getRoot().getAbsolutePath(), 1);
+		String longText = StringUtils.repeat("stacktrace line\n", 100);
+		Task task = new Task();
+		task.getText().put("long", longText);
+		task.getText().put("short", "short");
+		offloader.apply("env", Collections.singletonMap("id", task));
+
+		String preview = task.getText().get("long");
+		assertTrue(preview.startsWith(longText.substring(0, 10)));
+		assertTrue(preview.length() < 100);
+		String reference = TextOffloader.getReference(preview);
+		assertNotNull(reference);
+		assertEquals(longText, offloader.getText(reference));
+		assertEquals("short", task.getText().get("short"));
+		assertNull(TextOffloader.getReference("short"));
+		assertNull(offloader.getText("../" + reference));
+		offloader.close();
+	}
+
+	@Test
+	public void neverSplitSurrogatePairsInPreview() throws IOException {
+		TextOffloader offloader = TextOffloader.create(10, 5, folder.getRoot().getAbsolutePath(), 1);
+		String longText = "abcd\uD83D\uDE00" + StringUtils.repeat("a", 20);
+		Task task = new Task();
+		task.getText().put("long", longText);
+		offloader.apply("env", Collections.singletonMap("id", task));
+
+		String preview = task.getText().get("long");
+		assertEquals("abcd", preview.substring(0, preview.indexOf('\n')));
+		assertEquals(longText, offloader.getText(TextOffloader.getReference(preview)));
+		offloader.close();
+	}
+
+	@Test
+	public void disabledByDefault() {
+		TextOffloader offloader = TextOffloader.create(0, 10, null, 1);
+		String longText = StringUtils.repeat("a", 1000);
+		Task task = new Task();
+		task.getText().put("long", longText);
+		offloader.apply("env", Collections.singletonMap("id", task));
+		assertEquals(longText, task.getText().get("long"));
+	}
+}
@@ -0,0 +1,149 @@
+package com.datorama.oss.timbermill.common.persistence;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.datorama.oss.timbermill.common.ByteBoundedEventsQueue;
+import com.datorama.oss.timbermill.unit.Event;
+import com.datorama.oss.timbermill.unit.LogParams;
+import com.datorama.oss.timbermill.unit.StartEvent;
+
+import static org.junit.Assert.*;
+
+public class EventsSpillerTest {
+
+	private final ByteBoundedEventsQueue eventsQueue = new ByteBoundedEventsQueue("events", 10, Long.MAX_VALUE, 0.7);
+	private final ByteBoundedEventsQueue overflowedQueue = new ByteBoundedEventsQueue("overflowed", 10, Long.MAX_VALUE, 0.7);
+	private final ByteBoundedEventsQueue deferredQueue = new ByteBoundedEventsQueue("deferred", 10, Long.MAX_VALUE, 0.7);
+	private final InMemoryPersistenceHandler persistenceHandler = new InMemoryPersistenceHandler();
+	private EventsSpiller eventsSpiller;
+
+	@Before
+	public void setUp() {
+		eventsSpiller = new EventsSpiller(persistenceHandler, eventsQueue, overflowedQueue, deferredQueue);
+		eventsSpiller.start();
+	}
+
+	@After
+	public void tearDown() {
+		eventsSpiller.close();
+	}
+
+	@Test
+	public void persistDeferredEventsApartFromOverflowedEvents() {
+		overflowedQueue.add(createEvent("id1"));
+		deferredQueue.add(createEvent("id2"));
+		deferredQueue.add(createEvent("id3"));
+
+		assertTrue(eventsSpiller.awaitSpill(10000));
+		assertTrue(overflowedQueue.isEmpty());
+		assertTrue(deferredQueue.isEmpty());
+		assertEquals(1, persistenceHandler.overFlowedEventsListsAmount());
+		assertEquals(1, persistenceHandler.deferredEventsListsAmount());
+		assertEquals(1, persistenceHandler.fetchAndDeleteOverflowedEvents().size());
+		assertEquals(2, persistenceHandler.fetchAndDeleteDeferredEvents().size());
+	}
+
+	@Test
+	public void spillAsSoonAsAsked() {
+		assertTrue(eventsSpiller.awaitSpill(10000));
+
+		// the thread is now waiting for its next round, which is seconds away
+		overflowedQueue.add(createEvent("id1"));
+		long start = System.currentTimeMillis();
+		assertTrue(eventsSpiller.awaitSpill(10000));
+		assertTrue(System.currentTimeMillis() - start < 1000);
+		assertEquals(1, persistenceHandler.overFlowedEventsListsAmount());
+	}
+
+	@Test
+	public void neverWaitWithoutPersistence() {
+		EventsSpiller withoutPersistence = new EventsSpiller(null, eventsQueue, overflowedQueue, deferredQueue);
+		withoutPersistence.start();
+		try {
+			assertFalse(withoutPersistence.hasPersistence());
+			assertFalse(withoutPersistence.awaitSpill(10000));
+		} finally {
+			withoutPersistence.close();
+		}
+	}
+
+	private static Event createEvent(String taskId) {
+		return new StartEvent(taskId, "name", LogParams.create(), null);
+	}
+
+	private static class InMemoryPersistenceHandler extends PersistenceHandler {
+
+		private final List<List<Event>> overflowedEventsLists = new CopyOnWriteArrayList<>();
+		private final List<List<Event>> deferredEventsLists = new CopyOnWriteArrayList<>();
+
+		InMemoryPersistenceHandler() {
+			super(10, 10, 3);
+		}
+
+		@Override public List<DbBulkRequest> fetchAndDeleteFailedBulks() {
+			return new ArrayList<>();
+		}
+
+		@Override public List<Event> fetchAndDeleteOverflowedEvents() {
+			return fetchAndDelete(overflowedEventsLists);
+		}
+
+		@Override public List<Event> fetchAndDeleteDeferredEvents() {
+			return fetchAndDelete(deferredEventsLists);
+		}
+
+		@Override public void persistBulkRequest(DbBulkRequest dbBulkRequest, int bulkNum) {
+		}
+
+		@Override public void persistEvents(ArrayList<Event> events) {
+			overflowedEventsLists.add(events);
+		}
+
+		@Override public void persistDeferredEvents(ArrayList<Event> events) {
+			deferredEventsLists.add(events);
+		}
+
+		@Override public boolean hasFailedBulks() {
+			return false;
+		}
+
+		@Override public boolean isCreatedSuccessfully() {
+			return true;
+		}
+
+		@Override public long failedBulksAmount() {
+			return 0;
+		}
+
+		@Override public long overFlowedEventsListsAmount() {
+			return overflowedEventsLists.size();
+		}
+
+		@Override public long deferredEventsListsAmount() {
+			return deferredEventsLists.size();
+		}
+
+		@Override public void close() {
+		}
+
+		@Override public void reset() {
+			overflowedEventsLists.clear();
+			deferredEventsLists.clear();
+		}
+
+		private static List<Event> fetchAndDelete(List<List<Event>> eventsLists) {
+			List<Event> events = new ArrayList<>();
+			for (List<Event> eventsList : eventsLists) {
+				events.addAll(eventsList);
+				eventsLists.remove(eventsList);
+			}
+			return events;
+		}
+	}
+}
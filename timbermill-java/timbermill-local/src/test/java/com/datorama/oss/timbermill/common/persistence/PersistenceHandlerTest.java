@@ -87,6 +87,18 @@ public abstract class PersistenceHandlerTest {
         assertEquals(0, fetchedEvents.size());
     }
 
+    public void keepDeferredEventsApartFromOverflowedEvents() throws ExecutionException, InterruptedException {
+        persistenceHandler.persistEvents(Mock.createMockEventsList());
+        persistenceHandler.persistDeferredEvents(Mock.createMockEventsList());
+        persistenceHandler.persistDeferredEvents(Mock.createMockEventsList());
+        assertEquals(1, persistenceHandler.overFlowedEventsListsAmount());
+        assertEquals(2, persistenceHandler.deferredEventsListsAmount());
+
+        assertEquals(5, persistenceHandler.fetchAndDeleteOverflowedEvents().size());
+        assertEquals(10, persistenceHandler.fetchAndDeleteDeferredEvents().size());
+        assertEquals(0, persistenceHandler.deferredEventsListsAmount());
+    }
+
     public void fetchesCounter() throws InterruptedException, ExecutionException {
         DbBulkRequest dbBulkRequest = Mock.createMockDbBulkRequest();
         persistenceHandler.persistBulkRequest(dbBulkRequest, bulkNum);
@@ -54,6 +54,11 @@ public class RedisPersistenceHandlerTest extends PersistenceHandlerTest {
         super.fetchedOverflowedEventsEqualToOriginalOne();
     }
 
+    @Test
+    public void keepDeferredEventsApartFromOverflowedEvents() throws InterruptedException, ExecutionException {
+        super.keepDeferredEventsApartFromOverflowedEvents();
+    }
+
     @Test
     public void fetchesCounter() throws InterruptedException, ExecutionException {
         super.fetchesCounter();
@@ -56,6 +56,11 @@ public class SQLJetPersistenceHandlerTest extends PersistenceHandlerTest {
 		super.fetchOverflowedEvents();
 	}
 
+	@Test
+	public void keepDeferredEventsApartFromOverflowedEvents() throws InterruptedException, ExecutionException {
+		super.keepDeferredEventsApartFromOverflowedEvents();
+	}
+
 	@Test
 	public void fetchesCounter() throws InterruptedException, ExecutionException {
 		super.fetchesCounter();
@@ -0,0 +1,81 @@
+package com.datorama.oss.timbermill.common.ratelimiter;
+
+import com.datorama.oss.timbermill.common.ratelimiter.HierarchicalRateLimiter.Level;
+import com.datorama.oss.timbermill.unit.Event;
+import com.datorama.oss.timbermill.unit.LogParams;
+import com.datorama.oss.timbermill.unit.StartEvent;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class HierarchicalRateLimiterTest {
+
+	private final AtomicLong clock = new AtomicLong();
+
+	@Test
+	public void deferOverNameLimitUntilNextPeriod() {
+		HierarchicalRateLimiter rateLimiter = new HierarchicalRateLimiter(0, 0, 2, Duration.ofMinutes(1), 100, clock::get);
+		assertNull(rateLimiter.tryAcquire(event("name", "env")));
+		assertNull(rateLimiter.tryAcquire(event("name", "env")));
+		assertEquals(Level.NAME, rateLimiter.tryAcquire(event("name", "env")));
+		assertNull(rateLimiter.tryAcquire(event("other", "env")));
+
+		clock.addAndGet(Duration.ofMinutes(1).toNanos());
+		assertNull(rateLimiter.tryAcquire(event("name", "env")));
+
+		assertEquals(4, rateLimiter.getCounters().get(Level.NAME).getAdmitted());
+		assertEquals(1, rateLimiter.getCounters().get(Level.NAME).getDeferred());
+		assertEquals(0, rateLimiter.getCounters().get(Level.ENV).getAdmitted());
+	}
+
+	@Test
+	public void giveBackLowerLevelPermitsWhenHigherLevelRefuses() {
+		HierarchicalRateLimiter rateLimiter = new HierarchicalRateLimiter(0, 1, 1, Duration.ofMinutes(1), 100, clock::get);
+		assertNull(rateLimiter.tryAcquire(event("first", "env1")));
+		assertEquals(Level.ENV, rateLimiter.tryAcquire(event("second", "env1")));
+		assertNull(rateLimiter.tryAcquire(event("second", "env2")));
+
+		assertEquals(2, rateLimiter.getCounters().get(Level.NAME).getAdmitted());
+		assertEquals(0, rateLimiter.getCounters().get(Level.NAME).getDeferred());
+		assertEquals(1, rateLimiter.getCounters().get(Level.ENV).getDeferred());
+	}
+
+	@Test
+	public void globalLimitIsExactAcrossStripes() {
+		HierarchicalRateLimiter rateLimiter = new HierarchicalRateLimiter(10, 0, 0, Duration.ofMinutes(1), 100, clock::get);
+		int admitted = 0;
+		for (int i = 0; i < 100; i++) {
+			if (rateLimiter.tryAcquire(event("name" + i, "env")) == null) {
+				admitted++;
+			}
+		}
+		assertEquals(10, admitted);
+		assertEquals(90, rateLimiter.getCounters().get(Level.GLOBAL).getDeferred());
+
+		rateLimiter.recordDropped(Level.GLOBAL);
+		assertEquals(1, rateLimiter.getCounters().get(Level.GLOBAL).getDropped());
+	}
+
+	@Test
+	public void countGlobalPermitsLeftInPeriod() {
+		HierarchicalRateLimiter rateLimiter = new HierarchicalRateLimiter(10, 0, 0, Duration.ofMinutes(1), 100, clock::get);
+		assertEquals(10, rateLimiter.getAvailablePermits());
+		for (int i = 0; i < 3; i++) {
+			assertNull(rateLimiter.tryAcquire(event("name" + i, "env")));
+		}
+		assertEquals(7, rateLimiter.getAvailablePermits());
+
+		clock.addAndGet(Duration.ofMinutes(1).toNanos());
+		assertEquals(10, rateLimiter.getAvailablePermits());
+		assertEquals(Long.MAX_VALUE, new HierarchicalRateLimiter(0, 1, 1, Duration.ofMinutes(1), 100, clock::get).getAvailablePermits());
+	}
+
+	private static Event event(String name, String env) {
+		StartEvent event = new StartEvent(name + "_id", name, LogParams.create(), null);
+		event.setEnv(env);
+		return event;
+	}
+}
@@ -0,0 +1,63 @@
+package com.datorama.oss.timbermill.common.scheduling;
+
+import com.datorama.oss.timbermill.unit.Event;
+import com.datorama.oss.timbermill.unit.InfoEvent;
+import com.datorama.oss.timbermill.unit.LogParams;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.junit.Assert.*;
+
+public class EnvFairSchedulerTest {
+
+	@Test
+	public void quietEnvIsNotStarvedByNoisyEnv() {
+		LinkedBlockingQueue<Event> queue = new LinkedBlockingQueue<>();
+		addEvents(queue, "noisy", 1000);
+		addEvents(queue, "quiet", 10);
+		EnvFairScheduler scheduler = new EnvFairScheduler(100, Long.MAX_VALUE, "", 1, "", 0.5);
+
+		Map<String, List<Event>> batch = scheduler.nextBatch(queue);
+		assertEquals(10, batch.get("quiet").size());
+		assertEquals(90, batch.get("noisy").size());
+		assertTrue(scheduler.hasPending(queue));
+
+		// alone in the queue the noisy env fills whole batches
+		batch = scheduler.nextBatch(queue);
+		assertEquals(1, batch.size());
+		assertEquals(100, batch.get("noisy").size());
+	}
+
+	@Test
+	public void weightsAndSharesAreApplied() {
+		LinkedBlockingQueue<Event> queue = new LinkedBlockingQueue<>();
+		addEvents(queue, "heavy", 1000);
+		addEvents(queue, "light", 1000);
+		EnvFairScheduler scheduler = new EnvFairScheduler(1000, Long.MAX_VALUE, "heavy:3", 1, "heavy:0.75,light:0.75", 0.5);
+
+		Map<String, List<Event>> batch = scheduler.nextBatch(queue);
+		assertEquals(750, batch.get("heavy").size());
+		assertEquals(250, batch.get("light").size());
+	}
+
+	@Test
+	public void stageUpToBudget() {
+		LinkedBlockingQueue<Event> queue = new LinkedBlockingQueue<>();
+		addEvents(queue, "env", 20000);
+		EnvFairScheduler scheduler = new EnvFairScheduler(100, 1, "", 1, "", 0.5);
+		scheduler.nextBatch(queue);
+		assertEquals(10000, queue.size());
+		assertTrue(scheduler.getStagedBytes() > 0);
+	}
+
+	private static void addEvents(LinkedBlockingQueue<Event> queue, String env, int amount) {
+		for (int i = 0; i < amount; i++) {
+			InfoEvent event = new InfoEvent(env + i, LogParams.create());
+			event.setEnv(env);
+			queue.add(event);
+		}
+	}
+}
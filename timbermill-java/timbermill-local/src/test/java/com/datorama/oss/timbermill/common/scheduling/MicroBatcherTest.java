@@ -0,0 +1,99 @@
+package com.datorama.oss.timbermill.common.scheduling;
+
+import com.datorama.oss.timbermill.common.ByteBoundedEventsQueue;
+import com.datorama.oss.timbermill.common.scheduling.MicroBatcher.CloseReason;
+import com.datorama.oss.timbermill.unit.Event;
+import com.datorama.oss.timbermill.unit.InfoEvent;
+import com.datorama.oss.timbermill.unit.LogParams;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class MicroBatcherTest {
+
+	private final EnvFairScheduler scheduler = new EnvFairScheduler(100, Long.MAX_VALUE, "", 1, "", 0.5);
+	private final ByteBoundedEventsQueue queue = new ByteBoundedEventsQueue("events", 1000, Long.MAX_VALUE, 0.7);
+	// every read of the clock moves it 50 millis forward
+	private final AtomicLong clock = new AtomicLong();
+
+	@Test
+	public void nothingToBatch() {
+		MicroBatcher microBatcher = new MicroBatcher(Long.MAX_VALUE, 10, 1000, 5000, () -> clock.addAndGet(50));
+		assertFalse(microBatcher.awaitBatch(queue, scheduler));
+	}
+
+	@Test
+	public void closeOnEvents() {
+		addEvents(queue, 100);
+		MicroBatcher microBatcher = new MicroBatcher(Long.MAX_VALUE, 10, 1000, 5000, () -> clock.addAndGet(50));
+		assertTrue(microBatcher.awaitBatch(queue, scheduler));
+		assertEquals(CloseReason.EVENTS, microBatcher.getCloseReason(queue, scheduler));
+	}
+
+	@Test
+	public void closeOnBytes() {
+		addEvents(queue, 1);
+		MicroBatcher microBatcher = new MicroBatcher(queue.getBytes(), 10, 1000, 5000, () -> clock.addAndGet(50));
+		assertTrue(microBatcher.awaitBatch(queue, scheduler));
+		assertEquals(CloseReason.BYTES, microBatcher.getCloseReason(queue, scheduler));
+	}
+
+	@Test
+	public void closeOnDeadline() {
+		addEvents(queue, 1);
+		MicroBatcher microBatcher = new MicroBatcher(Long.MAX_VALUE, 10, 1000, 5000, () -> clock.addAndGet(50));
+		assertTrue(microBatcher.awaitBatch(queue, scheduler));
+		assertEquals(CloseReason.DEADLINE, microBatcher.getCloseReason(queue, scheduler));
+		assertTrue(clock.get() >= 1000);
+	}
+
+	@Test
+	public void deadlineFollowsProcessingTime() {
+		MicroBatcher microBatcher = new MicroBatcher(Long.MAX_VALUE, 10, 1000, 5000, clock::get);
+		assertEquals(1000, microBatcher.getDeadlineMillis());
+
+		microBatcher.batchDone(4500, 0);
+		assertEquals(500, microBatcher.getDeadlineMillis());
+
+		microBatcher.batchDone(6000, 0);
+		assertEquals(10, microBatcher.getDeadlineMillis());
+
+		for (int i = 0; i < 100; i++) {
+			microBatcher.batchDone(100, 0);
+		}
+		assertEquals(100, microBatcher.getProcessingTimeP99());
+		assertEquals(1000, microBatcher.getDeadlineMillis());
+	}
+
+	@Test
+	public void deadlineCountsFromOldestPendingEvent() {
+		MicroBatcher microBatcher = new MicroBatcher(Long.MAX_VALUE, 10, 1000, 5000, () -> clock.addAndGet(50));
+		addEvents(queue, 150);
+		long firstPendingAt = clock.get();
+		assertTrue(microBatcher.awaitBatch(queue, scheduler));
+		assertEquals(100, scheduler.nextBatch(queue).values().iterator().next().size());
+		microBatcher.batchDone(0, 100);
+
+		// the events left out of the batch were pending before it
+		assertTrue(microBatcher.awaitBatch(queue, scheduler));
+		assertTrue(clock.get() - firstPendingAt < 1200);
+		long closedAt = clock.get();
+		scheduler.nextBatch(queue);
+
+		// an event that arrived while the batch was processed waits since it was closed
+		addEvents(queue, 1);
+		clock.addAndGet(500);
+		microBatcher.batchDone(500, 50);
+		assertTrue(microBatcher.awaitBatch(queue, scheduler));
+		assertTrue(clock.get() - closedAt < 1200);
+	}
+
+	private static void addEvents(BlockingQueue<Event> queue, int amount) {
+		for (int i = 0; i < amount; i++) {
+			queue.offer(new InfoEvent("id" + i, LogParams.create()));
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package com.datorama.oss.timbermill.common.settings;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class RuntimeSettingsTest {
+
+	private final AtomicInteger batchSize = new AtomicInteger(100);
+	private final AtomicLong cacheWeight = new AtomicLong(1000);
+	private final AtomicReference<String> cron = new AtomicReference<>("0 0/10 * 1/1 * ? *");
+	private final RuntimeSettings settings = new RuntimeSettings()
+			.registerInt("BATCH", 1, batchSize::get, batchSize::set)
+			.registerLong("WEIGHT", 1, cacheWeight::get, weight -> {
+				if (weight == 666) {
+					throw new RuntimeException("cache refused");
+				}
+				cacheWeight.set(weight);
+			})
+			.registerCron("CRON", cron::get, cron::set);
+
+	@Test
+	public void applyValidUpdate() {
+		settings.update(ImmutableMap.of("BATCH", "200", "CRON", "0 0/1 * 1/1 * ? *"), "test");
+		assertEquals(200, batchSize.get());
+		assertEquals("0 0/1 * 1/1 * ? *", cron.get());
+		assertEquals("200", settings.getValues().get("BATCH"));
+		assertEquals("1000", settings.getValues().get("WEIGHT"));
+	}
+
+	@Test
+	public void rejectWholeUpdateIfAnyChangeIsInvalid() {
+		for (String invalid : new String[]{"0", "abc"}) {
+			try {
+				settings.update(ImmutableMap.of("WEIGHT", "2000", "BATCH", invalid), "test");
+				fail();
+			} catch (IllegalArgumentException ignored) {
+			}
+		}
+		try {
+			settings.update(ImmutableMap.of("WEIGHT", "2000", "UNKNOWN", "1"), "test");
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("UNKNOWN"));
+		}
+		assertEquals(1000, cacheWeight.get());
+		assertEquals(100, batchSize.get());
+	}
+
+	@Test
+	public void rollbackWhenApplyingFails() {
+		try {
+			settings.update(ImmutableMap.of("BATCH", "300", "WEIGHT", "666"), "test");
+			fail();
+		} catch (IllegalArgumentException e) {
+			fail();
+		} catch (RuntimeException ignored) {
+		}
+		assertEquals(100, batchSize.get());
+		assertEquals(1000, cacheWeight.get());
+	}
+}
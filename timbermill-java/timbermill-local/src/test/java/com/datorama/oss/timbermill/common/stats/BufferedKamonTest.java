@@ -0,0 +1,80 @@
+package com.datorama.oss.timbermill.common.stats;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+public class BufferedKamonTest {
+
+	@Test
+	public void publishCounterDeltasAcrossFlushes() {
+		kamon.metric.Counter instrument = mock(kamon.metric.Counter.class);
+		BufferedKamon.Counter counter = BufferedKamon.counter(instrument);
+		// flushed by hand from here on, so the flusher thread does not split the deltas
+		BufferedKamon.unregister(counter);
+
+		counter.increment(3);
+		counter.flush();
+		verify(instrument).increment(3);
+
+		counter.increment();
+		counter.increment(4);
+		counter.flush();
+		verify(instrument).increment(5);
+		counter.flush();
+		verifyNoMoreInteractions(instrument);
+		assertEquals(8, counter.get());
+	}
+
+	@Test
+	public void drainHistogramBucketsOnFlush() {
+		kamon.metric.Histogram instrument = mock(kamon.metric.Histogram.class);
+		BufferedKamon.Histogram histogram = BufferedKamon.histogram(instrument);
+		BufferedKamon.unregister(histogram);
+
+		histogram.record(10);
+		histogram.record(10);
+		histogram.record(10);
+		histogram.record(1000);
+		histogram.flush();
+		verify(instrument).record(10, 3);
+		verify(instrument).record(StatsHistogram.highestValueOf(StatsHistogram.bucketOf(1000)), 1);
+
+		histogram.flush();
+		verifyNoMoreInteractions(instrument);
+	}
+
+	@Test
+	public void drainTimerBucketsOnFlush() {
+		kamon.metric.Timer instrument = mock(kamon.metric.Timer.class);
+		BufferedKamon.Timer timer = BufferedKamon.timer(instrument);
+		BufferedKamon.unregister(timer);
+
+		timer.recordNanosSince(System.nanoTime());
+		timer.recordNanosSince(System.nanoTime());
+		timer.flush();
+		verify(instrument, times(2)).record(anyLong());
+
+		timer.flush();
+		verifyNoMoreInteractions(instrument);
+	}
+
+	@Test
+	public void publishWhatIsLeftWhenUnregistered() {
+		kamon.metric.Counter instrument = mock(kamon.metric.Counter.class);
+		BufferedKamon.Counter counter = BufferedKamon.counter(instrument);
+		counter.increment(5);
+		BufferedKamon.unregister(counter);
+		verify(instrument).increment(5);
+
+		counter.increment();
+		BufferedKamon.flush();
+		BufferedKamon.unregister(counter);
+		verifyNoMoreInteractions(instrument);
+	}
+}
@@ -0,0 +1,69 @@
+package com.datorama.oss.timbermill.common.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StatsHistogramTest {
+
+	@Test
+	public void percentilesAreWithinBucketPrecision() {
+		StatsHistogram histogram = new StatsHistogram("test", "test", 1);
+		for (long value = 1; value <= 100000; value++) {
+			histogram.record(value * 1000);
+		}
+		assertEquals(100000, histogram.getCount());
+		assertEquals(100000000, histogram.getMax(), 0);
+		assertEquals(50000000, histogram.getValueAtPercentile(50), 50000000 * 0.04);
+		assertEquals(99000000, histogram.getValueAtPercentile(99), 99000000 * 0.04);
+		assertEquals(100000000, histogram.getValueAtPercentile(100), 0);
+	}
+
+	@Test
+	public void percentilesForgetValuesOutOfWindow() {
+		AtomicLong now = new AtomicLong(StatsHistogram.WINDOW_MILLIS);
+		StatsHistogram histogram = new StatsHistogram("test", "test", 1, now::get);
+		histogram.record(1000);
+		now.addAndGet(StatsHistogram.WINDOW_MILLIS / 2);
+		histogram.record(10);
+		assertEquals(1000, histogram.getMax(), 0);
+		assertEquals(1000, histogram.getValueAtPercentile(99), 1000 * 0.04);
+
+		now.addAndGet(StatsHistogram.WINDOW_MILLIS / 2);
+		assertEquals(10, histogram.getMax(), 0);
+		assertEquals(10, histogram.getValueAtPercentile(99), 0);
+
+		now.addAndGet(StatsHistogram.WINDOW_MILLIS);
+		assertEquals(0, histogram.getMax(), 0);
+		assertEquals(0, histogram.getValueAtPercentile(99), 0);
+		assertEquals(2, histogram.getCount());
+		assertEquals(1010, histogram.getSum(), 0);
+	}
+
+	@Test
+	public void bucketsCoverAllValues() {
+		for (long value : new long[]{0, 1, 63, 64, 65, 1000, 123456789, Long.MAX_VALUE}) {
+			int bucket = StatsHistogram.bucketOf(value);
+			assertTrue(StatsHistogram.highestValueOf(bucket) >= value);
+			assertTrue(bucket == 0 || StatsHistogram.highestValueOf(bucket - 1) < value);
+		}
+	}
+
+	@Test
+	public void exportsPrometheusText() {
+		StatsRegistry registry = new StatsRegistry();
+		registry.counter("test_events_total", "Events").add(3);
+		registry.gauge("test_queue_events", "Queue", () -> 7);
+		registry.timer("test_duration_seconds", "Duration").record(2000000000L);
+
+		String text = PrometheusExporter.export(registry);
+		assertTrue(text.contains("# TYPE test_events_total counter\ntest_events_total 3\n"));
+		assertTrue(text.contains("# TYPE test_queue_events gauge\ntest_queue_events 7\n"));
+		assertTrue(text.contains("# TYPE test_duration_seconds summary\n"));
+		assertTrue(text.contains("test_duration_seconds{quantile=\"0.99\"} 2"));
+		assertTrue(text.contains("test_duration_seconds_count 1\n"));
+		assertTrue(text.contains("test_duration_seconds_max 2\n"));
+	}
+}
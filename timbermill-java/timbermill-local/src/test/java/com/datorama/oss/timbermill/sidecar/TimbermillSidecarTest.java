@@ -0,0 +1,107 @@
+package com.datorama.oss.timbermill.sidecar;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.datorama.oss.timbermill.common.ByteBoundedEventsQueue;
+import com.datorama.oss.timbermill.pipe.EventOutputPipe;
+import com.datorama.oss.timbermill.unit.Event;
+import com.datorama.oss.timbermill.unit.LogParams;
+import com.datorama.oss.timbermill.unit.StartEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import static org.junit.Assert.*;
+
+public class TimbermillSidecarTest {
+
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+	// a single event fills the queue up to its high watermark, the next one sets it spilling
+	private final ByteBoundedEventsQueue eventsQueue = new ByteBoundedEventsQueue("events", 100, 1, 0.5);
+	private TimbermillSidecar sidecar;
+
+	@Before
+	public void setUp() throws IOException {
+		EventOutputPipe pipe = new EventOutputPipe() {
+			@Override public void send(Event e) {
+				eventsQueue.offer(e);
+			}
+
+			@Override public int getCurrentBufferSize() {
+				return eventsQueue.size();
+			}
+
+			@Override public void close() {
+			}
+		};
+		sidecar = new TimbermillSidecar(pipe, eventsQueue, 0, 2, 100);
+		sidecar.start();
+	}
+
+	@After
+	public void tearDown() {
+		sidecar.stop();
+	}
+
+	@Test
+	public void queueEventsAndSkipDuplicatedWrappers() throws IOException {
+		assertEquals(200, post("id1", createEvent("task1")));
+		assertEquals(1, eventsQueue.size());
+
+		assertEquals(200, post("id1", createEvent("task1")));
+		assertEquals(1, eventsQueue.size());
+	}
+
+	@Test
+	public void rejectWhileSpilling() throws IOException {
+		assertEquals(200, post("id1", createEvent("task1")));
+		assertEquals(200, post("id2", createEvent("task2")));
+		assertTrue(eventsQueue.isSpilling());
+
+		HttpURLConnection connection = createConnection("id3", createEvent("task3"));
+		assertEquals(429, connection.getResponseCode());
+		assertEquals("1", connection.getHeaderField("Retry-After"));
+
+		eventsQueue.clear();
+		assertEquals(200, post("id3", createEvent("task3")));
+	}
+
+	private int post(String eventsId, Event... events) throws IOException {
+		return createConnection(eventsId, events).getResponseCode();
+	}
+
+	private HttpURLConnection createConnection(String eventsId, Event... events) throws IOException {
+		EventsWrapper wrapper = new EventsWrapper(eventsId, Arrays.asList(events));
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + sidecar.getPort() + "/events").openConnection();
+		connection.setRequestMethod("POST");
+		connection.setRequestProperty("Content-Type", "application/json");
+		connection.setDoOutput(true);
+		try (OutputStream out = connection.getOutputStream()) {
+			out.write(OBJECT_MAPPER.writeValueAsBytes(wrapper));
+		}
+		return connection;
+	}
+
+	private static Event createEvent(String taskId) {
+		return new StartEvent(taskId, "name", LogParams.create(), null);
+	}
+
+	// the client's EventsWrapper is not on this module's classpath
+	private static class EventsWrapper {
+		public final String id;
+		public final List<Event> events;
+
+		EventsWrapper(String id, List<Event> events) {
+			this.id = id;
+			this.events = events;
+		}
+	}
+}
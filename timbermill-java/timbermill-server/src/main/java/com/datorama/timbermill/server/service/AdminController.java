@@ -1,15 +1,29 @@
 package com.datorama.timbermill.server.service;
 
+import com.datorama.oss.timbermill.common.cardinality.FieldCardinalityGuard;
+import com.datorama.oss.timbermill.common.cluster.ClusterMembership;
 import com.datorama.oss.timbermill.common.persistence.DbBulkRequest;
 import com.datorama.oss.timbermill.common.persistence.PersistenceHandler;
+import com.datorama.oss.timbermill.common.ratelimiter.HierarchicalRateLimiter;
+import com.datorama.oss.timbermill.common.settings.RuntimeSettings;
+import com.datorama.oss.timbermill.common.stats.PrometheusExporter;
+import com.datorama.oss.timbermill.common.stats.StatsRegistry;
+import com.google.common.collect.Maps;
 import org.elasticsearch.action.bulk.BulkRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
 
+import javax.servlet.http.HttpServletRequest;
+import java.util.List;
+import java.util.Map;
+
 @RestController
 public class AdminController {
 
@@ -18,6 +32,9 @@ public class AdminController {
 	@Autowired
 	private TimbermillService timbermillService;
 
+	@Autowired
+	private AdmissionService admissionService;
+
 
 	@RequestMapping(method = RequestMethod.POST, value = "/persistence/requests/amount")
 	public long persistenceBulkRequestsAmount() {
@@ -43,6 +60,60 @@ public class AdminController {
 		return amount;
 	}
 
+	@RequestMapping(method = RequestMethod.GET, value = "/admin/cardinality")
+	public List<FieldCardinalityGuard.PrefixCardinality> fieldNamesCardinality() {
+		return timbermillService.getFieldCardinalityGuard().getCardinalities();
+	}
+
+	@RequestMapping(method = RequestMethod.GET, value = "/admin/admission")
+	public AdmissionService.AdmissionState admissionState() {
+		return admissionService.getState();
+	}
+
+	@RequestMapping(method = RequestMethod.GET, value = "/admin/ratelimiter")
+	public Map<HierarchicalRateLimiter.Level, HierarchicalRateLimiter.LevelCounters> rateLimiterCounters() {
+		return timbermillService.getRateLimiter().getCounters();
+	}
+
+	@RequestMapping(method = RequestMethod.GET, value = "/admin/cluster")
+	public ResponseEntity<?> clusterMembers() {
+		ClusterMembership clusterMembership = timbermillService.getClusterMembership();
+		if (clusterMembership == null) {
+			return new ResponseEntity<>("Cluster mode is disabled", HttpStatus.NOT_FOUND);
+		}
+		Map<String, Object> cluster = Maps.newLinkedHashMap();
+		cluster.put("self", clusterMembership.getSelf());
+		cluster.put("members", clusterMembership.getPartitionTable().getMembers());
+		return new ResponseEntity<>(cluster, HttpStatus.OK);
+	}
+
+	@RequestMapping(method = RequestMethod.GET, value = "/admin/stats")
+	public Map<String, Object> pipelineStats() {
+		return StatsRegistry.getInstance().snapshot();
+	}
+
+	@RequestMapping(method = RequestMethod.GET, value = "/metrics", produces = PrometheusExporter.CONTENT_TYPE)
+	public String prometheusMetrics() {
+		return PrometheusExporter.export(StatsRegistry.getInstance());
+	}
+
+	@RequestMapping(method = RequestMethod.GET, value = "/admin/settings")
+	public Map<String, String> runtimeSettings() {
+		return timbermillService.getRuntimeSettings().getValues();
+	}
+
+	@RequestMapping(method = RequestMethod.PUT, value = "/admin/settings")
+	public ResponseEntity<?> updateRuntimeSettings(@RequestBody Map<String, String> changes, HttpServletRequest request) {
+		RuntimeSettings runtimeSettings = timbermillService.getRuntimeSettings();
+		try {
+			return new ResponseEntity<>(runtimeSettings.update(changes, request.getRemoteAddr()), HttpStatus.OK);
+		} catch (IllegalArgumentException e) {
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+		} catch (RuntimeException e) {
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+		}
+	}
+
 	@RequestMapping(method = RequestMethod.POST, value = "/persistence/reset")
 	public void persistenceReset() {
 		PersistenceHandler persistenceHandler = timbermillService.getPersistenceHandler();
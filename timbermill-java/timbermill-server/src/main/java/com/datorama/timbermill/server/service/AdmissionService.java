@@ -0,0 +1,197 @@
+package com.datorama.timbermill.server.service;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.datorama.oss.timbermill.common.ByteBoundedEventsQueue;
+import com.datorama.oss.timbermill.common.KamonConstants;
+import com.datorama.oss.timbermill.common.persistence.PersistenceHandler;
+
+/**
+ * Decides whether new /events requests are admitted, based on the estimated bytes held by the in memory queues, the rate events
+ * overflow to the overflowed queue and the amount of events lists waiting in persistence. Rate limited events wait in the deferred queue and
+ * their own persistence, apart from these signals, since they are held back on purpose and not for lack of room.
+ * Requests are rejected once any signal crosses its high watermark, and admitted again only after all signals are below
+ * lowWatermarkRatio of it. Rejected clients are told to retry after the time the queues are expected to drain to the low watermark.
+ * Unless set, the bytes high watermark is derived from the byte caps of the queues and the staging, which bound what they can hold.
+ */
+@Service
+public class AdmissionService {
+
+	private static final Logger LOG = LoggerFactory.getLogger(AdmissionService.class);
+	private static final long REFRESH_INTERVAL_MILLIS = 1000;
+	private static final int PERSISTENCE_BACKLOG_REFRESH_TICKS = 10;
+	private static final double EWMA_WEIGHT = 0.2;
+	private static final double DERIVED_HIGH_WATERMARK_RATIO = 0.8;
+
+	private long highWatermarkBytes;
+	private final double lowWatermarkRatio;
+	private final long maxOverflowEventsPerSecond;
+	private final long maxPersistenceBacklog;
+	private final int maxRetryAfterSeconds;
+	private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor();
+
+	@Autowired
+	private TimbermillService timbermillService;
+
+	private volatile AdmissionState state = new AdmissionState(true, 0, 0, 0, 0, 0);
+	private double drainBytesPerSecond;
+	private long lastQueuedBytes;
+	private long lastOfferedBytes;
+	private long lastOverflowed;
+	private long persistenceBacklog;
+	private int ticks;
+
+	public AdmissionService(@Value("${ADMISSION_HIGH_WATERMARK_BYTES:-1}") long highWatermarkBytes,
+							   @Value("${ADMISSION_LOW_WATERMARK_RATIO:0.8}") double lowWatermarkRatio,
+							   @Value("${ADMISSION_MAX_OVERFLOW_EVENTS_PER_SECOND:50000}") long maxOverflowEventsPerSecond,
+							   @Value("${ADMISSION_MAX_PERSISTENCE_BACKLOG:10000}") long maxPersistenceBacklog,
+							   @Value("${ADMISSION_MAX_RETRY_AFTER_SECONDS:60}") int maxRetryAfterSeconds) {
+		if (lowWatermarkRatio <= 0 || lowWatermarkRatio > 1) {
+			throw new RuntimeException("ADMISSION_LOW_WATERMARK_RATIO must be in (0, 1]");
+		}
+		this.highWatermarkBytes = highWatermarkBytes;
+		this.lowWatermarkRatio = lowWatermarkRatio;
+		this.maxOverflowEventsPerSecond = maxOverflowEventsPerSecond;
+		this.maxPersistenceBacklog = maxPersistenceBacklog;
+		this.maxRetryAfterSeconds = Math.max(maxRetryAfterSeconds, 1);
+	}
+
+	@PostConstruct
+	void init() {
+		if (highWatermarkBytes < 0) {
+			highWatermarkBytes = (long) (DERIVED_HIGH_WATERMARK_RATIO * (timbermillService.getEventsQueue().getHighWatermarkBytes()
+					+ timbermillService.getOverflowedQueue().getHighWatermarkBytes() + timbermillService.getEnvFairScheduler().getStagingMaxBytes()));
+			LOG.info("Admission high watermark is {} bytes", highWatermarkBytes);
+		}
+		if (highWatermarkBytes == 0) {
+			LOG.info("Admission control is disabled");
+			return;
+		}
+		refresher.scheduleWithFixedDelay(() -> {
+			try {
+				refresh();
+			} catch (RuntimeException e) {
+				LOG.error("Failed refreshing admission state", e);
+			}
+		}, REFRESH_INTERVAL_MILLIS, REFRESH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	void close() {
+		refresher.shutdown();
+	}
+
+	AdmissionState getState() {
+		return state;
+	}
+
+	void recordRejection() {
+		KamonConstants.ADMISSION_REJECTED_REQUESTS_COUNTER.withoutTags().increment();
+	}
+
+	// only called from the refresher thread
+	private void refresh() {
+		ByteBoundedEventsQueue eventsQueue = timbermillService.getEventsQueue();
+		ByteBoundedEventsQueue overflowedQueue = timbermillService.getOverflowedQueue();
+		long offeredBytes = eventsQueue.getOfferedBytes() + overflowedQueue.getOfferedBytes();
+		long overflowed = overflowedQueue.getOffered();
+		long queuedBytes = eventsQueue.getBytes() + overflowedQueue.getBytes() + timbermillService.getEnvFairScheduler().getStagedBytes();
+		if (ticks++ % PERSISTENCE_BACKLOG_REFRESH_TICKS == 0) {
+			PersistenceHandler persistenceHandler = timbermillService.getPersistenceHandler();
+			persistenceBacklog = persistenceHandler == null ? 0 : persistenceHandler.overFlowedEventsListsAmount();
+		}
+		update(queuedBytes, offeredBytes, overflowed, persistenceBacklog);
+	}
+
+	// takes the signals of one refresh interval, offered bytes and overflowed events are totals since startup
+	void update(long queuedBytes, long offeredBytes, long overflowed, long persistenceBacklog) {
+		double seconds = REFRESH_INTERVAL_MILLIS / 1000.0;
+		long drainedBytes = Math.max(0, lastQueuedBytes + (offeredBytes - lastOfferedBytes) - queuedBytes);
+		drainBytesPerSecond = drainBytesPerSecond * (1 - EWMA_WEIGHT) + (drainedBytes / seconds) * EWMA_WEIGHT;
+		double overflowEventsPerSecond = (overflowed - lastOverflowed) / seconds;
+		lastQueuedBytes = queuedBytes;
+		lastOfferedBytes = offeredBytes;
+		lastOverflowed = overflowed;
+
+		double bytesPressure = (double) queuedBytes / highWatermarkBytes;
+		double overflowPressure = maxOverflowEventsPerSecond > 0 ? overflowEventsPerSecond / maxOverflowEventsPerSecond : 0;
+		double backlogPressure = maxPersistenceBacklog > 0 ? (double) persistenceBacklog / maxPersistenceBacklog : 0;
+		double pressure = Math.max(bytesPressure, Math.max(overflowPressure, backlogPressure));
+
+		boolean admitting = state.isAdmitting() ? pressure < 1 : pressure < lowWatermarkRatio;
+		if (admitting != state.isAdmitting()) {
+			LOG.warn("Admission {}, queued bytes {}, overflowed events per second {}, persistence backlog {}", admitting ? "resumed" : "paused",
+					queuedBytes, overflowEventsPerSecond, persistenceBacklog);
+		}
+		int retryAfterSeconds = admitting ? 0 : computeRetryAfterSeconds(queuedBytes);
+		state = new AdmissionState(admitting, pressure, queuedBytes, overflowEventsPerSecond, persistenceBacklog, retryAfterSeconds);
+
+		KamonConstants.ADMISSION_PRESSURE_GAUGE.withTag("signal", "queued_bytes").update(bytesPressure);
+		KamonConstants.ADMISSION_PRESSURE_GAUGE.withTag("signal", "overflow_rate").update(overflowPressure);
+		KamonConstants.ADMISSION_PRESSURE_GAUGE.withTag("signal", "persistence_backlog").update(backlogPressure);
+		KamonConstants.ADMISSION_ADMITTING_GAUGE.withoutTags().update(admitting ? 1 : 0);
+	}
+
+	// time for the queues to drain down to the low watermark in the current drain rate
+	private int computeRetryAfterSeconds(long queuedBytes) {
+		long bytesToDrain = Math.max(0, queuedBytes - (long) (highWatermarkBytes * lowWatermarkRatio));
+		if (drainBytesPerSecond < 1) {
+			return maxRetryAfterSeconds;
+		}
+		long seconds = (long) Math.ceil(bytesToDrain / drainBytesPerSecond);
+		return (int) Math.max(1, Math.min(seconds, maxRetryAfterSeconds));
+	}
+
+	public static class AdmissionState {
+		private final boolean admitting;
+		private final double pressure;
+		private final long queuedBytes;
+		private final double overflowEventsPerSecond;
+		private final long persistenceBacklog;
+		private final int retryAfterSeconds;
+
+		AdmissionState(boolean admitting, double pressure, long queuedBytes, double overflowEventsPerSecond, long persistenceBacklog, int retryAfterSeconds) {
+			this.admitting = admitting;
+			this.pressure = pressure;
+			this.queuedBytes = queuedBytes;
+			this.overflowEventsPerSecond = overflowEventsPerSecond;
+			this.persistenceBacklog = persistenceBacklog;
+			this.retryAfterSeconds = retryAfterSeconds;
+		}
+
+		public boolean isAdmitting() {
+			return admitting;
+		}
+
+		public double getPressure() {
+			return pressure;
+		}
+
+		public long getQueuedBytes() {
+			return queuedBytes;
+		}
+
+		public double getOverflowEventsPerSecond() {
+			return overflowEventsPerSecond;
+		}
+
+		public long getPersistenceBacklog() {
+			return persistenceBacklog;
+		}
+
+		public int getRetryAfterSeconds() {
+			return retryAfterSeconds;
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package com.datorama.timbermill.server.service;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.datorama.oss.timbermill.common.bootstrap.StagedBootstrap;
+
+/**
+ * Liveness only depends on ingestion, so a slow Elasticsearch does not get the pod restarted while events are queued.
+ * Readiness waits for all bootstrap stages. Both report the state of every stage.
+ */
+@RestController
+public class HealthController {
+
+	@Autowired
+	private TimbermillService timbermillService;
+
+	@RequestMapping(method = RequestMethod.GET, value = "/health/liveness")
+	public ResponseEntity<Map<String, StagedBootstrap.StageStatus>> liveness() {
+		HttpStatus status = timbermillService.isAlive() ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE;
+		return new ResponseEntity<>(timbermillService.getBootstrap().getStages(), status);
+	}
+
+	@RequestMapping(method = RequestMethod.GET, value = "/health/readiness")
+	public ResponseEntity<Map<String, StagedBootstrap.StageStatus>> readiness() {
+		StagedBootstrap bootstrap = timbermillService.getBootstrap();
+		HttpStatus status = bootstrap.isReady() ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE;
+		return new ResponseEntity<>(bootstrap.getStages(), status);
+	}
+}
@@ -0,0 +1,40 @@
+package com.datorama.timbermill.server.service;
+
+import com.datorama.oss.timbermill.common.offload.TextOffloader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+
+@RestController
+public class OffloadedTextController {
+
+	private static final Logger LOG = LoggerFactory.getLogger(OffloadedTextController.class);
+
+	@Autowired
+	private TimbermillService timbermillService;
+
+	// hash is the reference kept at the end of the offloaded text preview
+	@RequestMapping(method = RequestMethod.GET, value = "/texts/{hash}", produces = MediaType.TEXT_PLAIN_VALUE)
+	public ResponseEntity<String> getOffloadedText(@PathVariable String hash) {
+		TextOffloader textOffloader = timbermillService.getTextOffloader();
+		try {
+			String text = textOffloader.getText(hash);
+			if (text == null) {
+				return new ResponseEntity<>("Text " + hash + " was not found", HttpStatus.NOT_FOUND);
+			}
+			return new ResponseEntity<>(text, HttpStatus.OK);
+		} catch (IOException e) {
+			LOG.error("Failed reading offloaded text " + hash, e);
+			return new ResponseEntity<>("Failed reading text " + hash, HttpStatus.INTERNAL_SERVER_ERROR);
+		}
+	}
+}
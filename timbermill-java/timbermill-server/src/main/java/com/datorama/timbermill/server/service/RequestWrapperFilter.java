@@ -1,6 +1,7 @@
 package com.datorama.timbermill.server.service;
 
 import java.io.IOException;
+import java.util.Set;
 
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
@@ -11,6 +12,7 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 import org.springframework.web.util.ContentCachingRequestWrapper;
 
+import com.google.common.collect.Sets;
 import com.google.common.net.HttpHeaders;
 
 import kamon.metric.Timer;
@@ -19,6 +21,14 @@ import static com.datorama.oss.timbermill.common.KamonConstants.GZIP_DECOMPRESS_
 @Component
 public class RequestWrapperFilter extends OncePerRequestFilter {
 
+	// events are read as a stream by TimbermillController, wrapping would buffer the whole body
+	private static final Set<String> STREAMED_PATHS = Sets.newHashSet("/events", "/events/v2");
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		return STREAMED_PATHS.contains(request.getRequestURI().substring(request.getContextPath().length()));
+	}
+
 	@Override
 	protected void doFilterInternal(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse, FilterChain filterChain) throws ServletException, IOException {
 
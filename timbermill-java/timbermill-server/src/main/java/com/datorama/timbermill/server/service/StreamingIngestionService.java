@@ -0,0 +1,222 @@
+package com.datorama.timbermill.server.service;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.datorama.oss.timbermill.common.EventsIdsCache;
+import com.datorama.oss.timbermill.common.EventsStreamProtocol;
+import com.datorama.oss.timbermill.common.EventsStreamReader;
+import com.datorama.oss.timbermill.common.cluster.EventsRejectedException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Serves the streaming ingestion protocol (see EventsStreamProtocol) on STREAMING_PORT, next to the /events endpoints.
+ * Every connection is served by its own thread, which reads EVENTS frames, hands their events to the queues like /events does and
+ * acknowledges them. Credits are granted back only while admission control admits, so an overloaded server slows its streaming clients
+ * down instead of rejecting their batches. A batch that could not be parsed is acknowledged with STATUS_PARSE_ERROR, and one that failed
+ * otherwise, e.g. rejected by the cluster or still being received on another connection, with STATUS_ERROR so the client sends it again.
+ */
+@Service
+public class StreamingIngestionService {
+
+	private static final Logger LOG = LoggerFactory.getLogger(StreamingIngestionService.class);
+	private static final int SOCKET_BUFFER_SIZE = 65536;
+
+	private final int port;
+	private final int maxConnections;
+	private final int initialCredits;
+	private final int maxFrameBytes;
+	private final EventsStreamReader eventsStreamReader;
+	private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+	private ServerSocket serverSocket;
+	private ExecutorService connectionsExecutor;
+	private volatile boolean keepRunning = true;
+
+	@Autowired
+	private TimbermillService timbermillService;
+
+	@Autowired
+	private AdmissionService admissionService;
+
+	public StreamingIngestionService(ObjectMapper objectMapper,
+									 @Value("${STREAMING_PORT:0}") int port,
+									 @Value("${STREAMING_MAX_CONNECTIONS:256}") int maxConnections,
+									 @Value("${STREAMING_CREDITS:8}") int initialCredits,
+									 @Value("${STREAMING_MAX_FRAME_BYTES:16777216}") int maxFrameBytes,
+									 @Value("${EVENTS_STREAM_CHUNK_SIZE:1000}") int eventsChunkSize) {
+		if (maxConnections < 1 || initialCredits < 1 || maxFrameBytes < 1) {
+			throw new RuntimeException("STREAMING_MAX_CONNECTIONS, STREAMING_CREDITS and STREAMING_MAX_FRAME_BYTES must be positive");
+		}
+		this.port = port;
+		this.maxConnections = maxConnections;
+		this.initialCredits = initialCredits;
+		this.maxFrameBytes = maxFrameBytes;
+		this.eventsStreamReader = new EventsStreamReader(objectMapper, eventsChunkSize);
+	}
+
+	@PostConstruct
+	void start() throws IOException {
+		if (port <= 0) {
+			LOG.info("Streaming ingestion is disabled");
+			return;
+		}
+		serverSocket = new ServerSocket(port);
+		connectionsExecutor = new ThreadPoolExecutor(0, maxConnections, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+			Thread thread = new Thread(runnable, "timbermill-stream-connection");
+			thread.setDaemon(true);
+			return thread;
+		});
+		Thread acceptor = new Thread(this::acceptConnections, "timbermill-stream-acceptor");
+		acceptor.setDaemon(true);
+		acceptor.start();
+		LOG.info("Streaming ingestion is listening on port {}", port);
+	}
+
+	@PreDestroy
+	void stop() {
+		keepRunning = false;
+		if (serverSocket == null) {
+			return;
+		}
+		closeQuietly(serverSocket);
+		closeConnections();
+		connectionsExecutor.shutdown();
+	}
+
+	void closeConnections() {
+		for (Socket socket : connections) {
+			closeQuietly(socket);
+		}
+	}
+
+	private void acceptConnections() {
+		while (keepRunning) {
+			Socket socket;
+			try {
+				socket = serverSocket.accept();
+			} catch (IOException e) {
+				if (keepRunning) {
+					LOG.error("Failed accepting a streaming connection", e);
+				}
+				continue;
+			}
+			try {
+				connectionsExecutor.execute(() -> serve(socket));
+			} catch (RejectedExecutionException e) {
+				LOG.warn("Rejected streaming connection from {}, {} connections are open", socket.getRemoteSocketAddress(), maxConnections);
+				closeQuietly(socket);
+			}
+		}
+	}
+
+	private void serve(Socket socket) {
+		connections.add(socket);
+		try {
+			socket.setTcpNoDelay(true);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), SOCKET_BUFFER_SIZE));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			if (in.readInt() != EventsStreamProtocol.MAGIC) {
+				LOG.warn("Closing streaming connection from {}, it did not start with the protocol magic", socket.getRemoteSocketAddress());
+				return;
+			}
+			EventsStreamProtocol.writeCredit(out, initialCredits);
+			out.flush();
+			while (keepRunning) {
+				EventsStreamProtocol.Frame frame = EventsStreamProtocol.readFrame(in);
+				if (frame.getType() != EventsStreamProtocol.EVENTS || frame.getValue() < 0 || frame.getValue() > maxFrameBytes) {
+					LOG.warn("Closing streaming connection from {}, got frame type {} of {} bytes", socket.getRemoteSocketAddress(), frame.getType(), frame.getValue());
+					return;
+				}
+				byte[] payload = new byte[frame.getValue()];
+				in.readFully(payload);
+				byte status = handleEvents(payload);
+				boolean admitting = getAdmissionState().isAdmitting();
+				EventsStreamProtocol.writeAck(out, frame.getSequence(), status, admitting ? 1 : 0);
+				out.flush();
+				if (!admitting) {
+					awaitAdmission();
+					EventsStreamProtocol.writeCredit(out, 1);
+					out.flush();
+				}
+			}
+		} catch (EOFException | SocketException e) {
+			LOG.debug("Streaming connection from {} was closed", socket.getRemoteSocketAddress());
+		} catch (IOException | RuntimeException e) {
+			LOG.error("Streaming connection from " + socket.getRemoteSocketAddress() + " failed", e);
+		} finally {
+			connections.remove(socket);
+			closeQuietly(socket);
+		}
+	}
+
+	// the payload was read whole, so an IOException here is a corrupt gzip or JSON body
+	private byte handleEvents(byte[] payload) {
+		try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(payload))) {
+			readEvents(in);
+			return EventsStreamProtocol.STATUS_OK;
+		} catch (IOException e) {
+			LOG.error("Error parsing streamed events", e);
+			return EventsStreamProtocol.STATUS_PARSE_ERROR;
+		} catch (EventsRejectedException | EventsIdsCache.InFlightException e) {
+			LOG.warn("Streamed events were not handled: {}", e.getMessage());
+			return EventsStreamProtocol.STATUS_ERROR;
+		} catch (RuntimeException e) {
+			LOG.error("Failed handling streamed events", e);
+			return EventsStreamProtocol.STATUS_ERROR;
+		}
+	}
+
+	int readEvents(InputStream in) throws IOException {
+		return timbermillService.readEvents(eventsStreamReader, in, null);
+	}
+
+	AdmissionService.AdmissionState getAdmissionState() {
+		return admissionService.getState();
+	}
+
+	void recordRejection() {
+		admissionService.recordRejection();
+	}
+
+	private void awaitAdmission() {
+		recordRejection();
+		while (keepRunning) {
+			AdmissionService.AdmissionState state = getAdmissionState();
+			if (state.isAdmitting()) {
+				return;
+			}
+			try {
+				Thread.sleep(TimeUnit.SECONDS.toMillis(Math.max(state.getRetryAfterSeconds(), 1)));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	private static void closeQuietly(Closeable closeable) {
+		try {
+			closeable.close();
+		} catch (IOException ignored) {
+		}
+	}
+}
@@ -0,0 +1,31 @@
+package com.datorama.timbermill.server.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+public class TaskTreeController {
+
+	private static final int MAX_PAGE_SIZE = 10000;
+
+	@Autowired
+	private TaskTreeService taskTreeService;
+
+	@RequestMapping(method = RequestMethod.GET, value = "/tasks/{primaryId}/tree")
+	public ResponseEntity<?> getTaskTree(@PathVariable String primaryId,
+										 @RequestParam(value = "env", required = false) String env,
+										 @RequestParam(value = "maxDepth", defaultValue = "2147483647") int maxDepth,
+										 @RequestParam(value = "from", defaultValue = "0") int from,
+										 @RequestParam(value = "size", defaultValue = "1000") int size) {
+		if (from < 0 || size < 1 || size > MAX_PAGE_SIZE || maxDepth < 0) {
+			return new ResponseEntity<>("from must be >= 0, maxDepth >= 0 and size between 1 and " + MAX_PAGE_SIZE, HttpStatus.BAD_REQUEST);
+		}
+		TaskTreeService.TaskTree taskTree = taskTreeService.getTaskTree(primaryId, env == null ? null : env.toLowerCase(), maxDepth, from, size);
+		if (taskTree == null) {
+			return new ResponseEntity<>("Task " + primaryId + " was not found", HttpStatus.NOT_FOUND);
+		}
+		return new ResponseEntity<>(taskTree, HttpStatus.OK);
+	}
+}
@@ -0,0 +1,197 @@
+package com.datorama.timbermill.server.service;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.datorama.oss.timbermill.TreeTasks;
+import com.datorama.oss.timbermill.common.KamonConstants;
+import com.datorama.oss.timbermill.unit.Task;
+import com.datorama.oss.timbermill.unit.TaskStatus;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import kamon.metric.Timer;
+
+@Service
+public class TaskTreeService {
+
+	private final int maxTasksInTree;
+	private final Cache<String, List<TaskTreeNode>> completedTreesCache;
+
+	@Autowired
+	private TimbermillService timbermillService;
+
+	public TaskTreeService(@Value("${TASK_TREE_MAX_TASKS:10000}") int maxTasksInTree,
+						   @Value("${TASK_TREE_CACHE_SIZE:1000}") int completedTreesCacheSize,
+						   @Value("${TASK_TREE_CACHE_TTL_MINUTES:60}") int completedTreesCacheTtlMinutes) {
+		this.maxTasksInTree = maxTasksInTree;
+		completedTreesCache = CacheBuilder.newBuilder()
+				.maximumSize(completedTreesCacheSize)
+				.expireAfterAccess(completedTreesCacheTtlMinutes, TimeUnit.MINUTES)
+				.build();
+	}
+
+	// returns null if no task with the given primary id was found
+	TaskTree getTaskTree(String rootId, String env, int maxDepth, int from, int size) {
+		String cacheKey = env + "|" + rootId;
+		List<TaskTreeNode> nodes = completedTreesCache.getIfPresent(cacheKey);
+		Timer.Started start = KamonConstants.TASK_TREE_QUERY_TIMER.withTag("cache", nodes != null ? "hit" : "miss").start();
+		try {
+			// only complete trees are cached, so a cached tree is never truncated
+			boolean truncated = false;
+			if (nodes == null) {
+				TreeTasks treeTasks = fetchTreeTasks(rootId, env);
+				Map<String, Task> tasks = treeTasks.getTasks();
+				if (!tasks.containsKey(rootId)) {
+					return null;
+				}
+				truncated = treeTasks.isTruncated();
+				nodes = buildTree(rootId, tasks);
+				if (!truncated && nodes.stream().allMatch(TaskTreeNode::isComplete)) {
+					completedTreesCache.put(cacheKey, nodes);
+				}
+			}
+			List<TaskTreeNode> inDepth = Lists.newArrayList();
+			for (TaskTreeNode node : nodes) {
+				if (node.getDepth() <= maxDepth) {
+					inDepth.add(node);
+				}
+			}
+			int fromIndex = Math.min(from, inDepth.size());
+			int toIndex = Math.min(fromIndex + size, inDepth.size());
+			return new TaskTree(rootId, inDepth.size(), from, truncated, inDepth.subList(fromIndex, toIndex));
+		} finally {
+			start.stop();
+		}
+	}
+
+	TreeTasks fetchTreeTasks(String rootId, String env) {
+		return timbermillService.getStorageClient().getTasksByPrimaryId(rootId, env, maxTasksInTree);
+	}
+
+	// breadth first, so the tree can be paged by depth
+	private static List<TaskTreeNode> buildTree(String rootId, Map<String, Task> tasks) {
+		Map<String, List<String>> childrenIds = Maps.newHashMap();
+		for (Map.Entry<String, Task> entry : tasks.entrySet()) {
+			String parentId = entry.getValue().getParentId();
+			if (parentId != null && !entry.getKey().equals(rootId)) {
+				childrenIds.computeIfAbsent(parentId, id -> Lists.newArrayList()).add(entry.getKey());
+			}
+		}
+
+		List<TaskTreeNode> nodes = Lists.newArrayList();
+		Deque<TaskTreeNode> queue = new ArrayDeque<>();
+		queue.add(new TaskTreeNode(rootId, tasks.get(rootId), 0));
+		while (!queue.isEmpty()) {
+			TaskTreeNode node = queue.poll();
+			nodes.add(node);
+			List<String> children = childrenIds.getOrDefault(node.getId(), Collections.emptyList());
+			children.sort(Comparator.comparing(id -> tasks.get(id).getStartTime(), Comparator.nullsLast(Comparator.naturalOrder())));
+			for (String childId : children) {
+				queue.add(new TaskTreeNode(childId, tasks.get(childId), node.getDepth() + 1));
+			}
+		}
+		return Collections.unmodifiableList(nodes);
+	}
+
+	public static class TaskTree {
+		private final String rootId;
+		private final int total;
+		private final int from;
+		private final boolean truncated;
+		private final List<TaskTreeNode> tasks;
+
+		TaskTree(String rootId, int total, int from, boolean truncated, List<TaskTreeNode> tasks) {
+			this.rootId = rootId;
+			this.total = total;
+			this.from = from;
+			this.truncated = truncated;
+			this.tasks = tasks;
+		}
+
+		public String getRootId() {
+			return rootId;
+		}
+
+		public int getTotal() {
+			return total;
+		}
+
+		public int getFrom() {
+			return from;
+		}
+
+		// the tree had more tasks than TASK_TREE_MAX_TASKS, only some of them are in it along with its root
+		public boolean isTruncated() {
+			return truncated;
+		}
+
+		public List<TaskTreeNode> getTasks() {
+			return tasks;
+		}
+	}
+
+	public static class TaskTreeNode {
+		private final String id;
+		private final String name;
+		private final TaskStatus status;
+		private final String parentId;
+		private final int depth;
+		private final String taskBegin;
+		private final String taskEnd;
+		private final Long duration;
+
+		TaskTreeNode(String id, Task task, int depth) {
+			this.id = id;
+			this.name = task.getName();
+			this.status = task.getStatus();
+			this.parentId = task.getParentId();
+			this.depth = depth;
+			this.taskBegin = task.getStartTime() == null ? null : task.getStartTime().toString();
+			this.taskEnd = task.getEndTime() == null ? null : task.getEndTime().toString();
+			this.duration = task.getDuration();
+		}
+
+		boolean isComplete() {
+			return status == TaskStatus.SUCCESS || status == TaskStatus.ERROR || status == TaskStatus.CORRUPTED;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public TaskStatus getStatus() {
+			return status;
+		}
+
+		public String getParentId() {
+			return parentId;
+		}
+
+		public int getDepth() {
+			return depth;
+		}
+
+		public String getTaskBegin() {
+			return taskBegin;
+		}
+
+		public String getTaskEnd() {
+			return taskEnd;
+		}
+
+		public Long getDuration() {
+			return duration;
+		}
+	}
+}
@@ -1,82 +1,86 @@
 package com.datorama.timbermill.server.service;
 
 import java.io.IOException;
-import java.util.Collection;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
 
 import javax.servlet.http.HttpServletRequest;
-import javax.servlet.http.HttpServletRequestWrapper;
-import javax.validation.Valid;
 
-import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.web.bind.annotation.*;
 
-import com.datorama.oss.timbermill.unit.Event;
-import com.datorama.oss.timbermill.unit.EventsList;
-import com.datorama.oss.timbermill.unit.EventsWrapper;
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
+import com.datorama.oss.timbermill.common.EventsIdsCache;
+import com.datorama.oss.timbermill.common.EventsStreamReader;
+import com.datorama.oss.timbermill.common.cluster.EventsForwarder;
+import com.datorama.oss.timbermill.common.cluster.EventsRejectedException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.net.HttpHeaders;
+
+import kamon.metric.Timer;
+import static com.datorama.oss.timbermill.common.KamonConstants.GZIP_DECOMPRESS_REQUEST_DURATION;
 
 @RestController
 public class TimbermillController {
 
 	private static final Logger LOG = LoggerFactory.getLogger(TimbermillController.class);
+	private static final String IN_FLIGHT_RETRY_AFTER_SECONDS = "1";
+	private static final String CLUSTER_RETRY_AFTER_SECONDS = "1";
 
-	private static ExecutorService executorService;
-	private final Cache<String, String> idsCache;
+	private final EventsStreamReader eventsStreamReader;
 
 	@Autowired
 	private TimbermillService timbermillService;
 
-	public TimbermillController(@Value("${RECEIVING_THREAD:10}") int numOfThreads) {
-		CacheBuilder<String, String> cacheBuilder = CacheBuilder.newBuilder().weigher((key, value) -> key.length() + value.length());
-		idsCache = cacheBuilder
-				.maximumWeight(1000000) //1MB
-				.expireAfterWrite(10, TimeUnit.SECONDS)
-				.build();
-		executorService = Executors.newFixedThreadPool(numOfThreads);
-	}
+	@Autowired
+	private AdmissionService admissionService;
 
-	@RequestMapping(method = RequestMethod.POST, value = "/events")
-	public String ingestEvents(@RequestBody @Valid EventsWrapper eventsWrapper) {
-		executorService.submit(() -> {
-			String eventsId = eventsWrapper.getId();
-			if (eventsId != null){
-				if (idsCache.getIfPresent(eventsId) != null){
-					LOG.warn("Got duplicated EventsWrapper {}", eventsWrapper.getEvents());
-					return;
-				}
-				else{
-					idsCache.put(eventsId, eventsId);
-				}
-			}
-			Collection<Event> events = eventsWrapper.getEvents();
-			timbermillService.handleEvents(events);
-		});
-		return "Event received";
+	public TimbermillController(ObjectMapper objectMapper, @Value("${EVENTS_STREAM_CHUNK_SIZE:1000}") int eventsChunkSize) {
+		eventsStreamReader = new EventsStreamReader(objectMapper, eventsChunkSize);
 	}
 
-	@RequestMapping(method = RequestMethod.POST, value = "/events/v2")
-	public String ingestEventsNew(@RequestBody @Valid EventsList events) {
-		executorService.submit(() -> timbermillService.handleEvents(events));
-		return "Event received";
+	// events are parsed straight from the (gzipped) request stream and handed to the queues in chunks, see RequestWrapperFilter
+	@RequestMapping(method = RequestMethod.POST, value = {"/events", "/events/v2"})
+	public ResponseEntity<String> ingestEvents(HttpServletRequest request) throws IOException {
+		AdmissionService.AdmissionState admissionState = admissionService.getState();
+		if (!admissionState.isAdmitting()) {
+			admissionService.recordRejection();
+			return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+					.header(HttpHeaders.RETRY_AFTER, String.valueOf(admissionState.getRetryAfterSeconds()))
+					.body("Timbermill is overloaded, retry in " + admissionState.getRetryAfterSeconds() + " seconds");
+		}
+		String forwardedBy = request.getHeader(EventsForwarder.FORWARDED_HEADER);
+		boolean gzipped = isGzipped(request);
+		// the body is decompressed while it is parsed, so the timer covers both
+		Timer.Started gzipTimer = gzipped ? GZIP_DECOMPRESS_REQUEST_DURATION.withoutTags().start() : null;
+		try (InputStream in = gzipped ? new GZIPInputStream(request.getInputStream()) : request.getInputStream()) {
+			timbermillService.readEvents(eventsStreamReader, in, forwardedBy);
+		} catch (JsonProcessingException e) {
+			LOG.error("Error parsing request", e);
+			return new ResponseEntity<>("Error parsing request: " + e.getOriginalMessage(), HttpStatus.BAD_REQUEST);
+		} catch (EventsRejectedException e) {
+			LOG.warn("Rejected events: {}", e.getMessage());
+			return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, CLUSTER_RETRY_AFTER_SECONDS)
+					.body(e.getMessage());
+		} catch (EventsIdsCache.InFlightException e) {
+			LOG.warn(e.getMessage());
+			return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, IN_FLIGHT_RETRY_AFTER_SECONDS)
+					.body(e.getMessage());
+		} finally {
+			if (gzipTimer != null) {
+				gzipTimer.stop();
+			}
+		}
+		return new ResponseEntity<>("Event received", HttpStatus.OK);
 	}
 
-	@ExceptionHandler(HttpMessageNotReadableException.class)
-	@ResponseBody
-	public ResponseEntity<?> handleHttpMessageNotReadableException(HttpServletRequest request, Exception ex) throws IOException {
-		HttpServletRequestWrapper wrapper = (HttpServletRequestWrapper) request;
-		String body = IOUtils.toString(wrapper.getInputStream(), wrapper.getCharacterEncoding());
-		LOG.error("Error parsing request. Body:\n " + body, ex);
-		return new ResponseEntity<>("Error parsing request: " + body, HttpStatus.BAD_REQUEST);
+	private static boolean isGzipped(HttpServletRequest request) {
+		String contentEncoding = request.getHeader(HttpHeaders.CONTENT_ENCODING);
+		return contentEncoding != null && contentEncoding.contains("gzip");
 	}
 }
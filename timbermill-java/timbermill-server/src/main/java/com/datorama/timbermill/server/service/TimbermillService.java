@@ -1,20 +1,38 @@
 package com.datorama.timbermill.server.service;
 
 import com.datorama.oss.timbermill.ElasticsearchClient;
+import com.datorama.oss.timbermill.ElasticsearchClientConfig;
+import com.datorama.oss.timbermill.LuceneStorageClient;
+import com.datorama.oss.timbermill.StorageClient;
 import com.datorama.oss.timbermill.TaskIndexer;
+import com.datorama.oss.timbermill.common.ByteBoundedEventsQueue;
 import com.datorama.oss.timbermill.common.ElasticsearchUtil;
+import com.datorama.oss.timbermill.common.EventsIdsCache;
+import com.datorama.oss.timbermill.common.EventsStreamReader;
+import com.datorama.oss.timbermill.common.bootstrap.StagedBootstrap;
 import com.datorama.oss.timbermill.common.cache.AbstractCacheHandler;
 import com.datorama.oss.timbermill.common.cache.CacheConfig;
 import com.datorama.oss.timbermill.common.cache.CacheHandlerUtil;
+import com.datorama.oss.timbermill.common.cache.LocalCacheHandler;
+import com.datorama.oss.timbermill.common.cardinality.FieldCardinalityGuard;
+import com.datorama.oss.timbermill.common.cluster.ClusterMembership;
+import com.datorama.oss.timbermill.common.cluster.EventsForwarder;
+import com.datorama.oss.timbermill.common.cluster.EventsRejectedException;
+import com.datorama.oss.timbermill.common.dedup.EventsDeduplicator;
+import com.datorama.oss.timbermill.common.offload.TextOffloader;
+import com.datorama.oss.timbermill.common.scheduling.EnvFairScheduler;
+import com.datorama.oss.timbermill.common.scheduling.MicroBatcher;
+import com.datorama.oss.timbermill.common.persistence.EventsSpiller;
 import com.datorama.oss.timbermill.common.persistence.PersistenceHandler;
 import com.datorama.oss.timbermill.common.persistence.PersistenceHandlerUtil;
-import com.datorama.oss.timbermill.common.ratelimiter.RateLimiterUtil;
+import com.datorama.oss.timbermill.common.ratelimiter.HierarchicalRateLimiter;
 import com.datorama.oss.timbermill.common.redis.RedisService;
+import com.datorama.oss.timbermill.common.settings.RuntimeSettings;
+import com.datorama.oss.timbermill.common.stats.StatsRegistry;
 import com.datorama.oss.timbermill.cron.CronsRunner;
 import com.datorama.oss.timbermill.pipe.LocalOutputPipe;
 import com.datorama.oss.timbermill.unit.Event;
-import com.google.common.cache.LoadingCache;
-import io.github.resilience4j.ratelimiter.RateLimiter;
+import com.google.common.collect.Lists;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,29 +41,53 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 
 @Service
 public class TimbermillService {
 
 	private static final Logger LOG = LoggerFactory.getLogger(TimbermillService.class);
+	static final String STORAGE_STAGE = "storage";
+	static final String CACHE_STAGE = "cache";
+	static final String CRONS_STAGE = "crons";
+	// longer than a streaming client's max reconnect backoff (30 seconds) and resending its unacknowledged batches
+	private static final long EVENTS_IDS_TTL_SECONDS = 60;
+	private static final int PERSIST_CHUNK_SIZE = 100000;
 
-	private TaskIndexer taskIndexer;
-	private BlockingQueue<Event> eventsQueue;
-	private BlockingQueue<Event> overflowedQueue;
-    private LoadingCache<String, RateLimiter> rateLimiterMap;
+	private volatile TaskIndexer taskIndexer;
+	private ByteBoundedEventsQueue eventsQueue;
+	private ByteBoundedEventsQueue overflowedQueue;
+	private ByteBoundedEventsQueue deferredQueue;
+	private EventsSpiller eventsSpiller;
+	private HierarchicalRateLimiter rateLimiter;
 
 
-	private boolean keepRunning = true;
-	private boolean stoppedRunning = false;
+	private volatile boolean keepRunning = true;
+	private volatile boolean stoppedRunning = false;
+	private volatile long shutdownStartedAt;
 	private long terminationTimeout;
 	private PersistenceHandler persistenceHandler;
+	private StorageClient storageClient;
+	private FieldCardinalityGuard fieldCardinalityGuard;
+	private TextOffloader textOffloader;
+	private EventsDeduplicator eventsDeduplicator;
+	private EnvFairScheduler envFairScheduler;
+	private MicroBatcher microBatcher;
+	private RuntimeSettings runtimeSettings;
 	private CronsRunner cronsRunner = new CronsRunner();
-	private int eventsMaxElement;
+	private final EventsIdsCache eventsIdsCache = new EventsIdsCache(EVENTS_IDS_TTL_SECONDS);
+	private StagedBootstrap bootstrap;
+	private ClusterMembership clusterMembership;
+	private EventsForwarder eventsForwarder;
+	private Thread workingThread;
 
 	@Autowired
 	public TimbermillService(@Value("${INDEX_BULK_SIZE:200000}") Integer indexBulkSize,
@@ -69,6 +111,10 @@ public class TimbermillService {
 							 @Value("${EVENT_MAX_ELEMTS:100000}") int eventsMaxElement,
 							 @Value("${EVENT_QUEUE_CAPACITY:10000000}") int eventsQueueCapacity,
 							 @Value("${OVERFLOWED_QUEUE_CAPACITY:10000000}") int overFlowedQueueCapacity,
+							 @Value("${EVENT_QUEUE_MAX_BYTES:536870912}") long eventsQueueMaxBytes,
+							 @Value("${OVERFLOWED_QUEUE_MAX_BYTES:134217728}") long overflowedQueueMaxBytes,
+							 @Value("${DEFERRED_QUEUE_MAX_BYTES:134217728}") long deferredQueueMaxBytes,
+							 @Value("${QUEUES_LOW_WATERMARK_RATIO:0.7}") double queuesLowWatermarkRatio,
 							 @Value("${MAX_BULK_INDEX_FETCHES:3}") int maxBulkIndexFetches,
 							 @Value("${MERGING_CRON_EXPRESSION:0 0/10 * 1/1 * ? *}") String mergingCronExp,
 							 @Value("${DELETION_CRON_EXPRESSION:0 0 12 1/1 * ? *}") String deletionCronExp,
@@ -101,11 +147,50 @@ public class TimbermillService {
 							 @Value("${FETCH_BY_IDS_PARTITIONS:10000}") int fetchByIdsPartitions,
                              @Value("${LIMIT_FOR_PERIOD:30000}") int limitForPeriod,
                              @Value("${LIMIT_REFRESH_PERIOD_MINUTES:1}") int limitRefreshPeriod,
-							 @Value("${RATE_LIMITER_CAPACITY:1000000}") int rateLimiterCapacity) {
+							 @Value("${RATE_LIMITER_CAPACITY:1000000}") int rateLimiterCapacity,
+							 @Value("${GLOBAL_LIMIT_FOR_PERIOD:0}") int globalLimitForPeriod,
+							 @Value("${ENV_LIMIT_FOR_PERIOD:0}") int envLimitForPeriod,
+							 @Value("${STORAGE_STRATEGY:elasticsearch}") String storageStrategy,
+							 @Value("${LUCENE_LOCATION_IN_DISK:/db/lucene}") String luceneLocationInDisk,
+							 @Value("${TIERED_INDICES:false}") boolean tieredIndices,
+							 @Value("${SHARED_INDEX_MAX_DOCS:1000000000}") long sharedIndexMaxDocs,
+							 @Value("${TIER_PROMOTION_DOCS_THRESHOLD:1000000}") long tierPromotionDocsThreshold,
+							 @Value("${TIER_PROMOTION_CRON_EXPRESSION:0 0/10 * 1/1 * ? *}") String tierPromotionCronExp,
+							 @Value("${MAX_FIELD_NAMES_PER_PREFIX:1000}") int maxFieldNamesPerPrefix,
+							 @Value("${TEXT_OFFLOAD_THRESHOLD_CHARS:0}") int textOffloadThresholdChars,
+							 @Value("${TEXT_OFFLOAD_PREVIEW_CHARS:1000}") int textOffloadPreviewChars,
+							 @Value("${TEXT_OFFLOAD_STRATEGY:disk}") String textOffloadStrategy,
+							 @Value("${TEXT_OFFLOAD_LOCATION_IN_DISK:/db/texts}") String textOffloadLocationInDisk,
+							 @Value("${EVENTS_DEDUP_WINDOW_SECONDS:60}") long eventsDedupWindowSeconds,
+							 @Value("${EVENTS_DEDUP_MAX_KEYS:200000}") long eventsDedupMaxKeys,
+							 @Value("${EVENTS_STAGING_MAX_BYTES:134217728}") long eventsStagingMaxBytes,
+							 @Value("${ENV_WEIGHTS:}") String envWeights,
+							 @Value("${DEFAULT_ENV_WEIGHT:1}") int defaultEnvWeight,
+							 @Value("${ENV_MAX_BATCH_SHARES:}") String envMaxBatchShares,
+							 @Value("${DEFAULT_ENV_MAX_BATCH_SHARE:0.5}") double defaultEnvMaxBatchShare,
+							 @Value("${BATCH_TARGET_BYTES:33554432}") long batchTargetBytes,
+							 @Value("${BATCH_MIN_DEADLINE_MILLIS:100}") long batchMinDeadlineMillis,
+							 @Value("${BATCH_MAX_DEADLINE_MILLIS:2000}") long batchMaxDeadlineMillis,
+							 @Value("${INDEXING_LATENCY_SLO_MILLIS:5000}") long indexingLatencySloMillis,
+							 @Value("${BOOTSTRAP_INITIAL_BACKOFF_MILLIS:1000}") long bootstrapInitialBackoffMillis,
+							 @Value("${BOOTSTRAP_MAX_BACKOFF_MILLIS:60000}") long bootstrapMaxBackoffMillis,
+							 @Value("${CLUSTER_MODE:false}") boolean clusterMode,
+							 @Value("${CLUSTER_NAME:timbermill}") String clusterName,
+							 @Value("${CLUSTER_MEMBER_URL:}") String clusterMemberUrl,
+							 @Value("${server.port:8484}") int serverPort,
+							 @Value("${CLUSTER_LEASE_MILLIS:10000}") long clusterLeaseMillis,
+							 @Value("${CLUSTER_PARTITIONS:1024}") int clusterPartitions,
+							 @Value("${CLUSTER_FORWARD_BATCH_SIZE:1000}") int clusterForwardBatchSize,
+							 @Value("${CLUSTER_FORWARD_INTERVAL_MILLIS:100}") long clusterForwardIntervalMillis,
+							 @Value("${CLUSTER_FORWARD_QUEUE_CAPACITY:100000}") int clusterForwardQueueCapacity,
+							 @Value("${CLUSTER_FORWARD_THREADS:4}") int clusterForwardThreads,
+							 @Value("${SLOW_BATCH_THRESHOLD_MILLIS:10000}") long slowBatchThresholdMillis) {
 
-		eventsQueue = new LinkedBlockingQueue<>(eventsQueueCapacity);
-		overflowedQueue = new LinkedBlockingQueue<>(overFlowedQueueCapacity);
+		eventsQueue = new ByteBoundedEventsQueue("events", eventsQueueCapacity, eventsQueueMaxBytes, queuesLowWatermarkRatio);
+		overflowedQueue = new ByteBoundedEventsQueue("overflowed", overFlowedQueueCapacity, overflowedQueueMaxBytes, queuesLowWatermarkRatio);
+		deferredQueue = new ByteBoundedEventsQueue("deferred", overFlowedQueueCapacity, deferredQueueMaxBytes, queuesLowWatermarkRatio);
 		terminationTimeout = terminationTimeoutSeconds * 1000;
+		eventsDeduplicator = new EventsDeduplicator(eventsDedupWindowSeconds, eventsDedupMaxKeys);
 
 		RedisService redisService = null;
 		if (!StringUtils.isEmpty(redisHost)) {
@@ -115,44 +200,193 @@ public class TimbermillService {
 		}
 		Map<String, Object> params = PersistenceHandler.buildPersistenceHandlerParams(maxFetchedBulksInOneTime, maxOverflowedEventsInOneTime, maxInsertTries, locationInDisk, persistenceRedisTtlInSec, redisService);
 		persistenceHandler = PersistenceHandlerUtil.getPersistenceHandler(persistenceStrategy, params);
-        rateLimiterMap = RateLimiterUtil.initRateLimiter(limitForPeriod, Duration.ofMinutes(limitRefreshPeriod), rateLimiterCapacity);
+		eventsSpiller = new EventsSpiller(persistenceHandler, eventsQueue, overflowedQueue, deferredQueue);
+		rateLimiter = new HierarchicalRateLimiter(globalLimitForPeriod, envLimitForPeriod, limitForPeriod, Duration.ofMinutes(limitRefreshPeriod), rateLimiterCapacity);
 
 
-		ElasticsearchClient es = new ElasticsearchClient(elasticUrl, indexBulkSize, indexingThreads, awsRegion, elasticUser,
-				elasticPassword, maxIndexAge, maxIndexSizeInGB, maxIndexDocs, numOfElasticSearchActionsTries, maxBulkIndexFetches, searchMaxSize, persistenceHandler, numberOfShards, numberOfReplicas,
-				maxTotalFields, null, scrollLimitation, scrollTimeoutSeconds, fetchByIdsPartitions, expiredMaxIndicesToDeleteInParallel);
+		if (clusterMode) {
+			clusterMembership = new ClusterMembership(redisService, clusterName, getClusterMemberUrl(clusterMemberUrl, serverPort), clusterLeaseMillis, clusterPartitions);
+			eventsForwarder = new EventsForwarder(clusterMembership.getSelf(), clusterForwardBatchSize, clusterForwardIntervalMillis, clusterForwardQueueCapacity,
+					clusterForwardThreads, clusterMembership::getRemoteOwner, this::pushEventsToQueues);
+			clusterMembership.start();
+			// every task tree is indexed by the owner of its partition, so the owner's local cache is enough and no cross server lock is needed
+			if (!"local".equalsIgnoreCase(cacheStrategy) && !StringUtils.isEmpty(cacheStrategy)) {
+				LOG.warn("CACHE_STRATEGY {} is ignored in cluster mode, using a local cache", cacheStrategy);
+			}
+			cacheStrategy = "local";
+		}
+
+		if (LocalOutputPipe.LUCENE_STORAGE_STRATEGY.equalsIgnoreCase(storageStrategy)) {
+			storageClient = new LuceneStorageClient(luceneLocationInDisk);
+		}
+		else {
+			ElasticsearchClientConfig esClientConfig = new ElasticsearchClientConfig.Builder()
+					.url(elasticUrl)
+					.indexBulkSize(indexBulkSize)
+					.indexingThreads(indexingThreads)
+					.awsRegion(awsRegion)
+					.elasticUser(elasticUser)
+					.elasticPassword(elasticPassword)
+					.maxIndexAge(maxIndexAge)
+					.maxIndexSizeInGB(maxIndexSizeInGB)
+					.maxIndexDocs(maxIndexDocs)
+					.numOfElasticSearchActionsTries(numOfElasticSearchActionsTries)
+					.maxBulkIndexFetches(maxBulkIndexFetches)
+					.searchMaxSize(searchMaxSize)
+					.numberOfShards(numberOfShards)
+					.numberOfReplicas(numberOfReplicas)
+					.maxTotalFields(maxTotalFields)
+					.scrollLimitation(scrollLimitation)
+					.scrollTimeoutSeconds(scrollTimeoutSeconds)
+					.fetchByIdsPartitions(fetchByIdsPartitions)
+					.expiredMaxIndicesToDeleteInParallel(expiredMaxIndicesToDeleteInParallel)
+					.tieredIndices(tieredIndices)
+					.sharedIndexMaxDocs(sharedIndexMaxDocs)
+					.tierPromotionDocsThreshold(tierPromotionDocsThreshold)
+					.bootstrapOnCreate(false)
+					.build();
+			storageClient = new ElasticsearchClient(esClientConfig, persistenceHandler, null);
+		}
 
+		envFairScheduler = new EnvFairScheduler(eventsMaxElement, eventsStagingMaxBytes, envWeights, defaultEnvWeight, envMaxBatchShares, defaultEnvMaxBatchShare);
+		microBatcher = new MicroBatcher(batchTargetBytes, batchMinDeadlineMillis, batchMaxDeadlineMillis, indexingLatencySloMillis);
+		fieldCardinalityGuard = new FieldCardinalityGuard(maxFieldNamesPerPrefix, redisService);
+		textOffloader = TextOffloader.create(textOffloadThresholdChars, textOffloadPreviewChars, textOffloadStrategy, textOffloadLocationInDisk, daysRotation, redisService);
+		runtimeSettings = createRuntimeSettings();
+		registerStatsGauges();
+
+		// events are queued (and spilled to persistence) from now on, they are indexed once storage and cache are ready
+		RedisService finalRedisService = redisService;
 		CacheConfig cacheParams = new CacheConfig(redisService, cacheRedisTtlInSeconds, maximumTasksCacheWeight, maximumOrphansCacheWeight);
-		AbstractCacheHandler cacheHandler = CacheHandlerUtil.getCacheHandler(cacheStrategy, cacheParams);
-		this.eventsMaxElement = eventsMaxElement;
-		taskIndexer = new TaskIndexer(pluginsJson, daysRotation, es, timbermillVersion, cacheHandler);
-		cronsRunner.runCrons(bulkPersistentFetchCronExp, eventsPersistentFetchCronExp, persistenceHandler, es, deletionCronExp,
-				eventsQueue, overflowedQueue, mergingCronExp, redisService, rateLimiterMap);
-		startQueueSpillerThread();
+		String finalCacheStrategy = cacheStrategy;
+		bootstrap = new StagedBootstrap(bootstrapInitialBackoffMillis, bootstrapMaxBackoffMillis)
+				.stage(STORAGE_STAGE, () -> {
+					if (storageClient instanceof ElasticsearchClient) {
+						((ElasticsearchClient) storageClient).bootstrap();
+					}
+				})
+				.stage(CACHE_STAGE, () -> {
+					AbstractCacheHandler cacheHandler = CacheHandlerUtil.getCacheHandler(finalCacheStrategy, cacheParams);
+					registerCacheSettings(cacheHandler);
+					TaskIndexer indexer = new TaskIndexer(pluginsJson, daysRotation, storageClient, timbermillVersion, cacheHandler, fieldCardinalityGuard, textOffloader);
+					indexer.setSlowBatchThresholdMillis(slowBatchThresholdMillis);
+					runtimeSettings.registerLong("SLOW_BATCH_THRESHOLD_MILLIS", 0, indexer::getSlowBatchThresholdMillis, indexer::setSlowBatchThresholdMillis);
+					taskIndexer = indexer;
+				})
+				.stage(CRONS_STAGE, () -> {
+					cronsRunner.registerCrons(bulkPersistentFetchCronExp, eventsPersistentFetchCronExp, persistenceHandler, storageClient, deletionCronExp,
+							eventsQueue, eventsSpiller, mergingCronExp, finalRedisService, rateLimiter, tieredIndices ? tierPromotionCronExp : null);
+					registerCronSettings();
+					// the crons write to storage, so they only fire once it is bootstrapped
+					if (awaitStages(STORAGE_STAGE)) {
+						cronsRunner.start();
+					}
+				});
+		eventsSpiller.start();
 		startWorkingThread();
+		bootstrap.start();
 	}
 
-	private void startQueueSpillerThread() {
-		Thread spillerThread = new Thread(() -> {
-			LOG.info("Starting Queue Spiller Thread");
-			while (keepRunning) {
-				persistenceHandler.spillOverflownEvents(overflowedQueue);
-				try {
-					Thread.sleep(ElasticsearchUtil.THREAD_SLEEP);
-				} catch (InterruptedException e) {
-					LOG.error("InterruptedException was thrown from TaskIndexer:", e);
+	private void registerStatsGauges() {
+		StatsRegistry stats = StatsRegistry.getInstance();
+		stats.gauge("timbermill_events_queue_events", "Events in the events queue", eventsQueue::size);
+		stats.gauge("timbermill_events_queue_bytes", "Estimated bytes of the events in the events queue", eventsQueue::getBytes);
+		stats.gauge("timbermill_overflowed_queue_events", "Events in the overflowed queue", overflowedQueue::size);
+		stats.gauge("timbermill_overflowed_queue_bytes", "Estimated bytes of the events in the overflowed queue", overflowedQueue::getBytes);
+		stats.gauge("timbermill_deferred_queue_events", "Rate limited events in the deferred queue", deferredQueue::size);
+		stats.gauge("timbermill_deferred_queue_bytes", "Estimated bytes of the rate limited events in the deferred queue", deferredQueue::getBytes);
+		stats.gauge("timbermill_staged_events", "Events staged by the env fair scheduler", envFairScheduler::getStagedEvents);
+		stats.gauge("timbermill_staged_bytes", "Estimated bytes of the events staged by the env fair scheduler", envFairScheduler::getStagedBytes);
+		stats.gauge("timbermill_batch_deadline_seconds", "Current deadline for closing an indexing batch", () -> microBatcher.getDeadlineMillis() / 1000.0);
+		if (persistenceHandler != null) {
+			stats.gauge("timbermill_persisted_bulks", "Failed bulk requests waiting in persistence", persistenceHandler::failedBulksAmount);
+			stats.gauge("timbermill_persisted_events_lists", "Overflowed events lists waiting in persistence", persistenceHandler::overFlowedEventsListsAmount);
+			stats.gauge("timbermill_persisted_deferred_events_lists", "Rate limited events lists waiting in persistence", persistenceHandler::deferredEventsListsAmount);
+		}
+	}
+
+	private RuntimeSettings createRuntimeSettings() {
+		RuntimeSettings settings = new RuntimeSettings()
+				.registerInt("EVENT_MAX_ELEMTS", 1, envFairScheduler::getBatchSize, envFairScheduler::setBatchSize)
+				.registerLong("BATCH_TARGET_BYTES", 1, microBatcher::getTargetBytes, microBatcher::setTargetBytes)
+				.registerInt("LIMIT_FOR_PERIOD", 0, () -> rateLimiter.getLimit(HierarchicalRateLimiter.Level.NAME),
+						limit -> rateLimiter.setLimits(rateLimiter.getLimit(HierarchicalRateLimiter.Level.GLOBAL), rateLimiter.getLimit(HierarchicalRateLimiter.Level.ENV), limit))
+				.registerInt("ENV_LIMIT_FOR_PERIOD", 0, () -> rateLimiter.getLimit(HierarchicalRateLimiter.Level.ENV),
+						limit -> rateLimiter.setLimits(rateLimiter.getLimit(HierarchicalRateLimiter.Level.GLOBAL), limit, rateLimiter.getLimit(HierarchicalRateLimiter.Level.NAME)))
+				.registerInt("GLOBAL_LIMIT_FOR_PERIOD", 0, () -> rateLimiter.getLimit(HierarchicalRateLimiter.Level.GLOBAL),
+						limit -> rateLimiter.setLimits(limit, rateLimiter.getLimit(HierarchicalRateLimiter.Level.ENV), rateLimiter.getLimit(HierarchicalRateLimiter.Level.NAME)));
+		if (storageClient instanceof ElasticsearchClient) {
+			ElasticsearchClient es = (ElasticsearchClient) storageClient;
+			settings.registerInt("INDEX_BULK_SIZE", 1, es::getIndexBulkSize, es::setIndexBulkSize)
+					.registerInt("INDEXING_THREADS", 1, es::getIndexingThreads, es::setIndexingThreads);
+		}
+		return settings;
+	}
+
+	private void registerCacheSettings(AbstractCacheHandler cacheHandler) {
+		if (cacheHandler instanceof LocalCacheHandler) {
+			LocalCacheHandler localCache = (LocalCacheHandler) cacheHandler;
+			runtimeSettings.registerLong("MAXIMUM_TASKS_CACHE_WEIGHT", 1, localCache::getMaximumTasksCacheWeight,
+					weight -> localCache.setMaximumWeights(weight, localCache.getMaximumOrphansCacheWeight()))
+					.registerLong("MAXIMUM_ORPHANS_CACHE_WEIGHT", 1, localCache::getMaximumOrphansCacheWeight,
+							weight -> localCache.setMaximumWeights(localCache.getMaximumTasksCacheWeight(), weight));
+		}
+	}
+
+	private void registerCronSettings() {
+		registerCron(runtimeSettings, "MERGING_CRON_EXPRESSION", CronsRunner.MERGING_CRON);
+		registerCron(runtimeSettings, "DELETION_CRON_EXPRESSION", CronsRunner.DELETION_CRON);
+		registerCron(runtimeSettings, "BULK_PERSISTENT_FETCH_CRON_EXPRESSION", CronsRunner.BULK_PERSISTENT_FETCH_CRON);
+		registerCron(runtimeSettings, "EVENTS_PERSISTENT_FETCH_CRON_EXPRESSION", CronsRunner.EVENTS_PERSISTENT_FETCH_CRON);
+		registerCron(runtimeSettings, "TIER_PROMOTION_CRON_EXPRESSION", CronsRunner.TIER_PROMOTION_CRON);
+	}
+
+	// waits until the stages are ready, a stage failed or the service is shut down, returns whether they are ready
+	private boolean awaitStages(String... stages) {
+		while (keepRunning && !bootstrap.isFailed()) {
+			try {
+				if (bootstrap.awaitReady(ElasticsearchUtil.THREAD_SLEEP, stages)) {
+					return true;
 				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
 			}
-		});
-		spillerThread.start();
+		}
+		return false;
+	}
+
+	// only crons that are running can be rescheduled
+	private void registerCron(RuntimeSettings settings, String name, String cron) {
+		if (cronsRunner.getCronExpression(cron) != null) {
+			settings.registerCron(name, () -> cronsRunner.getCronExpression(cron), cronExp -> cronsRunner.rescheduleCron(cron, cronExp));
+		}
 	}
 
 	private void startWorkingThread() {
-		Thread workingThread = new Thread(() -> {
+		workingThread = new Thread(() -> {
+			if (!awaitStages(STORAGE_STAGE, CACHE_STAGE)) {
+				persistPendingEvents();
+				stoppedRunning = true;
+				return;
+			}
 			LOG.info("Timbermill has started");
 			while (keepRunning) {
-				ElasticsearchUtil.drainAndIndex(eventsQueue, taskIndexer, eventsMaxElement);
+				// without a lease the partitions are owned by the other members, the queued events wait for it
+				if (clusterMembership != null && !clusterMembership.hasLease()) {
+					try {
+						Thread.sleep(ElasticsearchUtil.THREAD_SLEEP);
+					} catch (InterruptedException ignored) {
+					}
+					continue;
+				}
+				ElasticsearchUtil.drainAndIndex(eventsQueue, taskIndexer, envFairScheduler, microBatcher);
+			}
+			// half of the termination timeout is spent indexing what is still pending, the rest is persisted and replayed on the next start
+			if (clusterMembership == null || clusterMembership.hasLease()) {
+				ElasticsearchUtil.indexPending(eventsQueue, taskIndexer, envFairScheduler, microBatcher.getTargetBytes(), shutdownStartedAt + terminationTimeout / 2);
 			}
+			persistPendingEvents();
 			stoppedRunning = true;
 		});
 		workingThread.start();
@@ -161,21 +395,54 @@ public class TimbermillService {
 	@PreDestroy
 	public void tearDown(){
 		LOG.info("Gracefully shutting down Timbermill Server.");
-		keepRunning = false;
+		// pending forwards are sent before leaving, while the other members still route to this server
+		if (clusterMembership != null) {
+			eventsForwarder.close();
+			clusterMembership.close();
+		}
 		long currentTimeMillis = System.currentTimeMillis();
+		shutdownStartedAt = currentTimeMillis;
+		keepRunning = false;
 		while(!stoppedRunning && !reachTerminationTimeout(currentTimeMillis)){
 			try {
 				Thread.sleep(ElasticsearchUtil.THREAD_SLEEP);
 			} catch (InterruptedException ignored) {}
 		}
+		bootstrap.close();
+		eventsSpiller.close();
 		if (persistenceHandler != null){
+			// the spiller thread stopped, and a working thread that is still stuck keeps only its staged events
+			persistenceHandler.spillOverflownEvents(eventsQueue);
+			eventsSpiller.spill();
 			persistenceHandler.close();
 		}
-		taskIndexer.close();
+		if (taskIndexer != null) {
+			taskIndexer.close();
+		} else {
+			storageClient.close();
+			textOffloader.close();
+		}
 		cronsRunner.close();
 		LOG.info("Timbermill server was shut down.");
 	}
 
+	// only called from the working thread, once it stopped indexing
+	private void persistPendingEvents() {
+		List<Event> events = envFairScheduler.drainStaged();
+		eventsQueue.drainTo(events);
+		if (events.isEmpty()) {
+			return;
+		}
+		if (persistenceHandler == null) {
+			LOG.error("{} events were not indexed before shutting down and are lost, there is no persistence", events.size());
+			return;
+		}
+		for (List<Event> chunk : Lists.partition(events, PERSIST_CHUNK_SIZE)) {
+			persistenceHandler.persistEvents(new ArrayList<>(chunk));
+		}
+		LOG.info("Persisted {} events that were not indexed before shutting down", events.size());
+	}
+
 	private boolean reachTerminationTimeout(long starTime) {
 		boolean reachTerminationTimeout = System.currentTimeMillis() - starTime > terminationTimeout;
 		if (reachTerminationTimeout){
@@ -184,13 +451,114 @@ public class TimbermillService {
 		return reachTerminationTimeout;
 	}
 
-	void handleEvents(Collection<Event> events){
+	// a client resends a whole EventsWrapper when it did not get the response, its events are skipped by the wrapper id
+	int readEvents(EventsStreamReader eventsStreamReader, InputStream in, String forwardedBy) throws IOException {
+		boolean forwarded = isForwarded(forwardedBy);
+		return eventsIdsCache.read(eventsStreamReader, in, events -> handleEvents(events, forwarded));
+	}
+
+	// forwarded events were already deduplicated and routed by the server that received them
+	void handleEvents(Collection<Event> events, boolean forwarded){
+		if (clusterMembership == null) {
+			pushEventsToQueues(eventsDeduplicator.filter(events));
+			return;
+		}
+		// checked before deduplicating, so a rejected chunk is not taken as a duplicate when it is sent again
+		if (!clusterMembership.hasLease()) {
+			throw new EventsRejectedException("Not a member of the cluster, waiting for a lease");
+		}
+		if (forwarded) {
+			pushEventsToQueues(events);
+			return;
+		}
+		if (!eventsForwarder.hasRoom()) {
+			throw new EventsRejectedException(eventsForwarder.getPendingEvents() + " events are waiting to be forwarded");
+		}
+		for (Event event : eventsDeduplicator.filter(events)) {
+			String owner = clusterMembership.getRemoteOwner(event);
+			if (owner == null) {
+				LocalOutputPipe.pushEventToQueues(eventsSpiller, eventsQueue, rateLimiter, event);
+			} else {
+				eventsForwarder.forward(owner, event);
+			}
+		}
+	}
+
+	// only the members of the cluster may skip routing
+	private boolean isForwarded(String forwardedBy) {
+		if (forwardedBy == null) {
+			return false;
+		}
+		if (clusterMembership == null || !clusterMembership.isMember(forwardedBy)) {
+			LOG.warn("Got events forwarded by {}, which is not a member of the cluster, routing them", forwardedBy);
+			return false;
+		}
+		return true;
+	}
+
+	private void pushEventsToQueues(Collection<Event> events) {
 		for (Event event : events) {
-			LocalOutputPipe.pushEventToQueues(persistenceHandler, eventsQueue, overflowedQueue, rateLimiterMap, event);
+			LocalOutputPipe.pushEventToQueues(eventsSpiller, eventsQueue, rateLimiter, event);
+		}
+	}
+
+	private static String getClusterMemberUrl(String clusterMemberUrl, int serverPort) {
+		if (!StringUtils.isEmpty(clusterMemberUrl)) {
+			return clusterMemberUrl;
+		}
+		try {
+			return "http://" + InetAddress.getLocalHost().getHostAddress() + ":" + serverPort;
+		} catch (UnknownHostException e) {
+			throw new RuntimeException("Could not resolve the cluster member url, set CLUSTER_MEMBER_URL", e);
 		}
 	}
 
 	PersistenceHandler getPersistenceHandler() {
 		return persistenceHandler;
 	}
+
+	ClusterMembership getClusterMembership() {
+		return clusterMembership;
+	}
+
+	ByteBoundedEventsQueue getEventsQueue() {
+		return eventsQueue;
+	}
+
+	ByteBoundedEventsQueue getOverflowedQueue() {
+		return overflowedQueue;
+	}
+
+	EnvFairScheduler getEnvFairScheduler() {
+		return envFairScheduler;
+	}
+
+	StorageClient getStorageClient() {
+		return storageClient;
+	}
+
+	StagedBootstrap getBootstrap() {
+		return bootstrap;
+	}
+
+	// ingestion is alive as long as the threads that queue, spill and index events are
+	boolean isAlive() {
+		return eventsSpiller.isAlive() && workingThread.isAlive();
+	}
+
+	RuntimeSettings getRuntimeSettings() {
+		return runtimeSettings;
+	}
+
+	HierarchicalRateLimiter getRateLimiter() {
+		return rateLimiter;
+	}
+
+	FieldCardinalityGuard getFieldCardinalityGuard() {
+		return fieldCardinalityGuard;
+	}
+
+	TextOffloader getTextOffloader() {
+		return textOffloader;
+	}
 }
@@ -13,9 +13,20 @@ import static com.datorama.oss.timbermill.common.ElasticsearchUtil.getTimbermill
 public class ElasticsearchClientForTests extends ElasticsearchClient{
 
 	public ElasticsearchClientForTests(String elasticUrl, String awsRegion) {
-			super(elasticUrl, 1000, 1, awsRegion, null, null,
-					7, 100, 1000000000,3, 3, 1000,null ,1, 1,
-					4000, null, 10 , 60, 10000, 10);
+		this(elasticUrl, awsRegion, false, 1000000);
+    }
+
+	public ElasticsearchClientForTests(String elasticUrl, String awsRegion, boolean tieredIndices, long tierPromotionDocsThreshold) {
+			super(new ElasticsearchClientConfig.Builder()
+					.url(elasticUrl)
+					.indexBulkSize(1000)
+					.awsRegion(awsRegion)
+					.numberOfShards(1)
+					.scrollLimitation(10)
+					.expiredMaxIndicesToDeleteInParallel(10)
+					.tieredIndices(tieredIndices)
+					.tierPromotionDocsThreshold(tierPromotionDocsThreshold)
+					.build(), null, null);
     }
 
 	public void createTimbermillAliasForMigrationTest(String currentIndex, String oldIndex, String env) throws IOException {
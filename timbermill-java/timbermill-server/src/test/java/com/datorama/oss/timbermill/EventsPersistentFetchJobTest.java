@@ -112,8 +112,8 @@ public class EventsPersistentFetchJobTest {
 			Map<String, Object> map = Maps.newHashMap();
 			map.put(PERSISTENCE_HANDLER, pipe.getPersistenceHandler());
 			map.put(EVENTS_QUEUE, pipe.getBuffer());
-			map.put(OVERFLOWED_EVENTS_QUEUE, pipe.getOverflowedQueue());
-			map.put(RATE_LIMITER_MAP, pipe.getRateLimiterMap());
+			map.put(EVENTS_SPILLER, pipe.getEventsSpiller());
+			map.put(RATE_LIMITER, pipe.getRateLimiter());
 			JobDataMap jobMap = new JobDataMap(map);
 			jobDetail.setJobDataMap(jobMap);
 			return jobDetail;
@@ -0,0 +1,62 @@
+package com.datorama.oss.timbermill;
+
+import com.datorama.oss.timbermill.unit.*;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.datorama.oss.timbermill.common.ElasticsearchUtil.SHARED_TIER_ALIAS;
+import static com.datorama.oss.timbermill.common.ElasticsearchUtil.getTimbermillIndexAlias;
+import static org.junit.Assert.*;
+
+public class TieredIndicesTest {
+
+	private static ElasticsearchClientForTests tieredClient;
+
+	@BeforeClass
+	public static void init() {
+		String elasticUrl = System.getenv("ELASTICSEARCH_URL");
+		if (StringUtils.isEmpty(elasticUrl)){
+			elasticUrl = "http://localhost:9200";
+		}
+		tieredClient = new ElasticsearchClientForTests(elasticUrl, null, true, 1);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		tieredClient.close();
+	}
+
+	@Test
+	public void smallEnvSharesIndexUntilPromoted() {
+		String env = "tiered" + UUID.randomUUID().toString().substring(0, 8);
+		String quietEnv = env + "quiet";
+		assertEquals(SHARED_TIER_ALIAS, tieredClient.createTimbermillAlias(env));
+		assertEquals(SHARED_TIER_ALIAS, tieredClient.createTimbermillAlias(quietEnv));
+
+		String id = Event.generateTaskId("tiered_test");
+		StartEvent startEvent = new StartEvent(id, "tiered_test", LogParams.create(), null);
+		startEvent.setEnv(env);
+		String index = tieredClient.rolloverIndex(SHARED_TIER_ALIAS);
+		assertTrue(index.startsWith(SHARED_TIER_ALIAS));
+		tieredClient.index(Collections.singletonMap(id, new Task(Lists.newArrayList(startEvent), index, 1, null)));
+		TimberLogTest.waitForTask(id, TaskStatus.UNTERMINATED, tieredClient);
+
+		assertTrue(tieredClient.getMissingParents(Sets.newHashSet(id), env).containsKey(id));
+		assertTrue(tieredClient.getMissingParents(Sets.newHashSet(id), quietEnv).isEmpty());
+
+		tieredClient.promoteSharedEnvs();
+
+		assertEquals(getTimbermillIndexAlias(env), tieredClient.createTimbermillAlias(env));
+		assertEquals(SHARED_TIER_ALIAS, tieredClient.createTimbermillAlias(quietEnv));
+		Map<String, Task> parents = tieredClient.getMissingParents(Sets.newHashSet(id), env);
+		assertEquals("tiered_test", parents.get(id).getName());
+	}
+}
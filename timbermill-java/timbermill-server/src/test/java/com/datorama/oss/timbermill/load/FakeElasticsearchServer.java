@@ -0,0 +1,564 @@
+package com.datorama.oss.timbermill.load;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datorama.oss.timbermill.common.ElasticsearchUtil;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In memory stand in for an Elasticsearch cluster, implementing the part of the REST API Timbermill uses: index templates, stored scripts,
+ * aliases, rollover on max docs, bulks, searches by ids with scrolls and counts. Documents are kept as their latest upsert merged over the previous
+ * ones, scripts are not run. Every request can be delayed, and bulks can be rejected with 429 as a whole or per item like an overloaded cluster.
+ */
+public class FakeElasticsearchServer implements Closeable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(FakeElasticsearchServer.class);
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	private static final String REJECTED_EXCEPTION = "es_rejected_execution_exception";
+	private static final String CONTENT_TYPE = "application/json; charset=UTF-8";
+	private static final int DEFAULT_SEARCH_SIZE = 10;
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final long latencyMillis;
+	private final long latencyJitterMillis;
+	private final double bulkRejectionRatio;
+	private final double itemRejectionRatio;
+
+	private final Map<String, StoredDoc> docs = new ConcurrentHashMap<>();
+	private final Map<String, LongAdder> indexDocs = new ConcurrentHashMap<>();
+	// alias to the indices it points at, every index is only written through its alias
+	private final Map<String, Set<String>> aliases = new ConcurrentHashMap<>();
+	private final Map<String, Scroll> scrolls = new ConcurrentHashMap<>();
+	private final AtomicLong nextId = new AtomicLong();
+	private volatile BiConsumer<String, JsonNode> indexListener = (id, source) -> {};
+
+	private final LongAdder bulks = new LongAdder();
+	private final LongAdder indexedActions = new LongAdder();
+	private final LongAdder rejectedBulks = new LongAdder();
+	private final LongAdder rejectedItems = new LongAdder();
+	private final LongAdder searches = new LongAdder();
+
+	public FakeElasticsearchServer(long latencyMillis, long latencyJitterMillis, double bulkRejectionRatio, double itemRejectionRatio, int threads) {
+		this.latencyMillis = latencyMillis;
+		this.latencyJitterMillis = latencyJitterMillis;
+		this.bulkRejectionRatio = bulkRejectionRatio;
+		this.itemRejectionRatio = itemRejectionRatio;
+		try {
+			server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		} catch (IOException e) {
+			throw new RuntimeException("Failed starting fake Elasticsearch", e);
+		}
+		executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setNameFormat("fake-elasticsearch-%d").setDaemon(true).build());
+		server.setExecutor(executor);
+		server.createContext("/", this::handle);
+		server.start();
+		LOG.info("Fake Elasticsearch is listening on {}", getUrl());
+	}
+
+	public String getUrl() {
+		return "http://localhost:" + server.getAddress().getPort();
+	}
+
+	// called with the id and the indexed source of every indexed action, on the server's threads
+	public void setIndexListener(BiConsumer<String, JsonNode> indexListener) {
+		this.indexListener = indexListener;
+	}
+
+	public long getBulks() {
+		return bulks.sum();
+	}
+
+	public long getIndexedActions() {
+		return indexedActions.sum();
+	}
+
+	public long getRejectedBulks() {
+		return rejectedBulks.sum();
+	}
+
+	public long getRejectedItems() {
+		return rejectedItems.sum();
+	}
+
+	public long getSearches() {
+		return searches.sum();
+	}
+
+	public int getStoredDocs() {
+		return docs.size();
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			delay();
+			String method = exchange.getRequestMethod();
+			String path = URLDecoder.decode(exchange.getRequestURI().getRawPath(), StandardCharsets.UTF_8.name());
+			String body = readBody(exchange);
+			if (path.endsWith("/_bulk")) {
+				handleBulk(exchange, body);
+			} else if (path.equals("/_search/scroll")) {
+				if ("DELETE".equals(method)) {
+					handleClearScroll(exchange, body);
+				} else {
+					handleScroll(exchange, body);
+				}
+			} else if (path.endsWith("/_search")) {
+				handleSearch(exchange, getTarget(path), body);
+			} else if (path.endsWith("/_count")) {
+				handleCount(exchange, getTarget(path));
+			} else if (path.endsWith("/_rollover")) {
+				handleRollover(exchange, getTarget(path), body);
+			} else if (path.startsWith("/_alias/")) {
+				handleGetAlias(exchange, method, path.substring("/_alias/".length()));
+			} else if (path.endsWith("/_alias")) {
+				handleGetIndexAliases(exchange, getTarget(path));
+			} else if (path.equals("/_aliases")) {
+				handleUpdateAliases(exchange, body);
+			} else if ("PUT".equals(method) && path.lastIndexOf('/') == 0 && !path.startsWith("/_")) {
+				handleCreateIndex(exchange, path.substring(1), body);
+			} else {
+				// templates, stored scripts, force merges and everything else Timbermill only needs acknowledged
+				sendJson(exchange, 200, MAPPER.createObjectNode().put("acknowledged", true));
+			}
+		} catch (IOException | RuntimeException e) {
+			LOG.error("Fake Elasticsearch failed handling " + exchange.getRequestMethod() + " " + exchange.getRequestURI(), e);
+			sendError(exchange, 500, "exception", String.valueOf(e.getMessage()));
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private void delay() {
+		long millis = latencyMillis + (latencyJitterMillis > 0 ? ThreadLocalRandom.current().nextLong(latencyJitterMillis + 1) : 0);
+		if (millis > 0) {
+			try {
+				Thread.sleep(millis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void handleBulk(HttpExchange exchange, String body) throws IOException {
+		bulks.increment();
+		if (bulkRejectionRatio > 0 && ThreadLocalRandom.current().nextDouble() < bulkRejectionRatio) {
+			rejectedBulks.increment();
+			sendError(exchange, 429, REJECTED_EXCEPTION, "rejected execution of bulk, queue is full");
+			return;
+		}
+		ArrayNode items = MAPPER.createArrayNode();
+		boolean errors = false;
+		Iterator<String> lines = Arrays.asList(body.split("\n")).iterator();
+		while (lines.hasNext()) {
+			String line = lines.next();
+			if (line.trim().isEmpty()) {
+				continue;
+			}
+			Map.Entry<String, JsonNode> action = MAPPER.readTree(line).fields().next();
+			String opType = action.getKey();
+			JsonNode source = "delete".equals(opType) || !lines.hasNext() ? null : MAPPER.readTree(lines.next());
+			String index = getWriteIndex(action.getValue().path("_index").asText());
+			String id = action.getValue().hasNonNull("_id") ? action.getValue().get("_id").asText() : "fake_" + nextId.incrementAndGet();
+
+			ObjectNode result = MAPPER.createObjectNode();
+			result.put("_index", index).put("_type", "_doc").put("_id", id);
+			if (itemRejectionRatio > 0 && ThreadLocalRandom.current().nextDouble() < itemRejectionRatio) {
+				rejectedItems.increment();
+				errors = true;
+				result.put("status", 429);
+				result.set("error", getError(REJECTED_EXCEPTION, "rejected execution of bulk item, queue is full"));
+			} else {
+				boolean created = store(opType, index, id, source);
+				result.put("_version", 1).put("result", created ? "created" : "updated");
+				result.set("_shards", MAPPER.createObjectNode().put("total", 1).put("successful", 1).put("failed", 0));
+				result.put("_seq_no", 0).put("_primary_term", 1).put("status", created ? 201 : 200);
+			}
+			items.addObject().set(opType, result);
+		}
+		ObjectNode response = MAPPER.createObjectNode();
+		response.put("took", 1).put("errors", errors);
+		response.set("items", items);
+		sendJson(exchange, 200, response);
+	}
+
+	// returns whether the document was created
+	private boolean store(String opType, String index, String id, JsonNode source) {
+		if ("delete".equals(opType)) {
+			return docs.remove(id) == null;
+		}
+		JsonNode doc = "update".equals(opType) ? getUpdateSource(source) : source;
+		StoredDoc newDoc = new StoredDoc(index, doc == null ? MAPPER.createObjectNode() : (ObjectNode) doc.deepCopy());
+		StoredDoc previous = docs.putIfAbsent(id, newDoc);
+		if (previous != null) {
+			synchronized (previous) {
+				previous.source.setAll(newDoc.source);
+			}
+		} else {
+			indexDocs.computeIfAbsent(index, key -> new LongAdder()).increment();
+		}
+		indexedActions.increment();
+		indexListener.accept(id, newDoc.source);
+		return previous == null;
+	}
+
+	private static JsonNode getUpdateSource(JsonNode source) {
+		if (source == null) {
+			return null;
+		}
+		return source.has("upsert") ? source.get("upsert") : source.get("doc");
+	}
+
+	private void handleSearch(HttpExchange exchange, String target, String body) throws IOException {
+		searches.increment();
+		JsonNode request = body.isEmpty() ? MAPPER.createObjectNode() : MAPPER.readTree(body);
+		Deque<ObjectNode> hits = new ArrayDeque<>();
+		// every slice would find the same documents, the first one returns them
+		if (request.path("slice").path("id").asInt(0) == 0) {
+			Set<String> indices = resolve(target);
+			for (String id : getIds(request)) {
+				StoredDoc doc = docs.get(id);
+				if (doc != null && indices.contains(doc.index)) {
+					hits.add(getHit(id, doc));
+				}
+			}
+		}
+		int total = hits.size();
+		int size = request.path("size").asInt(DEFAULT_SEARCH_SIZE);
+		String scrollId = null;
+		if (exchange.getRequestURI().getRawQuery() != null && exchange.getRequestURI().getRawQuery().contains("scroll=")) {
+			scrollId = UUID.randomUUID().toString();
+			scrolls.put(scrollId, new Scroll(hits, total, size));
+		}
+		sendJson(exchange, 200, getSearchResponse(scrollId, total, poll(hits, size)));
+	}
+
+	private void handleScroll(HttpExchange exchange, String body) throws IOException {
+		searches.increment();
+		String scrollId = MAPPER.readTree(body).path("scroll_id").asText();
+		Scroll scroll = scrolls.get(scrollId);
+		if (scroll == null) {
+			sendError(exchange, 404, "search_context_missing_exception", "No search context found for id [" + scrollId + "]");
+			return;
+		}
+		sendJson(exchange, 200, getSearchResponse(scrollId, scroll.total, poll(scroll.hits, scroll.size)));
+	}
+
+	private void handleClearScroll(HttpExchange exchange, String body) throws IOException {
+		int freed = 0;
+		for (JsonNode scrollId : MAPPER.readTree(body).path("scroll_id")) {
+			if (scrolls.remove(scrollId.asText()) != null) {
+				freed++;
+			}
+		}
+		sendJson(exchange, 200, MAPPER.createObjectNode().put("succeeded", true).put("num_freed", freed));
+	}
+
+	private void handleCount(HttpExchange exchange, String target) throws IOException {
+		Set<String> indices = resolve(target);
+		long count = docs.values().stream().filter(doc -> indices.contains(doc.index)).count();
+		ObjectNode response = MAPPER.createObjectNode().put("count", count);
+		response.set("_shards", getShards());
+		sendJson(exchange, 200, response);
+	}
+
+	private void handleRollover(HttpExchange exchange, String alias, String body) throws IOException {
+		long maxDocs = MAPPER.readTree(body).path("conditions").path("max_docs").asLong(Long.MAX_VALUE);
+		String oldIndex;
+		String newIndex;
+		boolean rolledOver;
+		synchronized (aliases) {
+			Set<String> indices = aliases.computeIfAbsent(alias, key -> new TreeSet<>(Collections.singleton(getInitialIndex(key))));
+			oldIndex = ((TreeSet<String>) indices).last();
+			newIndex = getNextIndex(oldIndex);
+			rolledOver = getIndexDocs(oldIndex) >= maxDocs;
+			if (rolledOver) {
+				indices.remove(oldIndex);
+				indices.add(newIndex);
+			}
+		}
+		ObjectNode response = MAPPER.createObjectNode();
+		response.put("acknowledged", rolledOver).put("shards_acknowledged", rolledOver)
+				.put("old_index", oldIndex).put("new_index", newIndex).put("rolled_over", rolledOver).put("dry_run", false);
+		response.putObject("conditions");
+		sendJson(exchange, 200, response);
+	}
+
+	private void handleGetAlias(HttpExchange exchange, String method, String alias) throws IOException {
+		Set<String> indices;
+		synchronized (aliases) {
+			indices = new TreeSet<>(aliases.getOrDefault(alias, Collections.emptySet()));
+		}
+		if (indices.isEmpty()) {
+			if ("HEAD".equals(method)) {
+				sendEmpty(exchange, 404);
+			} else {
+				sendJson(exchange, 404, MAPPER.createObjectNode().put("error", "alias [" + alias + "] missing").put("status", 404));
+			}
+			return;
+		}
+		if ("HEAD".equals(method)) {
+			sendEmpty(exchange, 200);
+			return;
+		}
+		ObjectNode response = MAPPER.createObjectNode();
+		for (String index : indices) {
+			response.putObject(index).putObject("aliases").putObject(alias);
+		}
+		sendJson(exchange, 200, response);
+	}
+
+	private void handleGetIndexAliases(HttpExchange exchange, String target) throws IOException {
+		ObjectNode response = MAPPER.createObjectNode();
+		synchronized (aliases) {
+			for (String index : resolve(target)) {
+				ObjectNode indexAliases = response.putObject(index).putObject("aliases");
+				aliases.forEach((alias, indices) -> {
+					if (indices.contains(index)) {
+						indexAliases.putObject(alias);
+					}
+				});
+			}
+		}
+		sendJson(exchange, 200, response);
+	}
+
+	private void handleUpdateAliases(HttpExchange exchange, String body) throws IOException {
+		synchronized (aliases) {
+			for (JsonNode action : MAPPER.readTree(body).path("actions")) {
+				Map.Entry<String, JsonNode> entry = action.fields().next();
+				boolean add = "add".equals(entry.getKey());
+				for (String alias : getValues(entry.getValue(), "alias", "aliases")) {
+					for (String indexPattern : getValues(entry.getValue(), "index", "indices")) {
+						Set<String> matching = getMatchingIndices(indexPattern);
+						if (add) {
+							aliases.computeIfAbsent(alias, key -> new TreeSet<>()).addAll(matching);
+						} else if (aliases.containsKey(alias)) {
+							aliases.get(alias).removeAll(matching);
+						}
+					}
+				}
+			}
+			aliases.values().removeIf(Set::isEmpty);
+		}
+		sendJson(exchange, 200, MAPPER.createObjectNode().put("acknowledged", true));
+	}
+
+	private void handleCreateIndex(HttpExchange exchange, String index, String body) throws IOException {
+		JsonNode request = body.isEmpty() ? MAPPER.createObjectNode() : MAPPER.readTree(body);
+		synchronized (aliases) {
+			indexDocs.computeIfAbsent(index, key -> new LongAdder());
+			request.path("aliases").fieldNames().forEachRemaining(alias -> aliases.computeIfAbsent(alias, key -> new TreeSet<>()).add(index));
+		}
+		sendJson(exchange, 200, MAPPER.createObjectNode().put("acknowledged", true).put("shards_acknowledged", true).put("index", index));
+	}
+
+	// an index written through an alias goes to the alias' latest index
+	private String getWriteIndex(String target) {
+		synchronized (aliases) {
+			Set<String> indices = aliases.get(target);
+			return indices == null || indices.isEmpty() ? target : ((TreeSet<String>) indices).last();
+		}
+	}
+
+	// the indices of comma separated aliases, indices and wildcards
+	private Set<String> resolve(String target) {
+		Set<String> indices = new HashSet<>();
+		synchronized (aliases) {
+			for (String name : target.split(",")) {
+				Set<String> aliased = aliases.get(name);
+				if (aliased != null) {
+					indices.addAll(aliased);
+				} else {
+					indices.addAll(getMatchingIndices(name));
+				}
+			}
+		}
+		return indices;
+	}
+
+	private Set<String> getMatchingIndices(String indexPattern) {
+		if (!indexPattern.contains("*")) {
+			return Collections.singleton(indexPattern);
+		}
+		Pattern pattern = Pattern.compile(("\\Q" + indexPattern + "\\E").replace("*", "\\E.*\\Q"));
+		Set<String> indices = new HashSet<>();
+		indexDocs.keySet().forEach(index -> {
+			if (pattern.matcher(index).matches()) {
+				indices.add(index);
+			}
+		});
+		aliases.values().forEach(aliased -> aliased.forEach(index -> {
+			if (pattern.matcher(index).matches()) {
+				indices.add(index);
+			}
+		}));
+		return indices;
+	}
+
+	private long getIndexDocs(String index) {
+		LongAdder count = indexDocs.get(index);
+		return count == null ? 0 : count.sum();
+	}
+
+	private static String getInitialIndex(String alias) {
+		return alias + ElasticsearchUtil.INDEX_DELIMITER + ElasticsearchUtil.getIndexSerial(1);
+	}
+
+	private static String getNextIndex(String index) {
+		int delimiter = index.lastIndexOf(ElasticsearchUtil.INDEX_DELIMITER);
+		int serial = Integer.parseInt(index.substring(delimiter + 1));
+		return index.substring(0, delimiter + 1) + ElasticsearchUtil.getIndexSerial(serial + 1);
+	}
+
+	// the indices part of the path, all indices when there is none
+	private static String getTarget(String path) {
+		int endpoint = path.lastIndexOf('/');
+		return endpoint == 0 ? "*" : path.substring(1, endpoint);
+	}
+
+	private static List<String> getIds(JsonNode request) {
+		List<String> ids = new ArrayList<>();
+		for (JsonNode idsQuery : request.findValues("ids")) {
+			idsQuery.path("values").forEach(id -> ids.add(id.asText()));
+		}
+		return ids;
+	}
+
+	private static List<String> getValues(JsonNode action, String singleField, String arrayField) {
+		List<String> values = new ArrayList<>();
+		if (action.hasNonNull(singleField)) {
+			values.add(action.get(singleField).asText());
+		}
+		action.path(arrayField).forEach(value -> values.add(value.asText()));
+		return values;
+	}
+
+	private static ObjectNode getHit(String id, StoredDoc doc) {
+		ObjectNode hit = MAPPER.createObjectNode();
+		hit.put("_index", doc.index).put("_type", "_doc").put("_id", id).put("_score", 1.0);
+		synchronized (doc) {
+			hit.set("_source", doc.source.deepCopy());
+		}
+		return hit;
+	}
+
+	private static List<ObjectNode> poll(Deque<ObjectNode> hits, int size) {
+		List<ObjectNode> page = new ArrayList<>();
+		synchronized (hits) {
+			while (page.size() < size && !hits.isEmpty()) {
+				page.add(hits.poll());
+			}
+		}
+		return page;
+	}
+
+	private static ObjectNode getSearchResponse(String scrollId, int total, List<ObjectNode> page) {
+		ObjectNode response = MAPPER.createObjectNode();
+		if (scrollId != null) {
+			response.put("_scroll_id", scrollId);
+		}
+		response.put("took", 1).put("timed_out", false);
+		response.set("_shards", getShards());
+		ObjectNode hits = response.putObject("hits");
+		hits.putObject("total").put("value", total).put("relation", "eq");
+		hits.put("max_score", 1.0);
+		hits.putArray("hits").addAll(page);
+		return response;
+	}
+
+	private static ObjectNode getShards() {
+		return MAPPER.createObjectNode().put("total", 1).put("successful", 1).put("skipped", 0).put("failed", 0);
+	}
+
+	private static ObjectNode getError(String type, String reason) {
+		ObjectNode error = MAPPER.createObjectNode();
+		error.putArray("root_cause").addObject().put("type", type).put("reason", reason);
+		error.put("type", type).put("reason", reason);
+		return error;
+	}
+
+	private static void sendError(HttpExchange exchange, int status, String type, String reason) throws IOException {
+		ObjectNode response = MAPPER.createObjectNode();
+		response.set("error", getError(type, reason));
+		response.put("status", status);
+		sendJson(exchange, status, response);
+	}
+
+	private static void sendJson(HttpExchange exchange, int status, JsonNode response) throws IOException {
+		byte[] bytes = MAPPER.writeValueAsBytes(response);
+		exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+		if ("HEAD".equals(exchange.getRequestMethod())) {
+			exchange.sendResponseHeaders(status, -1);
+			return;
+		}
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream os = exchange.getResponseBody()) {
+			os.write(bytes);
+		}
+	}
+
+	private static void sendEmpty(HttpExchange exchange, int status) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+		exchange.sendResponseHeaders(status, -1);
+	}
+
+	private static String readBody(HttpExchange exchange) throws IOException {
+		try (InputStream in = exchange.getRequestBody()) {
+			return IOUtils.toString(in, StandardCharsets.UTF_8);
+		}
+	}
+
+	private static class Scroll {
+		private final Deque<ObjectNode> hits;
+		private final int total;
+		private final int size;
+
+		Scroll(Deque<ObjectNode> hits, int total, int size) {
+			this.hits = hits;
+			this.total = total;
+			this.size = size;
+		}
+	}
+
+	private static class StoredDoc {
+		private final String index;
+		private final ObjectNode source;
+
+		StoredDoc(String index, ObjectNode source) {
+			this.index = index;
+			this.source = source;
+		}
+	}
+}
@@ -0,0 +1,220 @@
+package com.datorama.oss.timbermill.load;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.logging.LoggingSystem;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.datorama.oss.timbermill.common.stats.StatsHistogram;
+import com.datorama.oss.timbermill.common.stats.StatsRegistry;
+import com.datorama.oss.timbermill.pipe.TimbermillServerOutputPipe;
+import com.datorama.oss.timbermill.pipe.TimbermillServerOutputPipeBuilder;
+import com.datorama.oss.timbermill.unit.*;
+import com.datorama.timbermill.server.TimbermillApplication;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.RateLimiter;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Starts the server in process against a FakeElasticsearchServer and drives it with concurrent clients, each with its own
+ * TimbermillServerOutputPipe like a separate service. Every client sends traces of a root task and its children at a fixed rate,
+ * and the run reports throughput, the latency from sending a task's success to indexing it, dropped events and tasks, and heap usage.
+ * Needs nothing running, but is excluded from the build like the other stress tests: mvn test -Dtest=TimbermillLoadStressTest,
+ * configured by the env variables read in init().
+ */
+public class TimbermillLoadStressTest {
+
+	private static final Logger LOG = LoggerFactory.getLogger(TimbermillLoadStressTest.class);
+	private static final String ENV = "load_test";
+	private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+	private static int clients = 8;
+	private static int durationSeconds = 60;
+	private static int tracesPerSecond = 200;
+	private static int childrenPerTrace = 4;
+	private static int textLength = 256;
+	private static int drainTimeoutSeconds = 180;
+	private static int elasticLatencyMillis = 5;
+	private static int elasticLatencyJitterMillis = 10;
+	private static double elasticBulkRejectionRatio = 0;
+	private static double elasticItemRejectionRatio = 0;
+
+	private static FakeElasticsearchServer elasticsearch;
+	private static ConfigurableApplicationContext timbermill;
+	private static File dataDir;
+	private static String timbermillUrl;
+
+	@BeforeClass
+	public static void init() throws IOException {
+		clients = getEnv("LOAD_CLIENTS", clients);
+		durationSeconds = getEnv("LOAD_DURATION_SECONDS", durationSeconds);
+		tracesPerSecond = getEnv("LOAD_TRACES_PER_SECOND", tracesPerSecond);
+		childrenPerTrace = getEnv("LOAD_CHILDREN_PER_TRACE", childrenPerTrace);
+		textLength = getEnv("LOAD_TEXT_LENGTH", textLength);
+		drainTimeoutSeconds = getEnv("LOAD_DRAIN_TIMEOUT_SECONDS", drainTimeoutSeconds);
+		elasticLatencyMillis = getEnv("FAKE_ELASTICSEARCH_LATENCY_MILLIS", elasticLatencyMillis);
+		elasticLatencyJitterMillis = getEnv("FAKE_ELASTICSEARCH_LATENCY_JITTER_MILLIS", elasticLatencyJitterMillis);
+		elasticBulkRejectionRatio = getEnv("FAKE_ELASTICSEARCH_BULK_REJECTION_RATIO", elasticBulkRejectionRatio);
+		elasticItemRejectionRatio = getEnv("FAKE_ELASTICSEARCH_ITEM_REJECTION_RATIO", elasticItemRejectionRatio);
+		LOG.info("{} clients sending {} traces per second with {} children each for {} seconds", clients, tracesPerSecond, childrenPerTrace, durationSeconds);
+		LOG.info("Fake Elasticsearch latency {}+-{}ms, bulk rejection ratio {}, item rejection ratio {}", elasticLatencyMillis, elasticLatencyJitterMillis,
+				elasticBulkRejectionRatio, elasticItemRejectionRatio);
+
+		elasticsearch = new FakeElasticsearchServer(elasticLatencyMillis, elasticLatencyJitterMillis, elasticBulkRejectionRatio, elasticItemRejectionRatio, 32);
+		dataDir = Files.createTempDirectory("timbermill-load").toFile();
+		// slf4j-simple is bound in tests, so Spring must not configure logback
+		System.setProperty(LoggingSystem.SYSTEM_PROPERTY, LoggingSystem.NONE);
+		timbermill = SpringApplication.run(TimbermillApplication.class,
+				"--server.port=0",
+				"--spring.cloud.config.enabled=false",
+				"--ELASTICSEARCH_URL=" + elasticsearch.getUrl(),
+				"--LOCATION_IN_DISK=" + dataDir.getAbsolutePath(),
+				"--TEXT_OFFLOAD_LOCATION_IN_DISK=" + new File(dataDir, "texts").getAbsolutePath());
+		timbermillUrl = "http://localhost:" + ((WebServerApplicationContext) timbermill).getWebServer().getPort();
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		if (timbermill != null) {
+			timbermill.close();
+		}
+		if (elasticsearch != null) {
+			elasticsearch.close();
+		}
+		FileUtils.deleteQuietly(dataDir);
+	}
+
+	@Test
+	public void loadTest() throws InterruptedException {
+		// tasks whose success was sent, by the nano time it was sent at
+		Map<String, Long> sentSuccesses = new ConcurrentHashMap<>();
+		StatsHistogram latency = StatsRegistry.getInstance().timer("timbermill_load_test_latency_seconds", "From sending a task's success to indexing it");
+		LongAdder indexedTasks = new LongAdder();
+		elasticsearch.setIndexListener((id, source) -> {
+			if (TaskStatus.SUCCESS.name().equals(source.path("status").asText())) {
+				Long sentNanos = sentSuccesses.remove(id);
+				if (sentNanos != null) {
+					latency.recordNanosSince(sentNanos);
+					indexedTasks.increment();
+				}
+			}
+		});
+
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		LongAccumulator peakHeap = new LongAccumulator(Math::max, 0);
+		ScheduledExecutorService heapSampler = Executors.newSingleThreadScheduledExecutor();
+		heapSampler.scheduleAtFixedRate(() -> peakHeap.accumulate(memory.getHeapMemoryUsage().getUsed()), 0, 100, TimeUnit.MILLISECONDS);
+		long gcCountBefore = getGcCount();
+		long gcMillisBefore = getGcMillis();
+
+		LongAdder sentTasks = new LongAdder();
+		LongAdder sentEvents = new LongAdder();
+		List<TimbermillServerOutputPipe> pipes = Lists.newArrayList();
+		ExecutorService clientsExecutor = Executors.newFixedThreadPool(clients);
+		long startNanos = System.nanoTime();
+		long deadlineNanos = startNanos + TimeUnit.SECONDS.toNanos(durationSeconds);
+		for (int i = 0; i < clients; i++) {
+			TimbermillServerOutputPipe pipe = new TimbermillServerOutputPipeBuilder().timbermillServerUrl(timbermillUrl).build();
+			pipes.add(pipe);
+			clientsExecutor.execute(() -> {
+				RateLimiter rateLimiter = RateLimiter.create(tracesPerSecond);
+				String text = StringUtils.repeat('x', textLength);
+				while (System.nanoTime() < deadlineNanos) {
+					rateLimiter.acquire();
+					sendTrace(pipe, text, sentSuccesses);
+					sentTasks.add(childrenPerTrace + 1);
+					sentEvents.add((childrenPerTrace + 1) * 2);
+				}
+			});
+		}
+		clientsExecutor.shutdown();
+		clientsExecutor.awaitTermination(durationSeconds + 60, TimeUnit.SECONDS);
+		double sendingSeconds = (System.nanoTime() - startNanos) / 1e9;
+
+		long drainDeadlineNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(drainTimeoutSeconds);
+		while (!sentSuccesses.isEmpty() && System.nanoTime() < drainDeadlineNanos) {
+			Thread.sleep(100);
+		}
+		double totalSeconds = (System.nanoTime() - startNanos) / 1e9;
+		heapSampler.shutdownNow();
+		long droppedEvents = pipes.stream().mapToLong(TimbermillServerOutputPipe::getDroppedEvents).sum();
+		pipes.forEach(TimbermillServerOutputPipe::close);
+
+		LOG.info("Sent {} tasks, {} events in {} seconds, {} events per second", sentTasks.sum(), sentEvents.sum(), format(sendingSeconds),
+				format(sentEvents.sum() / sendingSeconds));
+		LOG.info("Indexed {} tasks in {} seconds, {} tasks per second", indexedTasks.sum(), format(totalSeconds), format(indexedTasks.sum() / totalSeconds));
+		StringBuilder percentiles = new StringBuilder();
+		for (double percentile : PERCENTILES) {
+			percentiles.append(" p").append(percentile).append('=').append(format(latency.getValueAtPercentile(percentile) * 1000)).append("ms");
+		}
+		LOG.info("Latency{} max={}ms", percentiles, format(latency.getMax() * 1000));
+		LOG.info("Dropped {} events by the clients, {} tasks were not indexed", droppedEvents, sentSuccesses.size());
+		LOG.info("Fake Elasticsearch got {} bulks with {} actions, rejected {} bulks and {} items, served {} searches", elasticsearch.getBulks(),
+				elasticsearch.getIndexedActions(), elasticsearch.getRejectedBulks(), elasticsearch.getRejectedItems(), elasticsearch.getSearches());
+		LOG.info("Peak heap {}MB, {} GCs took {}ms", peakHeap.get() / 1024 / 1024, getGcCount() - gcCountBefore, getGcMillis() - gcMillisBefore);
+		assertTrue("No task was indexed", indexedTasks.sum() > 0);
+	}
+
+	private static void sendTrace(TimbermillServerOutputPipe pipe, String text, Map<String, Long> sentSuccesses) {
+		String rootId = Event.generateTaskId("load_root");
+		send(pipe, new StartEvent(rootId, "load_root", LogParams.create().context("root", rootId), null));
+		for (int i = 0; i < childrenPerTrace; i++) {
+			String childId = Event.generateTaskId("load_child");
+			send(pipe, new StartEvent(childId, "load_child", LogParams.create().text("text", text).string("child", i), rootId));
+			sendSuccess(pipe, childId, sentSuccesses);
+		}
+		sendSuccess(pipe, rootId, sentSuccesses);
+	}
+
+	private static void sendSuccess(TimbermillServerOutputPipe pipe, String taskId, Map<String, Long> sentSuccesses) {
+		sentSuccesses.put(taskId, System.nanoTime());
+		send(pipe, new SuccessEvent(taskId, LogParams.create().metric("items", 1)));
+	}
+
+	private static void send(TimbermillServerOutputPipe pipe, Event event) {
+		event.setEnv(ENV);
+		pipe.send(event);
+	}
+
+	private static long getGcCount() {
+		return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+	}
+
+	private static long getGcMillis() {
+		return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+	}
+
+	private static String format(double value) {
+		return String.format("%.1f", value);
+	}
+
+	private static int getEnv(String name, int defaultValue) {
+		String value = System.getenv(name);
+		return StringUtils.isEmpty(value) ? defaultValue : Integer.parseInt(value);
+	}
+
+	private static double getEnv(String name, double defaultValue) {
+		String value = System.getenv(name);
+		return StringUtils.isEmpty(value) ? defaultValue : Double.parseDouble(value);
+	}
+}
@@ -0,0 +1,62 @@
+package com.datorama.timbermill.server.service;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AdmissionServiceTest {
+
+	private static final long HIGH_WATERMARK_BYTES = 1000;
+	private static final int MAX_RETRY_AFTER_SECONDS = 60;
+
+	@Test
+	public void pauseAboveHighWatermarkAndResumeBelowLowWatermark() {
+		AdmissionService admissionService = new AdmissionService(HIGH_WATERMARK_BYTES, 0.8, 0, 0, MAX_RETRY_AFTER_SECONDS);
+
+		admissionService.update(500, 500, 0, 0);
+		assertTrue(admissionService.getState().isAdmitting());
+
+		admissionService.update(1000, 1000, 0, 0);
+		assertFalse(admissionService.getState().isAdmitting());
+		assertEquals(1, admissionService.getState().getPressure(), 0.001);
+
+		admissionService.update(900, 1000, 0, 0);
+		assertFalse(admissionService.getState().isAdmitting());
+
+		admissionService.update(700, 1000, 0, 0);
+		assertTrue(admissionService.getState().isAdmitting());
+		assertEquals(0, admissionService.getState().getRetryAfterSeconds());
+	}
+
+	@Test
+	public void pauseOnOverflowRateAndPersistenceBacklog() {
+		AdmissionService admissionService = new AdmissionService(HIGH_WATERMARK_BYTES, 0.8, 100, 10, MAX_RETRY_AFTER_SECONDS);
+
+		admissionService.update(0, 0, 50, 0);
+		assertTrue(admissionService.getState().isAdmitting());
+
+		admissionService.update(0, 0, 150, 0);
+		assertFalse(admissionService.getState().isAdmitting());
+		assertEquals(100, admissionService.getState().getOverflowEventsPerSecond(), 0.001);
+
+		admissionService.update(0, 0, 150, 0);
+		assertTrue(admissionService.getState().isAdmitting());
+
+		admissionService.update(0, 0, 150, 10);
+		assertFalse(admissionService.getState().isAdmitting());
+	}
+
+	@Test
+	public void retryAfterTheQueuesDrainToTheLowWatermark() {
+		AdmissionService admissionService = new AdmissionService(HIGH_WATERMARK_BYTES, 0.8, 0, 0, MAX_RETRY_AFTER_SECONDS);
+
+		// nothing drained yet, so no drain rate to estimate by
+		admissionService.update(1200, 1200, 0, 0);
+		assertFalse(admissionService.getState().isAdmitting());
+		assertEquals(MAX_RETRY_AFTER_SECONDS, admissionService.getState().getRetryAfterSeconds());
+
+		// 1000 bytes drained in a second move the drain rate a fifth of the way, to 200 bytes per second, and 400 bytes are left to drain
+		admissionService.update(1200, 2200, 0, 0);
+		assertEquals(2, admissionService.getState().getRetryAfterSeconds());
+	}
+}
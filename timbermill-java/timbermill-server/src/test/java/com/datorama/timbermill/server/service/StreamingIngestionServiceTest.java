@@ -0,0 +1,168 @@
+package com.datorama.timbermill.server.service;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.awaitility.Awaitility;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.datorama.oss.timbermill.common.EventsIdsCache;
+import com.datorama.oss.timbermill.common.EventsStreamProtocol;
+import com.datorama.oss.timbermill.common.EventsStreamReader;
+import com.datorama.oss.timbermill.common.cluster.EventsRejectedException;
+import com.datorama.oss.timbermill.pipe.TimbermillStreamOutputPipe;
+import com.datorama.oss.timbermill.pipe.TimbermillStreamOutputPipeBuilder;
+import com.datorama.oss.timbermill.unit.*;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import static org.junit.Assert.*;
+
+public class StreamingIngestionServiceTest {
+
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+	private static final int CREDITS = 2;
+
+	private final EventsIdsCache eventsIdsCache = new EventsIdsCache(60);
+	private final EventsStreamReader eventsStreamReader = new EventsStreamReader(OBJECT_MAPPER, 100);
+	private final List<Event> received = new CopyOnWriteArrayList<>();
+	private final AtomicInteger reads = new AtomicInteger();
+	private final AtomicInteger rejections = new AtomicInteger();
+	private volatile boolean admitting = true;
+	private volatile RuntimeException nextReadFailure;
+	private volatile boolean dropConnectionsAfterRead;
+	private int port;
+	private StreamingIngestionService service;
+
+	@Before
+	public void setUp() throws IOException {
+		try (ServerSocket freePort = new ServerSocket(0)) {
+			port = freePort.getLocalPort();
+		}
+		service = new StreamingIngestionService(OBJECT_MAPPER, port, 4, CREDITS, 1024 * 1024, 100) {
+			@Override
+			int readEvents(InputStream in) throws IOException {
+				reads.incrementAndGet();
+				RuntimeException failure = nextReadFailure;
+				if (failure != null) {
+					nextReadFailure = null;
+					throw failure;
+				}
+				int read = eventsIdsCache.read(eventsStreamReader, in, received::addAll);
+				if (dropConnectionsAfterRead) {
+					// the batch was handled but its ack is lost
+					dropConnectionsAfterRead = false;
+					closeConnections();
+				}
+				return read;
+			}
+
+			@Override
+			AdmissionService.AdmissionState getAdmissionState() {
+				return new AdmissionService.AdmissionState(admitting, 0, 0, 0, 0, 1);
+			}
+
+			@Override
+			void recordRejection() {
+				rejections.incrementAndGet();
+			}
+		};
+		service.start();
+	}
+
+	@After
+	public void tearDown() {
+		service.stop();
+	}
+
+	@Test
+	public void acknowledgeEveryBatchWithItsStatus() throws IOException {
+		try (Socket socket = connect()) {
+			DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+			DataInputStream in = new DataInputStream(socket.getInputStream());
+			assertFrame(EventsStreamProtocol.readFrame(in), EventsStreamProtocol.CREDIT, 0, EventsStreamProtocol.STATUS_OK, CREDITS);
+
+			EventsStreamProtocol.writeEvents(out, 1, getPayload(createWrapper("id1")));
+			assertFrame(EventsStreamProtocol.readFrame(in), EventsStreamProtocol.ACK, 1, EventsStreamProtocol.STATUS_OK, 1);
+
+			EventsStreamProtocol.writeEvents(out, 2, "not gzipped".getBytes());
+			assertFrame(EventsStreamProtocol.readFrame(in), EventsStreamProtocol.ACK, 2, EventsStreamProtocol.STATUS_PARSE_ERROR, 1);
+
+			nextReadFailure = new EventsRejectedException("Not a member of the cluster");
+			EventsStreamProtocol.writeEvents(out, 3, getPayload(createWrapper("id2")));
+			assertFrame(EventsStreamProtocol.readFrame(in), EventsStreamProtocol.ACK, 3, EventsStreamProtocol.STATUS_ERROR, 1);
+		}
+		assertEquals(2, received.size());
+	}
+
+	@Test
+	public void withholdCreditsWhileNotAdmitting() throws IOException {
+		admitting = false;
+		try (Socket socket = connect()) {
+			DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+			DataInputStream in = new DataInputStream(socket.getInputStream());
+			EventsStreamProtocol.readFrame(in);
+
+			EventsStreamProtocol.writeEvents(out, 1, getPayload(createWrapper("id1")));
+			assertFrame(EventsStreamProtocol.readFrame(in), EventsStreamProtocol.ACK, 1, EventsStreamProtocol.STATUS_OK, 0);
+			Awaitility.await().atMost(10, TimeUnit.SECONDS).until(() -> rejections.get() == 1);
+
+			admitting = true;
+			assertFrame(EventsStreamProtocol.readFrame(in), EventsStreamProtocol.CREDIT, 0, EventsStreamProtocol.STATUS_OK, 1);
+		}
+	}
+
+	@Test
+	public void resendUnacknowledgedAndFailedBatches() {
+		dropConnectionsAfterRead = true;
+		TimbermillStreamOutputPipe pipe = new TimbermillStreamOutputPipeBuilder().host("localhost").port(port).maxSecondsBeforeBatchTimeout(1).build();
+		try {
+			pipe.send(new StartEvent("id1", "name", LogParams.create(), null));
+			// read, then read again after reconnecting and skipped as already received
+			Awaitility.await().atMost(30, TimeUnit.SECONDS).until(() -> reads.get() == 2);
+			assertEquals(1, received.size());
+
+			nextReadFailure = new EventsIdsCache.InFlightException("id");
+			pipe.send(new SuccessEvent("id1", LogParams.create()));
+			Awaitility.await().atMost(30, TimeUnit.SECONDS).until(() -> received.size() == 2);
+			assertEquals(4, reads.get());
+		} finally {
+			pipe.close();
+		}
+	}
+
+	private Socket connect() throws IOException {
+		Socket socket = new Socket("localhost", port);
+		socket.setSoTimeout(10000);
+		DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+		out.writeInt(EventsStreamProtocol.MAGIC);
+		return socket;
+	}
+
+	private static void assertFrame(EventsStreamProtocol.Frame frame, byte type, long sequence, byte status, int value) {
+		assertEquals(type, frame.getType());
+		assertEquals(sequence, frame.getSequence());
+		assertEquals(status, frame.getStatus());
+		assertEquals(value, frame.getValue());
+	}
+
+	private static EventsWrapper createWrapper(String taskId) {
+		return new EventsWrapper(Arrays.asList(new StartEvent(taskId, "name", LogParams.create(), null), new SuccessEvent(taskId, LogParams.create())));
+	}
+
+	private static byte[] getPayload(EventsWrapper wrapper) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (OutputStream os = new GZIPOutputStream(bytes)) {
+			os.write(OBJECT_MAPPER.writeValueAsBytes(wrapper));
+		}
+		return bytes.toByteArray();
+	}
+}
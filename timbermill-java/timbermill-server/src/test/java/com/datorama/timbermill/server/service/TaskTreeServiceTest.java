@@ -0,0 +1,86 @@
+package com.datorama.timbermill.server.service;
+
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.datorama.oss.timbermill.TreeTasks;
+import com.datorama.oss.timbermill.unit.Task;
+import com.datorama.oss.timbermill.unit.TaskStatus;
+
+import static org.junit.Assert.*;
+
+public class TaskTreeServiceTest {
+
+	private static final String ROOT_ID = "root";
+	private static final String ENV = "env";
+
+	private final AtomicInteger fetches = new AtomicInteger();
+	private volatile TreeTasks treeTasks;
+
+	private final TaskTreeService taskTreeService = new TaskTreeService(3, 10, 60) {
+		@Override
+		TreeTasks fetchTreeTasks(String rootId, String env) {
+			fetches.incrementAndGet();
+			return treeTasks;
+		}
+	};
+
+	@Test
+	public void returnNullWithoutRoot() {
+		Map<String, Task> tasks = new HashMap<>();
+		tasks.put("child", createTask(ROOT_ID, TaskStatus.SUCCESS));
+		treeTasks = new TreeTasks(tasks, false);
+
+		assertNull(taskTreeService.getTaskTree(ROOT_ID, ENV, Integer.MAX_VALUE, 0, 10));
+	}
+
+	@Test
+	public void returnRootOfTruncatedTreeWithoutCachingIt() {
+		Map<String, Task> tasks = new HashMap<>();
+		tasks.put(ROOT_ID, createTask(null, TaskStatus.SUCCESS));
+		tasks.put("child1", createTask(ROOT_ID, TaskStatus.SUCCESS));
+		tasks.put("child2", createTask(ROOT_ID, TaskStatus.SUCCESS));
+		treeTasks = new TreeTasks(tasks, true);
+
+		TaskTreeService.TaskTree taskTree = taskTreeService.getTaskTree(ROOT_ID, ENV, Integer.MAX_VALUE, 0, 10);
+		assertTrue(taskTree.isTruncated());
+		assertEquals(3, taskTree.getTotal());
+		assertEquals(ROOT_ID, taskTree.getTasks().get(0).getId());
+
+		taskTreeService.getTaskTree(ROOT_ID, ENV, Integer.MAX_VALUE, 0, 10);
+		assertEquals(2, fetches.get());
+	}
+
+	@Test
+	public void cacheOnlyCompleteTrees() {
+		Map<String, Task> tasks = new HashMap<>();
+		tasks.put(ROOT_ID, createTask(null, TaskStatus.SUCCESS));
+		tasks.put("child", createTask(ROOT_ID, TaskStatus.UNTERMINATED));
+		treeTasks = new TreeTasks(tasks, false);
+
+		taskTreeService.getTaskTree(ROOT_ID, ENV, Integer.MAX_VALUE, 0, 10);
+		taskTreeService.getTaskTree(ROOT_ID, ENV, Integer.MAX_VALUE, 0, 10);
+		assertEquals(2, fetches.get());
+
+		tasks.put("child", createTask(ROOT_ID, TaskStatus.ERROR));
+		taskTreeService.getTaskTree(ROOT_ID, ENV, Integer.MAX_VALUE, 0, 10);
+		TaskTreeService.TaskTree taskTree = taskTreeService.getTaskTree(ROOT_ID, ENV, Integer.MAX_VALUE, 0, 10);
+		assertEquals(3, fetches.get());
+		assertFalse(taskTree.isTruncated());
+		assertEquals(2, taskTree.getTotal());
+	}
+
+	private static Task createTask(String parentId, TaskStatus status) {
+		Task task = new Task();
+		task.setName("name");
+		task.setParentId(parentId);
+		task.setPrimaryId(ROOT_ID);
+		task.setStatus(status);
+		task.setStartTime(ZonedDateTime.now());
+		return task;
+	}
+}